@@ -12,6 +12,8 @@ public class ClassifierAdapter {
   public interface Saver { void save(PrintStream ps); }
 
   private final Saver saver;
+  // Dump compiled for the classifier object it came from; recompiled only when that changes
+  private volatile Compiled compiled;
 
   public ClassifierAdapter(Saver saver) {
     this.saver = saver;
@@ -20,10 +22,13 @@ public class ClassifierAdapter {
   public static record Result(String label, List<DecisionStep> steps) {}
 
   public Result classifyWithPath(Object classifier, TextBlock tb) {
-    String tree = dump();
-    Deque<String> lines = new ArrayDeque<>(Arrays.asList(tree.split("\\R")));
+    Compiled c = compiled;
+    if (c == null || c.source != classifier) {
+      c = compile(classifier, dump());
+      compiled = c;
+    }
     List<DecisionStep> path = new ArrayList<>();
-    String label = walk(lines, tb, path);
+    String label = c.trace(tb, path);
     return new Result(label, path);
   }
 
@@ -33,29 +38,81 @@ public class ClassifierAdapter {
     return bos.toString();
   }
 
-  private String walk(Deque<String> lines, TextBlock tb, List<DecisionStep> path) {
-    if (lines.isEmpty()) throw new IllegalStateException("Malformed tree");
-    String line = lines.removeFirst();
-    if (line.startsWith("Feature: ")) {
-      String feature = line.substring("Feature: ".length()).trim();
-      String thLine = lines.removeFirst();
-      if (!thLine.startsWith("Threshold: "))
-        throw new IllegalStateException("Missing threshold line");
-      double threshold = Double.parseDouble(thLine.substring("Threshold: ".length()).trim());
-
-      double value = tb.get(feature);
-      boolean goLeft = value < threshold;
-      path.add(new DecisionStep(feature, threshold, value, goLeft ? "left" : "right"));
-
-      Deque<String> snapshot = new ArrayDeque<>(lines);
-      String leftLabel = walk(snapshot, tb, goLeft ? path : new ArrayList<>());
-      int consumed = lines.size() - snapshot.size();
-      for (int i = 0; i < consumed; i++) lines.removeFirst();
-
-      if (goLeft) return leftLabel;
-      return walk(lines, tb, path);
-    } else {
-      return line.trim();
+  // Pre-order tree flattened into arrays: node i's left child is i + 1 and its right child
+  // is right[i] (a skip pointer past the left subtree), so a trace is O(depth).
+  private static final class Compiled {
+    final Object source;
+    final String[] feature;   // null for leaves
+    final double[] threshold;
+    final String[] label;     // null for decision nodes
+    final int[] right;
+
+    Compiled(Object source, String[] feature, double[] threshold, String[] label, int[] right) {
+      this.source = source;
+      this.feature = feature;
+      this.threshold = threshold;
+      this.label = label;
+      this.right = right;
+    }
+
+    String trace(TextBlock tb, List<DecisionStep> path) {
+      int i = 0;
+      while (feature[i] != null) {
+        double value = tb.get(feature[i]);
+        boolean goLeft = value < threshold[i];
+        path.add(new DecisionStep(feature[i], threshold[i], value, goLeft ? "left" : "right"));
+        i = goLeft ? i + 1 : right[i];
+      }
+      return label[i];
+    }
+  }
+
+  // Single pass over the dump. Decision nodes wait on a stack until their left subtree
+  // ends; the next node index is then their right child. Iterative, so deep legacy
+  // trees (one level per training mistake) can't overflow the call stack.
+  private static Compiled compile(Object source, String tree) {
+    String[] lines = tree.split("\\R");
+    int cap = lines.length;
+    String[] feature = new String[cap];
+    double[] threshold = new double[cap];
+    String[] label = new String[cap];
+    int[] right = new int[cap];
+    int[] pending = new int[cap];
+    int top = 0;
+    int count = 0;
+    boolean done = false;
+
+    for (int li = 0; li < lines.length; li++) {
+      String line = lines[li];
+      if (done) {
+        if (line.isBlank()) continue;
+        throw new IllegalStateException("Malformed tree: trailing lines");
+      }
+      int i = count++;
+      if (line.startsWith("Feature: ")) {
+        feature[i] = line.substring("Feature: ".length()).trim();
+        if (li + 1 >= lines.length || !lines[li + 1].startsWith("Threshold: "))
+          throw new IllegalStateException("Missing threshold line");
+        threshold[i] = Double.parseDouble(lines[++li].substring("Threshold: ".length()).trim());
+        pending[top++] = i;
+      } else {
+        label[i] = line.trim();
+        // A leaf closes subtrees: the nearest parent still missing a right child gets the
+        // next node; parents whose right subtree just ended are complete.
+        while (top > 0) {
+          int p = pending[top - 1];
+          if (right[p] == 0) {
+            right[p] = count;
+            break;
+          }
+          top--;
+        }
+        done = top == 0;
+      }
     }
+    if (!done) throw new IllegalStateException("Malformed tree");
+    return new Compiled(source,
+        Arrays.copyOf(feature, count), Arrays.copyOf(threshold, count),
+        Arrays.copyOf(label, count), Arrays.copyOf(right, count));
   }
 }
@@ -0,0 +1,28 @@
+package com.example.classifierapi.config;
+
+import com.example.classifierapi.util.InstrumentedExecutor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Two execution paths: blocking I/O (SSE relays) on virtual threads, and CPU-bound
+ * training on a small platform pool so long computations never pin virtual-thread carriers.
+ * Request threads themselves are virtual via spring.threads.virtual.enabled.
+ */
+@Configuration
+public class ExecutionConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    public InstrumentedExecutor trainingExecutor(
+            @Value("${classifier.training.threads:0}") int threads,
+            @Value("${classifier.training.queue-capacity:32}") int queueCapacity) {
+        int n = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        return InstrumentedExecutor.platform("train", n, queueCapacity);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public InstrumentedExecutor streamExecutor() {
+        return InstrumentedExecutor.virtual("sse");
+    }
+}
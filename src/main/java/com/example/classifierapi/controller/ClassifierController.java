@@ -3,33 +3,58 @@ package com.example.classifierapi.controller;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.ReadinessState;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
 import com.example.classifierapi.dto.ClassifyResponse;
-import com.example.classifierapi.dto.TreeNodeDto;
+import com.example.classifierapi.dto.TrainParams;
+import com.example.classifierapi.core.SuccessiveHalving;
 import com.example.classifierapi.service.ClassifierService;
+import com.example.classifierapi.service.ClassifyCoalescer;
 import com.example.classifierapi.core.ImprovedClassifier;
+import com.example.classifierapi.core.InferenceBenchmark;
+import com.example.classifierapi.core.TrainingOptions;
+import com.example.classifierapi.util.InstrumentedExecutor;
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api")
 public class ClassifierController {
 private final ClassifierService service;
-private final ExecutorService exec = Executors.newCachedThreadPool();
-public ClassifierController(ClassifierService service) {
+private final ClassifyCoalescer coalescer;
+private final InstrumentedExecutor trainingExecutor;
+private final InstrumentedExecutor streamExecutor;
+private final ApplicationAvailability availability;
+public ClassifierController(ClassifierService service, ClassifyCoalescer coalescer,
+@Qualifier("trainingExecutor") InstrumentedExecutor trainingExecutor,
+@Qualifier("streamExecutor") InstrumentedExecutor streamExecutor,
+ApplicationAvailability availability) {
 this.service = service;
+this.coalescer = coalescer;
+this.trainingExecutor = trainingExecutor;
+this.streamExecutor = streamExecutor;
+this.availability = availability;
 }
+// False until startup (model preload and warm-up) has finished, even if a model is already set
 @GetMapping("/ready")
 public boolean ready() {
-return service.isReady();
+return service.isReady() && availability.getReadinessState() == ReadinessState.ACCEPTING_TRAFFIC;
 }
 @PostMapping("/load-model")
 public ResponseEntity<Boolean> loadModel(@RequestParam("file") MultipartFile file) throws Exception {
@@ -42,70 +67,265 @@ return ResponseEntity.ok(true);
 tmp.delete();
 }
 }
+// Streams the saved model; gzip when accepted, otherwise identity with Content-Length
 @GetMapping(value = "/export", produces = MediaType.TEXT_PLAIN_VALUE)
-public String export() {
-return service.exportModel();
+public ResponseEntity<StreamingResponseBody> export(
+@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+@RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+) {
+ClassifierService.ModelExport export = service.exportModel();
+if (export == null) {
+return ResponseEntity.ok().contentType(MediaType.TEXT_PLAIN).contentLength(0).body(out -> {});
 }
-// Accept {"text":"..."} payload directly, no dependency on a getter
+if (etagMatches(ifNoneMatch, export.etag())) {
+return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(export.etag()).build();
+}
+ResponseEntity.BodyBuilder ok = ResponseEntity.ok()
+    .eTag(export.etag())
+    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+    .contentType(MediaType.TEXT_PLAIN);
+if (acceptsGzip(acceptEncoding)) {
+return ok.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(out -> {
+GZIPOutputStream gz = new GZIPOutputStream(out, 8192);
+export.writeTo(gz);
+gz.finish();
+});
+}
+return ok.contentLength(export.length()).body(export::writeTo);
+}
+// Accept {"text":"..."} payload directly, no dependency on a getter.
+// The decision path is opt-in (?explain=true); by default only the label is computed,
+// micro-batched with concurrent calls when classifier.batching.enabled is set.
 @PostMapping("/classify")
-public ClassifyResponse classify(@RequestBody Map<String, Object> body) {
+public ClassifyResponse classify(
+@RequestBody Map<String, Object> body,
+@RequestParam(value = "explain", defaultValue = "false") boolean explain
+) {
 Object t = body.get("text");
 String text = t == null ? "" : String.valueOf(t);
-return service.classify(text);
+return explain ? service.classifyExplained(text) : coalescer.classify(text);
+}
+// Served from the per-model JSON cache; answers If-None-Match with 304 and sends gzip when accepted
+@GetMapping(value = "/tree", produces = MediaType.APPLICATION_JSON_VALUE)
+public ResponseEntity<byte[]> tree(
+@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+@RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+) {
+ClassifierService.TreeJson tree = service.treeJson();
+if (etagMatches(ifNoneMatch, tree.etag())) {
+return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(tree.etag()).build();
+}
+ResponseEntity.BodyBuilder ok = ResponseEntity.ok()
+    .eTag(tree.etag())
+    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+    .contentType(MediaType.APPLICATION_JSON);
+if (acceptsGzip(acceptEncoding)) {
+return ok.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(tree.gzip());
+}
+return ok.body(tree.json());
+}
+// Lazy tree browsing: nodeId and 'depth' levels below it, deeper decision nodes as stubs to
+// expand with another call; ?minSamples collapses thinner subtrees into summaries. The root is
+// nodeId 0 for trained and loaded models alike.
+@GetMapping(value = "/tree/{nodeId}", produces = MediaType.APPLICATION_JSON_VALUE)
+public ResponseEntity<byte[]> subtree(
+@PathVariable int nodeId,
+@RequestParam(value = "depth", defaultValue = "3") int depth,
+@RequestParam(value = "minSamples", defaultValue = "0") int minSamples
+) {
+byte[] json = service.subtreeJson(nodeId, depth, minSamples);
+if (json == null) return ResponseEntity.notFound().build();
+return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(json);
+}
+// Weak comparison (RFC 9110 13.1.2): W/ prefixes are ignored, "*" matches anything
+static boolean etagMatches(String ifNoneMatch, String etag) {
+if (ifNoneMatch == null || ifNoneMatch.isBlank()) return false;
+String want = stripWeak(etag);
+for (String candidate : ifNoneMatch.split(",")) {
+String c = candidate.trim();
+if (c.equals("*") || stripWeak(c).equals(want)) return true;
+}
+return false;
+}
+private static String stripWeak(String tag) {
+return tag.startsWith("W/") ? tag.substring(2) : tag;
+}
+static boolean acceptsGzip(String acceptEncoding) {
+if (acceptEncoding == null) return false;
+for (String part : acceptEncoding.split(",")) {
+String[] kv = part.trim().split(";");
+if (!kv[0].trim().equalsIgnoreCase("gzip")) continue;
+for (int i = 1; i < kv.length; i++) {
+String q = kv[i].trim();
+if (q.startsWith("q=")) {
+try {
+return Double.parseDouble(q.substring(2)) > 0;
+} catch (NumberFormatException e) {
+return false;
+}
 }
-@GetMapping("/tree")
-public TreeNodeDto tree() {
-return service.treeDto();
+}
+return true;
+}
+return false;
 }
 @PostMapping(value = "/train", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
 public ResponseEntity<Boolean> train(
 @RequestParam("file") MultipartFile file,
-@RequestParam(value = "labelCol", defaultValue = "label") String labelCol
+@RequestParam(value = "labelCol", defaultValue = "label") String labelCol,
+@RequestParam(value = "hashBits", required = false) Integer hashBits,
+TrainParams params
 ) throws Exception {
+TrainingOptions options = service.trainingOptions(params);
 File tmp = File.createTempFile("train-", ".csv");
 file.transferTo(tmp);
 try {
-service.trainFromCsv(tmp, labelCol);
+onTrainingPool(() -> {
+service.trainFromCsv(tmp, labelCol, hashBits, options);
+return null;
+});
 return ResponseEntity.ok(true);
 } finally {
 tmp.delete();
 }
 }
+// Successive-halving search over a hyperparameter grid (comma-separated lists). Parsing and
+// coordination run on the training pool like /train, with the candidates spread over it.
+@PostMapping(value = "/tune", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+public ResponseEntity<SuccessiveHalving.Result> tune(
+@RequestParam("file") MultipartFile file,
+@RequestParam(value = "labelCol", defaultValue = "label") String labelCol,
+@RequestParam(value = "hashBits", required = false) Integer hashBits,
+@RequestParam(value = "growth", required = false) String growth,
+@RequestParam(value = "maxLeafNodes", required = false) Integer maxLeafNodes,
+@RequestParam(value = "timeLimitMs", required = false) Long timeLimitMs,
+@RequestParam(value = "approxBins", required = false) Integer approxBins,
+@RequestParam(value = "subsampleAbove", required = false) Integer subsampleAbove,
+@RequestParam(value = "maxDepth", defaultValue = "4,8,12,16") int[] maxDepth,
+@RequestParam(value = "minSamplesSplit", defaultValue = "2,10,40") int[] minSamplesSplit,
+@RequestParam(value = "minSamplesLeaf", defaultValue = "1,5") int[] minSamplesLeaf,
+@RequestParam(value = "minGain", defaultValue = "0,0.001,0.01") double[] minGain,
+@RequestParam(value = "eta", defaultValue = "3") int eta,
+@RequestParam(value = "validation", defaultValue = "0.2") double validation,
+@RequestParam(value = "seed", defaultValue = "42") long seed
+) throws Exception {
+TrainingOptions base = service.trainingOptions(
+    new TrainParams(growth, maxLeafNodes, timeLimitMs, null, null, null, null, approxBins, subsampleAbove));
+File tmp = File.createTempFile("tune-", ".csv");
+file.transferTo(tmp);
+try {
+var result = onTrainingPool(() -> service.tune(tmp, labelCol, hashBits, base, maxDepth, minSamplesSplit,
+    minSamplesLeaf, minGain, eta, validation, seed, trainingExecutor::execute, trainingExecutor.parallelism()));
+return ResponseEntity.ok(result);
+} finally {
+tmp.delete();
+}
+}
+// Progress between a training job and its SSE relay. Every event of the job is kept, so
+// the client sees the whole tree however far the paced relay falls behind; there are about
+// two per node, so the queue is bounded by the tree size. Training never waits for the
+// relay. The final event is queued behind a wake-up marker, after everything before it.
+private static final class Progress {
+static final ImprovedClassifier.TrainProgress WAKE = new ImprovedClassifier.TrainProgress();
+final BlockingQueue<ImprovedClassifier.TrainProgress> events = new LinkedBlockingQueue<>();
+final AtomicReference<Finished> finished = new AtomicReference<>();
+void add(ImprovedClassifier.TrainProgress ev) {
+  events.add(ev);
+}
+void finish(ImprovedClassifier.TrainProgress last, Exception error) {
+  finished.set(new Finished(last, error));
+  events.add(WAKE);
+}
+boolean isFinished() {
+  return finished.get() != null;
+}
+}
+// Terminal event of a training job, and its failure if any
+private record Finished(ImprovedClassifier.TrainProgress last, Exception error) {}
 @PostMapping(
 value = "/train/stream",
 consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
 produces = MediaType.TEXT_EVENT_STREAM_VALUE)
 public SseEmitter trainStream(
 @RequestParam("file") MultipartFile file,
-@RequestParam(value = "labelCol", defaultValue = "label") String labelCol
+@RequestParam(value = "labelCol", defaultValue = "label") String labelCol,
+@RequestParam(value = "hashBits", required = false) Integer hashBits,
+TrainParams params
 ) throws Exception {
+TrainingOptions options = service.trainingOptions(params);
 File tmp = File.createTempFile("train-", ".csv");
 file.transferTo(tmp);
 SseEmitter emitter = new SseEmitter(0L);
-exec.execute(() -> {
+// Training only queues events; a virtual thread does the (possibly slow) sends
+Progress progress = new Progress();
+try {
+trainingExecutor.execute(() -> {
+  ImprovedClassifier.TrainProgress last = new ImprovedClassifier.TrainProgress("error", 0, 0, 0, null, 0, 0, 0, 0, 0,
+      "Error: training failed");
+  Exception error = null;
   try {
-    service.trainFromCsvWithProgress(tmp, labelCol, ev -> {
-      try { emitter.send(SseEmitter.event().name("progress").data(ev)); } catch (Exception ignore) {}
-    });
-    emitter.send(SseEmitter.event().name("progress").data(
-        new ImprovedClassifier.TrainProgress("done", service.nodeCount(), service.nodeCount(), 
-            service.depth(), null, 0, 0, 0, 0, 0, 
-            "Training complete: " + service.nodeCount() + " nodes, depth " + service.depth())
-    ));
-    emitter.complete();
+    // The tree this job trained (or reused), not whatever is served by now
+    ImprovedClassifier model = service.trainFromCsvWithProgress(tmp, labelCol, hashBits, options, progress::add);
+    last = new ImprovedClassifier.TrainProgress("done", model.nodeCount(), model.nodeCount(),
+        model.depth(), null, 0, 0, 0, 0, 0,
+        "Training complete: " + model.nodeCount() + " nodes, depth " + model.depth());
   } catch (Exception ex) {
-    try {
-      emitter.send(SseEmitter.event().name("progress")
-          .data(new ImprovedClassifier.TrainProgress("error", 0, 0, 0, null, 0, 0, 0, 0, 0, 
-              "Error: " + ex.getMessage())));
-    } catch (Exception ignore) {}
-    emitter.completeWithError(ex);
+    last = new ImprovedClassifier.TrainProgress("error", 0, 0, 0, null, 0, 0, 0, 0, 0,
+        "Error: " + ex.getMessage());
+    error = ex;
   } finally {
     tmp.delete();
+    progress.finish(last, error);
   }
 });
+} catch (RejectedExecutionException ex) {
+tmp.delete();
+progress.finish(new ImprovedClassifier.TrainProgress("error", 0, 0, 0, null, 0, 0, 0, 0, 0,
+    "Error: training queue is full, try again shortly"), ex);
+}
+streamExecutor.execute(() -> relay(emitter, progress));
 return emitter;
 }
+// Pause after each split / leaf event so the client's tree animation stays visible. The
+// relay is a virtual thread, so sleeping here costs nothing and never slows training. Once
+// the job has finished, the rest goes out unpaced, so the client isn't kept waiting.
+private static final long SPLIT_PACING_MS = 150;
+private static final long LEAF_PACING_MS = 100;
+// Sends queued progress to the client, paced for the animation, then the final event
+private static void relay(SseEmitter emitter, Progress progress) {
+boolean clientGone = false;
+try {
+while (true) {
+  ImprovedClassifier.TrainProgress ev = progress.events.take();
+  if (ev == Progress.WAKE) {
+    // Everything queued before the wake-up has been sent
+    Finished f = progress.finished.get();
+    if (!clientGone) {
+      try {
+        emitter.send(SseEmitter.event().name("progress").data(f.last()));
+      } catch (Exception e) {
+        // client gone; complete below
+      }
+    }
+    if (f.error() == null) emitter.complete(); else emitter.completeWithError(f.error());
+    return;
+  }
+  if (clientGone) continue; // keep draining until the job finishes
+  try {
+    emitter.send(SseEmitter.event().name("progress").data(ev));
+  } catch (Exception e) {
+    clientGone = true;
+    continue;
+  }
+  if (progress.isFinished()) continue;
+  if ("split".equals(ev.phase)) Thread.sleep(SPLIT_PACING_MS);
+  else if ("leaf".equals(ev.phase)) Thread.sleep(LEAF_PACING_MS);
+}
+} catch (InterruptedException e) {
+Thread.currentThread().interrupt();
+emitter.complete();
+}
+}
 @PostMapping(value = "/metrics", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
 public ResponseEntity<ClassifierService.Metrics> metrics(
 @RequestParam("file") MultipartFile file,
@@ -114,15 +334,48 @@ public ResponseEntity<ClassifierService.Metrics> metrics(
 File tmp = File.createTempFile("test-", ".csv");
 file.transferTo(tmp);
 try {
-var m = service.metricsFromCsv(tmp, labelCol);
+var m = onTrainingPool(() -> service.metricsFromCsv(tmp, labelCol));
 return ResponseEntity.ok(m);
 } finally {
 tmp.delete();
 }
 }
+// Compiled tree vs node walk on the served model, over the texts of an uploaded CSV
+@PostMapping(value = "/inference-benchmark", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+public ResponseEntity<InferenceBenchmark> inferenceBenchmark(
+@RequestParam("file") MultipartFile file,
+@RequestParam(value = "labelCol", defaultValue = "label") String labelCol,
+@RequestParam(value = "rounds", defaultValue = "50") int rounds
+) throws Exception {
+File tmp = File.createTempFile("bench-", ".csv");
+file.transferTo(tmp);
+try {
+return ResponseEntity.ok(onTrainingPool(() -> service.benchmarkInference(tmp, labelCol, rounds)));
+} finally {
+tmp.delete();
+}
+}
+// CPU-bound work goes to the platform pool; the virtual request thread just parks on the result
+private <T> T onTrainingPool(Callable<T> work) throws Exception {
+try {
+return trainingExecutor.submit(work).get();
+} catch (ExecutionException e) {
+if (e.getCause() instanceof Exception cause) throw cause;
+throw e;
+}
+}
+// Bad training options (unknown growth mode, negative budgets)
+@ExceptionHandler(IllegalArgumentException.class)
+public ResponseEntity<String> badRequest(IllegalArgumentException e) {
+return ResponseEntity.badRequest().body(e.getMessage());
+}
+@ExceptionHandler(RejectedExecutionException.class)
+public ResponseEntity<String> busy(RejectedExecutionException e) {
+return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Training queue is full, try again shortly");
+}
 // Download sample files endpoint
 @GetMapping(value = "/download/{filename}", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
-public ResponseEntity<byte[]> downloadFile(@PathVariable String filename) throws IOException {
+public ResponseEntity<Resource> downloadFile(@PathVariable String filename) throws IOException {
 // Only allow specific files for security
 if (!filename.equals("sms_tree.txt") && !filename.equals("test.csv")) {
 return ResponseEntity.notFound().build();
@@ -134,10 +387,10 @@ if (!resource.exists()) {
   return ResponseEntity.notFound().build();
 }
 
-byte[] data = Files.readAllBytes(Paths.get(resource.getURI()));
-
+// Streamed from the classpath (also works inside the jar) instead of read into a byte[]
 return ResponseEntity.ok()
     .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
-    .body(data);
+    .contentLength(resource.contentLength())
+    .body(resource);
+}
 }
-}
\ No newline at end of file
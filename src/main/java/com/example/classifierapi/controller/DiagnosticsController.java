@@ -0,0 +1,161 @@
+package com.example.classifierapi.controller;
+
+import com.example.classifierapi.core.ClassifierEvents;
+import com.example.classifierapi.service.ClassifyCoalescer;
+import com.example.classifierapi.store.DatasetCache;
+import com.example.classifierapi.util.InstrumentedExecutor;
+import jdk.jfr.Configuration;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/diagnostics")
+public class DiagnosticsController {
+  private final List<InstrumentedExecutor> executors;
+  private final ClassifyCoalescer coalescer;
+  private final DatasetCache cache;
+  private Recording recording;   // guarded by this
+
+  public DiagnosticsController(List<InstrumentedExecutor> executors, ClassifyCoalescer coalescer,
+                               DatasetCache cache) {
+    this.executors = executors;
+    this.coalescer = coalescer;
+    this.cache = cache;
+  }
+
+  // Classify micro-batching: batches formed, mean size and wait, and the current window
+  @GetMapping("/batching")
+  public ClassifyCoalescer.Stats batching() {
+    return coalescer.stats();
+  }
+
+  // Dataset cache and training memo: entries, heap and disk use, hits per tier
+  @GetMapping("/cache")
+  public DatasetCache.Stats cache() {
+    return cache.stats();
+  }
+
+  // Empties the in-memory tier, e.g. to measure cold parses; cached files are kept
+  @DeleteMapping("/cache")
+  public DatasetCache.Stats clearCache() {
+    cache.clear();
+    return cache.stats();
+  }
+
+  // Per-executor counters plus JVM platform thread counts (virtual threads are not included there)
+  @GetMapping("/executors")
+  public Map<String, Object> executors() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    Map<String, Object> out = new LinkedHashMap<>();
+    out.put("executors", executors.stream().map(InstrumentedExecutor::stats).toList());
+    out.put("platformThreads", threads.getThreadCount());
+    out.put("peakPlatformThreads", threads.getPeakThreadCount());
+    return out;
+  }
+
+  // Starts a flight recording with the JDK's default settings plus every classifier event
+  // at threshold 0. It stops by itself after maxSeconds or once it holds maxSizeMb; either
+  // way DELETE returns it. One recording at a time.
+  @PostMapping("/recording")
+  public synchronized ResponseEntity<Map<String, Object>> startRecording(
+      @RequestParam(defaultValue = "300") long maxSeconds,
+      @RequestParam(defaultValue = "100") long maxSizeMb) throws IOException, ParseException {
+    if (maxSeconds < 1 || maxSeconds > 3600) throw new IllegalArgumentException("maxSeconds must be between 1 and 3600");
+    if (maxSizeMb < 1 || maxSizeMb > 1024) throw new IllegalArgumentException("maxSizeMb must be between 1 and 1024");
+    if (recording != null) return ResponseEntity.status(HttpStatus.CONFLICT).body(recordingStatus());
+    Recording r = new Recording(Configuration.getConfiguration("default"));
+    r.setName("classifierapi-diagnostics");
+    for (EventType type : FlightRecorder.getFlightRecorder().getEventTypes()) {
+      if (type.getName().startsWith(ClassifierEvents.PREFIX)) {
+        r.enable(type.getName()).withThreshold(Duration.ZERO);
+      }
+    }
+    r.setDuration(Duration.ofSeconds(maxSeconds));
+    r.setMaxSize(maxSizeMb << 20);
+    r.setToDisk(true);
+    r.start();
+    recording = r;
+    return ResponseEntity.ok(recordingStatus());
+  }
+
+  @GetMapping("/recording")
+  public synchronized Map<String, Object> recording() {
+    return recordingStatus();
+  }
+
+  // Stops the recording (if it is still running) and downloads it as a .jfr file
+  @DeleteMapping(value = "/recording", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+  public ResponseEntity<StreamingResponseBody> stopRecording() throws IOException {
+    Recording r;
+    synchronized (this) {
+      r = recording;
+      recording = null;
+    }
+    if (r == null) return ResponseEntity.notFound().build();
+    Path file = Files.createTempFile("classifierapi-", ".jfr");
+    try {
+      if (r.getState() == RecordingState.RUNNING) r.stop();
+      r.dump(file);
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(file);
+      throw e;
+    } finally {
+      r.close();
+    }
+    return ResponseEntity.ok()
+        .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"classifierapi-" + r.getId() + ".jfr\"")
+        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+        .contentLength(Files.size(file))
+        .body(out -> {
+          try {
+            Files.copy(file, out);
+          } finally {
+            Files.deleteIfExists(file);
+          }
+        });
+  }
+
+  @ExceptionHandler(IllegalArgumentException.class)
+  public ResponseEntity<String> badRequest(IllegalArgumentException e) {
+    return ResponseEntity.badRequest().body(e.getMessage());
+  }
+
+  private Map<String, Object> recordingStatus() {
+    Map<String, Object> out = new LinkedHashMap<>();
+    out.put("active", recording != null);
+    if (recording != null) {
+      out.put("id", recording.getId());
+      out.put("state", recording.getState().name());
+      out.put("startTime", String.valueOf(recording.getStartTime()));
+      out.put("maxSeconds", recording.getDuration().toSeconds());
+      out.put("maxSizeMb", recording.getMaxSize() >> 20);
+      out.put("sizeBytes", recording.getSize());
+    }
+    return out;
+  }
+}
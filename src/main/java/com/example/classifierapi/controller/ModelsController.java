@@ -1,5 +1,33 @@
 package com.example.classifierapi.controller;
 
+import com.example.classifierapi.service.ClassifierService;
+import com.example.classifierapi.store.ModelRepository;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/models")
 public class ModelsController {
-    
+  private final ModelRepository repository;
+  private final ClassifierService service;
+
+  public ModelsController(ModelRepository repository, ClassifierService service) {
+    this.repository = repository;
+    this.service = service;
+  }
+
+  // Versions in the shared repository and the one this instance serves (0: not from the repository)
+  @GetMapping
+  public Map<String, Object> versions() throws IOException {
+    Map<String, Object> out = new LinkedHashMap<>();
+    out.put("enabled", repository.isEnabled());
+    out.put("serving", service.modelVersion());
+    out.put("versions", repository.versions());
+    return out;
+  }
 }
@@ -54,42 +54,70 @@ public class Classifier {
         }
         overallRoot = new ClassifierNode(results.get(0), data.get(0));
         for(int i = 1; i < data.size(); i++){
-            String predict = classify(data.get(i));
-            if(!predict.equals(results.get(i))){
-                overallRoot = train(overallRoot, data.get(i), results.get(i));
-            }
+            learn(data.get(i), results.get(i));
+        }
+    }
+
+    // Trains a classification tree from rows streamed out of a DataLoader.RowReader,
+    // holding only the current row (plus the rows kept at leaves) in memory.
+    // Parameters:
+    //   - rows: DataLoader.RowReader positioned before the first row
+    // Exceptions:
+    //   - throws IllegalArgumentException if rows is null or has no rows
+    // Returns:
+    //   - none
+    public Classifier(DataLoader.RowReader rows){
+        if(rows == null || !rows.next()){
+            throw new IllegalArgumentException();
+        }
+        overallRoot = new ClassifierNode(rows.label(), rows.data());
+        while(rows.next()){
+            learn(rows.data(), rows.label());
         }
     }
 
-    // Updates the tree structure when a prediction is incorrect by creating a new
-    // decision node based on the biggest difference between TextBlock's and placing
-    // the original and new data.
+    // Walks the tree once for the given input. If the leaf it reaches predicts the wrong
+    // label, that leaf is replaced by a decision node on the biggest difference between
+    // the leaf's TextBlock and the input, with the original and new data placed under it.
+    // Iterative, so the tree depth (which grows with the number of mistakes) never
+    // touches the call stack.
     // Parameters:
-    //   - root: ClassifierNode current node being examined
-    //   - input: TextBlock that was misclassified
+    //   - input: TextBlock being trained on
     //   - label: String correct label for the input
     // Returns:
-    //   - ClassifierNode: updated tree structure
-    private ClassifierNode train(ClassifierNode root, TextBlock input, String label){
-        if(root.feature == null){
-            String feature = root.data.findBiggestDifference(input);
-            double threshold = midpoint(root.data.get(feature), input.get(feature));
-            ClassifierNode decision = new ClassifierNode(feature, threshold);
-            if(root.data.get(feature) < threshold){
-                decision.left = root;
-                decision.right = new ClassifierNode(label, input);;
-            } else{
-                decision.left = new ClassifierNode(label, input);;
-                decision.right = root;
-            }
-            return decision;
+    //   - none
+    private void learn(TextBlock input, String label){
+        ClassifierNode parent = null;
+        boolean wentLeft = false;
+        ClassifierNode curr = overallRoot;
+        while(curr.feature != null){
+            parent = curr;
+            wentLeft = input.get(curr.feature) < curr.threshold;
+            curr = wentLeft ? curr.left : curr.right;
+        }
+        if(curr.label.equals(label)){
+            return;
+        }
+        String feature = curr.data.findBiggestDifference(input);
+        if(feature == null){
+            // identical word probabilities: no feature can separate the two
+            return;
+        }
+        double threshold = midpoint(curr.data.get(feature), input.get(feature));
+        ClassifierNode decision = new ClassifierNode(feature, threshold);
+        if(curr.data.get(feature) < threshold){
+            decision.left = curr;
+            decision.right = new ClassifierNode(label, input);
         } else{
-            if(input.get(root.feature) < root.threshold){
-                root.left = train(root.left, input, label);
-            } else{
-                root.right = train(root.right, input, label);
-            }
-            return root;
+            decision.left = new ClassifierNode(label, input);
+            decision.right = curr;
+        }
+        if(parent == null){
+            overallRoot = decision;
+        } else if(wentLeft){
+            parent.left = decision;
+        } else{
+            parent.right = decision;
         }
     }
 
@@ -116,15 +144,10 @@ public class Classifier {
     // Returns:
     //   - String: the predicted label for the input text
     private String classify(ClassifierNode root, TextBlock input){
-        if(root.feature == null){
-            return root.label;
-        } else{
-            if(input.get(root.feature) < root.threshold){
-                return classify(root.left, input);
-            } else{
-                return classify(root.right, input);
-            }
+        while(root.feature != null){
+            root = input.get(root.feature) < root.threshold ? root.left : root.right;
         }
+        return root.label;
     }
 
     // Saves the current classification tree to the provided PrintStream in pre-order format.
@@ -143,51 +166,70 @@ public class Classifier {
         save(overallRoot, output);
     }
 
-    // Saves the tree structure using recursion in pre-order format by writing
+    // Saves the tree structure in pre-order format by writing
     // feature and threshold information for decision nodes and labels for leaf nodes.
     // Decision nodes are saved in the format of "Feature: " and "Threshold: " lines,
-    // while leaf nodes contain only label.
+    // while leaf nodes contain only label. Uses an explicit stack instead of recursion.
     // Parameters:
     //   - root: current node being processed
     //   - output: PrintStream to write to
     // Returns:
     //   - none
     private void save(ClassifierNode root, PrintStream output){
+        Deque<ClassifierNode> stack = new ArrayDeque<>();
         if(root != null){
-            if(root.feature == null){
-                output.println(root.label);
+            stack.push(root);
+        }
+        while(!stack.isEmpty()){
+            ClassifierNode curr = stack.pop();
+            if(curr.feature == null){
+                output.println(curr.label);
             } else{
-                output.println("Feature: " + root.feature);
-                output.println("Threshold: " + root.threshold);
-                save(root.left, output);
-                save(root.right, output);
+                output.println("Feature: " + curr.feature);
+                output.println("Threshold: " + curr.threshold);
+                stack.push(curr.right);
+                stack.push(curr.left);
             }
         }
     }
 
-    // Recursively loads tree nodes from the Scanner input in pre-order format.
+    // Loads tree nodes from the Scanner input in pre-order format.
     // Creates decision nodes when encountering "Feature: " lines and leaf nodes
-    // for lines only containing the label.
+    // for lines only containing the label. Decision nodes wait on an explicit stack
+    // until their right child is read, so deep trees can't overflow the call stack.
     // Parameters:
     //   - input: Scanner containing tree data
     // Returns:
-    //   - ClassifierNode: the root of the loaded subtree, or null if no data
+    //   - ClassifierNode: the root of the loaded tree, or null if no data
     private ClassifierNode loadFromFile(Scanner input){
-        if(!input.hasNextLine()){
-            return null;
-        }
-        String line = input.nextLine();
-        if(line.startsWith("Feature: ")){
-            String feature = line.substring("Feature: ".length());
-            String thresholdLine = input.nextLine();
-            double threshold = Double.parseDouble
-                                (thresholdLine.substring("Threshold: ".length()));
-            ClassifierNode node = new ClassifierNode(feature, threshold, loadFromFile(input), 
-                                                    loadFromFile(input));
-            return node;
-        } else{
-            return new ClassifierNode(line, null);
+        Deque<ClassifierNode> pending = new ArrayDeque<>();
+        ClassifierNode root = null;
+        while(input.hasNextLine()){
+            String line = input.nextLine();
+            ClassifierNode node;
+            if(line.startsWith("Feature: ")){
+                String feature = line.substring("Feature: ".length());
+                String thresholdLine = input.nextLine();
+                double threshold = Double.parseDouble
+                                    (thresholdLine.substring("Threshold: ".length()));
+                node = new ClassifierNode(feature, threshold);
+            } else{
+                node = new ClassifierNode(line, null);
+            }
+            if(pending.isEmpty()){
+                root = node;
+            } else if(pending.peek().left == null){
+                pending.peek().left = node;
+            } else{
+                pending.pop().right = node;
+            }
+            if(node.feature != null){
+                pending.push(node);
+            } else if(pending.isEmpty()){
+                return root;
+            }
         }
+        return root;
     }
 
     // ClassifierNode class represents a node in the classification decision tree.
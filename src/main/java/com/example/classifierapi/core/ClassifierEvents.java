@@ -0,0 +1,117 @@
+package com.example.classifierapi.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * JDK Flight Recorder events for the training pipeline and for inference.
+ *
+ * Every event is enabled by default, so any recording picks them up
+ * (-XX:StartFlightRecording, JMC, or POST /api/diagnostics/recording). While no recording
+ * is running, an emitting site costs a check of a static flag; the event objects do not
+ * escape and are scalar-replaced. Training events are recorded whatever their duration.
+ * The per-request inference events default to a 1 ms threshold, so a continuous
+ * recording keeps only slow requests; the diagnostics recording lowers it to 0.
+ *
+ * Stack traces are off: the emitting sites are fixed, and capturing a stack per node or
+ * per request would cost more than the event itself.
+ */
+public final class ClassifierEvents {
+    private ClassifierEvents() {}
+
+    public static final String PREFIX = "classifierapi.";
+
+    @Name(PREFIX + "CsvParse")
+    @Label("CSV Parse")
+    @Category({"Classifier", "Training"})
+    @Description("One pass over a CSV file, or one chunk of a parallel parse; includes the row handler (tokenization and matrix appends)")
+    @StackTrace(false)
+    public static final class CsvParse extends Event {
+        @Label("File") public String file;
+        @Label("Offset") @DataAmount public long offset;
+        @Label("Bytes") @DataAmount public long bytes;
+        @Label("Rows") public int rows;
+    }
+
+    @Name(PREFIX + "Tokenize")
+    @Label("Tokenize")
+    @Category({"Classifier", "Training"})
+    @Description("Tokenization of the rows of one CsvParse pass or chunk; the event spans the pass, tokenizeTime is the part spent tokenizing")
+    @StackTrace(false)
+    public static final class Tokenize extends Event {
+        @Label("Rows") public int rows;
+        @Label("Features") @Description("Distinct tokens per row, summed") public long features;
+        @Label("Tokenize Time") @Timespan(Timespan.NANOSECONDS) public long tokenizeTime;
+    }
+
+    @Name(PREFIX + "FeatureSetBuild")
+    @Label("Feature Set Build")
+    @Category({"Classifier", "Training"})
+    @Description("Turning parsed rows into the training matrix: feature ids, CSR arrays, spilled posting lists")
+    @StackTrace(false)
+    public static final class FeatureSetBuild extends Event {
+        @Label("Rows") public int rows;
+        @Label("Features") public int features;
+        @Label("Non-zeros") public long nonZeros;
+        @Label("Spilled") public boolean spilled;
+    }
+
+    @Name(PREFIX + "SplitSearch")
+    @Label("Split Search")
+    @Category({"Classifier", "Training"})
+    @Description("Search for the best split of one tree node")
+    @StackTrace(false)
+    public static final class SplitSearch extends Event {
+        @Label("Node Id") public int nodeId;
+        @Label("Depth") public int depth;
+        @Label("Samples") public int samples;
+        @Label("Scored Samples") @Description("Rows the search scored; fewer than samples when the node was subsampled")
+        public int scoredSamples;
+        @Label("Features") public int features;
+        @Label("Approximate") public boolean approximate;
+        @Label("Split Found") public boolean found;
+        @Label("Gain") public double gain;
+    }
+
+    @Name(PREFIX + "ModelPublish")
+    @Label("Model Publish")
+    @Category({"Classifier", "Training"})
+    @Description("Writing a model to the shared repository")
+    @StackTrace(false)
+    public static final class ModelPublish extends Event {
+        @Label("Version") public long version;
+        @Label("Bytes") @DataAmount public long bytes;
+        @Label("Unchanged") @Description("Content matched the newest version, nothing was written")
+        public boolean unchanged;
+    }
+
+    @Name(PREFIX + "ClassifyTokenize")
+    @Label("Classify Tokenize")
+    @Category({"Classifier", "Inference"})
+    @Description("Tokenizing the text of one classify request")
+    @Threshold("1 ms")
+    @StackTrace(false)
+    public static final class ClassifyTokenize extends Event {
+        @Label("Characters") public int characters;
+        @Label("Tokens") public int tokens;
+    }
+
+    @Name(PREFIX + "ClassifyTraverse")
+    @Label("Classify Traverse")
+    @Category({"Classifier", "Inference"})
+    @Description("Evaluating the tree for one classify request, or for a micro-batch of them")
+    @Threshold("1 ms")
+    @StackTrace(false)
+    public static final class ClassifyTraverse extends Event {
+        @Label("Documents") public int documents;
+        @Label("Compiled") public boolean compiled;
+        @Label("Label") @Description("Label of the first document") public String label;
+    }
+}
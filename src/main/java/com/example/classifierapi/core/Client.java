@@ -104,8 +104,11 @@ public class Client {
                 DataLoader loader = new DataLoader(TRAIN_FILE, LABEL_INDEX, CONTENT_INDEX, true);
                 return new Classifier(loader.getData(), loader.getLabels());
             } else {
-                DataLoader loader = new DataLoader(TRAIN_FILE, LABEL_INDEX, CONTENT_INDEX, false);
-                return new Classifier(loader.getData(), loader.getLabels());
+                // Unshuffled training streams the file instead of loading it all first
+                try (DataLoader.RowReader rows = DataLoader.stream(TRAIN_FILE, LABEL_INDEX,
+                                                                   CONTENT_INDEX)) {
+                    return new Classifier(rows);
+                }
             }
         } else {
             System.out.println("Please enter the path to the file you'd like to load");
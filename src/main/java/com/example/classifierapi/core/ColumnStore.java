@@ -0,0 +1,188 @@
+package com.example.classifierapi.core;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * On-disk columns of a spilled TrainingMatrix: one file each for labels, row pointers,
+ * row-major feature ids and values, and the feature-major posting lists (row ids and
+ * values per feature) derived from them once every row is in.
+ *
+ * Rows are appended through small direct buffers; nothing proportional to the data set
+ * stays on the heap. finish() maps every column read-only and unlinks the files: the
+ * mappings keep the data reachable, and the page cache decides what is resident, so a
+ * data set larger than the heap trains at disk speed instead of failing. Each column is
+ * one mapping, which limits a spilled matrix to Integer.MAX_VALUE / 4 non-zeros.
+ */
+final class ColumnStore {
+    static final long MAX_NON_ZEROS = Integer.MAX_VALUE / 4;
+
+    private final Path dir;
+    private final Column labels;
+    private final Column rowPtr;
+    private final Column featureIds;
+    private final Column values;
+    private int rows;
+    private long nnz;
+
+    ColumnStore(Path spillDir) {
+        try {
+            Files.createDirectories(spillDir);
+            this.dir = Files.createTempDirectory(spillDir, "matrix-");
+            this.labels = new Column(dir.resolve("labels.col"));
+            this.rowPtr = new Column(dir.resolve("rowptr.col"));
+            this.featureIds = new Column(dir.resolve("features.col"));
+            this.values = new Column(dir.resolve("values.col"));
+            rowPtr.putInt(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create spill files under " + spillDir, e);
+        }
+    }
+
+    // Appends one row given as packed (featureId << 32 | value bits), sorted by feature id
+    void addRow(long[] packed, int k, short label) {
+        if (nnz + k > MAX_NON_ZEROS) throw new IllegalArgumentException("too many non-zeros to spill");
+        try {
+            for (int i = 0; i < k; i++) {
+                featureIds.putInt((int) (packed[i] >>> 32));
+                values.putInt((int) packed[i]);
+            }
+            nnz += k;
+            rows++;
+            rowPtr.putInt((int) nnz);
+            labels.putShort(label);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write spill files under " + dir, e);
+        }
+    }
+
+    int rows() { return rows; }
+
+    // Drops a spill that won't be finished (e.g. the CSV turned out malformed)
+    void discard() {
+        for (Column c : new Column[] {labels, rowPtr, featureIds, values}) {
+            try {
+                c.ch.close();
+            } catch (IOException ignored) {
+                // deleting is what matters
+            }
+            unlink(c.path);
+        }
+        unlink(dir);
+    }
+
+    // Mapped views of the finished columns
+    record Mapped(IntBuffer rowPtr, IntBuffer featureIds, FloatBuffer values, ShortBuffer labels,
+                  IntBuffer colPtr, IntBuffer postingRows, FloatBuffer postingValues) {}
+
+    Mapped finish(int features) {
+        try {
+            labels.close();
+            rowPtr.close();
+            featureIds.close();
+            values.close();
+            IntBuffer ptr = map(rowPtr.path).asIntBuffer();
+            IntBuffer ids = map(featureIds.path).asIntBuffer();
+            FloatBuffer vals = map(values.path).asFloatBuffer();
+            ShortBuffer labs = map(labels.path).asShortBuffer();
+
+            // Feature-major copy: count each feature's rows, then scatter the row-major
+            // entries. Rows are visited in order, so every posting list is sorted by row.
+            int[] colPtr = new int[features + 1];
+            for (int k = 0; k < nnz; k++) colPtr[ids.get(k) + 1]++;
+            for (int f = 0; f < features; f++) colPtr[f + 1] += colPtr[f];
+            int[] cursor = Arrays.copyOf(colPtr, features);
+            Path rowsPath = dir.resolve("postings-rows.col");
+            Path valuesPath = dir.resolve("postings-values.col");
+            MappedByteBuffer postingRows = mapWritable(rowsPath, 4 * nnz);
+            MappedByteBuffer postingValues = mapWritable(valuesPath, 4 * nnz);
+            IntBuffer outRows = postingRows.asIntBuffer();
+            FloatBuffer outValues = postingValues.asFloatBuffer();
+            for (int r = 0; r < rows; r++) {
+                for (int k = ptr.get(r), end = ptr.get(r + 1); k < end; k++) {
+                    int at = cursor[ids.get(k)]++;
+                    outRows.put(at, r);
+                    outValues.put(at, vals.get(k));
+                }
+            }
+            for (Path p : new Path[] {labels.path, rowPtr.path, featureIds.path, values.path, rowsPath, valuesPath}) {
+                unlink(p);
+            }
+            unlink(dir);
+            return new Mapped(ptr, ids, vals, labs, IntBuffer.wrap(colPtr),
+                              postingRows.asIntBuffer(), postingValues.asFloatBuffer());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot map spill files under " + dir, e);
+        }
+    }
+
+    private static MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            buf.order(ByteOrder.nativeOrder());
+            return buf;
+        }
+    }
+
+    private static MappedByteBuffer mapWritable(Path path, long size) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                                               StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buf.order(ByteOrder.nativeOrder());
+            return buf;
+        }
+    }
+
+    // Mapped files can't be deleted on every platform; those go when the JVM exits
+    private static void unlink(Path p) {
+        try {
+            Files.deleteIfExists(p);
+        } catch (IOException e) {
+            p.toFile().deleteOnExit();
+        }
+    }
+
+    // Append-only column file written through a native-order direct buffer
+    private static final class Column {
+        final Path path;
+        private final FileChannel ch;
+        private final ByteBuffer buf = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.nativeOrder());
+
+        Column(Path path) throws IOException {
+            this.path = path;
+            this.ch = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        }
+
+        void putInt(int v) throws IOException {
+            if (buf.remaining() < 4) flush();
+            buf.putInt(v);
+        }
+
+        void putShort(short v) throws IOException {
+            if (buf.remaining() < 2) flush();
+            buf.putShort(v);
+        }
+
+        void close() throws IOException {
+            flush();
+            ch.close();
+        }
+
+        private void flush() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) ch.write(buf);
+            buf.clear();
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.example.classifierapi.core;
+
+import org.springframework.asm.ClassWriter;
+import org.springframework.asm.Label;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+import org.springframework.asm.Type;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An ImprovedClassifier tree compiled to bytecode.
+ *
+ * Every decision node becomes a compare-and-branch against its threshold as a constant,
+ * and every leaf a constant return of its label index, so evaluating the model is
+ * straight-line code the JIT can compile and branch-predict like any other method, with
+ * no node objects to chase. The tree is emitted twice: once reading a precomputed feature
+ * vector, x[slot] with slots being the model's dense split-feature ids
+ * (ImprovedClassifier.splitFeatureId), for the batch path; and once reading a TextBlock,
+ * tb.get("feature") with the feature name as a constant, so a single document still
+ * looks up only the features on its path, as the node walk does.
+ *
+ * The code lives in a hidden class defined without STRONG, so it is unloaded once the
+ * model that owns it is unreachable, e.g. after the service has swapped in a newer
+ * version. Subtrees beyond METHOD_SPLITS decision nodes go into separate static methods,
+ * which keeps each method well under HotSpot's 8000-byte limit for JIT compilation.
+ */
+public final class CompiledTree {
+
+    // Implemented by the generated class: label index of the document's leaf, or -1 for a
+    // missing child
+    interface Evaluator {
+        int leaf(double[] x);
+
+        int leaf(TextBlock tb);
+    }
+
+    private static final int METHOD_SPLITS = 256;
+    private static final String EVALUATOR = Type.getInternalName(Evaluator.class);
+    private static final String GENERATED = Type.getInternalName(CompiledTree.class) + "$Tree";
+    private static final String TEXT_BLOCK = Type.getInternalName(TextBlock.class);
+
+    private final Map<String, Integer> slots;
+    private final String[] labels;
+    private final Evaluator evaluator;
+    private final int methods;
+    private final int bytes;
+
+    private CompiledTree(Map<String, Integer> slots, String[] labels, Evaluator evaluator, int methods, int bytes) {
+        this.slots = slots;
+        this.labels = labels;
+        this.evaluator = evaluator;
+        this.methods = methods;
+        this.bytes = bytes;
+    }
+
+    // Same label as ImprovedClassifier.classify(tb)
+    public String classify(TextBlock tb) {
+        if (tb == null) return null;
+        int leaf = evaluator.leaf(tb);
+        return leaf < 0 ? null : labels[leaf];
+    }
+
+    // x[slot] is the value of the feature with that split-feature id (0 when absent)
+    public String classify(double[] x) {
+        int leaf = evaluator.leaf(x);
+        return leaf < 0 ? null : labels[leaf];
+    }
+
+    // ImprovedClassifier.classifyBatch on the compiled code, one document at a time
+    public void classifyBatch(int n, int[] start, int[] ids, int[] counts, int[] totals, String[] out) {
+        double[] x = new double[slots.size()];
+        for (int i = 0; i < n; i++) {
+            for (int j = start[i]; j < start[i + 1]; j++) x[ids[j]] = counts[j] / (double) totals[i];
+            out[i] = classify(x);
+            for (int j = start[i]; j < start[i + 1]; j++) x[ids[j]] = 0;
+        }
+    }
+
+    public int slots() { return slots.size(); }
+    public int methods() { return methods; }
+    public int bytecodeBytes() { return bytes; }
+
+    // Compiles the tree under 'root'; 'slots' numbers its split features densely
+    static CompiledTree compile(ImprovedClassifier.Node root, Map<String, Integer> slots) {
+        List<String> labels = new ArrayList<>();
+        Map<String, Integer> labelIds = new HashMap<>();
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        cw.visit(Opcodes.V21, Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, GENERATED, null, "java/lang/Object",
+                 new String[] {EVALUATOR});
+
+        MethodVisitor init = cw.visitMethod(0, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        init.visitInsn(Opcodes.RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        // leaf(...) holds the top of the tree; each subtree left over when a method's budget
+        // runs out becomes a static method v<n>(x) or t<n>(tb), emitted in turn
+        int methods = 0;
+        for (boolean text : new boolean[] {false, true}) {
+            Emitter emitter = new Emitter(text, slots, labels, labelIds);
+            emitter.method(cw.visitMethod(Opcodes.ACC_PUBLIC, "leaf", emitter.descriptor, null, null), root, 1);
+            for (int m = 0; m < emitter.pending.size(); m++) {
+                MethodVisitor mv = cw.visitMethod(Opcodes.ACC_STATIC, emitter.prefix + m, emitter.descriptor, null, null);
+                emitter.method(mv, emitter.pending.get(m), 0);
+            }
+            methods = Math.max(methods, 1 + emitter.pending.size());
+        }
+        cw.visitEnd();
+        byte[] code = cw.toByteArray();
+
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(code, true);
+            Evaluator evaluator = (Evaluator) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class))
+                                                    .invoke();
+            return new CompiledTree(Map.copyOf(slots), labels.toArray(new String[0]), evaluator,
+                                    methods, code.length);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot define compiled tree", e);
+        }
+    }
+
+    // Writes methods over subtrees, reading features from a vector or a TextBlock; 'pending'
+    // collects subtrees moved to methods of their own
+    private static final class Emitter {
+        final boolean text;
+        final String descriptor;
+        final String prefix;
+        final Map<String, Integer> slots;
+        final List<String> labels;
+        final Map<String, Integer> labelIds;
+        final List<ImprovedClassifier.Node> pending = new ArrayList<>();
+        private int budget;
+
+        Emitter(boolean text, Map<String, Integer> slots, List<String> labels, Map<String, Integer> labelIds) {
+            this.text = text;
+            this.descriptor = text ? "(L" + TEXT_BLOCK + ";)I" : "([D)I";
+            this.prefix = text ? "t" : "v";
+            this.slots = slots;
+            this.labels = labels;
+            this.labelIds = labelIds;
+        }
+
+        void method(MethodVisitor mv, ImprovedClassifier.Node node, int inputLocal) {
+            mv.visitCode();
+            budget = METHOD_SPLITS;
+            // Depth-first with an explicit stack: a node's right subtree is emitted after
+            // its left one, at the label its branch jumps to
+            Deque<Object> work = new ArrayDeque<>();
+            work.push(node == null ? Missing.CHILD : node);
+            while (!work.isEmpty()) {
+                Object item = work.pop();
+                if (item instanceof Label l) {
+                    mv.visitLabel(l);
+                    continue;
+                }
+                if (item == Missing.CHILD) {
+                    mv.visitInsn(Opcodes.ICONST_M1);
+                    mv.visitInsn(Opcodes.IRETURN);
+                    continue;
+                }
+                ImprovedClassifier.Node n = (ImprovedClassifier.Node) item;
+                if (n.isLeaf()) {
+                    pushInt(mv, labelIds.computeIfAbsent(n.label, k -> {
+                        labels.add(k);
+                        return labels.size() - 1;
+                    }));
+                    mv.visitInsn(Opcodes.IRETURN);
+                } else if (budget == 0) {
+                    mv.visitVarInsn(Opcodes.ALOAD, inputLocal);
+                    mv.visitMethodInsn(Opcodes.INVOKESTATIC, GENERATED, prefix + pending.size(), descriptor, false);
+                    mv.visitInsn(Opcodes.IRETURN);
+                    pending.add(n);
+                } else {
+                    budget--;
+                    Label right = new Label();
+                    mv.visitVarInsn(Opcodes.ALOAD, inputLocal);
+                    if (text) {
+                        mv.visitLdcInsn(n.feature);
+                        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, TEXT_BLOCK, "get", "(Ljava/lang/String;)D", false);
+                    } else {
+                        pushInt(mv, slots.get(n.feature));
+                        mv.visitInsn(Opcodes.DALOAD);
+                    }
+                    mv.visitLdcInsn(n.threshold);
+                    // dcmpg gives 1 for NaN, so NaN goes right as it does in the walk
+                    mv.visitInsn(Opcodes.DCMPG);
+                    mv.visitJumpInsn(Opcodes.IFGE, right);
+                    work.push(n.right == null ? Missing.CHILD : n.right);
+                    work.push(right);
+                    work.push(n.left == null ? Missing.CHILD : n.left);
+                }
+            }
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+    }
+
+    private enum Missing { CHILD }
+
+    private static void pushInt(MethodVisitor mv, int v) {
+        if (v >= -1 && v <= 5) mv.visitInsn(Opcodes.ICONST_0 + v);
+        else if (v >= Byte.MIN_VALUE && v <= Byte.MAX_VALUE) mv.visitIntInsn(Opcodes.BIPUSH, v);
+        else if (v >= Short.MIN_VALUE && v <= Short.MAX_VALUE) mv.visitIntInsn(Opcodes.SIPUSH, v);
+        else mv.visitLdcInsn(v);
+    }
+}
@@ -0,0 +1,435 @@
+package com.example.classifierapi.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Single-pass RFC 4180 CSV parser over memory-mapped files or any ByteBuffer.
+ *
+ * One state machine handles quoting (embedded commas, newlines and doubled quotes) in
+ * linear time. Only the requested columns are decoded to Strings; every other cell is
+ * skipped without being copied. Large files are cut into chunks at record boundaries
+ * so they can be parsed in parallel on an executor the caller supplies, and each chunk
+ * is mapped on its own, so file size isn't limited by the 2 GB mapping limit.
+ */
+public final class CsvParser {
+    // Chunks are mapped one at a time; keep each well under the 2 GB mapping limit
+    private static final long MAX_CHUNK = 1L << 30;
+    // Below this size a file is parsed as a single chunk
+    private static final long PARALLEL_CHUNK = 8L << 20;
+
+    private CsvParser() {}
+
+    // Receives one data record: the requested columns in request order,
+    // null where the record has fewer cells. The array is reused between calls.
+    public interface RowHandler {
+        void onRow(String[] cells);
+    }
+
+    // Returns the cells of the file's first record (its header)
+    public static String[] header(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            return header(ch.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(ch.size(), MAX_CHUNK)));
+        }
+    }
+
+    // Returns the cells of the buffer's first record, starting at its position
+    public static String[] header(ByteBuffer buf) {
+        int pos = skipBom(buf, buf.position());
+        if (pos >= buf.limit()) return new String[0];
+        Reader r = new Reader(null);
+        r.parse(buf, pos, buf.limit());
+        return r.all.toArray(new String[0]);
+    }
+
+    // Resolves column names against a header: exact match first, then trimmed and
+    // case-insensitive. Missing names resolve to -1.
+    public static int[] indexOf(String[] header, String... names) {
+        int[] out = new int[names.length];
+        for (int k = 0; k < names.length; k++) {
+            out[k] = -1;
+            for (int i = 0; i < header.length && out[k] < 0; i++) {
+                if (header[i].equals(names[k])) out[k] = i;
+            }
+            for (int i = 0; i < header.length && out[k] < 0; i++) {
+                if (header[i].trim().equalsIgnoreCase(names[k].trim())) out[k] = i;
+            }
+        }
+        return out;
+    }
+
+    // Opens a forward-only cursor over the data records (header skipped) of 'file'.
+    // 'columns' are the column indexes to decode; null decodes every cell.
+    public static Cursor open(Path file, int[] columns) throws IOException {
+        return new Cursor(file, columns, true);
+    }
+
+    // Calls 'handler' for every data record of 'file', in file order
+    public static void forEach(Path file, int[] columns, RowHandler handler) throws IOException {
+        ClassifierEvents.CsvParse event = new ClassifierEvents.CsvParse();
+        event.begin();
+        int rows = 0;
+        long bytes;
+        try (Cursor c = open(file, columns)) {
+            while (c.next()) {
+                handler.onRow(c.cells());
+                rows++;
+            }
+            bytes = c.ch.size();
+        }
+        if (event.shouldCommit()) {
+            event.file = file.toString();
+            event.bytes = bytes;
+            event.rows = rows;
+            event.commit();
+        }
+    }
+
+    // Parses every data record of an in-memory buffer (heap or direct)
+    public static void forEach(ByteBuffer buf, int[] columns, boolean skipHeader,
+                               RowHandler handler) {
+        Reader r = new Reader(columns);
+        int pos = skipBom(buf, buf.position());
+        int limit = buf.limit();
+        if (skipHeader && pos < limit) pos = r.skip(buf, pos, limit);
+        while (pos < limit) {
+            pos = r.parse(buf, pos, limit);
+            if (!r.blank) handler.onRow(r.cells);
+        }
+    }
+
+    // Splits 'file' into record-aligned chunks and parses them on the calling thread. Each
+    // chunk gets its own accumulator from 'newAcc'; the accumulators come back in file
+    // order, so concatenating them gives the same rows a single pass would.
+    public static <A> List<A> parallel(Path file, int[] columns, Supplier<A> newAcc,
+                                       BiConsumer<A, String[]> onRow) throws IOException {
+        return parallel(file, columns, newAcc, onRow, acc -> {}, Runnable::run, 1);
+    }
+
+    // As above, with up to 'parallelism' threads: the caller plus helpers submitted to
+    // 'executor' (e.g. the training pool). Helpers and caller claim chunks from a shared
+    // counter, and the caller only waits for chunks that were claimed, so a helper still
+    // queued behind busy workers (or rejected) just finds nothing left to do; parsing from
+    // a thread of 'executor' itself can't deadlock. 'onChunkEnd' gets each accumulator on
+    // its thread once its chunk is done.
+    public static <A> List<A> parallel(Path file, int[] columns, Supplier<A> newAcc,
+                                       BiConsumer<A, String[]> onRow, Consumer<A> onChunkEnd,
+                                       Executor executor, int parallelism) throws IOException {
+        if (parallelism < 1) throw new IllegalArgumentException("parallelism must be >= 1");
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            long target = Math.min(MAX_CHUNK / 2, Math.max(PARALLEL_CHUNK, size / (parallelism * 4L)));
+            long[] bounds = chunkBounds(ch, size, target);
+            int n = bounds.length - 1;
+            Object[] out = new Object[n];
+            AtomicInteger next = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(n);
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            Runnable worker = () -> {
+                for (int i; (i = next.getAndIncrement()) < n; ) {
+                    try {
+                        if (failure.get() == null) {
+                            A acc = newAcc.get();
+                            parseChunk(file, ch, bounds, i, columns, acc, onRow);
+                            onChunkEnd.accept(acc);
+                            out[i] = acc;
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            };
+            for (int h = 1; h < Math.min(parallelism, n); h++) {
+                try {
+                    executor.execute(worker);
+                } catch (RejectedExecutionException e) {
+                    break;   // pool saturated: the threads already going take the rest
+                }
+            }
+            worker.run();
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                failure.compareAndSet(null, e);   // stops helpers at their next chunk
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("CSV parse interrupted");
+            }
+            Throwable e = failure.get();
+            if (e instanceof UncheckedIOException u) throw u.getCause();
+            if (e instanceof IOException io) throw io;
+            if (e instanceof RuntimeException re) throw re;
+            if (e instanceof Error err) throw err;
+            @SuppressWarnings("unchecked")
+            List<A> accs = (List<A>) Arrays.asList(out);
+            return accs;
+        }
+    }
+
+    // Parses chunk i (the records in [bounds[i], bounds[i + 1])) into 'acc'
+    private static <A> void parseChunk(Path file, FileChannel ch, long[] bounds, int i, int[] columns, A acc,
+                                       BiConsumer<A, String[]> onRow) throws IOException {
+        ClassifierEvents.CsvParse event = new ClassifierEvents.CsvParse();
+        event.begin();
+        int rows = 0;
+        ByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, bounds[i], bounds[i + 1] - bounds[i]);
+        Reader r = new Reader(columns);
+        int pos = 0;
+        int limit = buf.limit();
+        if (i == 0) {
+            pos = skipBom(buf, 0);
+            if (pos < limit) pos = r.skip(buf, pos, limit);
+        }
+        while (pos < limit) {
+            pos = r.parse(buf, pos, limit);
+            if (!r.blank) {
+                onRow.accept(acc, r.cells);
+                rows++;
+            }
+        }
+        if (event.shouldCommit()) {
+            event.file = file.toString();
+            event.offset = bounds[i];
+            event.bytes = bounds[i + 1] - bounds[i];
+            event.rows = rows;
+            event.commit();
+        }
+    }
+
+    // Record start offsets: 0, then the first record start at or after each multiple of
+    // 'target', then 'size'. Found with the same state machine (skipping cells), so
+    // quoted newlines never produce a false boundary.
+    private static long[] chunkBounds(FileChannel ch, long size, long target) throws IOException {
+        if (size <= target) return new long[] { 0, size };
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        Reader r = new Reader(new int[0]);
+        long next = target;
+        long winStart = 0;
+        while (winStart < size) {
+            long winLen = Math.min(MAX_CHUNK, size - winStart);
+            ByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, winStart, winLen);
+            int pos = 0;
+            int limit = (int) winLen;
+            boolean lastWindow = winStart + winLen == size;
+            while (pos < limit) {
+                long recordStart = winStart + pos;
+                if (recordStart >= next) {
+                    bounds.add(recordStart);
+                    next = recordStart + target;
+                }
+                int end = r.skip(buf, pos, limit);
+                if (end == limit && !lastWindow && !r.terminated) {
+                    // record runs past this window; re-map starting at it
+                    if (pos == 0) throw new IOException("CSV record larger than " + MAX_CHUNK + " bytes");
+                    break;
+                }
+                pos = end;
+            }
+            winStart += pos;
+            if (lastWindow) break;
+        }
+        bounds.add(size);
+        long[] out = new long[bounds.size()];
+        for (int i = 0; i < out.length; i++) out[i] = bounds.get(i);
+        return out;
+    }
+
+    private static int skipBom(ByteBuffer buf, int pos) {
+        if (buf.limit() - pos >= 3 && buf.get(pos) == (byte) 0xEF
+                && buf.get(pos + 1) == (byte) 0xBB && buf.get(pos + 2) == (byte) 0xBF) {
+            return pos + 3;
+        }
+        return pos;
+    }
+
+    // Forward-only cursor over the records of a file, mapping one chunk at a time
+    public static final class Cursor implements Closeable {
+        private final FileChannel ch;
+        private final long[] bounds;
+        private final Reader reader;
+        private final boolean skipHeader;
+        private int chunk = -1;
+        private ByteBuffer buf;
+        private int pos;
+
+        private Cursor(Path file, int[] columns, boolean skipHeader) throws IOException {
+            this.ch = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                this.bounds = chunkBounds(ch, ch.size(), MAX_CHUNK / 2);
+            } catch (IOException | RuntimeException e) {
+                ch.close();
+                throw e;
+            }
+            this.reader = new Reader(columns);
+            this.skipHeader = skipHeader;
+        }
+
+        // Advances to the next non-blank record; false at end of file
+        public boolean next() throws IOException {
+            while (true) {
+                if (buf == null || pos >= buf.limit()) {
+                    if (chunk + 2 >= bounds.length) return false;
+                    chunk++;
+                    buf = ch.map(FileChannel.MapMode.READ_ONLY, bounds[chunk],
+                                 bounds[chunk + 1] - bounds[chunk]);
+                    pos = 0;
+                    if (chunk == 0) {
+                        pos = skipBom(buf, 0);
+                        if (skipHeader && pos < buf.limit()) pos = reader.skip(buf, pos, buf.limit());
+                    }
+                    continue;
+                }
+                pos = reader.parse(buf, pos, buf.limit());
+                if (!reader.blank) return true;
+            }
+        }
+
+        // Requested cells of the current record (reused between calls)
+        public String[] cells() {
+            return reader.cells;
+        }
+
+        // Every cell of the current record, when opened with columns == null
+        public List<String> allCells() {
+            return reader.all;
+        }
+
+        @Override
+        public void close() throws IOException {
+            buf = null;
+            ch.close();
+        }
+    }
+
+    // The state machine. parse() decodes the wanted cells of one record starting at
+    // 'pos' and returns the offset just past its terminator (or 'limit').
+    private static final class Reader {
+        private final int[] slotOf;    // column index -> output slot, -1 when not wanted
+        private final String[] cells;
+        private final List<String> all; // every cell, when no columns were requested
+        private byte[] scratch = new byte[256];
+        boolean blank;                  // last record was an empty line
+        boolean terminated;             // last record ended with a newline (not the buffer end)
+
+        Reader(int[] columns) {
+            if (columns == null) {
+                slotOf = new int[0];
+                cells = new String[0];
+                all = new ArrayList<>();
+            } else {
+                int max = -1;
+                for (int c : columns) max = Math.max(max, c);
+                slotOf = new int[max + 1];
+                Arrays.fill(slotOf, -1);
+                for (int k = 0; k < columns.length; k++) if (columns[k] >= 0) slotOf[columns[k]] = k;
+                cells = new String[columns.length];
+                all = null;
+            }
+        }
+
+        int parse(ByteBuffer buf, int pos, int limit) {
+            Arrays.fill(cells, null);
+            if (all != null) all.clear();
+            return run(buf, pos, limit, true);
+        }
+
+        int skip(ByteBuffer buf, int pos, int limit) {
+            return run(buf, pos, limit, false);
+        }
+
+        private int run(ByteBuffer buf, int pos, int limit, boolean decode) {
+            int field = 0;
+            int i = pos;
+            terminated = false;
+            while (true) {
+                int start, end;
+                boolean quoted = false, escaped = false;
+                if (i < limit && buf.get(i) == '"') {
+                    quoted = true;
+                    start = ++i;
+                    while (true) {
+                        if (i >= limit) { end = i; break; }          // unterminated: take the rest
+                        if (buf.get(i) == '"') {
+                            if (i + 1 < limit && buf.get(i + 1) == '"') { escaped = true; i += 2; continue; }
+                            end = i++;
+                            break;
+                        }
+                        i++;
+                    }
+                    // lenient: ignore anything between the closing quote and the delimiter
+                    while (i < limit) {
+                        byte b = buf.get(i);
+                        if (b == ',' || b == '\n' || b == '\r') break;
+                        i++;
+                    }
+                } else {
+                    start = i;
+                    while (i < limit) {
+                        byte b = buf.get(i);
+                        if (b == ',' || b == '\n' || b == '\r') break;
+                        i++;
+                    }
+                    end = i;
+                }
+                if (decode) emit(buf, field, start, end, escaped);
+
+                if (i >= limit) {
+                    blank = field == 0 && !quoted && start == end;
+                    return limit;
+                }
+                byte b = buf.get(i);
+                if (b == ',') {
+                    field++;
+                    i++;
+                    continue;
+                }
+                blank = field == 0 && !quoted && start == end;
+                terminated = true;
+                i++;
+                if (b == '\r' && i < limit && buf.get(i) == '\n') i++;
+                return i;
+            }
+        }
+
+        private void emit(ByteBuffer buf, int field, int start, int end, boolean escaped) {
+            int slot = field < slotOf.length ? slotOf[field] : -1;
+            if (slot < 0 && all == null) return;
+            int len = end - start;
+            if (len > scratch.length) scratch = new byte[Math.max(len, scratch.length * 2)];
+            int n = 0;
+            if (!escaped) {
+                buf.get(start, scratch, 0, len);
+                n = len;
+            } else {
+                for (int i = start; i < end; i++) {
+                    byte b = buf.get(i);
+                    scratch[n++] = b;
+                    if (b == '"') i++; // "" -> "
+                }
+            }
+            String s = new String(scratch, 0, n, StandardCharsets.UTF_8);
+            if (all != null) all.add(s);
+            else cells[slot] = s;
+        }
+    }
+}
@@ -2,26 +2,37 @@ package com.example.classifierapi.core;
 
 import java.util.*;
 import java.io.*;
+import java.nio.file.Path;
 
 // Parses lines from CSV file, splitting on commas
 public class CsvReader {
-    public static final String COMMA = ",(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)";
-
     // Reads data from the provided file, converting each line into its own List split on commas.
     //      The returned value can be thought of as a 2d array, just with Lists instead!
+    //      Quoted cells (including embedded commas, quotes and newlines) are handled per
+    //      RFC 4180 by CsvParser, and come back without their surrounding quotes.
     // 'fileName' should be non-null.
     // Throws a FileNotFoundException
     //      If the provided file doesn't exist
     public static List<List<String>> read(String fileName) throws FileNotFoundException {
         List<List<String>> lines = new ArrayList<>();
-        
-        Scanner sc = new Scanner(new File(fileName));
-        sc.nextLine();      // Skip the first row since it's just titles
-        
-        while (sc.hasNextLine()) {
-            String line = sc.nextLine();
-            lines.add(Arrays.asList(line.split(COMMA)));
+        try (CsvParser.Cursor rows = CsvParser.open(existing(fileName), null)) {
+            while (rows.next()) {
+                lines.add(new ArrayList<>(rows.allCells()));
+            }
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
         return lines;
     }
+
+    // Returns the path for 'fileName', or throws FileNotFoundException if there is no such file
+    static Path existing(String fileName) throws FileNotFoundException {
+        File file = new File(fileName);
+        if (!file.isFile()) {
+            throw new FileNotFoundException(fileName);
+        }
+        return file.toPath();
+    }
 }
@@ -21,16 +21,94 @@ public class DataLoader {
         this.data = new ArrayList<>();
         this.labels = new ArrayList<>();
         
-        List<List<String>> rows = CsvReader.read(filePath);
-        for (List<String> row : rows) {
-            this.data.add(new TextBlock(row.get(contentIndex)));
-            this.labels.add(row.get(labelIndex));
+        // Only the two wanted columns are decoded; the rest of each row is skipped in place
+        try {
+            CsvParser.forEach(CsvReader.existing(filePath), new int[] { labelIndex, contentIndex },
+                              cells -> {
+                if (cells[0] == null || cells[1] == null) {
+                    return;     // short row
+                }
+                this.data.add(new TextBlock(cells[1]));
+                this.labels.add(cells[0]);
+            });
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
         if (shuffle) {
             DataLoader.shuffle(this);
         }
     }
 
+    // Opens the given file for streaming: rows are parsed one at a time as the returned
+    //      RowReader is advanced, so large files never have to fit in memory at once.
+    //      Labels are taken from the given index and content from 'contentIndex'.
+    // 'filePath' should be non-null.
+    // Throws a FileNotFoundException
+    //      If the provided file doesn't exist
+    public static RowReader stream(String filePath, int labelIndex, int contentIndex)
+                                   throws FileNotFoundException {
+        try {
+            return new RowReader(CsvParser.open(CsvReader.existing(filePath),
+                                                new int[] { labelIndex, contentIndex }));
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Forward-only cursor over the rows of a CSV file. Call next() before reading each row;
+    //      the underlying file is closed once next() returns false (or on close()).
+    public static class RowReader implements Closeable {
+        private final CsvParser.Cursor rows;
+        private TextBlock data;
+        private String label;
+
+        private RowReader(CsvParser.Cursor rows) {
+            this.rows = rows;
+        }
+
+        // Advances to the next row; returns false when the file is exhausted
+        public boolean next() {
+            String[] cells;
+            try {
+                do {
+                    if (!rows.next()) {
+                        close();
+                        return false;
+                    }
+                    cells = rows.cells();
+                } while (cells[0] == null || cells[1] == null);     // skip short rows
+            } catch (IOException e) {
+                close();
+                throw new UncheckedIOException(e);
+            }
+            this.data = new TextBlock(cells[1]);
+            this.label = cells[0];
+            return true;
+        }
+
+        // Returns the TextBlock of the current row
+        public TextBlock data() {
+            return data;
+        }
+
+        // Returns the label of the current row
+        public String label() {
+            return label;
+        }
+
+        public void close() {
+            try {
+                rows.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
     // Returns the List of TextBlock data points currently stored by this DataLoader
     public List<TextBlock> getData() {
         return this.data;
@@ -0,0 +1,95 @@
+package com.example.classifierapi.core;
+
+/**
+ * The hashing trick: maps tokens into a fixed space of 2^bits buckets, so the number of
+ * distinct features stays bounded however open the vocabulary is.
+ *
+ * Buckets are named "#<index>" and used as ordinary TextBlock words, so training and
+ * inference need no special casing. The hash (MurmurHash3 x86_32 over the token's UTF-16
+ * code units, seed 0) is part of the saved-model format and must not change.
+ */
+public final class FeatureHasher {
+    public static final int MAX_BITS = 24;
+    private static final int C1 = 0xcc9e2d51;
+    private static final int C2 = 0x1b873593;
+
+    // Bucket names are cached direct-mapped in at most this many slots per width, so the
+    // cache stays small (tens of KB) even at MAX_BITS, where a full table would be 2^24
+    private static final int NAME_CACHE_BITS = 12;
+
+    private record Name(int bucket, String name) {}
+
+    private final int bits;
+    private final int mask;
+    private final Name[] names;   // bucket & (names.length - 1) -> most recent name there
+
+    private static final FeatureHasher[] SHARED = new FeatureHasher[MAX_BITS + 1];
+
+    private FeatureHasher(int bits) {
+        this.bits = bits;
+        this.mask = (1 << bits) - 1;
+        this.names = new Name[1 << Math.min(bits, NAME_CACHE_BITS)];
+    }
+
+    // Shared instance for 'bits' (1..MAX_BITS), so frequent bucket names are reused
+    public static FeatureHasher of(int bits) {
+        checkBits(bits);
+        synchronized (SHARED) {
+            FeatureHasher h = SHARED[bits];
+            if (h == null) SHARED[bits] = h = new FeatureHasher(bits);
+            return h;
+        }
+    }
+
+    // 0 means hashing is off; anything else must be a usable bucket count
+    public static void checkBits(int bits) {
+        if (bits < 1 || bits > MAX_BITS) {
+            throw new IllegalArgumentException("hash bits must be between 1 and " + MAX_BITS + ": " + bits);
+        }
+    }
+
+    public int bits() { return bits; }
+
+    public int bucket(CharSequence token) {
+        return murmur3(token) & mask;
+    }
+
+    // Feature name for a token. Cache entries are immutable, so a race only loses a slot's
+    // update; a slot whose bucket differs is a miss and is replaced.
+    public String feature(CharSequence token) {
+        int b = bucket(token);
+        int slot = b & (names.length - 1);
+        Name n = names[slot];
+        if (n == null || n.bucket() != b) names[slot] = n = new Name(b, "#" + b);
+        return n.name();
+    }
+
+    static int murmur3(CharSequence s) {
+        int h = 0;
+        int len = s.length();
+        int i = 0;
+        for (; i + 1 < len; i += 2) {
+            int k = s.charAt(i) | (s.charAt(i + 1) << 16);
+            k *= C1;
+            k = Integer.rotateLeft(k, 15);
+            k *= C2;
+            h ^= k;
+            h = Integer.rotateLeft(h, 13);
+            h = h * 5 + 0xe6546b64;
+        }
+        if (i < len) {
+            int k = s.charAt(i);
+            k *= C1;
+            k = Integer.rotateLeft(k, 15);
+            k *= C2;
+            h ^= k;
+        }
+        h ^= len * 2;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -1,8 +1,6 @@
 package com.example.classifierapi.core;
 import java.io.PrintStream;
 import java.util.*;
-import java.util.function.Function;
-import java.util.stream.Collectors;
 /**
 
 CART-style decision tree with enhanced progress reporting for animations
@@ -44,66 +42,193 @@ void onEvent(TrainProgress ev);
 // Enhanced Node class with metadata for visualization
 public static class Node {
 String feature;
+int featureId = -1;  // column in the training matrix (trained models only)
 double threshold;
 Node left, right;
 String label;
  // Enhanced statistics for visualization
  int samples = 0;
  double gini = 0.0;
- Map<String,Integer> dist;
+ int[] dist;          // per-label sample counts, indexed like labelNames (trained models only)
  int nodeId;  // for animation tracking
  
- boolean isLeaf() { return label != null; }
+ public boolean isLeaf() { return label != null; }
+ 
+ // Read-only accessors for callers outside core (tree JSON, DTOs)
+ public String getFeature() { return feature; }
+ public double getThreshold() { return threshold; }
+ public Node getLeft() { return left; }
+ public Node getRight() { return right; }
+ public String getLabel() { return label; }
+ public int getSamples() { return samples; }
+ public double getGini() { return gini; }
+ public int getNodeId() { return nodeId; }
 }
 private Node root;
+private String[] labelNames;  // label id -> name for Node.dist; null for loaded models
+private int hashBits = 0;     // > 0: features are FeatureHasher buckets; inputs must be hashed alike
 private int nodeCount = 0;
 private int nodeIdCounter = 0;
 private int maxDepthObserved = 0;
-// Hyper-parameters
-private int MAX_DEPTH = 12;
-private int MIN_SAMPLES_SPLIT = 2;
-private int MIN_SAMPLES_LEAF  = 1;
-private double MIN_GAIN = 1e-3;
+// Hyper-parameters (taken from TrainingOptions when training)
+private int MAX_DEPTH = TrainingOptions.DEFAULT_MAX_DEPTH;
+private int MIN_SAMPLES_SPLIT = TrainingOptions.DEFAULT_MIN_SAMPLES_SPLIT;
+private int MIN_SAMPLES_LEAF  = TrainingOptions.DEFAULT_MIN_SAMPLES_LEAF;
+private double MIN_GAIN = TrainingOptions.DEFAULT_MIN_GAIN;
+// Training-only state, released once the tree is built. Every node owns a [from, to)
+// range of idx; the chosen split partitions that range in place, so nothing is copied.
+private TrainingMatrix data;
+private int[] idx;            // sample indices, permuted as nodes are split
+private long[] keys;          // (value bits << 32 | label id) for one feature over [from, to)
+private int[] leftCounts;     // per-label counts left of the threshold being swept
+private int[] nodeFeatures;   // features present in the current node
+private int[] featureStamp;   // featureStamp[f] == stamp marks f as seen in the current node
+private int stamp = 0;
+private int[] rowMark;        // rowMark[r] == stamp marks r as a row of the current node (posting scans)
+private double bestGain;      // best split found so far by findSplit
+private int bestFeature;
+private double bestThreshold;
+private int bestLeft;
+// Approximate mode scratch, indexed by a feature's slot in nodeFeatures
+private int[] featureSlot;    // feature id -> slot in the current node
+private KllSketch[] sketches; // one quantile sketch per slot
+private float[] thresholds;   // slot * approxBins + i -> i-th candidate threshold
+private int[] thresholdCount; // candidate thresholds per slot
+private int[] histStart;      // slot -> offset of its (label, interval) counts in binCounts
+private int[] binCounts;
+private SplitKernels kernels; // bin lookup and per-threshold gains, scalar or SIMD
+private long[] binLeft;       // per candidate threshold of one feature: rows left of it
+private double[] binGain;     // ... and the gain of splitting there
+private int[] sample;         // subsampled node rows
+private int[] sampleCounts;   // per-label counts of sample
+private int[] sampleGroups;   // a node's rows grouped by label, for stratified sampling
+private TrainingOptions options = TrainingOptions.DEFAULTS;
+private long deadline;        // System.nanoTime() growth must stop by; 0 for none
+private String stopReason;    // set when best-first growth stopped on a budget
 // Constructors
 public ImprovedClassifier(List<TextBlock> X, List<String> y) {
 this(X, y, null);
 }
 public ImprovedClassifier(List<TextBlock> X, List<String> y, ProgressListener listener) {
-if (X == null || y == null) throw new IllegalArgumentException("null inputs");
-if (X.isEmpty() || y.isEmpty()) throw new IllegalArgumentException("empty inputs");
-if (X.size() != y.size()) throw new IllegalArgumentException("size mismatch");
+this(toMatrix(X, y), listener);
+}
+// Trains against a CSR matrix; the TextBlock constructors convert to one first
+public ImprovedClassifier(TrainingMatrix data, ProgressListener listener) {
+this(data, listener, TrainingOptions.DEFAULTS);
+}
+public ImprovedClassifier(TrainingMatrix data, ProgressListener listener, TrainingOptions options) {
+this(data, null, listener, options);
+}
+// Trains on the given rows of 'data' only (null for all), e.g. a subsample during tuning;
+// the matrix itself is shared, not copied
+public ImprovedClassifier(TrainingMatrix data, int[] rows, ProgressListener listener, TrainingOptions options) {
+if (data == null) throw new IllegalArgumentException("null inputs");
+if (options != null) this.options = options;
+this.MAX_DEPTH = this.options.maxDepth();
+this.MIN_SAMPLES_SPLIT = this.options.minSamplesSplit();
+this.MIN_SAMPLES_LEAF = this.options.minSamplesLeaf();
+this.MIN_GAIN = this.options.minGain();
+ int n = rows != null ? rows.length : data.rows();
+ if (n == 0) throw new IllegalArgumentException("empty inputs");
+ // Rows may stand for several identical documents (TrainingMatrix.weight); every count
+ // below (node samples, label counts, min-samples limits, gains) is in documents
+ int documents = rows == null ? data.totalWeight() : 0;
+ if (rows != null) for (int r : rows) documents += data.weight(r);
  // Estimate total nodes (rough estimate for progress bar)
- int estimatedNodes = Math.min(X.size() / 2, 100);
+ int estimatedNodes = Math.min(n / 2, 100);
  
  // Send initial start event
  if (listener != null) {
      listener.onEvent(new TrainProgress("start", 0, estimatedNodes, 0, 
-         null, 0, X.size(), 0, 0, 0, "Starting training with " + X.size() + " samples"));
- }
- 
- // Build feature set
- Set<String> features = new HashSet<>();
- for (TextBlock tb : X) {
-     for (String f : tb.getFeatures()) features.add(f);
+         null, 0, documents, 0, 0, 0, "Starting training with " + documents + " samples"
+             + (data.isWeighted() ? " (" + n + " distinct)" : "")));
  }
  
  if (listener != null) {
      listener.onEvent(new TrainProgress("feature_scan", 0, estimatedNodes, 0,
-         null, 0, 0, 0, 0, 0, "Found " + features.size() + " unique features"));
+         null, 0, 0, 0, 0, 0, "Found " + data.features() + " unique features"));
  }
  
  // Build tree
- this.root = build(X, y, features, 0, listener, estimatedNodes);
+ this.data = data;
+ this.hashBits = data.hashBits();
+ this.idx = rows != null ? rows.clone() : new int[n];
+ if (rows == null) for (int i = 0; i < n; i++) idx[i] = i;
+ this.keys = new long[n];
+ this.leftCounts = new int[data.labelCount()];
+ this.labelNames = new String[data.labelCount()];
+ for (int c = 0; c < labelNames.length; c++) labelNames[c] = data.labelName(c);
+ this.nodeFeatures = new int[data.features()];
+ this.featureStamp = new int[data.features()];
+ if (data.hasPostings()) this.rowMark = new int[data.rows()];
+ if (this.options.approxBins() > 0) {
+     this.featureSlot = new int[data.features()];
+     this.sketches = new KllSketch[64];
+     this.thresholds = new float[0];
+     this.thresholdCount = new int[0];
+     this.histStart = new int[0];
+     this.binCounts = new int[0];
+     this.kernels = SplitKernels.create(this.options.vectorSplits());
+     this.binLeft = new long[this.options.approxBins()];
+     this.binGain = new double[this.options.approxBins()];
+ }
+ if (this.options.subsampleAbove() > 0) {
+     this.sample = new int[Math.min(n, this.options.subsampleAbove())];
+     this.sampleCounts = new int[data.labelCount()];
+     this.sampleGroups = new int[n];
+ }
+ if (this.options.timeLimitMillis() > 0) {
+     this.deadline = System.nanoTime() + this.options.timeLimitMillis() * 1_000_000L;
+     if (deadline == 0) deadline = 1;
+ }
+ try {
+     this.root = this.options.bestFirst()
+         ? growBestFirst(n, listener, estimatedNodes)
+         : build(0, n, 0, listener, estimatedNodes);
+ } finally {
+     this.data = null;
+     this.idx = null;
+     this.keys = null;
+     this.leftCounts = null;
+     this.nodeFeatures = null;
+     this.featureStamp = null;
+     this.rowMark = null;
+     this.featureSlot = null;
+     this.sketches = null;
+     this.thresholds = null;
+     this.thresholdCount = null;
+     this.histStart = null;
+     this.binCounts = null;
+     this.kernels = null;
+     this.binLeft = null;
+     this.binGain = null;
+     this.sample = null;
+     this.sampleCounts = null;
+     this.sampleGroups = null;
+ }
  
  // Send completion event
  if (listener != null) {
      listener.onEvent(new TrainProgress("done", nodeCount, nodeCount, maxDepthObserved, 
-         null, 0, 0, 0, 0, 0, "Training complete: " + nodeCount + " nodes, depth " + maxDepthObserved));
+         null, 0, 0, 0, 0, 0, "Training complete: " + nodeCount + " nodes, depth " + maxDepthObserved
+             + (stopReason != null ? " (stopped early: " + stopReason + ")" : "")));
  }
 }
+private static TrainingMatrix toMatrix(List<TextBlock> X, List<String> y) {
+if (X == null || y == null) throw new IllegalArgumentException("null inputs");
+if (X.isEmpty() || y.isEmpty()) throw new IllegalArgumentException("empty inputs");
+if (X.size() != y.size()) throw new IllegalArgumentException("size mismatch");
+return TrainingMatrix.of(X, y);
+}
 public ImprovedClassifier(Scanner sc) {
 if (sc == null) throw new IllegalArgumentException("null scanner");
-this.root = readPreOrder(sc);
+// Optional header written by save() for hashed models
+if (sc.hasNext("Hashing:")) {
+String line = sc.nextLine().trim();
+this.hashBits = Integer.parseInt(line.substring("Hashing:".length()).trim());
+FeatureHasher.checkBits(hashBits);
+}
+this.root = readPreOrder(sc, 0);
 this.nodeCount = countNodes(this.root);
 this.maxDepthObserved = depth(this.root);
 }
@@ -117,6 +242,271 @@ n = (v < n.threshold) ? n.left : n.right;
 }
 return n != null ? n.label : null;
 }
+// Classifies row 'row' of 'data' without building a TextBlock. Only valid for the matrix
+// this model was trained on (e.g. held-out rows while tuning), since it follows column ids.
+public String classify(TrainingMatrix data, int row) {
+Node n = root;
+while (n != null && !n.isLeaf()) {
+if (n.featureId < 0) throw new IllegalStateException("model was not trained on a matrix");
+n = data.value(row, n.featureId) < n.threshold ? n.left : n.right;
+}
+return n != null ? n.label : null;
+}
+// Batch classification. The tree is flattened once per model into arrays, with the split
+// features numbered densely; a document is given as (split feature id, count) pairs plus
+// its token total, which is all classify(TextBlock) reads (count / total via TextBlock.get).
+private volatile Flat flat;
+private static final class Flat {
+final Map<String, Integer> featureIds = new HashMap<>();
+int[] feature;       // split feature id; -1 for a leaf
+double[] threshold;
+int[] left;          // child indexes; -1 where a child is missing
+int[] right;
+String[] label;
+}
+private Flat flat() {
+Flat f = flat;
+if (f != null) return f;
+f = new Flat();
+List<Node> nodes = new ArrayList<>();
+IdentityHashMap<Node, Integer> index = new IdentityHashMap<>();
+Deque<Node> stack = new ArrayDeque<>();
+if (root != null) stack.push(root);
+while (!stack.isEmpty()) {
+Node n = stack.pop();
+index.put(n, nodes.size());
+nodes.add(n);
+if (n.isLeaf()) continue;
+if (n.right != null) stack.push(n.right);
+if (n.left != null) stack.push(n.left);
+}
+int size = nodes.size();
+f.feature = new int[size];
+f.threshold = new double[size];
+f.left = new int[size];
+f.right = new int[size];
+f.label = new String[size];
+for (int i = 0; i < size; i++) {
+Node n = nodes.get(i);
+if (n.isLeaf()) {
+f.feature[i] = -1;
+f.label[i] = n.label;
+continue;
+}
+Map<String, Integer> ids = f.featureIds;
+f.feature[i] = ids.computeIfAbsent(n.feature, k -> ids.size());
+f.threshold[i] = n.threshold;
+f.left[i] = n.left != null ? index.get(n.left) : -1;
+f.right[i] = n.right != null ? index.get(n.right) : -1;
+}
+flat = f;
+return f;
+}
+// Number of distinct features the tree splits on; split feature ids are 0 .. this - 1
+public int splitFeatureCount() { return flat().featureIds.size(); }
+// Dense id of a split feature, or -1 for a token no decision node tests
+public int splitFeatureId(String feature) {
+Integer id = flat().featureIds.get(feature);
+return id != null ? id : -1;
+}
+// Classifies n documents into out[0 .. n). Document i's tested features are
+// ids[start[i] .. start[i + 1]) with their counts, out of totals[i] tokens; the labels are
+// those classify(TextBlock) returns. Runs on the compiled tree once compile() has been called.
+public void classifyBatch(int n, int[] start, int[] ids, int[] counts, int[] totals, String[] out) {
+CompiledTree c = compiled;
+if (c != null) c.classifyBatch(n, start, ids, counts, totals, out);
+else walkBatch(n, start, ids, counts, totals, out);
+}
+// classifyBatch without compiled code. The walks are interleaved: each pass moves every
+// unfinished document down one level, so their independent node loads overlap instead of
+// each walk waiting on its own chain of cache misses.
+void walkBatch(int n, int[] start, int[] ids, int[] counts, int[] totals, String[] out) {
+Flat f = flat();
+if (f.feature.length == 0) {
+Arrays.fill(out, 0, n, null);
+return;
+}
+int[] at = new int[n];
+int[] active = new int[n];
+int live = 0;
+for (int i = 0; i < n; i++) {
+if (f.feature[0] < 0) out[i] = f.label[0];
+else active[live++] = i;
+}
+while (live > 0) {
+int next = 0;
+for (int k = 0; k < live; k++) {
+int i = active[k];
+int node = at[i];
+int feature = f.feature[node];
+double v = 0;
+if (totals[i] != 0) {
+for (int j = start[i]; j < start[i + 1]; j++) {
+if (ids[j] == feature) {
+v = counts[j] / (double) totals[i];
+break;
+}
+}
+}
+node = v < f.threshold[node] ? f.left[node] : f.right[node];
+if (node < 0) {
+out[i] = null;
+} else if (f.feature[node] < 0) {
+out[i] = f.label[node];
+} else {
+at[i] = node;
+active[next++] = i;
+}
+}
+live = next;
+}
+}
+// Bytecode form of this tree, built by compile(); null until then. It belongs to this
+// instance, so its class is unloaded along with the model.
+private volatile CompiledTree compiled;
+// Compiles the tree once (CompiledTree) and returns it; safe to call concurrently
+public CompiledTree compile() {
+CompiledTree c = compiled;
+if (c == null) {
+synchronized (this) {
+c = compiled;
+if (c == null) compiled = c = compileDetached();
+}
+}
+return c;
+}
+public CompiledTree compiledTree() { return compiled; }
+// nodeId -> node, with per-node subtree sizes, for paging through large trees. Built on
+// first use like flat, in pre-order, so a subtree's nodes follow its root.
+private volatile NodeIndex nodeIndex;
+private static final class NodeIndex {
+Node[] nodes;        // pre-order
+int[] position;      // nodeId -> index into nodes; -1 for an unused id
+int[] parent;        // nodeId of the parent; -1 for the root
+int[] size;          // nodes in the subtree, itself included
+int[] height;        // levels in the subtree; 1 for a leaf
+}
+private NodeIndex nodeIndex() {
+NodeIndex x = nodeIndex;
+if (x != null) return x;
+x = new NodeIndex();
+List<Node> nodes = new ArrayList<>();
+List<Integer> parents = new ArrayList<>();
+int maxId = -1;
+Deque<Node> stack = new ArrayDeque<>();
+Deque<Integer> parentStack = new ArrayDeque<>();
+if (root != null) {
+stack.push(root);
+parentStack.push(-1);
+}
+while (!stack.isEmpty()) {
+Node n = stack.pop();
+nodes.add(n);
+parents.add(parentStack.pop());
+maxId = Math.max(maxId, n.nodeId);
+if (n.isLeaf()) continue;
+if (n.right != null) {
+stack.push(n.right);
+parentStack.push(n.nodeId);
+}
+if (n.left != null) {
+stack.push(n.left);
+parentStack.push(n.nodeId);
+}
+}
+int size = nodes.size();
+x.nodes = nodes.toArray(new Node[0]);
+x.position = new int[maxId + 1];
+x.parent = new int[maxId + 1];
+x.size = new int[size];
+x.height = new int[size];
+Arrays.fill(x.position, -1);
+for (int i = 0; i < size; i++) {
+x.position[x.nodes[i].nodeId] = i;
+x.parent[x.nodes[i].nodeId] = parents.get(i);
+}
+// Children come after their parent in pre-order, so a backwards pass sees them first
+for (int i = size - 1; i >= 0; i--) {
+Node n = x.nodes[i];
+int s = 1, h = 0;
+if (!n.isLeaf()) {
+for (Node c : new Node[] {n.left, n.right}) {
+if (c == null) continue;
+int j = x.position[c.nodeId];
+s += x.size[j];
+h = Math.max(h, x.height[j]);
+}
+}
+x.size[i] = s;
+x.height[i] = h + 1;
+}
+nodeIndex = x;
+return x;
+}
+// The node with this nodeId, or null
+public Node node(int nodeId) {
+NodeIndex x = nodeIndex();
+return nodeId < 0 || nodeId >= x.position.length || x.position[nodeId] < 0 ? null : x.nodes[x.position[nodeId]];
+}
+// Parent's nodeId; -1 for the root (and for unknown ids)
+public int parentId(Node n) {
+NodeIndex x = nodeIndex();
+return n.nodeId < x.parent.length ? x.parent[n.nodeId] : -1;
+}
+// Nodes in the subtree under n, n included
+public int subtreeSize(Node n) { return nodeIndex().size[nodeIndex().position[n.nodeId]]; }
+// Levels in the subtree under n; 1 for a leaf
+public int subtreeHeight(Node n) { return nodeIndex().height[nodeIndex().position[n.nodeId]]; }
+// A compiled copy not attached to this model (benchmarks)
+CompiledTree compileDetached() { return CompiledTree.compile(root, flat().featureIds); }
+// Reusable decision-path buffer: the decision nodes visited and the value seen at each.
+// Sized to the tree depth, so tracing a path never allocates once the buffer exists.
+public static final class PathBuffer {
+private Node[] nodes;
+private double[] values;
+private int size;
+private String label;
+public PathBuffer(int capacity) {
+nodes = new Node[Math.max(1, capacity)];
+values = new double[nodes.length];
+}
+public int size() { return size; }
+public int capacity() { return nodes.length; }
+public String label() { return label; }
+public String feature(int i) { return nodes[i].feature; }
+public double threshold(int i) { return nodes[i].threshold; }
+public double value(int i) { return values[i]; }
+public boolean wentLeft(int i) { return values[i] < nodes[i].threshold; }
+private void add(Node n, double v) {
+if (size == nodes.length) { // only if the tree is deeper than the buffer was sized for
+nodes = Arrays.copyOf(nodes, size * 2);
+values = Arrays.copyOf(values, size * 2);
+}
+nodes[size] = n;
+values[size++] = v;
+}
+// Drops node references so a pooled buffer doesn't pin a replaced model
+public void clear() {
+Arrays.fill(nodes, 0, size, null);
+size = 0;
+label = null;
+}
+}
+// Longest possible decision path; callers size PathBuffers with it
+public int maxPathLength() { return maxDepthObserved + 1; }
+// Same walk as classify, recording each decision into 'buf'; returns the label
+public String trace(TextBlock tb, PathBuffer buf) {
+buf.clear();
+if (tb == null) return null;
+Node n = root;
+while (n != null && !n.isLeaf()) {
+double v = tb.get(n.feature);
+buf.add(n, v);
+n = (v < n.threshold) ? n.left : n.right;
+}
+buf.label = n != null ? n.label : null;
+return buf.label;
+}
 // Enhanced classify with path tracking for animation
 public ClassifyResult classifyWithPath(TextBlock tb) {
 if (tb == null) return new ClassifyResult(null, new ArrayList<>());
@@ -176,199 +566,596 @@ public final double gini;
 }
 public void save(PrintStream out) {
 if (out == null) return;
+if (hashBits > 0) out.println("Hashing: " + hashBits);
 writePreOrder(root, out);
 }
+// Sends the progress events training would have sent for this tree: start, a split or
+// leaf event per node in pre-order, then done. A memoized run has no training to watch,
+// so this is what drives the client's animation instead.
+public void replay(ProgressListener listener) {
+if (listener == null || root == null) return;
+listener.onEvent(new TrainProgress("start", 0, nodeCount, 0,
+    null, 0, root.samples, 0, 0, 0, "Replaying an earlier run with " + root.samples + " samples"));
+int built = 0;
+Deque<Node> stack = new ArrayDeque<>();
+Deque<Integer> depths = new ArrayDeque<>();
+stack.push(root);
+depths.push(0);
+while (!stack.isEmpty()) {
+ Node node = stack.pop();
+ int depth = depths.pop();
+ built++;
+ if (node.isLeaf()) {
+     listener.onEvent(new TrainProgress("leaf", built, nodeCount, depth,
+         null, 0, 0, 0, node.gini, 0,
+         "Created leaf node with label: " + node.label + " (" + node.samples + " samples)"));
+     continue;
+ }
+ int left = node.left.samples, right = node.right.samples;
+ double gain = node.samples == 0 ? 0
+     : node.gini - (left * node.left.gini + right * node.right.gini) / node.samples;
+ listener.onEvent(new TrainProgress("split", built, nodeCount, depth,
+     node.feature, node.threshold, left, right, node.gini, gain,
+     String.format("Split on '%s' < %.4f (gain: %.4f, left: %d, right: %d)",
+         node.feature, node.threshold, gain, left, right)));
+ stack.push(node.right);
+ depths.push(depth + 1);
+ stack.push(node.left);
+ depths.push(depth + 1);
+}
+listener.onEvent(new TrainProgress("done", nodeCount, nodeCount, maxDepthObserved,
+    null, 0, 0, 0, 0, 0, "Training complete: " + nodeCount + " nodes, depth " + maxDepthObserved));
+}
 public int nodeCount() { return nodeCount; }
 public int depth() { return maxDepthObserved; }
+// Why best-first growth stopped before running out of splits, or null if it didn't
+public String stopReason() { return stopReason; }
+// Bits of the feature-hashing space the model was trained with; 0 when features are words
+public int hashBits() { return hashBits; }
 public Node getRoot() { return root; }
+public String[] getLabelNames() { return labelNames == null ? null : labelNames.clone(); }
 public Map<String, Double> calculateAccuracy(List<TextBlock> data, List<String> labels) {
 if (data == null || labels == null || data.size() != labels.size() || data.isEmpty())
 return Map.of();
- Map<String, Integer> total = new HashMap<>();
- Map<String, Integer> correct = new HashMap<>();
+ // Gold labels get dense ids on first sight; tallies are int arrays
+ Map<String, Integer> ids = new HashMap<>();
+ List<String> names = new ArrayList<>();
+ int[] total = new int[8];
+ int[] correct = new int[8];
+ int correctCount = 0;
  
  for (int i = 0; i < data.size(); i++) {
      String gold = labels.get(i);
      String pred = classify(data.get(i));
-     total.merge(gold, 1, Integer::sum);
-     if (gold != null && gold.equals(pred)) correct.merge(gold, 1, Integer::sum);
+     Integer id = ids.get(gold);
+     if (id == null) {
+         id = names.size();
+         ids.put(gold, id);
+         names.add(gold);
+         if (id == total.length) {
+             total = Arrays.copyOf(total, id * 2);
+             correct = Arrays.copyOf(correct, id * 2);
+         }
+     }
+     total[id]++;
+     if (gold != null && gold.equals(pred)) {
+         correct[id]++;
+         correctCount++;
+     }
  }
  
  Map<String, Double> acc = new HashMap<>();
- for (var e : total.entrySet()) {
-     int t = e.getValue();
-     int c = correct.getOrDefault(e.getKey(), 0);
-     acc.put(e.getKey(), t == 0 ? 0.0 : (double) c / t);
+ for (int c = 0; c < names.size(); c++) {
+     acc.put(names.get(c), (double) correct[c] / total[c]);
  }
  
  // Add overall accuracy
  int totalCount = data.size();
- int correctCount = correct.values().stream().mapToInt(Integer::intValue).sum();
  acc.put("Overall", totalCount == 0 ? 0.0 : (double) correctCount / totalCount);
  
  return acc;
 }
-// Training with progress reporting
-private Node build(List<TextBlock> X, List<String> y, Set<String> features,
-int depth, ProgressListener listener, int estimatedTotal) {
+// Training with progress reporting; the node's samples are idx[from, to)
+// New node over idx[from, to), provisionally a leaf labelled with the majority class
+private Node newNode(int from, int to, int depth) {
+int n = 0;
+int[] counts = new int[labelNames.length];
+for (int i = from; i < to; i++) {
+int r = idx[i];
+int w = data.weight(r);
+counts[data.label(r)] += w;
+n += w;
+}
 Node node = new Node();
 node.nodeId = nodeIdCounter++;
-node.samples = y.size();
-node.dist = labelDist(y);
-node.gini = gini(y);
+node.samples = n;
+node.dist = counts;
+node.gini = gini(counts, n);
+node.label = labelNames[argMax(counts)];
 nodeCount++;
 maxDepthObserved = Math.max(maxDepthObserved, depth);
- // Determine majority label
- String majority = majorityLabel(y);
+return node;
+}
+// Best split of a node found by findSplit
+private static final class Split {
+final int feature;
+final double threshold;
+final double gain;
+final int left;
+Split(int feature, double threshold, double gain, int left) {
+this.feature = feature;
+this.threshold = threshold;
+this.gain = gain;
+this.left = left;
+}
+}
+private Node build(int from, int to, int depth, ProgressListener listener, int estimatedTotal) {
+Node node = newNode(from, to, depth);
+int n = node.samples;
  
  // Check stopping conditions
- if (depth >= MAX_DEPTH || y.size() < MIN_SAMPLES_SPLIT || node.gini == 0.0) {
-     node.label = majority;
+ if (depth >= MAX_DEPTH || n < MIN_SAMPLES_SPLIT || node.gini == 0.0) {
      if (listener != null) {
          listener.onEvent(new TrainProgress("leaf", nodeCount, estimatedTotal, depth,
              null, 0, 0, 0, node.gini, 0, 
-             "Created leaf node with label: " + majority + " (" + y.size() + " samples)"));
-         
-         // Small delay for animation visibility
-         try { Thread.sleep(100); } catch (InterruptedException e) {}
+             "Created leaf node with label: " + node.label + " (" + n + " samples)"));
      }
      return node;
  }
 
+ Split best = findSplit(node, from, to, depth, listener, estimatedTotal);
+ if (best == null) {
+     if (listener != null) {
+         listener.onEvent(new TrainProgress("leaf", nodeCount, estimatedTotal, depth,
+             null, 0, 0, 0, node.gini, 0,
+             "No good split found, creating leaf: " + node.label));
+     }
+     return node;
+ }
+
+ // Partition the range in place, then recurse into the two halves
+ int mid = applySplit(node, best, from, to, depth, listener, estimatedTotal);
+ if (mid < 0) {
+     if (listener != null) {
+         listener.onEvent(new TrainProgress("leaf", nodeCount, estimatedTotal, depth,
+             null, 0, 0, 0, node.gini, 0,
+             "Sampled split does not separate the full node, creating leaf: " + node.label));
+     }
+     return node;
+ }
+ node.left  = build(from, mid, depth + 1, listener, estimatedTotal);
+ node.right = build(mid,  to,  depth + 1, listener, estimatedTotal);
+ 
+ return node;
+}
+// Frontier entry for best-first growth: a leaf, its idx range and its best split
+private static final class Candidate {
+final Node node;
+final int from, to, depth;
+final Split split;
+final double priority;   // impurity decrease weighted by the node's share of all samples
+Candidate(Node node, int from, int to, int depth, Split split, int total) {
+this.node = node;
+this.from = from;
+this.to = to;
+this.depth = depth;
+this.split = split;
+this.priority = split.gain * node.samples / total;
+}
+}
+// Largest weighted gain first; earlier-created nodes first on ties, so growth is deterministic
+private static final Comparator<Candidate> BY_PRIORITY =
+    Comparator.comparingDouble((Candidate c) -> -c.priority).thenComparingInt(c -> c.node.nodeId);
+// Grows the tree by repeatedly splitting the frontier leaf with the largest weighted gain.
+// Every node is created as a leaf and only turned into a decision node when expanded, so
+// stopping at any point (leaf budget, deadline) leaves a valid tree.
+private Node growBestFirst(int n, ProgressListener listener, int estimatedTotal) {
+Node root = newNode(0, n, 0);
+int total = root.samples;
+PriorityQueue<Candidate> frontier = new PriorityQueue<>(BY_PRIORITY);
+offer(frontier, root, 0, n, 0, total, listener, estimatedTotal);
+int leaves = 1;
+while (!frontier.isEmpty()) {
+if (options.maxLeafNodes() > 0 && leaves >= options.maxLeafNodes()) {
+stopReason = "leaf budget of " + options.maxLeafNodes() + " reached";
+break;
+}
+if (pastDeadline()) {
+stopReason = "time budget of " + options.timeLimitMillis() + " ms reached";
+break;
+}
+Candidate c = frontier.poll();
+int mid = applySplit(c.node, c.split, c.from, c.to, c.depth, listener, estimatedTotal);
+if (mid < 0) continue;   // sampled split didn't separate the full node; it stays a leaf
+c.node.left = newNode(c.from, mid, c.depth + 1);
+c.node.right = newNode(mid, c.to, c.depth + 1);
+leaves++;
+offer(frontier, c.node.left, c.from, mid, c.depth + 1, total, listener, estimatedTotal);
+offer(frontier, c.node.right, mid, c.to, c.depth + 1, total, listener, estimatedTotal);
+}
+if (stopReason == null && pastDeadline()) stopReason = "time budget of " + options.timeLimitMillis() + " ms reached";
+// Whatever is still on the frontier stays a leaf
+for (Candidate c : frontier) {
+if (listener != null) {
+listener.onEvent(new TrainProgress("leaf", nodeCount, estimatedTotal, c.depth,
+    null, 0, 0, 0, c.node.gini, 0,
+    "Budget reached, keeping leaf: " + c.node.label + " (" + c.node.samples + " samples)"));
+}
+}
+return root;
+}
+// Queues a new leaf for expansion if it has a worthwhile split; otherwise it is final
+private void offer(PriorityQueue<Candidate> frontier, Node node, int from, int to, int depth,
+                   int total, ProgressListener listener, int estimatedTotal) {
+int n = node.samples;
+Split split = null;
+if (depth < MAX_DEPTH && n >= MIN_SAMPLES_SPLIT && node.gini != 0.0) {
+split = findSplit(node, from, to, depth, listener, estimatedTotal);
+}
+if (split != null) {
+frontier.add(new Candidate(node, from, to, depth, split, total));
+} else if (listener != null) {
+listener.onEvent(new TrainProgress("leaf", nodeCount, estimatedTotal, depth,
+    null, 0, 0, 0, node.gini, 0,
+    "Created leaf node with label: " + node.label + " (" + n + " samples)"));
+}
+}
+private boolean pastDeadline() {
+return deadline != 0 && System.nanoTime() - deadline >= 0;
+}
+// Best split of idx[from, to) or null if none clears MIN_GAIN (or the deadline passed mid-search).
+// Nodes larger than options.subsampleAbove() are scored on a stratified sample of their rows.
+private Split findSplit(Node node, int from, int to, int depth, ProgressListener listener, int estimatedTotal) {
+ClassifierEvents.SplitSearch event = new ClassifierEvents.SplitSearch();
+if (!event.isEnabled()) return searchSplit(node, from, to, depth, listener, estimatedTotal);
+event.begin();
+Split split = searchSplit(node, from, to, depth, listener, estimatedTotal);
+event.end();
+if (event.shouldCommit()) {
+    event.nodeId = node.nodeId;
+    event.depth = depth;
+    event.samples = node.samples;
+    event.scoredSamples = scoredSamples;
+    event.features = scoredFeatures;
+    event.approximate = options.approxBins() > 0;
+    event.found = split != null;
+    event.gain = split == null ? 0 : split.gain;
+    event.commit();
+}
+return split;
+}
+// Rows and features the last searchSplit looked at, for its SplitSearch event
+private int scoredSamples, scoredFeatures;
+private Split searchSplit(Node node, int from, int to, int depth, ProgressListener listener, int estimatedTotal) {
+int[] rows = idx;
+int lo = from, hi = to;
+int[] counts = node.dist;
+double nodeGini = node.gini;
+int limit = options.subsampleAbove();
+if (limit > 0 && to - from > limit) {
+hi = stratifiedSample(from, to, node.dist, limit, node.nodeId);
+rows = sample;
+lo = 0;
+counts = sampleCounts;
+nodeGini = gini(counts, sum(counts));
+}
+int n = sum(counts);   // samples scored; hi - lo rows hold them
+
+ // Only features that occur in this node can split it; absent ones are all-zero
+ int featureCount = collectFeatures(rows, lo, hi);
+ scoredSamples = n;
+ scoredFeatures = featureCount;
+
  // Report we're scanning for best split
  if (listener != null && nodeCount % 3 == 1) { // Don't report every single scan
      listener.onEvent(new TrainProgress("feature_scan", nodeCount, estimatedTotal, depth,
-         null, 0, y.size(), 0, node.gini, 0,
-         "Scanning " + features.size() + " features for best split at depth " + depth));
+         null, 0, n, 0, node.gini, 0,
+         "Scanning " + featureCount + " features for best split at depth " + depth));
  }
 
- // Find best split
- double bestGain = 0.0;
- String bestFeature = null;
- double bestThreshold = 0.0;
- SplitData bestSplit = null;
+ long nodeSq = sumOfSquares(counts);
+ bestGain = 0.0;
+ bestFeature = -1;
+ bestThreshold = 0.0;
+ bestLeft = 0;
  
- for (String f : features) {
-     double[] vals = new double[X.size()];
-     for (int i = 0; i < X.size(); i++) vals[i] = X.get(i).get(f);
-     double[] thresholds = candidateThresholds(vals);
-     
-     for (double t : thresholds) {
-         SplitData sd = splitOn(X, y, f, t);
-         if (sd.leftY.size() < MIN_SAMPLES_LEAF || sd.rightY.size() < MIN_SAMPLES_LEAF) 
-             continue;
-             
-         double gain = informationGain(y, sd.leftY, sd.rightY);
-         if (gain > bestGain + 1e-12) {
-             bestGain = gain;
-             bestFeature = f;
-             bestThreshold = t;
-             bestSplit = sd;
+ if (options.approxBins() > 0) {
+     scoreBinned(featureCount, rows, lo, hi, counts, n, nodeGini);
+ } else {
+     if (rowMark != null) for (int i = lo; i < hi; i++) rowMark[rows[i]] = stamp;
+     for (int j = 0; j < featureCount; j++) {
+         if ((j & 63) == 0 && pastDeadline()) return null;
+         int f = nodeFeatures[j];
+         if (rowMark != null && data.postingEnd(f) - data.postingStart(f) < POSTING_SCAN_RATIO * (hi - lo)) {
+             scorePostings(f, lo, hi, counts, n, nodeGini);
+         } else {
+             scoreExact(f, rows, lo, hi, counts, n, nodeGini, nodeSq);
          }
      }
  }
+ if (pastDeadline()) return null;
 
- if (bestFeature == null || bestGain < MIN_GAIN) {
-     node.label = majority;
-     if (listener != null) {
-         listener.onEvent(new TrainProgress("leaf", nodeCount, estimatedTotal, depth,
-             null, 0, 0, 0, node.gini, 0,
-             "No good split found, creating leaf: " + majority));
-         
-         // Small delay for animation
-         try { Thread.sleep(100); } catch (InterruptedException e) {}
+ if (bestFeature < 0 || bestGain < MIN_GAIN) return null;
+ return new Split(bestFeature, bestThreshold, bestGain, bestLeft);
+}
+// Exact search for one feature: one sort and one sweep over the rows, scoring the midpoint
+// between every pair of distinct values. n is the rows' total weight.
+private void scoreExact(int f, int[] rows, int lo, int hi, int[] counts, int n, double nodeGini, long nodeSq) {
+ // Values are >= 0, so their float bits sort in value order. The low half is the label,
+ // or the row when rows carry weights (ties in value are never split, so order among
+ // equal values doesn't matter)
+ boolean weighted = data.isWeighted();
+ for (int i = lo; i < hi; i++) {
+     int r = rows[i];
+     keys[i] = ((long) Float.floatToRawIntBits(data.value(r, f)) << 32) | (weighted ? r : data.label(r));
+ }
+ Arrays.sort(keys, lo, hi);
+ 
+ // Move samples left one row at a time, keeping sum(count^2) of both sides up to date, so
+ // each candidate threshold (midpoint between distinct values) is scored in O(1)
+ Arrays.fill(leftCounts, 0);
+ long leftSq = 0, rightSq = nodeSq;
+ int nLeft = 0;
+ for (int i = lo; i < hi - 1; i++) {
+     int low = (int) keys[i];
+     int label = weighted ? data.label(low) : low;
+     int w = weighted ? data.weight(low) : 1;
+     // (c + w)^2 - c^2 on the left, (c - w)^2 - c^2 on the right
+     leftSq += (2L * leftCounts[label] + w) * w;
+     rightSq -= (2L * (counts[label] - leftCounts[label]) - w) * w;
+     leftCounts[label] += w;
+     nLeft += w;
+     
+     int hiBits = (int) (keys[i + 1] >>> 32);
+     int loBits = (int) (keys[i] >>> 32);
+     if (hiBits == loBits) continue;
+     consider(f, nLeft, n, leftSq, rightSq, loBits, hiBits, nodeGini);
+ }
+}
+// A spilled matrix's posting list is cheaper than a lookup per row when it is shorter
+// than this many times the node (one sequential read against a binary search per row)
+private static final int POSTING_SCAN_RATIO = 4;
+// Same search as scoreExact, from f's posting list: only the node's non-zeros are sorted,
+// and its zero rows (whatever the node counts leave over) start out left of every
+// threshold. The candidates and their sums are the ones scoreExact sees, so the chosen
+// split is identical.
+private void scorePostings(int f, int lo, int hi, int[] counts, int n, double nodeGini) {
+ int m = lo;
+ for (int k = data.postingStart(f), end = data.postingEnd(f); k < end; k++) {
+     int r = data.postingRow(k);
+     if (rowMark[r] != stamp) continue;
+     keys[m++] = ((long) Float.floatToRawIntBits(data.postingValue(k)) << 32) | data.label(r);
+ }
+ if (m == lo) return;
+ Arrays.sort(keys, lo, m);
+
+ // Right side: the non-zeros; left side: the zeros. Spilled matrices are never weighted.
+ Arrays.fill(leftCounts, 0);
+ for (int i = lo; i < m; i++) leftCounts[(int) keys[i]]++;
+ long rightSq = sumOfSquares(leftCounts);
+ for (int c = 0; c < leftCounts.length; c++) leftCounts[c] = counts[c] - leftCounts[c];
+ long leftSq = sumOfSquares(leftCounts);
+ int zeros = n - (m - lo);
+ if (zeros > 0) consider(f, zeros, n, leftSq, rightSq, 0, (int) (keys[lo] >>> 32), nodeGini);
+ for (int i = lo; i < m - 1; i++) {
+     int label = (int) keys[i];
+     leftSq += 2L * leftCounts[label] + 1;
+     rightSq -= 2L * (counts[label] - leftCounts[label]) - 1;
+     leftCounts[label]++;
+
+     int hiBits = (int) (keys[i + 1] >>> 32);
+     int loBits = (int) (keys[i] >>> 32);
+     if (hiBits == loBits) continue;
+     consider(f, zeros + i + 1 - lo, n, leftSq, rightSq, loBits, hiBits, nodeGini);
+ }
+}
+// Scores the threshold between two adjacent distinct values (as float bits) with nLeft
+// of the node's n rows below it
+private void consider(int f, int nLeft, int n, long leftSq, long rightSq, int loBits, int hiBits, double nodeGini) {
+ int nRight = n - nLeft;
+ if (nLeft < MIN_SAMPLES_LEAF || nRight < MIN_SAMPLES_LEAF) return;
+ double gain = nodeGini - ((double) nLeft / n) * gini(leftSq, nLeft)
+                        - ((double) nRight / n) * gini(rightSq, nRight);
+ if (gain > bestGain + 1e-12) {
+     bestGain = gain;
+     bestFeature = f;
+     bestThreshold = ((double) Float.intBitsToFloat(loBits) + Float.intBitsToFloat(hiBits)) / 2.0;
+     bestLeft = nLeft;
+ }
+}
+// Split point for a candidate threshold t, a float value taken from the data: halfway down
+// to the next smaller float, the midpoint scoreExact would use. Training compares float
+// values, inference the doubles they were rounded from (TextBlock.get); a double just under
+// t rounds to t, so with t itself as the threshold it would go left at inference and right
+// in training. Every double that rounds up to t lies above this point.
+private static double below(float t) {
+ return ((double) Math.nextDown(t) + t) / 2.0;
+}
+// Approximate search over every feature of the node in two passes over its non-zeros, so
+// the cost is O(non-zeros) rather than O(rows x features). Pass one feeds each feature's
+// values into its own KLL sketch; its candidate thresholds are the smallest non-zero value
+// plus sketch quantiles (at most approxBins). Pass two counts labels per threshold
+// interval; zeros, always left of every threshold, are what the node counts leave over.
+// Bin lookup and threshold scoring run in SplitKernels; choosing the best stays here.
+private void scoreBinned(int featureCount, int[] rows, int lo, int hi, int[] counts, int n, double nodeGini) {
+ int labels = leftCounts.length;
+ int bins = options.approxBins();
+ if (sketches.length < featureCount) sketches = Arrays.copyOf(sketches, Math.max(featureCount, sketches.length * 2));
+ if (thresholds.length < featureCount * bins) thresholds = new float[featureCount * bins];
+ if (thresholdCount.length < featureCount + 1) {
+     thresholdCount = new int[featureCount + 1];
+     histStart = new int[featureCount + 1];
+ }
+ for (int j = 0; j < featureCount; j++) {
+     featureSlot[nodeFeatures[j]] = j;
+     if (sketches[j] == null) sketches[j] = new KllSketch(Math.max(8, 2 * bins));
+     else sketches[j].reset();
+ }
+
+ for (int i = lo; i < hi; i++) {
+     int r = rows[i];
+     int w = data.weight(r);
+     for (int k = data.rowStart(r); k < data.rowEnd(r); k++) {
+         sketches[featureSlot[data.featureAt(k)]].update(data.valueAt(k), w);
+     }
+ }
+ int total = 0;
+ for (int j = 0; j < featureCount; j++) {
+     thresholdCount[j] = sketches[j].quantiles(thresholds, j * bins, bins);
+     histStart[j] = total;
+     total += (thresholdCount[j] + 1) * labels;   // per label, bin 0 plus one per threshold
+ }
+ if (binCounts.length < total) binCounts = new int[Math.max(total, binCounts.length * 2)];
+ Arrays.fill(binCounts, 0, total, 0);
+
+ // bin b >= 1 of a feature holds values in [thresholds[b-1], thresholds[b])
+ for (int i = lo; i < hi; i++) {
+     int r = rows[i];
+     int label = data.label(r);
+     int w = data.weight(r);
+     for (int k = data.rowStart(r); k < data.rowEnd(r); k++) {
+         int j = featureSlot[data.featureAt(k)];
+         int t = thresholdCount[j];
+         int b = kernels.bin(thresholds, j * bins, t, data.valueAt(k));
+         binCounts[histStart[j] + label * (t + 1) + b] += w;
      }
-     return node;
  }
 
- node.feature = bestFeature;
- node.threshold = bestThreshold;
+ for (int j = 0; j < featureCount; j++) {
+     if ((j & 63) == 0 && pastDeadline()) return;
+     int h = histStart[j];
+     int t = thresholdCount[j];
+     // bin 0 = rows where the feature is zero
+     int nonZero = 0;
+     for (int c = 0; c < labels; c++) {
+         int at = h + c * (t + 1);
+         int nz = 0;
+         for (int b = 1; b <= t; b++) nz += binCounts[at + b];
+         binCounts[at] = counts[c] - nz;
+         nonZero += nz;
+     }
+     if (nonZero == 0) continue;
+
+     // Scanned in threshold order with a strict comparison, so ties go to the same
+     // (lowest) threshold whichever kernel computed the gains
+     kernels.gains(binCounts, h, t, counts, n, nodeGini, MIN_SAMPLES_LEAF, binLeft, binGain);
+     for (int b = 0; b < t; b++) {
+         if (binGain[b] > bestGain + 1e-12) {
+             bestGain = binGain[b];
+             bestFeature = nodeFeatures[j];
+             bestThreshold = below(thresholds[j * bins + b]);
+             bestLeft = (int) binLeft[b];
+         }
+     }
+ }
+}
+// Systematic sample of 'size' rows from idx[from, to) after grouping them by label, so every
+// label keeps its share. Fills sample[0, size) and sampleCounts; returns size. The start
+// offset is seeded by node id, so training stays deterministic. Weighted rows are sampled
+// as rows and keep their weights in sampleCounts.
+private int stratifiedSample(int from, int to, int[] dist, int size, int nodeId) {
+int n = to - from;
+int labels = dist.length;
+if (data.isWeighted()) {
+dist = new int[labels];   // rows per label rather than samples
+for (int i = from; i < to; i++) dist[data.label(idx[i])]++;
+}
+// counting sort of the node's rows by label into sample[]
+int[] start = new int[labels];
+for (int c = 1; c < labels; c++) start[c] = start[c - 1] + dist[c - 1];
+int[] grouped = sampleGroups;
+for (int i = from; i < to; i++) grouped[start[data.label(idx[i])]++] = idx[i];
+Arrays.fill(sampleCounts, 0);
+double step = (double) n / size;
+double pos = new Random(nodeId).nextDouble() * step;
+for (int k = 0; k < size; k++, pos += step) {
+int r = grouped[Math.min(n - 1, (int) pos)];
+sample[k] = r;
+sampleCounts[data.label(r)] += data.weight(r);
+}
+return size;
+}
+// Partitions the node's range on 'split' (always over all of its rows) and turns it into a
+// decision node; returns the boundary, or -1 if one side came out empty (possible only when
+// the split was chosen on a subsample), in which case the node stays a leaf
+private int applySplit(Node node, Split split, int from, int to, int depth,
+                       ProgressListener listener, int estimatedTotal) {
+int mid = partition(from, to, split.feature, split.threshold);
+if (mid == from || mid == to) return -1;
+int n = node.samples;
+int left = 0;
+if (listener != null) for (int i = from; i < mid; i++) left += data.weight(idx[i]);
+node.label = null;
+node.featureId = split.feature;
+node.feature = data.featureName(split.feature);
+node.threshold = split.threshold;
  
  if (listener != null) {
      listener.onEvent(new TrainProgress("split", nodeCount, estimatedTotal, depth,
-         bestFeature, bestThreshold, bestSplit.leftY.size(), bestSplit.rightY.size(),
-         node.gini, bestGain,
+         node.feature, split.threshold, left, n - left,
+         node.gini, split.gain,
          String.format("Split on '%s' < %.4f (gain: %.4f, left: %d, right: %d)", 
-             bestFeature, bestThreshold, bestGain, bestSplit.leftY.size(), bestSplit.rightY.size())));
-     
-     // Small delay for animation visibility
-     try { Thread.sleep(150); } catch (InterruptedException e) {}
+             node.feature, split.threshold, split.gain, left, n - left)));
  }
-
- // Recursive build
- node.left  = build(bestSplit.leftX,  bestSplit.leftY,  features, depth + 1, listener, estimatedTotal);
- node.right = build(bestSplit.rightX, bestSplit.rightY, features, depth + 1, listener, estimatedTotal);
- 
- return node;
+return mid;
 }
-// Helper classes and methods
-private static class SplitData {
-List<TextBlock> leftX, rightX;
-List<String> leftY, rightY;
-SplitData(List<TextBlock> lx, List<String> ly, List<TextBlock> rx, List<String> ry) {
-leftX = lx; leftY = ly; rightX = rx; rightY = ry;
-}
-}
-private SplitData splitOn(List<TextBlock> X, List<String> y, String feature, double threshold) {
-List<TextBlock> lx = new ArrayList<>();
-List<TextBlock> rx = new ArrayList<>();
-List<String> ly = new ArrayList<>();
-List<String> ry = new ArrayList<>();
-for (int i = 0; i < X.size(); i++) {
-double v = X.get(i).get(feature);
-if (v < threshold) {
-lx.add(X.get(i));
-ly.add(y.get(i));
+// Helper methods
+// Quicksort-style partition of idx[from, to): rows with value < threshold first; returns the boundary
+private int partition(int from, int to, int feature, double threshold) {
+int i = from, j = to - 1;
+while (i <= j) {
+if (data.value(idx[i], feature) < threshold) {
+i++;
 } else {
-rx.add(X.get(i));
-ry.add(y.get(i));
-}
-}
-return new SplitData(lx, ly, rx, ry);
-}
-private static double[] candidateThresholds(double[] vals) {
-double[] copy = Arrays.copyOf(vals, vals.length);
-Arrays.sort(copy);
-List<Double> t = new ArrayList<>();
-for (int i = 1; i < copy.length; i++) {
-if (copy[i] != copy[i-1]) t.add((copy[i] + copy[i-1]) / 2.0);
-}
-if (t.isEmpty()) return new double[] { copy.length > 0 ? copy[0] : 0.0 };
-double[] arr = new double[t.size()];
-for (int i = 0; i < t.size(); i++) arr[i] = t.get(i);
-return arr;
-}
-private static double gini(List<String> y) {
-if (y.isEmpty()) return 0.0;
-Map<String, Long> counts = y.stream()
-.collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
-double n = y.size();
-double sumSq = 0.0;
-for (long c : counts.values()) {
-double p = c / n;
-sumSq += p * p;
-}
-return 1.0 - sumSq;
-}
-private static double informationGain(List<String> parent, List<String> left, List<String> right) {
-double gParent = gini(parent);
-double n = parent.size();
-double wLeft = left.size() / n;
-double wRight = right.size() / n;
-return gParent - (wLeft * gini(left) + wRight * gini(right));
-}
-private static String majorityLabel(List<String> y) {
-if (y.isEmpty()) return null;
-Map<String, Long> counts = y.stream()
-.collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
-return counts.entrySet().stream()
-.max(Comparator.comparingLong(Map.Entry::getValue))
-.get().getKey();
-}
-private static Map<String,Integer> labelDist(List<String> y) {
-Map<String,Integer> m = new HashMap<>();
-for (String s : y) m.merge(s, 1, Integer::sum);
-return m;
+int tmp = idx[i];
+idx[i] = idx[j];
+idx[j] = tmp;
+j--;
+}
+}
+return i;
+}
+// Writes the distinct features with a non-zero value in rows[from, to) into nodeFeatures
+private int collectFeatures(int[] rows, int from, int to) {
+stamp++;
+int k = 0;
+for (int i = from; i < to; i++) {
+int r = rows[i];
+for (int j = data.rowStart(r); j < data.rowEnd(r); j++) {
+int f = data.featureAt(j);
+if (featureStamp[f] == stamp) continue;
+featureStamp[f] = stamp;
+nodeFeatures[k++] = f;
+}
+}
+// Feature-id order, so tie-breaking doesn't depend on how earlier partitions permuted idx
+Arrays.sort(nodeFeatures, 0, k);
+return k;
+}
+// Gini impurity from per-label counts
+private static double gini(int[] counts, int n) {
+return gini(sumOfSquares(counts), n);
+}
+// Gini impurity from sum(count^2): 1 - sum((c/n)^2)
+private static double gini(long sumSq, int n) {
+if (n == 0) return 0.0;
+return 1.0 - (double) sumSq / ((double) n * n);
+}
+private static int sum(int[] counts) {
+int n = 0;
+for (int c : counts) n += c;
+return n;
+}
+private static long sumOfSquares(int[] counts) {
+long sq = 0;
+for (int c : counts) sq += (long) c * c;
+return sq;
+}
+// Index of the largest count (lowest index on ties)
+private static int argMax(int[] counts) {
+int best = 0;
+for (int c = 1; c < counts.length; c++) if (counts[c] > counts[best]) best = c;
+return best;
 }
 private int countNodes(Node n) {
 if (n == null) return 0;
@@ -389,10 +1176,14 @@ writePreOrder(n.left, out);
 writePreOrder(n.right, out);
 }
 }
-private Node readPreOrder(Scanner sc) {
+// Same depth limit as training, so the recursive walks over the tree stay bounded
+private Node readPreOrder(Scanner sc, int depth) {
 if (!sc.hasNextLine()) return null;
 String line = sc.nextLine().trim();
 if (line.startsWith("Feature:")) {
+if (depth >= TrainingOptions.MAX_DEPTH_LIMIT) {
+throw new IllegalArgumentException("Tree deeper than " + TrainingOptions.MAX_DEPTH_LIMIT + " levels");
+}
 Node n = new Node();
 n.nodeId = nodeIdCounter++;
 n.feature = line.substring("Feature:".length()).trim();
@@ -400,8 +1191,8 @@ if (!sc.hasNextLine()) throw new IllegalArgumentException("Malformed tree");
 String th = sc.nextLine().trim();
 if (!th.startsWith("Threshold:")) throw new IllegalArgumentException("Malformed tree");
 n.threshold = Double.parseDouble(th.substring("Threshold:".length()).trim());
-n.left = readPreOrder(sc);
-n.right = readPreOrder(sc);
+n.left = readPreOrder(sc, depth + 1);
+n.right = readPreOrder(sc, depth + 1);
 // Compute samples and gini from children (approximate)
 if (n.left != null && n.right != null) {
 n.samples = n.left.samples + n.right.samples;
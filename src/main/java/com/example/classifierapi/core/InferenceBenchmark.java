@@ -0,0 +1,119 @@
+package com.example.classifierapi.core;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Compiled tree (CompiledTree) against the interpreted walks, on the same documents.
+ *
+ * Two comparisons: single documents from their TextBlock (classify(TextBlock), node walk
+ * vs compiled), and batches of BATCH documents already resolved to split-feature ids, the
+ * form the classify coalescer uses (the interleaved walk vs compiled). The first is
+ * bounded by the TextBlock's hash lookups, which both do once per decision on the path,
+ * so most of the difference shows up in the second.
+ *
+ * Rounds alternate between the variants and each keeps its fastest round, so JIT
+ * warm-up and GC pauses in early rounds don't skew the ratios. mismatches counts
+ * documents whose labels differ between any two variants (expected 0).
+ */
+public record InferenceBenchmark(int documents, int rounds, int nodes, int depth,
+                                 long compileMicros, int methods, int bytecodeBytes,
+                                 double walkNanosPerDoc, double compiledNanosPerDoc, double speedup,
+                                 double batchWalkNanosPerDoc, double batchCompiledNanosPerDoc,
+                                 double batchSpeedup, int mismatches) {
+
+    private static final int BATCH = 64;
+
+    public static InferenceBenchmark run(ImprovedClassifier model, List<TextBlock> docs, int rounds) {
+        if (docs.isEmpty()) throw new IllegalArgumentException("no documents to classify");
+        if (rounds < 1) throw new IllegalArgumentException("rounds must be >= 1");
+        long t0 = System.nanoTime();
+        CompiledTree compiled = model.compileDetached();
+        long compileNanos = System.nanoTime() - t0;
+
+        // Batch inputs: every document's split features with their counts
+        int n = docs.size();
+        int[] start = new int[n + 1];
+        int[] totals = new int[n];
+        int[] ids = new int[16];
+        int[] counts = new int[16];
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            TextBlock tb = docs.get(i);
+            start[i] = m;
+            totals[i] = tb.total();
+            for (String word : tb.getFeatures()) {
+                int id = model.splitFeatureId(word);
+                if (id < 0) continue;
+                if (m == ids.length) {
+                    ids = Arrays.copyOf(ids, m * 2);
+                    counts = Arrays.copyOf(counts, m * 2);
+                }
+                ids[m] = id;
+                counts[m++] = tb.count(word);
+            }
+        }
+        start[n] = m;
+
+        // ... cut into batches up front; start offsets stay absolute into ids
+        int chunks = (n + BATCH - 1) / BATCH;
+        int[][] chunkStart = new int[chunks][];
+        int[][] chunkTotals = new int[chunks][];
+        String[][] chunkOut = new String[chunks][];
+        for (int k = 0; k < chunks; k++) {
+            int from = k * BATCH, to = Math.min(n, from + BATCH);
+            chunkStart[k] = Arrays.copyOfRange(start, from, to + 1);
+            chunkTotals[k] = Arrays.copyOfRange(totals, from, to);
+            chunkOut[k] = new String[to - from];
+        }
+
+        String[] walked = new String[n];
+        long walk = Long.MAX_VALUE, single = Long.MAX_VALUE, batchWalk = Long.MAX_VALUE, batch = Long.MAX_VALUE;
+        int mismatches = 0;
+        for (int r = 0; r < rounds; r++) {
+            boolean check = r == 0;
+            long a = System.nanoTime();
+            for (int i = 0; i < n; i++) walked[i] = model.classify(docs.get(i));
+            long b = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                String label = compiled.classify(docs.get(i));
+                if (check && !Objects.equals(label, walked[i])) mismatches++;
+            }
+            long c = System.nanoTime();
+            for (int k = 0; k < chunks; k++) {
+                model.walkBatch(chunkOut[k].length, chunkStart[k], ids, counts, chunkTotals[k], chunkOut[k]);
+            }
+            long d = System.nanoTime();
+            if (check) mismatches += countMismatches(chunkOut, walked);
+            for (int k = 0; k < chunks; k++) {
+                compiled.classifyBatch(chunkOut[k].length, chunkStart[k], ids, counts, chunkTotals[k], chunkOut[k]);
+            }
+            long e = System.nanoTime();
+            if (check) mismatches += countMismatches(chunkOut, walked);
+            walk = Math.min(walk, b - a);
+            single = Math.min(single, c - b);
+            batchWalk = Math.min(batchWalk, d - c);
+            batch = Math.min(batch, e - d);
+        }
+        return new InferenceBenchmark(n, rounds, model.nodeCount(), model.depth(), compileNanos / 1_000,
+                                      compiled.methods(), compiled.bytecodeBytes(),
+                                      (double) walk / n, (double) single / n, ratio(walk, single),
+                                      (double) batchWalk / n, (double) batch / n, ratio(batchWalk, batch),
+                                      mismatches);
+    }
+
+    private static int countMismatches(String[][] chunkOut, String[] expected) {
+        int mismatches = 0;
+        for (int k = 0; k < chunkOut.length; k++) {
+            for (int i = 0; i < chunkOut[k].length; i++) {
+                if (!Objects.equals(chunkOut[k][i], expected[k * BATCH + i])) mismatches++;
+            }
+        }
+        return mismatches;
+    }
+
+    private static double ratio(long a, long b) {
+        return b == 0 ? 0 : (double) a / b;
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.classifierapi.core;
+
+import java.util.Arrays;
+
+/**
+ * KLL streaming quantile sketch over floats (Karnin, Lang, Liberty 2016).
+ *
+ * Items enter level 0; when the sketch is over capacity, the lowest full level is sorted
+ * and every other item (random offset) moves up a level with twice the weight. Level
+ * capacities shrink geometrically (factor 2/3) going down, so memory stays O(k) however
+ * many items are added, with rank error around 1.7/k. reset() keeps the buffers, so one
+ * sketch can be reused for every feature of every node.
+ */
+final class KllSketch {
+    private static final double DECAY = 2.0 / 3.0;
+
+    private final int k;
+    private float[][] levels = new float[1][];
+    private int[] sizes = new int[1];
+    private int numLevels = 1;
+    private long count;
+    private long rng = 0x9E3779B97F4A7C15L;   // fixed seed: same input, same sketch
+
+    private long[] packed = new long[0];   // scratch for quantiles()
+
+    KllSketch(int k) {
+        if (k < 8) throw new IllegalArgumentException("k must be >= 8");
+        this.k = k;
+        levels[0] = new float[8];   // buffers grow on demand; most features see few values
+    }
+
+    void reset() {
+        Arrays.fill(sizes, 0);
+        numLevels = 1;
+        count = 0;
+    }
+
+    boolean isEmpty() {
+        return count == 0;
+    }
+
+    void update(float v) {
+        if (sizes[0] == levels[0].length) levels[0] = Arrays.copyOf(levels[0], levels[0].length * 2);
+        levels[0][sizes[0]++] = v;
+        count++;
+        if (retained() > totalCapacity()) compress();
+    }
+
+    // v repeated 'weight' times, in O(log weight): one copy of v at every level h whose
+    // bit is set in weight, where an item stands for 2^h
+    void update(float v, int weight) {
+        if (weight == 1) {
+            update(v);
+            return;
+        }
+        for (int h = 0; weight >>> h != 0; h++) {
+            if ((weight >>> h & 1) == 0) continue;
+            while (h >= numLevels) addLevel();
+            if (sizes[h] == levels[h].length) levels[h] = Arrays.copyOf(levels[h], levels[h].length * 2);
+            levels[h][sizes[h]++] = v;
+        }
+        count += weight;
+        while (retained() > totalCapacity() && compress()) { }
+    }
+
+    // Writes up to 'want' distinct values at evenly spaced ranks (1/want .. (want-1)/want
+    // plus the minimum) into out[off..] in ascending order; returns how many were written
+    int quantiles(float[] out, int off, int want) {
+        int m = 0;
+        for (int h = 0; h < numLevels; h++) m += sizes[h];
+        if (m == 0) return 0;
+        if (packed.length < m) packed = new long[m];
+        // Pack (value, level) pairs so one sort orders them by value
+        int p = 0;
+        for (int h = 0; h < numLevels; h++) {
+            for (int i = 0; i < sizes[h]; i++) {
+                packed[p++] = ((long) Float.floatToRawIntBits(levels[h][i]) << 32) | h;
+            }
+        }
+        Arrays.sort(packed, 0, m);   // values are >= 0, so float bits sort in value order
+        long total = 0;
+        for (int i = 0; i < m; i++) total += weight(packed[i]);
+
+        int n = 0;
+        out[off + n++] = value(packed[0]);
+        long cum = 0;
+        int i = 0;
+        for (int j = 1; j < want; j++) {
+            long rank = total * j / want;
+            while (i < m - 1 && cum + weight(packed[i]) <= rank) cum += weight(packed[i++]);
+            float v = value(packed[i]);
+            if (v > out[off + n - 1]) out[off + n++] = v;
+        }
+        return n;
+    }
+
+    private static float value(long packed) {
+        return Float.intBitsToFloat((int) (packed >>> 32));
+    }
+
+    private static long weight(long packed) {
+        return 1L << (int) packed;
+    }
+
+    private int capacity(int h) {
+        return Math.max(2, (int) Math.ceil(k * Math.pow(DECAY, numLevels - 1 - h)));
+    }
+
+    private int totalCapacity() {
+        int c = 0;
+        for (int h = 0; h < numLevels; h++) c += capacity(h);
+        return c;
+    }
+
+    private int retained() {
+        int r = 0;
+        for (int h = 0; h < numLevels; h++) r += sizes[h];
+        return r;
+    }
+
+    // Halves the lowest full level; false if no level is full
+    private boolean compress() {
+        for (int h = 0; h < numLevels; h++) {
+            if (sizes[h] < capacity(h)) continue;
+            if (h + 1 == numLevels) addLevel();
+            float[] level = levels[h];
+            int size = sizes[h];
+            Arrays.sort(level, 0, size);
+            // An odd item out stays behind; the rest halve into the level above
+            int keep = size & 1;
+            int offset = nextBit();
+            float[] up = levels[h + 1];
+            int upSize = sizes[h + 1];
+            int promoted = (size - keep) / 2;
+            if (upSize + promoted > up.length) {
+                up = levels[h + 1] = Arrays.copyOf(up, Math.max(upSize + promoted, up.length * 2));
+            }
+            for (int i = keep + offset; i < size; i += 2) up[upSize++] = level[i];
+            sizes[h + 1] = upSize;
+            sizes[h] = keep;
+            return true;
+        }
+        return false;
+    }
+
+    private void addLevel() {
+        numLevels++;
+        if (numLevels > levels.length) {
+            levels = Arrays.copyOf(levels, numLevels);
+            sizes = Arrays.copyOf(sizes, numLevels);
+        }
+        if (levels[numLevels - 1] == null) levels[numLevels - 1] = new float[8];
+    }
+
+    private int nextBit() {
+        rng ^= rng << 13;
+        rng ^= rng >>> 7;
+        rng ^= rng << 17;
+        return (int) (rng & 1);
+    }
+}
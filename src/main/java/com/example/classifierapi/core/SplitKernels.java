@@ -0,0 +1,113 @@
+package com.example.classifierapi.core;
+
+import java.util.Arrays;
+
+/**
+ * Inner loops of the approximate (binned) split search: locating a value's bin, and
+ * scoring every candidate threshold of a feature from its label histogram.
+ *
+ * Scalar is the default. VectorSplitKernels does the same work with jdk.incubator.vector
+ * and is only used when that module is in the boot layer (--add-modules
+ * jdk.incubator.vector); otherwise create() falls back to scalar. Both keep counts and
+ * sums of squares in exact long arithmetic and evaluate each gain with the same IEEE
+ * operations in the same order, so they produce bit-identical gains and therefore the
+ * same splits. Instances hold scratch space and belong to one training run.
+ *
+ * Histograms are label-major: for a feature with t thresholds starting at h, label c's
+ * count in bin b is hist[h + c * (t + 1) + b]. Bin 0 holds the rows where the feature is
+ * zero, bin b >= 1 the values in [thresholds[b - 1], thresholds[b]).
+ */
+abstract class SplitKernels {
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static volatile boolean warned;
+
+    // Index of the bin holding v: how many of thresholds[off, off + t) are <= v
+    abstract int bin(float[] thresholds, int off, int t, float v);
+
+    // For each candidate b in [0, t), splitting after bin b: the rows left of it into
+    // nLeft[b] and the Gini gain into gain[b], or NEGATIVE_INFINITY when either side
+    // would have fewer than minLeaf rows
+    abstract void gains(int[] hist, int h, int t, int[] counts, int n, double nodeGini, int minLeaf,
+                        long[] nLeft, double[] gain);
+
+    static boolean vectorAvailable() {
+        return ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent();
+    }
+
+    // The SIMD kernels when asked for and available, else scalar. The vector class is
+    // loaded reflectively so nothing links against the incubator module without it.
+    static SplitKernels create(boolean vector) {
+        if (vector) {
+            if (vectorAvailable()) {
+                try {
+                    return (SplitKernels) Class.forName(SplitKernels.class.getPackageName() + ".VectorSplitKernels")
+                        .getDeclaredConstructor().newInstance();
+                } catch (ReflectiveOperationException | LinkageError e) {
+                    warnOnce("vector split kernels unavailable (" + e + "); using scalar");
+                }
+            } else {
+                warnOnce(VECTOR_MODULE + " is not enabled (--add-modules " + VECTOR_MODULE + "); using scalar split kernels");
+            }
+        }
+        return new Scalar();
+    }
+
+    private static void warnOnce(String message) {
+        if (warned) return;
+        warned = true;
+        System.err.println(message);
+    }
+
+    // Thresholds [from, t) one at a time; left[c] holds label c's rows in bins before
+    // 'from' and is advanced in place
+    static void gainsFrom(int from, int[] hist, int h, int t, int[] counts, int n, double nodeGini,
+                          int minLeaf, long[] left, long[] nLeft, double[] gain) {
+        int labels = counts.length;
+        for (int b = from; b < t; b++) {
+            long nl = 0, leftSq = 0, rightSq = 0;
+            for (int c = 0; c < labels; c++) {
+                long l = left[c] += hist[h + c * (t + 1) + b];
+                long r = counts[c] - l;
+                nl += l;
+                leftSq += l * l;
+                rightSq += r * r;
+            }
+            long nr = n - nl;
+            nLeft[b] = nl;
+            gain[b] = nl < minLeaf || nr < minLeaf
+                ? Double.NEGATIVE_INFINITY
+                : gain(nodeGini, n, nl, leftSq, nr, rightSq);
+        }
+    }
+
+    // The gain formula both backends follow operation for operation:
+    // nodeGini - (nl / n) * gini(left) - (nr / n) * gini(right), gini = 1 - sq / (m * m)
+    static double gain(double nodeGini, int n, long nl, long leftSq, long nr, long rightSq) {
+        return nodeGini - ((double) nl / n) * (1.0 - (double) leftSq / ((double) nl * nl))
+                        - ((double) nr / n) * (1.0 - (double) rightSq / ((double) nr * nr));
+    }
+
+    static final class Scalar extends SplitKernels {
+        private long[] left = new long[0];
+
+        @Override
+        int bin(float[] thresholds, int off, int t, float v) {
+            int lo = 0, hi = t;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (thresholds[off + mid] <= v) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+
+        @Override
+        void gains(int[] hist, int h, int t, int[] counts, int n, double nodeGini, int minLeaf,
+                   long[] nLeft, double[] gain) {
+            int labels = counts.length;
+            if (left.length < labels) left = new long[labels];
+            Arrays.fill(left, 0, labels, 0);
+            gainsFrom(0, hist, h, t, counts, n, nodeGini, minLeaf, left, nLeft, gain);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.classifierapi.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Successive-halving hyperparameter search over one parsed TrainingMatrix.
+ *
+ * Rows are split once (stratified by label) into a validation set and a shuffled training
+ * order. Round k trains every surviving candidate on the first budget(k) rows of that order
+ * and keeps the best 1/eta by validation accuracy; budgets grow by eta per round so the
+ * last round uses every training row. All candidates read the same matrix; each only owns
+ * its own index array and tree. In a matrix with collapsed duplicates a row is one distinct
+ * document: its copies stay on the same side of the split, and validation accuracy counts
+ * each row by its weight.
+ */
+public final class SuccessiveHalving {
+    // Smallest subsample worth scoring a candidate on
+    private static final int MIN_ROWS = 50;
+
+    public record Trial(int candidate, TrainingOptions options, int rows, double accuracy,
+                        int nodes, long millis) {}
+    public record Round(int rows, List<Trial> trials) {}
+    public record Result(TrainingOptions best, double bestAccuracy, int candidates,
+                         int trainRows, int validationRows, List<Round> rounds,
+                         long trainedRows, long fullGridRows, long elapsedMillis) {}
+
+    private final TrainingMatrix data;
+    private final int eta;
+    private final int[] trainOrder;
+    private final int[] validation;
+
+    public SuccessiveHalving(TrainingMatrix data, int eta, double validationFraction, long seed) {
+        if (eta < 2) throw new IllegalArgumentException("eta must be >= 2");
+        if (!(validationFraction > 0 && validationFraction < 1)) {
+            throw new IllegalArgumentException("validation fraction must be in (0, 1)");
+        }
+        this.data = data;
+        this.eta = eta;
+
+        // Stratified split: shuffle each label's rows and hold out the same fraction of each
+        int[][] byLabel = new int[data.labelCount()][];
+        int[] counts = new int[data.labelCount()];
+        for (int r = 0; r < data.rows(); r++) counts[data.label(r)]++;
+        for (int c = 0; c < counts.length; c++) byLabel[c] = new int[counts[c]];
+        Arrays.fill(counts, 0);
+        for (int r = 0; r < data.rows(); r++) byLabel[data.label(r)][counts[data.label(r)]++] = r;
+
+        Random rnd = new Random(seed);
+        int[] train = new int[data.rows()];
+        int[] valid = new int[data.rows()];
+        int nTrain = 0, nValid = 0;
+        for (int[] rows : byLabel) {
+            shuffle(rows, rnd);
+            int hold = (int) Math.round(rows.length * validationFraction);
+            if (hold == rows.length && rows.length > 1) hold--;   // keep every label trainable
+            System.arraycopy(rows, 0, valid, nValid, hold);
+            System.arraycopy(rows, hold, train, nTrain, rows.length - hold);
+            nValid += hold;
+            nTrain += rows.length - hold;
+        }
+        if (nTrain == 0 || nValid == 0) throw new IllegalArgumentException("too few rows to tune on");
+        this.trainOrder = Arrays.copyOf(train, nTrain);
+        shuffle(trainOrder, rnd);   // prefixes of it are the per-round subsamples
+        this.validation = Arrays.copyOf(valid, nValid);
+    }
+
+    // Cartesian product of the hyperparameter lists over a base (growth and budgets)
+    public static List<TrainingOptions> grid(TrainingOptions base, int[] maxDepth, int[] minSamplesSplit,
+                                             int[] minSamplesLeaf, double[] minGain) {
+        List<TrainingOptions> out = new ArrayList<>();
+        for (int d : maxDepth)
+            for (int s : minSamplesSplit)
+                for (int l : minSamplesLeaf)
+                    for (double g : minGain)
+                        out.add(base.withHyperparameters(d, s, l, g));
+        return out;
+    }
+
+    // Runs the search with at most 'parallelism' candidates training at once: the calling
+    // thread's plus up to parallelism - 1 on 'executor' (fewer if it rejects them)
+    public Result run(List<TrainingOptions> candidates, Executor executor, int parallelism) {
+        if (candidates.isEmpty()) throw new IllegalArgumentException("empty parameter grid");
+        long start = System.nanoTime();
+        int rounds = 1;
+        for (long n = candidates.size(); n > 1; n = (n + eta - 1) / eta) rounds++;
+
+        List<Integer> survivors = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) survivors.add(i);
+        List<Round> history = new ArrayList<>();
+        long trainedRows = 0;
+        Trial best = null;
+        for (int k = 0; k < rounds; k++) {
+            double scale = Math.pow(eta, rounds - 1 - k);
+            int rows = (int) Math.min(trainOrder.length,
+                                      Math.max(Math.min(MIN_ROWS, trainOrder.length), trainOrder.length / scale));
+            List<Trial> trials = evaluate(survivors, candidates, rows, executor, parallelism);
+            trials.sort(BY_SCORE);
+            history.add(new Round(rows, trials));
+            trainedRows += (long) rows * trials.size();
+            best = trials.get(0);
+            if (k == rounds - 1) break;
+            int keep = Math.max(1, (trials.size() + eta - 1) / eta);
+            survivors = new ArrayList<>();
+            for (int i = 0; i < keep; i++) survivors.add(trials.get(i).candidate());
+        }
+        return new Result(best.options(), best.accuracy(), candidates.size(),
+                          trainOrder.length, validation.length, history, trainedRows,
+                          (long) trainOrder.length * candidates.size(),
+                          (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // Higher accuracy first, then smaller trees, then grid order
+    private static final Comparator<Trial> BY_SCORE = Comparator
+        .comparingDouble((Trial t) -> -t.accuracy())
+        .thenComparingInt(Trial::nodes)
+        .thenComparingInt(Trial::candidate);
+
+    // A fixed number of workers pull candidates off a shared counter, so a large grid never
+    // queues more tasks than the pool has threads. As in CsvParser.parallel, the calling
+    // thread is one of them and only waits for candidates that were claimed: a worker still
+    // queued behind other work (or rejected) finds nothing left, so a caller that is itself
+    // a pool thread never waits on the pool, whatever its size.
+    private List<Trial> evaluate(List<Integer> ids, List<TrainingOptions> candidates, int rows,
+                                 Executor executor, int parallelism) {
+        int n = ids.size();
+        Trial[] out = new Trial[n];
+        AtomicInteger next = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(n);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        int[] subsample = Arrays.copyOf(trainOrder, rows);
+        Runnable worker = () -> {
+            for (int i; (i = next.getAndIncrement()) < n; ) {
+                try {
+                    if (failure.get() == null) out[i] = train(ids.get(i), candidates.get(ids.get(i)), subsample);
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            }
+        };
+        for (int w = 1; w < Math.min(parallelism, n); w++) {
+            try {
+                executor.execute(worker);
+            } catch (RejectedExecutionException e) {
+                break;   // pool saturated: the threads already going take the rest
+            }
+        }
+        worker.run();
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            failure.compareAndSet(null, e);   // stops the other workers at their next candidate
+            Thread.currentThread().interrupt();
+            throw new CancellationException("tuning interrupted");
+        }
+        Throwable e = failure.get();
+        if (e instanceof RuntimeException re) throw re;
+        if (e instanceof Error err) throw err;
+        return new ArrayList<>(Arrays.asList(out));
+    }
+
+    private Trial train(int id, TrainingOptions options, int[] rows) {
+        long t0 = System.nanoTime();
+        ImprovedClassifier model = new ImprovedClassifier(data, rows, null, options);
+        long correct = 0, total = 0;
+        for (int r : validation) {
+            total += data.weight(r);
+            if (data.labelName(data.label(r)).equals(model.classify(data, r))) correct += data.weight(r);
+        }
+        return new Trial(id, options, rows.length, (double) correct / total,
+                         model.nodeCount(), (System.nanoTime() - t0) / 1_000_000);
+    }
+
+    private static void shuffle(int[] a, Random rnd) {
+        for (int i = a.length - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            int t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+    }
+}
@@ -6,6 +6,9 @@ import java.util.*;
 public class TextBlock {
     private Map<String, Integer> wordCounts;
     private double totalWords;
+    // Sorted view for findBiggestDifference, built on first use
+    private String[] sortedWords;
+    private double[] sortedProbs;
 
     // Constructs a new TextBlock from the provided content String
     public TextBlock(String content) {
@@ -38,6 +41,14 @@ public class TextBlock {
         return 0;
     }
     
+    // Raw count behind get(): occurrences of 'word' (0 if absent), and the token total
+    int count(String word) {
+        Integer c = wordCounts.get(word);
+        return c == null ? 0 : c;
+    }
+
+    int total() { return (int) totalWords; }
+
     // Returns a Set of all valid features for this TextBlock.
     public Set<String> getFeatures() { return wordCounts.keySet(); }
 
@@ -47,16 +58,33 @@ public class TextBlock {
     // Returns a feature that has the greatest difference in word probability between this
     // instance and provided 'other'
     public String findBiggestDifference(TextBlock other) {
-        // Find the word with the largest probability difference between this and other
-        Set<String> allWords = new HashSet<>(this.wordCounts.keySet());
-        allWords.addAll(other.wordCounts.keySet());
-
+        // Merge the two sorted word arrays; words present on only one side differ by
+        // their full probability. No per-call set of the combined vocabulary.
+        this.buildSorted();
+        other.buildSorted();
+        String[] a = this.sortedWords, b = other.sortedWords;
+        double[] pa = this.sortedProbs, pb = other.sortedProbs;
+        int i = 0, j = 0;
         String bestWord = null;
         double highestDiff = 0;
-        for (String word : allWords) {
-            double diff = (this.containsFeature(word) ? this.get(word) : 0) - 
-                          (other.containsFeature(word) ? other.get(word) : 0);
-            diff = Math.abs(diff);
+        while (i < a.length || j < b.length) {
+            int cmp = i == a.length ? 1 : j == b.length ? -1 : a[i].compareTo(b[j]);
+            String word;
+            double diff;
+            if (cmp < 0) {
+                word = a[i];
+                diff = pa[i];
+                i++;
+            } else if (cmp > 0) {
+                word = b[j];
+                diff = pb[j];
+                j++;
+            } else {
+                word = a[i];
+                diff = Math.abs(pa[i] - pb[j]);
+                i++;
+                j++;
+            }
             if (diff > highestDiff) {
                 bestWord = word;
                 highestDiff = diff;
@@ -65,4 +93,19 @@ public class TextBlock {
 
         return bestWord;
     }
+
+    // Builds (once) this TextBlock's words in sorted order with their probabilities
+    private void buildSorted() {
+        if (sortedWords != null) {
+            return;
+        }
+        String[] words = wordCounts.keySet().toArray(new String[0]);
+        Arrays.sort(words);
+        double[] probs = new double[words.length];
+        for (int i = 0; i < words.length; i++) {
+            probs[i] = wordCounts.get(words[i]) / totalWords;
+        }
+        sortedProbs = probs;
+        sortedWords = words;
+    }
 }
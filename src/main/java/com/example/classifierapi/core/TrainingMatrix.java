@@ -0,0 +1,495 @@
+package com.example.classifierapi.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Training set in compressed sparse row (CSR) form.
+ *
+ * Row r's non-zero features are featureIds[rowPtr[r] .. rowPtr[r+1]), sorted ascending,
+ * with their term frequencies (count / total words, as in TextBlock.get) in values[].
+ * Labels are dense codes into labelNames. Everything is primitive, so a training set
+ * costs roughly 8 bytes per non-zero instead of one HashMap per document.
+ *
+ * The columns are buffers: wrapped heap arrays normally, or memory-mapped files for a
+ * matrix spilled to disk (Builder with a spill directory), which also carries the same
+ * entries feature-major: feature f's rows, ascending, with their values, are
+ * postingRow/postingValue over [postingStart(f), postingEnd(f)).
+ *
+ * A Builder told to collapse duplicates keeps one row per distinct (features, values,
+ * label) and counts the copies in weight(row). Training treats a row of weight w exactly
+ * like w identical rows, so exact search grows the same tree at a fraction of the rows.
+ * Binned search does too until a feature's quantile sketch has to compact, after which
+ * its candidate thresholds agree only within the sketch's rank error; subsampled nodes
+ * draw distinct rows, so their samples differ.
+ */
+public final class TrainingMatrix {
+    private final IntBuffer rowPtr;
+    private final IntBuffer featureIds;
+    private final FloatBuffer values;
+    private final ShortBuffer labels;
+    private final IntBuffer colPtr;          // posting lists; null unless spilled
+    private final IntBuffer postingRows;
+    private final FloatBuffer postingValues;
+    private final int[] weights;              // copies of each row; null when every row counts once
+    private final long totalWeight;
+    private final String[] featureNames;
+    private final String[] labelNames;
+    private final int hashBits;       // > 0 when features are FeatureHasher buckets
+
+    private TrainingMatrix(int[] rowPtr, int[] featureIds, float[] values, short[] labels, int[] weights,
+                           String[] featureNames, String[] labelNames, int hashBits) {
+        this(IntBuffer.wrap(rowPtr), IntBuffer.wrap(featureIds), FloatBuffer.wrap(values), ShortBuffer.wrap(labels),
+             null, null, null, weights, featureNames, labelNames, hashBits);
+    }
+
+    private TrainingMatrix(IntBuffer rowPtr, IntBuffer featureIds, FloatBuffer values, ShortBuffer labels,
+                           IntBuffer colPtr, IntBuffer postingRows, FloatBuffer postingValues, int[] weights,
+                           String[] featureNames, String[] labelNames, int hashBits) {
+        long total = labels.capacity();
+        if (weights != null) {
+            total = 0;
+            for (int w : weights) total += w;
+            if (total > Integer.MAX_VALUE) throw new IllegalArgumentException("too many rows");
+        }
+        this.weights = weights;
+        this.totalWeight = total;
+        this.hashBits = hashBits;
+        this.rowPtr = rowPtr;
+        this.featureIds = featureIds;
+        this.values = values;
+        this.labels = labels;
+        this.colPtr = colPtr;
+        this.postingRows = postingRows;
+        this.postingValues = postingValues;
+        this.featureNames = featureNames;
+        this.labelNames = labelNames;
+    }
+
+    // Converts parallel TextBlock/label lists in one pass
+    public static TrainingMatrix of(List<TextBlock> data, List<String> labels) {
+        if (data.size() != labels.size()) throw new IllegalArgumentException("size mismatch");
+        Builder b = new Builder();
+        for (int i = 0; i < data.size(); i++) b.add(data.get(i), labels.get(i));
+        return b.build();
+    }
+
+    // Stacks matrices built independently (e.g. one per parallel CSV chunk) in order.
+    // Feature and label ids are reassigned by first appearance, so the result is the same
+    // matrix a single Builder fed every row in order would produce. When every part
+    // collapsed its duplicates, rows repeated across parts are collapsed too.
+    public static TrainingMatrix concat(List<TrainingMatrix> parts) {
+        if (parts.size() == 1) return parts.get(0);
+        int hashBits = parts.isEmpty() ? 0 : parts.get(0).hashBits;
+        for (TrainingMatrix m : parts) {
+            if (m.hashBits != hashBits) throw new IllegalArgumentException("mixed feature hashing");
+        }
+        Map<String, Integer> featureIndex = new HashMap<>();
+        Map<String, Integer> labelIndex = new HashMap<>();
+        List<String> featureNames = new ArrayList<>();
+        List<String> labelNames = new ArrayList<>();
+        int rows = 0;
+        long nnz = 0;
+        for (TrainingMatrix m : parts) {
+            rows += m.rows();
+            nnz += m.nonZeros();
+        }
+        if (nnz > Integer.MAX_VALUE) throw new IllegalArgumentException("too many non-zeros");
+        int[] rowPtr = new int[rows + 1];
+        int[] featureIds = new int[(int) nnz];
+        float[] values = new float[(int) nnz];
+        short[] labels = new short[rows];
+        boolean weighted = false, collapse = true;
+        for (TrainingMatrix m : parts) {
+            weighted |= m.weights != null;
+            collapse &= m.weights != null;
+        }
+        int[] weights = weighted ? new int[rows] : null;
+        RowIndex distinct = collapse ? new RowIndex() : null;
+        long[] scratch = new long[64];
+        int r = 0, k = 0;
+        for (TrainingMatrix m : parts) {
+            int[] fmap = new int[m.features()];
+            for (int f = 0; f < fmap.length; f++) {
+                fmap[f] = featureIndex.computeIfAbsent(m.featureNames[f], name -> {
+                    featureNames.add(name);
+                    return featureNames.size() - 1;
+                });
+            }
+            short[] lmap = new short[m.labelCount()];
+            for (int c = 0; c < lmap.length; c++) {
+                int id = labelIndex.computeIfAbsent(m.labelNames[c], name -> {
+                    labelNames.add(name);
+                    return labelNames.size() - 1;
+                });
+                if (id > Short.MAX_VALUE) throw new IllegalArgumentException("too many distinct labels");
+                lmap[c] = (short) id;
+            }
+            for (int row = 0; row < m.rows(); row++) {
+                int from = m.rowStart(row), len = m.rowEnd(row) - from;
+                if (len > scratch.length) scratch = new long[Math.max(len, scratch.length * 2)];
+                // remapped ids are no longer in order; re-sort the row
+                for (int j = 0; j < len; j++) {
+                    scratch[j] = ((long) fmap[m.featureAt(from + j)] << 32)
+                        | (Float.floatToRawIntBits(m.valueAt(from + j)) & 0xffffffffL);
+                }
+                Arrays.sort(scratch, 0, len);
+                int start = k;
+                for (int j = 0; j < len; j++) {
+                    featureIds[k] = (int) (scratch[j] >>> 32);
+                    values[k] = Float.intBitsToFloat((int) scratch[j]);
+                    k++;
+                }
+                labels[r] = lmap[m.label(row)];
+                if (distinct != null) {
+                    int same = distinct.findOrAdd(r, rowPtr, featureIds, values, labels, start, k);
+                    if (same >= 0) {
+                        weights[same] += m.weight(row);
+                        k = start;
+                        continue;
+                    }
+                }
+                if (weights != null) weights[r] = m.weight(row);
+                r++;
+                rowPtr[r] = k;
+            }
+        }
+        if (r < rows) {
+            rowPtr = Arrays.copyOf(rowPtr, r + 1);
+            featureIds = Arrays.copyOf(featureIds, k);
+            values = Arrays.copyOf(values, k);
+            labels = Arrays.copyOf(labels, r);
+            weights = Arrays.copyOf(weights, r);
+        }
+        return new TrainingMatrix(rowPtr, featureIds, values, labels, weights,
+            featureNames.toArray(new String[0]), labelNames.toArray(new String[0]), hashBits);
+    }
+
+    public int rows() { return labels.capacity(); }
+    public int features() { return featureNames.length; }
+    public int labelCount() { return labelNames.length; }
+    public long nonZeros() { return rowPtr.get(rowPtr.capacity() - 1); }
+    public int hashBits() { return hashBits; }
+
+    public int rowStart(int row) { return rowPtr.get(row); }
+    public int rowEnd(int row) { return rowPtr.get(row + 1); }
+    public int featureAt(int k) { return featureIds.get(k); }
+    public float valueAt(int k) { return values.get(k); }
+
+    // Term frequency of 'feature' in 'row', 0 if absent (binary search over the sorted row)
+    public float value(int row, int feature) {
+        int lo = rowPtr.get(row), hi = rowPtr.get(row + 1) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int f = featureIds.get(mid);
+            if (f < feature) lo = mid + 1;
+            else if (f > feature) hi = mid - 1;
+            else return values.get(mid);
+        }
+        return 0f;
+    }
+
+    public int label(int row) { return labels.get(row); }
+
+    // Copies of 'row' in the input; 1 unless duplicates were collapsed
+    public int weight(int row) { return weights == null ? 1 : weights[row]; }
+    public boolean isWeighted() { return weights != null; }
+    // Input rows represented, duplicates included: the sum of weight(row)
+    public int totalWeight() { return (int) totalWeight; }
+    public String labelName(int code) { return labelNames[code]; }
+    public String featureName(int feature) { return featureNames[feature]; }
+
+    // True when the columns are memory-mapped spill files rather than heap arrays
+    public boolean isSpilled() { return colPtr != null; }
+
+    // Feature-major access; only spilled matrices have posting lists
+    public boolean hasPostings() { return colPtr != null; }
+    public int postingStart(int feature) { return colPtr.get(feature); }
+    public int postingEnd(int feature) { return colPtr.get(feature + 1); }
+    public int postingRow(int k) { return postingRows.get(k); }
+    public float postingValue(int k) { return postingValues.get(k); }
+
+    // Approximate footprint of the columns, for logging (on disk when spilled)
+    public long estimatedBytes() {
+        return 4L * rowPtr.capacity() + (isSpilled() ? 16L : 8L) * nonZeros() + 2L * labels.capacity()
+            + (weights == null ? 0 : 4L * weights.length);
+    }
+
+    // Binary form of an in-heap matrix, read back by read(); lets a parsed data set outlive
+    // the process (DatasetCache's disk tier). Spilled matrices are views of unlinked files
+    // and are not written.
+    private static final int FORMAT = 0x544d0001;   // "TM", version 1
+
+    public void write(DataOutput out) throws IOException {
+        if (isSpilled()) throw new IllegalStateException("spilled matrices are not written");
+        out.writeInt(FORMAT);
+        out.writeInt(hashBits);
+        out.writeInt(featureNames.length);
+        for (String f : featureNames) out.writeUTF(f);
+        out.writeInt(labelNames.length);
+        for (String l : labelNames) out.writeUTF(l);
+        int rows = rows(), nnz = (int) nonZeros();
+        out.writeInt(rows);
+        out.writeInt(nnz);
+        out.writeBoolean(weights != null);
+        for (int r = 0; r <= rows; r++) out.writeInt(rowPtr.get(r));
+        for (int k = 0; k < nnz; k++) out.writeInt(featureIds.get(k));
+        for (int k = 0; k < nnz; k++) out.writeFloat(values.get(k));
+        for (int r = 0; r < rows; r++) out.writeShort(labels.get(r));
+        if (weights != null) for (int w : weights) out.writeInt(w);
+    }
+
+    public static TrainingMatrix read(DataInput in) throws IOException {
+        if (in.readInt() != FORMAT) throw new IOException("not a training matrix");
+        int hashBits = in.readInt();
+        String[] featureNames = new String[in.readInt()];
+        for (int f = 0; f < featureNames.length; f++) featureNames[f] = in.readUTF();
+        String[] labelNames = new String[in.readInt()];
+        for (int c = 0; c < labelNames.length; c++) labelNames[c] = in.readUTF();
+        int rows = in.readInt(), nnz = in.readInt();
+        boolean weighted = in.readBoolean();
+        int[] rowPtr = new int[rows + 1];
+        int[] featureIds = new int[nnz];
+        float[] values = new float[nnz];
+        short[] labels = new short[rows];
+        for (int r = 0; r <= rows; r++) rowPtr[r] = in.readInt();
+        for (int k = 0; k < nnz; k++) featureIds[k] = in.readInt();
+        for (int k = 0; k < nnz; k++) values[k] = in.readFloat();
+        for (int r = 0; r < rows; r++) labels[r] = in.readShort();
+        int[] weights = weighted ? new int[rows] : null;
+        if (weighted) for (int r = 0; r < rows; r++) weights[r] = in.readInt();
+        if (rowPtr[rows] != nnz) throw new IOException("corrupt training matrix");
+        return new TrainingMatrix(rowPtr, featureIds, values, labels, weights, featureNames, labelNames, hashBits);
+    }
+
+    // Heap a matrix with this many rows and non-zeros needs while it is built in memory: the
+    // builders' doubling arrays, the final copy, and the trainer's per-row scratch
+    public static long inHeapBytes(long rows, long nonZeros) {
+        return 24L * nonZeros + 36L * rows;
+    }
+
+    // Heap the same matrix needs when spilled: the trainer's per-row scratch only
+    public static long spilledHeapBytes(long rows) {
+        return 24L * rows;
+    }
+
+    // Accumulates rows one at a time, so callers can stream a CSV into it without
+    // keeping the TextBlocks around. With a spill directory, rows go straight to column
+    // files there instead of heap arrays, and build() returns a memory-mapped matrix.
+    public static final class Builder {
+        private final Map<String, Integer> featureIndex = new HashMap<>();
+        private final Map<String, Integer> labelIndex = new HashMap<>();
+        private String[] featureNames = new String[1024];
+        private String[] labelNames = new String[8];
+        private int[] rowPtr = new int[1025];
+        private int[] featureIds = new int[8192];
+        private float[] values = new float[8192];
+        private short[] labels = new short[1024];
+        private int rows = 0;
+        private int nnz = 0;
+        private long[] scratch = new long[64];
+        private final int hashBits;
+        private final ColumnStore spill;
+        private RowIndex distinct;    // set when collapsing duplicates
+        private int[] weights;
+        private int added = 0;        // rows added, duplicates included
+
+        public Builder() {
+            this(0);
+        }
+
+        // For rows tokenized with TextBlockFactory.fromRaw(text, hashBits); recorded on the
+        // matrix so the trained model hashes inputs the same way
+        public Builder(int hashBits) {
+            this(hashBits, null);
+        }
+
+        public Builder(int hashBits, Path spillDir) {
+            if (hashBits != 0) FeatureHasher.checkBits(hashBits);
+            this.hashBits = hashBits;
+            this.spill = spillDir != null ? new ColumnStore(spillDir) : null;
+        }
+
+        // Collapses rows identical to an earlier one (same features, values and label) into
+        // that row's weight. Spilling builders keep every row: matching a row against the ones
+        // already written would need an index of them on the heap, which spilling avoids.
+        public Builder collapseDuplicates(boolean collapse) {
+            if (rows > 0) throw new IllegalStateException("set before adding rows");
+            boolean on = collapse && spill == null;
+            distinct = on ? new RowIndex() : null;
+            weights = on ? new int[labels.length] : null;
+            return this;
+        }
+
+        public Builder add(TextBlock tb, String label) {
+            if (tb == null || label == null) throw new IllegalArgumentException("null row");
+            // Pack (featureId, value bits) so one primitive sort orders the row by feature id
+            int k = 0;
+            for (String word : tb.getFeatures()) {
+                if (k == scratch.length) scratch = Arrays.copyOf(scratch, k * 2);
+                int id = featureId(word);
+                float v = (float) tb.get(word);
+                scratch[k++] = ((long) id << 32) | (Float.floatToRawIntBits(v) & 0xffffffffL);
+            }
+            Arrays.sort(scratch, 0, k);
+            added++;
+            if (spill != null) {
+                spill.addRow(scratch, k, (short) labelId(label));
+                rows++;
+                return this;
+            }
+            if (nnz + k > featureIds.length) {
+                int cap = Math.max(nnz + k, featureIds.length * 2);
+                featureIds = Arrays.copyOf(featureIds, cap);
+                values = Arrays.copyOf(values, cap);
+            }
+            int start = nnz;
+            for (int i = 0; i < k; i++) {
+                featureIds[nnz] = (int) (scratch[i] >>> 32);
+                values[nnz] = Float.intBitsToFloat((int) scratch[i]);
+                nnz++;
+            }
+            if (rows + 2 > rowPtr.length) rowPtr = Arrays.copyOf(rowPtr, rowPtr.length * 2);
+            if (rows == labels.length) labels = Arrays.copyOf(labels, rows * 2);
+            labels[rows] = (short) labelId(label);
+            if (distinct != null) {
+                // Written like a new row first, so it can be compared in place; a duplicate
+                // is then taken back off the arrays
+                int same = distinct.findOrAdd(rows, rowPtr, featureIds, values, labels, start, nnz);
+                if (same >= 0) {
+                    weights[same]++;
+                    nnz = start;
+                    return this;
+                }
+                if (rows == weights.length) weights = Arrays.copyOf(weights, rows * 2);
+                weights[rows] = 1;
+            }
+            rows++;
+            rowPtr[rows] = nnz;
+            return this;
+        }
+
+        // Distinct rows when collapsing duplicates, else every row added
+        public int rows() { return rows; }
+
+        // Rows added, duplicates included
+        public int added() { return added; }
+
+        public TrainingMatrix build() {
+            if (spill != null) {
+                ColumnStore.Mapped m = spill.finish(featureIndex.size());
+                return new TrainingMatrix(m.rowPtr(), m.featureIds(), m.values(), m.labels(),
+                    m.colPtr(), m.postingRows(), m.postingValues(), null,
+                    Arrays.copyOf(featureNames, featureIndex.size()),
+                    Arrays.copyOf(labelNames, labelIndex.size()),
+                    hashBits);
+            }
+            return new TrainingMatrix(
+                Arrays.copyOf(rowPtr, rows + 1),
+                Arrays.copyOf(featureIds, nnz),
+                Arrays.copyOf(values, nnz),
+                Arrays.copyOf(labels, rows),
+                weights == null ? null : Arrays.copyOf(weights, rows),
+                Arrays.copyOf(featureNames, featureIndex.size()),
+                Arrays.copyOf(labelNames, labelIndex.size()),
+                hashBits);
+        }
+
+        // Deletes the spill files of a builder that won't be built
+        public void discard() {
+            if (spill != null) spill.discard();
+        }
+
+        private int featureId(String word) {
+            Integer id = featureIndex.get(word);
+            if (id != null) return id;
+            int next = featureIndex.size();
+            if (next == featureNames.length) featureNames = Arrays.copyOf(featureNames, next * 2);
+            featureNames[next] = word;
+            featureIndex.put(word, next);
+            return next;
+        }
+
+        private int labelId(String label) {
+            Integer id = labelIndex.get(label);
+            if (id != null) return id;
+            int next = labelIndex.size();
+            if (next > Short.MAX_VALUE) throw new IllegalArgumentException("too many distinct labels");
+            if (next == labelNames.length) labelNames = Arrays.copyOf(labelNames, next * 2);
+            labelNames[next] = label;
+            labelIndex.put(label, next);
+            return next;
+        }
+    }
+
+    // Open-addressing set of the distinct rows of a matrix being built, keyed by a hash of
+    // their features, value bits and label; equal hashes are confirmed against the arrays
+    private static final class RowIndex {
+        private int[] slots = new int[1024];   // row + 1; 0 is empty
+        private int[] hashes = new int[512];   // per row, for rehashing
+        private int size;
+
+        // The earlier row equal to 'row' (its entries at [from, to) of the arrays, its label
+        // in labels[row]), or -1 after recording 'row' as new
+        int findOrAdd(int row, int[] rowPtr, int[] featureIds, float[] values, short[] labels, int from, int to) {
+            int h = labels[row];
+            for (int k = from; k < to; k++) {
+                h = 31 * h + featureIds[k];
+                h = 31 * h + Float.floatToRawIntBits(values[k]);
+            }
+            h ^= h >>> 16;
+            int mask = slots.length - 1;
+            for (int i = h & mask; slots[i] != 0; i = (i + 1) & mask) {
+                int r = slots[i] - 1;
+                if (hashes[r] == h && labels[r] == labels[row]
+                    && equal(featureIds, values, rowPtr[r], rowPtr[r + 1], from, to)) {
+                    return r;
+                }
+            }
+            if (row == hashes.length) hashes = Arrays.copyOf(hashes, row * 2);
+            hashes[row] = h;
+            if (2 * (size + 1) > slots.length) {
+                grow();
+                mask = slots.length - 1;
+            }
+            int i = h & mask;
+            while (slots[i] != 0) i = (i + 1) & mask;
+            slots[i] = row + 1;
+            size++;
+            return -1;
+        }
+
+        private static boolean equal(int[] featureIds, float[] values, int a, int aEnd, int b, int bEnd) {
+            if (aEnd - a != bEnd - b) return false;
+            for (; a < aEnd; a++, b++) {
+                if (featureIds[a] != featureIds[b]
+                    || Float.floatToRawIntBits(values[a]) != Float.floatToRawIntBits(values[b])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void grow() {
+            int[] old = slots;
+            slots = new int[old.length * 2];
+            int mask = slots.length - 1;
+            for (int e : old) {
+                if (e == 0) continue;
+                int i = hashes[e - 1] & mask;
+                while (slots[i] != 0) i = (i + 1) & mask;
+                slots[i] = e;
+            }
+        }
+    }
+}
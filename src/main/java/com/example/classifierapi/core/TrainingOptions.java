@@ -0,0 +1,77 @@
+package com.example.classifierapi.core;
+
+/**
+ * How an ImprovedClassifier grows its tree.
+ *
+ * DEPTH_FIRST is the classic recursive build. BEST_FIRST keeps a frontier of leaves and
+ * always expands the one whose split removes the most impurity; it stops after
+ * maxLeafNodes leaves or timeLimitMillis of wall-clock time, and whatever has been built
+ * by then is a complete tree. Setting either budget implies BEST_FIRST.
+ *
+ * @param maxLeafNodes    leaf budget, 0 for none
+ * @param timeLimitMillis wall-clock budget for growing the tree, 0 for none
+ * @param maxDepth        nodes at this depth become leaves (the root is depth 0); at most
+ *                        MAX_DEPTH_LIMIT
+ * @param minSamplesSplit nodes with fewer samples become leaves
+ * @param minSamplesLeaf  splits leaving fewer samples on either side are not considered
+ * @param minGain         splits removing less Gini impurity than this are not made
+ * @param approxBins      0 for exact split search; otherwise at most this many candidate
+ *                        thresholds per feature, taken from a quantile sketch
+ * @param subsampleAbove  0 to always score splits on every row; otherwise nodes with more
+ *                        rows score on a stratified sample of this size (the partition
+ *                        still uses every row)
+ * @param vectorSplits    score approximate-search thresholds with the Vector API kernels
+ *                        when jdk.incubator.vector is enabled; same splits, only faster
+ */
+public record TrainingOptions(Growth growth, int maxLeafNodes, long timeLimitMillis,
+                              int maxDepth, int minSamplesSplit, int minSamplesLeaf,
+                              double minGain, int approxBins, int subsampleAbove,
+                              boolean vectorSplits) {
+
+    public enum Growth { DEPTH_FIRST, BEST_FIRST }
+
+    public static final int DEFAULT_MAX_DEPTH = 12;
+    // Training, save/load and the tree JSON recurse once per level; this keeps them far
+    // from the thread stack's limit. Saved models deeper than this are rejected on load.
+    public static final int MAX_DEPTH_LIMIT = 256;
+    public static final int DEFAULT_MIN_SAMPLES_SPLIT = 2;
+    public static final int DEFAULT_MIN_SAMPLES_LEAF = 1;
+    public static final double DEFAULT_MIN_GAIN = 1e-3;
+
+    public static final TrainingOptions DEFAULTS = new TrainingOptions(Growth.DEPTH_FIRST, 0, 0);
+
+    public TrainingOptions {
+        if (growth == null) growth = Growth.DEPTH_FIRST;
+        if (maxLeafNodes < 0) throw new IllegalArgumentException("maxLeafNodes must be >= 0");
+        if (timeLimitMillis < 0) throw new IllegalArgumentException("timeLimitMillis must be >= 0");
+        if (maxDepth < 0 || maxDepth > MAX_DEPTH_LIMIT) {
+            throw new IllegalArgumentException("maxDepth must be between 0 and " + MAX_DEPTH_LIMIT);
+        }
+        if (minSamplesSplit < 2) throw new IllegalArgumentException("minSamplesSplit must be >= 2");
+        if (minSamplesLeaf < 1) throw new IllegalArgumentException("minSamplesLeaf must be >= 1");
+        if (!(minGain >= 0)) throw new IllegalArgumentException("minGain must be >= 0");
+        if (approxBins < 0 || approxBins == 1) throw new IllegalArgumentException("approxBins must be 0 or >= 2");
+        if (subsampleAbove < 0) throw new IllegalArgumentException("subsampleAbove must be >= 0");
+        if (subsampleAbove > 0 && subsampleAbove < minSamplesSplit) {
+            throw new IllegalArgumentException("subsampleAbove must be >= minSamplesSplit");
+        }
+        if (maxLeafNodes > 0 || timeLimitMillis > 0) growth = Growth.BEST_FIRST;
+    }
+
+    // Growth settings with the default hyperparameters and exact split search
+    public TrainingOptions(Growth growth, int maxLeafNodes, long timeLimitMillis) {
+        this(growth, maxLeafNodes, timeLimitMillis, DEFAULT_MAX_DEPTH, DEFAULT_MIN_SAMPLES_SPLIT,
+             DEFAULT_MIN_SAMPLES_LEAF, DEFAULT_MIN_GAIN, 0, 0, false);
+    }
+
+    public TrainingOptions withHyperparameters(int maxDepth, int minSamplesSplit, int minSamplesLeaf,
+                                               double minGain) {
+        return new TrainingOptions(growth, maxLeafNodes, timeLimitMillis,
+                                   maxDepth, minSamplesSplit, minSamplesLeaf, minGain,
+                                   approxBins, subsampleAbove, vectorSplits);
+    }
+
+    public boolean bestFirst() {
+        return growth == Growth.BEST_FIRST;
+    }
+}
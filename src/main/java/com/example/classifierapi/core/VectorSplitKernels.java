@@ -0,0 +1,94 @@
+package com.example.classifierapi.core;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.Arrays;
+
+/**
+ * SplitKernels on the Vector API, at the platform's preferred width (16 floats or 8 longs
+ * per operation with AVX-512). Only SplitKernels.create() loads this class, and only when
+ * jdk.incubator.vector is in the boot layer.
+ *
+ * bin() counts the thresholds <= v with one compare per vector of thresholds instead of a
+ * data-dependent binary search. gains() scores one vector of candidate thresholds at a
+ * time: each label's bin counts are widened to longs and prefix-summed in registers
+ * (log2(lanes) shift-and-add steps plus the total carried over from the previous vector),
+ * the sums of squares accumulate across labels, and the gains are the lane-wise
+ * equivalent of SplitKernels.gain, operation for operation. The last partial vector is
+ * left to the scalar loop.
+ */
+final class VectorSplitKernels extends SplitKernels {
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Double> DOUBLES = VectorSpecies.of(double.class, LONGS.vectorShape());
+    // As many int lanes as LONGS has long lanes, so one load widens to one long vector
+    private static final VectorSpecies<Integer> INTS =
+        VectorSpecies.of(int.class, VectorShape.forBitSize(LONGS.vectorBitSize() / 2));
+
+    private long[] carry = new long[0];
+
+    @Override
+    int bin(float[] thresholds, int off, int t, float v) {
+        FloatVector value = FloatVector.broadcast(FLOATS, v);
+        int count = 0;
+        int i = 0;
+        for (int bound = FLOATS.loopBound(t); i < bound; i += FLOATS.length()) {
+            count += FloatVector.fromArray(FLOATS, thresholds, off + i)
+                                .compare(VectorOperators.LE, value).trueCount();
+        }
+        for (; i < t; i++) {
+            if (thresholds[off + i] <= v) count++;
+        }
+        return count;
+    }
+
+    @Override
+    void gains(int[] hist, int h, int t, int[] counts, int n, double nodeGini, int minLeaf,
+               long[] nLeft, double[] gain) {
+        int labels = counts.length;
+        if (carry.length < labels) carry = new long[labels];
+        Arrays.fill(carry, 0, labels, 0);
+        int lanes = LONGS.length();
+        LongVector zero = LongVector.zero(LONGS);
+        LongVector rows = LongVector.broadcast(LONGS, n);
+        LongVector min = LongVector.broadcast(LONGS, minLeaf);
+        DoubleVector node = DoubleVector.broadcast(DOUBLES, nodeGini);
+        DoubleVector total = DoubleVector.broadcast(DOUBLES, n);
+        DoubleVector one = DoubleVector.broadcast(DOUBLES, 1.0);
+        DoubleVector excluded = DoubleVector.broadcast(DOUBLES, Double.NEGATIVE_INFINITY);
+
+        int b = 0;
+        for (int bound = LONGS.loopBound(t); b < bound; b += lanes) {
+            LongVector nl = zero, leftSq = zero, rightSq = zero;
+            for (int c = 0; c < labels; c++) {
+                LongVector l = (LongVector) IntVector.fromArray(INTS, hist, h + c * (t + 1) + b)
+                                                     .convertShape(VectorOperators.I2L, LONGS, 0);
+                for (int s = 1; s < lanes; s <<= 1) l = l.add(l.unslice(s));
+                l = l.add(carry[c]);
+                carry[c] = l.lane(lanes - 1);
+                LongVector r = l.neg().add(counts[c]);
+                nl = nl.add(l);
+                leftSq = leftSq.add(l.mul(l));
+                rightSq = rightSq.add(r.mul(r));
+            }
+            LongVector nr = rows.sub(nl);
+            nl.intoArray(nLeft, b);
+
+            DoubleVector dl = (DoubleVector) nl.convert(VectorOperators.L2D, 0);
+            DoubleVector dr = (DoubleVector) nr.convert(VectorOperators.L2D, 0);
+            DoubleVector giniLeft = one.sub(((DoubleVector) leftSq.convert(VectorOperators.L2D, 0)).div(dl.mul(dl)));
+            DoubleVector giniRight = one.sub(((DoubleVector) rightSq.convert(VectorOperators.L2D, 0)).div(dr.mul(dr)));
+            DoubleVector g = node.sub(dl.div(total).mul(giniLeft)).sub(dr.div(total).mul(giniRight));
+            VectorMask<Long> tooSmall = nl.compare(VectorOperators.LT, min).or(nr.compare(VectorOperators.LT, min));
+            g.blend(excluded, tooSmall.cast(DOUBLES)).intoArray(gain, b);
+        }
+        gainsFrom(b, hist, h, t, counts, n, nodeGini, minLeaf, carry, nLeft, gain);
+    }
+}
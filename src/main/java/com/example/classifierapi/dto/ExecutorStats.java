@@ -0,0 +1,15 @@
+package com.example.classifierapi.dto;
+
+public record ExecutorStats(
+    String name,
+    boolean virtualThreads,
+    int poolSize,          // 0 for virtual-thread executors (one thread per task)
+    int active,
+    int queued,
+    long submitted,
+    long completed,
+    long failed,
+    long rejected,
+    double avgWaitMillis,  // submit -> start
+    double avgRunMillis    // start -> end
+) {}
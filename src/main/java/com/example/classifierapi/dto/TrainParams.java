@@ -0,0 +1,14 @@
+package com.example.classifierapi.dto;
+
+// Optional training settings bound from request parameters; null means "server default"
+public record TrainParams(
+    String growth,            // depth_first | best_first
+    Integer maxLeafNodes,
+    Long timeLimitMs,
+    Integer maxDepth,
+    Integer minSamplesSplit,
+    Integer minSamplesLeaf,
+    Double minGain,
+    Integer approxBins,       // 0 = exact split search
+    Integer subsampleAbove    // 0 = never subsample
+) {}
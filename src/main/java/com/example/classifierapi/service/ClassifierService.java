@@ -1,102 +1,321 @@
 package com.example.classifierapi.service;
+import com.example.classifierapi.core.ClassifierEvents;
+import com.example.classifierapi.core.CompiledTree;
+import com.example.classifierapi.core.FeatureHasher;
 import com.example.classifierapi.core.ImprovedClassifier;
+import com.example.classifierapi.core.InferenceBenchmark;
 import com.example.classifierapi.core.TextBlock;
+import com.example.classifierapi.core.TrainingMatrix;
+import com.example.classifierapi.core.SuccessiveHalving;
+import com.example.classifierapi.core.TrainingOptions;
 import com.example.classifierapi.dto.ClassifyResponse;
 import com.example.classifierapi.dto.DecisionStep;
-import com.example.classifierapi.dto.TreeNodeDto;
+import com.example.classifierapi.dto.TrainParams;
+import com.example.classifierapi.store.DatasetCache;
+import com.example.classifierapi.store.DatasetCache.DatasetKey;
+import com.example.classifierapi.store.ModelRepository;
 import com.example.classifierapi.util.CsvUtils;
 import com.example.classifierapi.util.CsvUtils.Dataset;
+import com.example.classifierapi.util.InstrumentedExecutor;
 import com.example.classifierapi.util.TextBlockFactory;
-import com.example.classifierapi.util.TreeParser;
+import com.example.classifierapi.util.TreeJsonWriter;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.zip.GZIPOutputStream;
 @Service
 public class ClassifierService {
 private volatile ImprovedClassifier classifier;
-public synchronized boolean isReady() {
+// Shared model directory: local models are published there, newer versions swapped in
+private final ModelRepository repository;
+private final Object swapLock = new Object();
+private volatile long modelVersion;   // repository version being served; 0 if unpublished
+// Parsed uploads by content hash, and models by (data, options): repeat uploads skip parsing
+private final DatasetCache cache;
+// CSV chunks are parsed on the training pool, next to the training they feed
+private final InstrumentedExecutor trainingExecutor;
+public ClassifierService(ModelRepository repository, DatasetCache cache,
+@Qualifier("trainingExecutor") InstrumentedExecutor trainingExecutor) {
+this.repository = repository;
+this.cache = cache;
+this.trainingExecutor = trainingExecutor;
+}
+// Feature-hashing bits used when a train request doesn't choose; 0 keeps word features
+@Value("${classifier.features.hash-bits:0}")
+private int defaultHashBits;
+// Growth budgets applied when a train request sets none; 0 means unlimited
+@Value("${classifier.training.max-leaf-nodes:0}")
+private int defaultMaxLeafNodes;
+@Value("${classifier.training.time-limit-ms:0}")
+private long defaultTimeLimitMillis;
+// Approximate split search defaults; 0 keeps the exact search on every row
+@Value("${classifier.training.approx-bins:0}")
+private int defaultApproxBins;
+@Value("${classifier.training.subsample-above:0}")
+private int defaultSubsampleAbove;
+// SIMD threshold scoring for the approximate search; needs --add-modules jdk.incubator.vector
+@Value("${classifier.training.vector-splits:false}")
+private boolean vectorSplits;
+// Compile each model to bytecode (CompiledTree) when it is loaded, and classify with that
+@Value("${classifier.inference.compiled:false}")
+private boolean compiledInference;
+// One weighted row per distinct (document, label) in in-heap matrices
+@Value("${classifier.training.collapse-duplicates:true}")
+private boolean collapseDuplicates;
+// Where training data lives: heap, disk (memory-mapped spill files) or auto by estimate
+@Value("${classifier.training.storage:auto}")
+private String trainingStorage;
+@Value("${classifier.training.spill-dir:${java.io.tmpdir}}")
+private String spillDir;
+// Not synchronized: a volatile read, so readiness probes never wait behind a training run
+public boolean isReady() {
 return classifier != null;
 }
 public synchronized void loadModel(File file) throws Exception {
-try (Scanner sc = new Scanner(file, "UTF-8")) {
-this.classifier = new ImprovedClassifier(sc);
+try (InputStream in = new FileInputStream(file)) {
+install(readModel(in));
 }
 }
-public synchronized String exportModel() {
-if (classifier == null) return "";
-ByteArrayOutputStream bos = new ByteArrayOutputStream();
-try (PrintStream ps = new PrintStream(bos)) {
-classifier.save(ps);
+// Parses a saved model without publishing it
+public static ImprovedClassifier readModel(InputStream in) {
+try (Scanner sc = new Scanner(in, StandardCharsets.UTF_8)) {
+return new ImprovedClassifier(sc);
 }
-return bos.toString();
 }
-public synchronized ClassifyResponse classify(String text) {
-ensureReady();
+public synchronized void useModel(ImprovedClassifier model) {
+prepare(model);
+this.classifier = model;
+}
+// Serves a repository version unless a newer one is already served. Not synchronized on
+// the service, so a training run holding its lock never delays a hot reload; in-flight
+// requests finish on the model they already read.
+public void useVersion(ImprovedClassifier model, long version) {
+prepare(model);
+synchronized (swapLock) {
+if (version <= modelVersion) return;
+this.classifier = model;
+this.modelVersion = version;
+}
+System.out.println("Serving model version " + version);
+}
+public long modelVersion() {
+return modelVersion;
+}
+// Publishes a locally trained or uploaded model to the repository, then serves it unless
+// another replica has meanwhile published a newer version. A failed publish still serves
+// the model here.
+private void install(ImprovedClassifier model) {
+prepare(model);
+long version = 0;
 try {
-  TextBlock tb = TextBlockFactory.fromRaw(text);
-  
-  // Use the new enhanced classifyWithPath method
-  ImprovedClassifier.ClassifyResult result = classifier.classifyWithPath(tb);
-  
-  // Convert PathStep objects to DecisionStep DTOs
-  List<DecisionStep> steps = new ArrayList<>();
-  if (result != null && result.path != null) {
-    for (ImprovedClassifier.PathStep pathStep : result.path) {
-      // Only add non-leaf steps to the decision path
-      if (pathStep.feature != null) {
-        steps.add(new DecisionStep(
-          pathStep.feature,
-          pathStep.threshold,
-          pathStep.value,
-          pathStep.direction
-        ));
-      }
-    }
+version = repository.publish(model);
+} catch (IOException | RuntimeException e) {
+System.err.println("Model publish failed, serving it locally only: " + e.getMessage());
+}
+synchronized (swapLock) {
+if (version != 0 && version <= modelVersion) return;
+this.classifier = model;
+if (version != 0) this.modelVersion = version;
+}
+}
+// Compiles a model before it is served, so no request pays for it. A tree that fails to
+// compile is still served, by the node walk.
+private void prepare(ImprovedClassifier model) {
+if (!compiledInference) return;
+try {
+  long t0 = System.nanoTime();
+  CompiledTree c = model.compile();
+  System.out.println("Compiled model to bytecode: " + c.methods() + " method(s), " + c.bytecodeBytes()
+      + " bytes in " + (System.nanoTime() - t0) / 1_000_000 + " ms");
+} catch (RuntimeException | LinkageError e) {
+  System.err.println("Model compilation failed, using the node walk: " + e);
+}
+}
+// Saved-model text of one model instance, written straight to the caller's stream
+public record ModelExport(ImprovedClassifier model, String etag, long length) {
+public void writeTo(OutputStream out) throws IOException {
+PrintStream ps = new PrintStream(new BufferedOutputStream(out, 8192), false, StandardCharsets.UTF_8);
+model.save(ps);
+ps.flush();
+if (ps.checkError()) throw new IOException("Model export was interrupted");
+}
+}
+private volatile Cached<ModelExport> exportCache;
+// Length and ETag come from one streaming save() through a digest per model; no copy is kept
+public ModelExport exportModel() {
+ImprovedClassifier model = classifier;
+if (model == null) return null;
+Cached<ModelExport> c = exportCache;
+if (c != null && c.model() == model) return c.value();
+MessageDigest md = sha256();
+CountingOutputStream counter = new CountingOutputStream();
+try (PrintStream ps = new PrintStream(new DigestOutputStream(counter, md), false, StandardCharsets.UTF_8)) {
+model.save(ps);
+}
+ModelExport export = new ModelExport(model, weakEtag(md.digest()), counter.count);
+exportCache = new Cached<>(model, export);
+return export;
+}
+private static final class CountingOutputStream extends OutputStream {
+long count;
+@Override public void write(int b) { count++; }
+@Override public void write(byte[] b, int off, int len) { count += len; }
+}
+// Label only: one tree walk (or one call into the compiled tree), nothing allocated beyond
+// tokenization and the compiled tree's feature vector
+public ClassifyResponse classify(String text) {
+ImprovedClassifier model = currentModel();
+try {
+  ClassifierEvents.ClassifyTokenize tokenize = new ClassifierEvents.ClassifyTokenize();
+  tokenize.begin();
+  TextBlock tb = TextBlockFactory.fromRaw(text, model.hashBits());
+  tokenize.end();
+  if (tokenize.shouldCommit()) {
+    tokenize.characters = text == null ? 0 : text.length();
+    tokenize.tokens = tb.getFeatures().size();
+    tokenize.commit();
   }
-  
-  String label = result != null ? result.label : "unknown";
-  return new ClassifyResponse(label, steps);
-  
+  ClassifierEvents.ClassifyTraverse traverse = new ClassifierEvents.ClassifyTraverse();
+  traverse.begin();
+  CompiledTree compiled = model.compiledTree();
+  String label = compiled != null ? compiled.classify(tb) : model.classify(tb);
+  traverse.end();
+  if (traverse.shouldCommit()) {
+    traverse.documents = 1;
+    traverse.compiled = compiled != null;
+    traverse.label = label;
+    traverse.commit();
+  }
+  return new ClassifyResponse(label, List.of());
 } catch (Exception e) {
   System.err.println("Classification error: " + e.getMessage());
   e.printStackTrace();
   return new ClassifyResponse("error", new ArrayList<>());
 }
 }
-public synchronized TreeNodeDto treeDto() {
-ensureReady();
-ByteArrayOutputStream bos = new ByteArrayOutputStream();
-try (PrintStream ps = new PrintStream(bos)) {
-classifier.save(ps);
+// Path buffers are pooled rather than thread-local: request threads are virtual and short-lived
+private final Queue<ImprovedClassifier.PathBuffer> pathBuffers = new ConcurrentLinkedQueue<>();
+// Label plus the decision path, traced into a pooled buffer bounded by the tree depth
+public ClassifyResponse classifyExplained(String text) {
+ImprovedClassifier model = currentModel();
+ImprovedClassifier.PathBuffer buf = pathBuffers.poll();
+if (buf == null || buf.capacity() < model.maxPathLength()) {
+  buf = new ImprovedClassifier.PathBuffer(model.maxPathLength());
+}
+try {
+  String label = model.trace(TextBlockFactory.fromRaw(text, model.hashBits()), buf);
+  DecisionStep[] steps = new DecisionStep[buf.size()];
+  for (int i = 0; i < steps.length; i++) {
+    steps[i] = new DecisionStep(buf.feature(i), buf.threshold(i), buf.value(i),
+        buf.wentLeft(i) ? "left" : "right");
+  }
+  return new ClassifyResponse(label, Arrays.asList(steps));
+} catch (Exception e) {
+  System.err.println("Classification error: " + e.getMessage());
+  e.printStackTrace();
+  return new ClassifyResponse("error", new ArrayList<>());
+} finally {
+  buf.clear();
+  pathBuffers.offer(buf);
+}
+}
+// A window of the served tree from nodeId down 'depth' levels (TreeJsonWriter.toJson); null
+// if the model has no such node
+public byte[] subtreeJson(int nodeId, int depth, int minSamples) {
+if (depth < 0 || depth > MAX_SUBTREE_DEPTH) {
+  throw new IllegalArgumentException("depth must be between 0 and " + MAX_SUBTREE_DEPTH);
 }
-String preorder = bos.toString();
-return TreeParser.parseFromString(preorder);
+if (minSamples < 0) throw new IllegalArgumentException("minSamples must be >= 0");
+ImprovedClassifier model = currentModel();
+ImprovedClassifier.Node node = model.node(nodeId);
+return node == null ? null : TreeJsonWriter.toJson(model, node, depth, minSamples);
+}
+// Caps a window at 2^11 - 1 nodes
+private static final int MAX_SUBTREE_DEPTH = 10;
+// Tree JSON for one model instance: raw bytes, pre-gzipped bytes and a weak ETag.
+public record TreeJson(byte[] json, byte[] gzip, String etag) {}
+// Derived data tagged with the model instance it was computed from
+private record Cached<T>(ImprovedClassifier model, T value) {}
+private volatile Cached<TreeJson> treeCache;
+private final Object treeLock = new Object();
+// Built once per model straight from the in-memory nodes; every later call is a field read.
+public TreeJson treeJson() {
+ImprovedClassifier model = currentModel();
+Cached<TreeJson> c = treeCache;
+if (c != null && c.model() == model) return c.value();
+synchronized (treeLock) {
+c = treeCache;
+if (c != null && c.model() == model) return c.value();
+byte[] json = TreeJsonWriter.toJson(model.getRoot());
+TreeJson tree = new TreeJson(json, gzip(json), weakEtag(sha256().digest(json)));
+treeCache = new Cached<>(model, tree);
+return tree;
+}
+}
+private static byte[] gzip(byte[] data) {
+ByteArrayOutputStream bos = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+try (GZIPOutputStream gz = new GZIPOutputStream(bos)) {
+gz.write(data);
+} catch (IOException e) {
+throw new UncheckedIOException(e);
+}
+return bos.toByteArray();
+}
+private static MessageDigest sha256() {
+try {
+return MessageDigest.getInstance("SHA-256");
+} catch (NoSuchAlgorithmException e) {
+throw new IllegalStateException(e);
+}
+}
+private static String weakEtag(byte[] digest) {
+return "W/\"" + HexFormat.of().formatHex(digest, 0, 16) + "\"";
 }
 // Train (blocking) - with better error handling
-public synchronized void trainFromCsv(File csv, String labelCol) throws Exception {
+public synchronized void trainFromCsv(File csv, String labelCol, Integer hashBits,
+TrainingOptions options) throws Exception {
 try {
 System.out.println("Starting training from CSV: " + csv.getName());
 System.out.println("Label column: " + labelCol);
-  // Parse CSV
-  Dataset ds = CsvUtils.readCsv(csv, labelCol, "text");
-  
-  System.out.println("Loaded " + ds.data.size() + " samples");
+  int bits = hashBits(hashBits);
+  DatasetKey key = cache.key(csv, labelCol, "text", bits, collapseDuplicates);
+  if (installMemoized(key, options) != null) return;
+  // Parse CSV straight into the CSR training matrix
+  TrainingMatrix data = loadMatrix(key, csv, labelCol, bits);
   
-  if (ds.data.isEmpty()) {
+  if (data.rows() == 0) {
     throw new IllegalArgumentException("CSV has no usable rows. Please ensure it has 'text' and '" + labelCol + "' columns.");
   }
   
   // Validate data
-  for (int i = 0; i < Math.min(5, ds.data.size()); i++) {
-    System.out.println("Sample " + i + " label: " + ds.labels.get(i));
+  for (int i = 0; i < Math.min(5, data.rows()); i++) {
+    System.out.println("Sample " + i + " label: " + data.labelName(data.label(i)));
   }
   
   // Train the model
   System.out.println("Training model...");
-  this.classifier = new ImprovedClassifier(ds.data, ds.labels);
-  System.out.println("Training complete. Nodes: " + classifier.nodeCount() + ", Depth: " + classifier.depth());
+  ImprovedClassifier model = new ImprovedClassifier(data, null, options);
+  System.out.println("Training complete. Nodes: " + model.nodeCount() + ", Depth: " + model.depth()
+      + (model.stopReason() != null ? " (stopped early: " + model.stopReason() + ")" : ""));
+  cache.putModel(key, options, model);
+  install(model);
   
 } catch (Exception e) {
   System.err.println("Training error: " + e.getMessage());
@@ -104,24 +323,34 @@ System.out.println("Label column: " + labelCol);
   throw new RuntimeException("Training failed: " + e.getMessage(), e);
 }
 }
-// Train with progress callbacks (SSE) - with better error handling
-public synchronized void trainFromCsvWithProgress(File csv, String labelCol,
-ImprovedClassifier.ProgressListener listener) throws Exception {
+// Train with progress callbacks (SSE) - with better error handling. Returns the model this
+// run installed, which a concurrent hot reload may already have replaced as the served one.
+// A memoized run replays the earlier model's tree as progress events.
+public synchronized ImprovedClassifier trainFromCsvWithProgress(File csv, String labelCol, Integer hashBits,
+TrainingOptions options, ImprovedClassifier.ProgressListener listener) throws Exception {
 try {
 System.out.println("Starting training with progress from CSV: " + csv.getName());
 System.out.println("Label column: " + labelCol);
-  // Parse CSV
-  Dataset ds = CsvUtils.readCsv(csv, labelCol, "text");
-  
-  System.out.println("Loaded " + ds.data.size() + " samples");
+  int bits = hashBits(hashBits);
+  DatasetKey key = cache.key(csv, labelCol, "text", bits, collapseDuplicates);
+  ImprovedClassifier memoized = installMemoized(key, options);
+  if (memoized != null) {
+    if (listener != null) memoized.replay(listener);
+    return memoized;
+  }
+  // Parse CSV straight into the CSR training matrix
+  TrainingMatrix data = loadMatrix(key, csv, labelCol, bits);
   
-  if (ds.data.isEmpty()) {
+  if (data.rows() == 0) {
     throw new IllegalArgumentException("CSV has no usable rows. Please ensure it has 'text' and '" + labelCol + "' columns.");
   }
   
   // Train with progress listener
-  this.classifier = new ImprovedClassifier(ds.data, ds.labels, listener);
-  System.out.println("Training complete. Nodes: " + classifier.nodeCount() + ", Depth: " + classifier.depth());
+  ImprovedClassifier model = new ImprovedClassifier(data, listener, options);
+  System.out.println("Training complete. Nodes: " + model.nodeCount() + ", Depth: " + model.depth());
+  cache.putModel(key, options, model);
+  install(model);
+  return model;
   
 } catch (Exception e) {
   System.err.println("Training with progress error: " + e.getMessage());
@@ -138,6 +367,23 @@ System.out.println("Label column: " + labelCol);
   throw new RuntimeException("Training failed: " + e.getMessage(), e);
 }
 }
+// Serves the model an identical earlier run produced, if the cache still has it. When that
+// model is already the one served, nothing is installed, so a repeated run publishes no new
+// repository version; an earlier model that has since been replaced is published again like
+// any freshly trained one, since replicas have to switch back to it. Returns that model, or
+// null when there is none.
+private ImprovedClassifier installMemoized(DatasetKey key, TrainingOptions options) {
+ImprovedClassifier model = cache.model(key, options);
+if (model == null) return null;
+if (model == classifier) {
+  System.out.println("Same data and options as the served model; keeping it");
+  return model;
+}
+System.out.println("Same data and options as an earlier run; reusing its model (" + model.nodeCount()
+    + " nodes, depth " + model.depth() + ")");
+install(model);
+return model;
+}
 // ---- Metrics DTOs ----
 public static class ConfusionRow {
 public String actual;
@@ -161,49 +407,69 @@ public Metrics() {
   this.confusion = new ArrayList<>();
 }
 }
+// Times the compiled tree against the node walk on a CSV's texts (InferenceBenchmark);
+// the served model itself is left as it is
+public InferenceBenchmark benchmarkInference(File csv, String labelCol, int rounds) throws Exception {
+ensureReady();
+ImprovedClassifier model = currentModel();
+Dataset ds = readDataset(csv, labelCol, model.hashBits());
+return InferenceBenchmark.run(model, ds.data, rounds);
+}
 public synchronized Metrics metricsFromCsv(File csv, String labelCol) throws Exception {
 ensureReady();
+// One model for the whole pass; a hot swap mid-way would tokenize for one and score with another
+ImprovedClassifier model = currentModel();
 try {
-  Dataset ds = CsvUtils.readCsv(csv, labelCol, "text");
+  // Tokenized the way the model expects (hashed if it was trained hashed)
+  Dataset ds = readDataset(csv, labelCol, model.hashBits());
   
   if (ds.data.isEmpty()) {
     System.err.println("No data found in CSV for metrics");
     return new Metrics();
   }
 
-  int correct = 0;
-  Map<String,Integer> labelCounts = new HashMap<>();
-  Map<String,Integer> perCorrect = new HashMap<>();
-  Map<String,Integer> perTotal = new HashMap<>();
-  Map<String,Map<String,Integer>> confusion = new HashMap<>();
-
-  for (int i = 0; i < ds.data.size(); i++) {
-    String actual = ds.labels.get(i);
-    String pred = classifier.classify(ds.data.get(i));
-    
+  // Labels (actual and predicted) get dense ids on first sight; all tallies are int arrays
+  Map<String,Integer> ids = new HashMap<>();
+  List<String> names = new ArrayList<>();
+  int n = ds.data.size();
+  int[] actualIds = new int[n];
+  int[] predIds = new int[n];
+  for (int i = 0; i < n; i++) {
+    String pred = model.classify(ds.data.get(i));
     if (pred == null) pred = "unknown";
-    
-    if (Objects.equals(actual, pred)) correct++;
-    labelCounts.merge(actual, 1, Integer::sum);
-    perTotal.merge(actual, 1, Integer::sum);
-    if (Objects.equals(actual, pred)) perCorrect.merge(actual, 1, Integer::sum);
-    confusion.computeIfAbsent(actual, k -> new HashMap<>()).merge(pred, 1, Integer::sum);
+    actualIds[i] = labelId(ids, names, ds.labels.get(i));
+    predIds[i] = labelId(ids, names, pred);
+  }
+
+  int k = names.size();
+  int[] perTotal = new int[k];
+  int[] perCorrect = new int[k];
+  int[] confusion = new int[k * k];
+  int correct = 0;
+  for (int i = 0; i < n; i++) {
+    int a = actualIds[i], p = predIds[i];
+    perTotal[a]++;
+    confusion[a * k + p]++;
+    if (a == p) {
+      perCorrect[a]++;
+      correct++;
+    }
   }
 
   Metrics m = new Metrics();
-  m.overall = ds.data.isEmpty() ? 0.0 : ((double) correct) / ds.data.size();
+  m.overall = ((double) correct) / n;
   
-  for (String lab : perTotal.keySet()) {
-    int t = perTotal.getOrDefault(lab, 0);
-    int c = perCorrect.getOrDefault(lab, 0);
-    m.perLabel.put(lab, t == 0 ? 0.0 : ((double) c) / t);
+  for (int c = 0; c < k; c++) {
+    if (perTotal[c] == 0) continue;
+    m.perLabel.put(names.get(c), ((double) perCorrect[c]) / perTotal[c]);
+    m.labelCounts.put(names.get(c), perTotal[c]);
   }
-  m.labelCounts = labelCounts;
 
   List<ConfusionRow> rows = new ArrayList<>();
-  for (var a : confusion.entrySet()) {
-    for (var p : a.getValue().entrySet()) {
-      rows.add(new ConfusionRow(a.getKey(), p.getKey(), p.getValue()));
+  for (int a = 0; a < k; a++) {
+    for (int p = 0; p < k; p++) {
+      int count = confusion[a * k + p];
+      if (count > 0) rows.add(new ConfusionRow(names.get(a), names.get(p), count));
     }
   }
   rows.sort(Comparator.comparing((ConfusionRow r) -> r.actual).thenComparing(r -> r.predicted));
@@ -217,6 +483,90 @@ try {
   throw new RuntimeException("Metrics calculation failed: " + e.getMessage(), e);
 }
 }
+// Options for a train request: request values where given, configured defaults otherwise
+public TrainingOptions trainingOptions(TrainParams p) {
+String growth = p.growth();
+TrainingOptions.Growth g = growth == null || growth.isBlank()
+    ? TrainingOptions.Growth.DEPTH_FIRST
+    : TrainingOptions.Growth.valueOf(growth.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+return new TrainingOptions(g,
+    p.maxLeafNodes() != null ? p.maxLeafNodes() : defaultMaxLeafNodes,
+    p.timeLimitMs() != null ? p.timeLimitMs() : defaultTimeLimitMillis,
+    p.maxDepth() != null ? p.maxDepth() : TrainingOptions.DEFAULT_MAX_DEPTH,
+    p.minSamplesSplit() != null ? p.minSamplesSplit() : TrainingOptions.DEFAULT_MIN_SAMPLES_SPLIT,
+    p.minSamplesLeaf() != null ? p.minSamplesLeaf() : TrainingOptions.DEFAULT_MIN_SAMPLES_LEAF,
+    p.minGain() != null ? p.minGain() : TrainingOptions.DEFAULT_MIN_GAIN,
+    p.approxBins() != null ? p.approxBins() : defaultApproxBins,
+    p.subsampleAbove() != null ? p.subsampleAbove() : defaultSubsampleAbove,
+    vectorSplits);
+}
+// Successive-halving search over a hyperparameter grid. The CSV is parsed once and every
+// candidate trains on that matrix; candidates run on the calling thread and 'executor', at
+// most 'parallelism' at a time. Doesn't touch the served model.
+public SuccessiveHalving.Result tune(File csv, String labelCol, Integer hashBits, TrainingOptions base,
+int[] maxDepth, int[] minSamplesSplit, int[] minSamplesLeaf, double[] minGain,
+int eta, double validation, long seed, Executor executor, int parallelism) throws Exception {
+int bits = hashBits(hashBits);
+TrainingMatrix data = loadMatrix(cache.key(csv, labelCol, "text", bits, collapseDuplicates), csv, labelCol, bits);
+if (data.rows() == 0) {
+  throw new IllegalArgumentException("CSV has no usable rows. Please ensure it has 'text' and '" + labelCol + "' columns.");
+}
+List<TrainingOptions> grid = SuccessiveHalving.grid(base, maxDepth, minSamplesSplit, minSamplesLeaf, minGain);
+System.out.println("Tuning " + grid.size() + " candidates on " + data.rows() + " samples");
+SuccessiveHalving.Result result = new SuccessiveHalving(data, eta, validation, seed).run(grid, executor, parallelism);
+System.out.println("Tuning complete in " + result.elapsedMillis() + " ms: best " + result.best()
+    + " (validation accuracy " + result.bestAccuracy() + ")");
+return result;
+}
+// TextBlocks of a CSV for metrics or benchmarking, parsed once per content
+private Dataset readDataset(File csv, String labelCol, int hashBits) throws Exception {
+return cache.dataset(cache.key(csv, labelCol, "text", hashBits, false),
+                     () -> CsvUtils.readCsv(csv, labelCol, "text", hashBits));
+}
+// The cached matrix for 'key' if there is one; otherwise parses the CSV (parseMatrix)
+private TrainingMatrix loadMatrix(DatasetKey key, File csv, String labelCol, int hashBits) throws Exception {
+return cache.matrix(key, () -> parseMatrix(csv, labelCol, hashBits));
+}
+// Parses the CSV on the heap, or spills it to memory-mapped column files when the
+// configured storage says so or (auto) when the estimated footprint would not fit
+// comfortably in the heap that is free right now
+private TrainingMatrix parseMatrix(File csv, String labelCol, int hashBits) throws Exception {
+Path spill = null;
+switch (trainingStorage.trim().toLowerCase(Locale.ROOT)) {
+  case "heap" -> { }
+  case "disk" -> spill = Path.of(spillDir);
+  case "auto" -> {
+    CsvUtils.MatrixEstimate est = CsvUtils.estimateMatrix(csv, labelCol, "text", hashBits);
+    Runtime rt = Runtime.getRuntime();
+    long free = rt.maxMemory() - (rt.totalMemory() - rt.freeMemory());
+    long needed = TrainingMatrix.inHeapBytes(est.rows(), est.nonZeros());
+    System.out.println("Estimated " + est.rows() + " samples, " + est.nonZeros() + " non-zeros: ~"
+        + needed / (1024 * 1024) + " MiB in heap, " + free / (1024 * 1024) + " MiB free");
+    if (needed > free / 2) spill = Path.of(spillDir);
+  }
+  default -> throw new IllegalStateException("classifier.training.storage must be auto, heap or disk");
+}
+if (spill != null) System.out.println("Training out of core from " + spill);
+TrainingMatrix data = CsvUtils.readMatrix(csv, labelCol, "text", hashBits, spill, collapseDuplicates,
+    trainingExecutor::execute, trainingExecutor.parallelism());
+System.out.println("Loaded " + data.totalWeight() + " samples"
+    + (data.isWeighted() ? " (" + data.rows() + " distinct)" : "") + ", " + data.features() + " features, ~"
+    + data.estimatedBytes() / 1024 + " KiB" + (data.isSpilled() ? " mapped from disk" : ""));
+return data;
+}
+// Request value if given, else the configured default; 0 disables hashing
+private int hashBits(Integer requested) {
+int bits = requested != null ? requested : defaultHashBits;
+if (bits != 0) FeatureHasher.checkBits(bits);
+return bits;
+}
+private static int labelId(Map<String,Integer> ids, List<String> names, String label) {
+Integer id = ids.get(label);
+if (id != null) return id;
+ids.put(label, names.size());
+names.add(label);
+return names.size() - 1;
+}
 public synchronized int nodeCount() {
 return classifier != null ? classifier.nodeCount() : 0;
 }
@@ -224,8 +574,15 @@ public synchronized int depth() {
 return classifier != null ? classifier.depth() : 0;
 }
 private void ensureReady() {
-if (classifier == null) {
+currentModel();
+}
+// Single volatile read, so callers keep working on one model even if another is published meanwhile
+// Package-private for ClassifyCoalescer, which takes one snapshot per batch
+ImprovedClassifier currentModel() {
+ImprovedClassifier model = classifier;
+if (model == null) {
 throw new IllegalStateException("Model not loaded or trained. Please train a model or upload a saved model first.");
 }
+return model;
 }
 }
\ No newline at end of file
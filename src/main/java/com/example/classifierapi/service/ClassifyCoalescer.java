@@ -0,0 +1,235 @@
+package com.example.classifierapi.service;
+
+import com.example.classifierapi.core.ClassifierEvents;
+import com.example.classifierapi.core.ImprovedClassifier;
+import com.example.classifierapi.dto.ClassifyResponse;
+import com.example.classifierapi.util.TextBlockFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Optional micro-batching for single-document classify calls.
+ *
+ * Callers queue their text and park; a few platform worker threads each take the oldest
+ * request, gather more for a short window (or until max-batch), and classify the batch in
+ * one pass over a single model snapshot: tokens go straight to the tree's split-feature
+ * ids, and the tree walks are interleaved, or run on the compiled tree when
+ * classifier.inference.compiled is on (ImprovedClassifier.classifyBatch). Labels are the
+ * ones classify() would return.
+ *
+ * The window adapts to load. It starts at zero and opens once a worker finds other
+ * requests already queued behind the one it took; it then grows while waiting keeps adding
+ * requests to batches and halves whenever a wait brings none, up to max-wait-us. Within a
+ * window a worker also stops as soon as arrivals stall. A quiet service (or a lone
+ * sequential caller) therefore never waits, while a busy one fills its batches.
+ */
+@Component
+public class ClassifyCoalescer implements Closeable {
+
+    private record Pending(String text, long queuedAt, CompletableFuture<String> result) {}
+
+    private final ClassifierService service;
+    private final boolean enabled;
+    private final int maxBatch;
+    private final long maxWaitNanos;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final List<Thread> workers = new ArrayList<>();
+
+    // Current wait window. Workers adjust it without synchronization; a lost update only
+    // delays the adjustment by a batch.
+    private volatile long windowNanos;
+    private static final long MIN_WINDOW_NANOS = 20_000;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder items = new LongAdder();
+    private final LongAdder waitedNanos = new LongAdder();
+
+    public ClassifyCoalescer(ClassifierService service,
+                             @Value("${classifier.batching.enabled:false}") boolean enabled,
+                             @Value("${classifier.batching.max-batch:64}") int maxBatch,
+                             @Value("${classifier.batching.max-wait-us:300}") long maxWaitMicros,
+                             @Value("${classifier.batching.workers:0}") int workers) {
+        if (maxBatch < 1) throw new IllegalArgumentException("classifier.batching.max-batch must be >= 1");
+        if (maxWaitMicros < 0) throw new IllegalArgumentException("classifier.batching.max-wait-us must be >= 0");
+        this.service = service;
+        this.enabled = enabled;
+        this.maxBatch = maxBatch;
+        this.maxWaitNanos = maxWaitMicros * 1_000;
+        if (!enabled) return;
+        int n = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < n; i++) {
+            this.workers.add(Thread.ofPlatform().daemon().name("classify-batch-" + i).start(this::work));
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Same response as ClassifierService.classify; batched when enabled */
+    public ClassifyResponse classify(String text) {
+        if (!enabled) return service.classify(text);
+        Pending p = new Pending(text == null ? "" : text, System.nanoTime(), new CompletableFuture<>());
+        queue.add(p);
+        try {
+            return new ClassifyResponse(p.result().join(), List.of());
+        } catch (CompletionException e) {
+            // No model: surfaces like the unbatched path does
+            if (e.getCause() instanceof IllegalStateException ise) throw ise;
+            System.err.println("Classification error: " + e.getCause());
+            return new ClassifyResponse("error", new ArrayList<>());
+        }
+    }
+
+    public record Stats(boolean enabled, int workers, int maxBatch, long maxWaitMicros, long batches,
+                        long items, double meanBatch, double meanWaitMicros, long windowMicros) {}
+
+    public Stats stats() {
+        long b = batches.sum(), n = items.sum();
+        return new Stats(enabled, workers.size(), maxBatch, maxWaitNanos / 1_000, b, n,
+                         b == 0 ? 0 : (double) n / b, b == 0 ? 0 : waitedNanos.sum() / 1e3 / b,
+                         windowNanos / 1_000);
+    }
+
+    @Override
+    public void close() {
+        for (Thread t : workers) t.interrupt();
+        Pending p;
+        while ((p = queue.poll()) != null) {
+            p.result().completeExceptionally(new IllegalStateException("Classifier is shutting down"));
+        }
+    }
+
+    private void work() {
+        Batch batch = new Batch(maxBatch);
+        List<Pending> taken = new ArrayList<>(maxBatch);
+        try {
+            while (true) {
+                taken.clear();
+                Pending first = queue.take();
+                taken.add(first);
+                queue.drainTo(taken, maxBatch - 1);
+                int queued = taken.size();
+                long window = windowNanos;
+                if (queued < maxBatch && window > 0) {
+                    // Wait until the batch is full, the window closes, or arrivals stall: once
+                    // requests have come in, stop when the next is four mean gaps overdue
+                    long waitStart = System.nanoTime();
+                    long deadline = first.queuedAt() + window;
+                    long now = waitStart;
+                    int arrived = 0;
+                    long left;
+                    while (taken.size() < maxBatch && (left = deadline - now) > 0) {
+                        if (arrived > 0) left = Math.min(left, 4 * (now - waitStart) / arrived + 2_000);
+                        Pending p = queue.poll(left, TimeUnit.NANOSECONDS);
+                        if (p == null) break;
+                        taken.add(p);
+                        queue.drainTo(taken, maxBatch - taken.size());
+                        arrived++;
+                        now = System.nanoTime();
+                    }
+                    // Grow while waiting pays off, halve when it doesn't
+                    windowNanos = taken.size() > queued
+                        ? Math.min(maxWaitNanos, window + Math.max(window / 4, 1_000))
+                        : (window / 2 < MIN_WINDOW_NANOS / 4 ? 0 : window / 2);
+                } else if (queued > 1 && window == 0) {
+                    windowNanos = Math.min(maxWaitNanos, MIN_WINDOW_NANOS);   // a backlog: start waiting
+                }
+                waitedNanos.add(System.nanoTime() - first.queuedAt());
+                batches.increment();
+                items.add(taken.size());
+                batch.run(taken);
+            }
+        } catch (InterruptedException e) {
+            // close()
+        }
+    }
+
+    // Per-worker scratch, reused across batches
+    private final class Batch {
+        int[] start;
+        int[] totals;
+        String[] out;
+        int[] ids = new int[256];
+        int[] counts = new int[256];
+        int[] slot = new int[0];    // split feature id -> index into ids for the current document
+        int[] seen = new int[0];    // seen[id] == doc + 1 marks id as counted for document doc
+        int m;
+
+        Batch(int maxBatch) {
+            start = new int[maxBatch + 1];
+            totals = new int[maxBatch];
+            out = new String[maxBatch];
+        }
+
+        void run(List<Pending> taken) {
+            int n = taken.size();
+            ImprovedClassifier model;
+            try {
+                model = service.currentModel();   // one snapshot for the whole batch
+            } catch (IllegalStateException e) {
+                for (Pending p : taken) p.result().completeExceptionally(e);
+                return;
+            }
+            try {
+                int features = model.splitFeatureCount();
+                if (seen.length < features) {
+                    slot = new int[features];
+                    seen = new int[features];
+                } else {
+                    Arrays.fill(seen, 0, features, 0);
+                }
+                m = 0;
+                for (int i = 0; i < n; i++) {
+                    start[i] = m;
+                    int doc = i + 1;
+                    int[] total = {0};
+                    TextBlockFactory.forEachToken(taken.get(i).text(), model.hashBits(), token -> {
+                        total[0]++;
+                        int id = model.splitFeatureId(token);
+                        if (id < 0) return;
+                        if (seen[id] != doc) {
+                            seen[id] = doc;
+                            if (m == ids.length) {
+                                ids = Arrays.copyOf(ids, m * 2);
+                                counts = Arrays.copyOf(counts, m * 2);
+                            }
+                            slot[id] = m;
+                            ids[m] = id;
+                            counts[m++] = 0;
+                        }
+                        counts[slot[id]]++;
+                    });
+                    totals[i] = total[0];
+                }
+                start[n] = m;
+                ClassifierEvents.ClassifyTraverse event = new ClassifierEvents.ClassifyTraverse();
+                event.begin();
+                model.classifyBatch(n, start, ids, counts, totals, out);
+                event.end();
+                if (event.shouldCommit()) {
+                    event.documents = n;
+                    event.compiled = model.compiledTree() != null;
+                    event.label = out[0];
+                    event.commit();
+                }
+                for (int i = 0; i < n; i++) taken.get(i).result().complete(out[i]);
+            } catch (RuntimeException e) {
+                for (Pending p : taken) p.result().completeExceptionally(e);
+            } finally {
+                Arrays.fill(out, 0, n, null);
+            }
+        }
+    }
+}
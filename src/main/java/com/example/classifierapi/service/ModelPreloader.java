@@ -0,0 +1,203 @@
+package com.example.classifierapi.service;
+
+import com.example.classifierapi.core.ImprovedClassifier;
+import com.example.classifierapi.store.ModelRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads the configured default model at startup and pushes synthetic traffic through
+ * the tokenizer and classify paths so they are JIT-compiled before the first real request.
+ *
+ * When a model repository is configured its newest version wins over the default, and
+ * the repository is watched from then on so later versions are swapped in as they appear.
+ *
+ * Runs as an ApplicationRunner: Spring only switches readiness to ACCEPTING_TRAFFIC
+ * after every runner has returned, so a new instance never takes traffic cold.
+ */
+@Component
+public class ModelPreloader implements ApplicationRunner {
+
+    // Ordinary words the tokenizer has to handle besides the model's own features
+    private static final String[] FILLER = {
+        "hello", "tomorrow", "meeting", "ok", "thanks", "see", "later", "lol", "home",
+        "week", "sorry", "love", "2nite", "pls", "FREE", "Win!!", "now", "&", "www", "100%"
+    };
+
+    private final ClassifierService service;
+    private final ClassifyCoalescer coalescer;
+    private final ModelRepository repository;
+    private final ResourceLoader resources;
+    private final String location;
+    private final int iterations;
+
+    public ModelPreloader(ClassifierService service, ClassifyCoalescer coalescer, ModelRepository repository,
+                          ResourceLoader resources,
+                          @Value("${classifier.preload.model:}") String location,
+                          @Value("${classifier.preload.warmup-iterations:20000}") int iterations) {
+        this.service = service;
+        this.coalescer = coalescer;
+        this.repository = repository;
+        this.resources = resources;
+        this.location = location;
+        this.iterations = iterations;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        ImprovedClassifier model = fromRepository();
+        if (model == null) model = fromLocation();
+        if (model != null && iterations > 0) warmUp(model);
+        repository.watch(service::useVersion);
+        System.out.println("Ready " + ManagementFactory.getRuntimeMXBean().getUptime()
+            + " ms after JVM start");
+    }
+
+    // Newest repository version, or null when there is none (or it can't be read)
+    private ImprovedClassifier fromRepository() {
+        if (!repository.isEnabled()) return null;
+        long t0 = System.nanoTime();
+        try {
+            ModelRepository.Version latest = repository.latest();
+            if (latest == null) return null;
+            ImprovedClassifier model = repository.load(latest);
+            service.useVersion(model, latest.version());
+            System.out.println("Preloaded model version " + latest.version() + " from the repository: "
+                + model.nodeCount() + " nodes, depth " + model.depth() + " in " + millis(t0, System.nanoTime()) + " ms");
+            return model;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Model repository preload failed: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private ImprovedClassifier fromLocation() {
+        if (location == null || location.isBlank()) {
+            System.out.println("Model preload disabled");
+            return null;
+        }
+        long t0 = System.nanoTime();
+        ImprovedClassifier model;
+        Resource resource = resources.getResource(location);
+        try (InputStream in = resource.getInputStream()) {
+            model = ClassifierService.readModel(in);
+        } catch (Exception e) {
+            // Not fatal: the service starts without a model, as it did before preloading
+            System.err.println("Model preload failed for " + location + ": " + e.getMessage());
+            return null;
+        }
+        service.useModel(model);
+        long loaded = System.nanoTime();
+        System.out.println("Preloaded model from " + resource.getDescription() + ": "
+            + model.nodeCount() + " nodes, depth " + model.depth() + " in " + millis(t0, loaded) + " ms");
+        return model;
+    }
+
+    // Goes through the same methods requests use. Every fourth call takes the explained
+    // path; the tree JSON and export caches are filled on the way. With micro-batching on,
+    // /api/classify goes through the coalescer, so that path is warmed as well.
+    private void warmUp(ImprovedClassifier model) {
+        String[] texts = syntheticTexts(model, 256);
+        int batch = Math.max(1, Math.min(1000, iterations / 10));
+        long start = System.nanoTime();
+        long firstBatch = 0;
+        long lastBatchStart = start;
+        for (int i = 0; i < iterations; i++) {
+            if (i == iterations - batch) lastBatchStart = System.nanoTime();
+            String text = texts[i % texts.length];
+            if ((i & 3) == 3) service.classifyExplained(text);
+            else service.classify(text);
+            if (i == batch - 1) firstBatch = System.nanoTime() - start;
+        }
+        long end = System.nanoTime();
+        service.treeJson();
+        service.exportModel();
+        System.out.printf("Warm-up: %d classify calls in %d ms (first %d: %.1f us/call, last %d: %.1f us/call)%n",
+            iterations, millis(start, end),
+            batch, firstBatch / 1e3 / batch,
+            batch, (end - lastBatchStart) / 1e3 / batch);
+        if (coalescer.isEnabled()) warmUpBatched(texts);
+    }
+
+    // Concurrent callers, so the coalescer forms real batches and classifyBatch (or the
+    // compiled tree's vector evaluator) gets compiled, not just the single-document path
+    private void warmUpBatched(String[] texts) {
+        int callers = Math.max(2, Math.min(16, 2 * Runtime.getRuntime().availableProcessors()));
+        AtomicInteger next = new AtomicInteger();
+        ClassifyCoalescer.Stats before = coalescer.stats();
+        long start = System.nanoTime();
+        List<Thread> threads = new ArrayList<>(callers);
+        for (int t = 0; t < callers; t++) {
+            threads.add(Thread.ofVirtual().start(() -> {
+                for (int i; (i = next.getAndIncrement()) < iterations; ) coalescer.classify(texts[i % texts.length]);
+            }));
+        }
+        for (Thread t : threads) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        ClassifyCoalescer.Stats after = coalescer.stats();
+        long batches = after.batches() - before.batches();
+        System.out.printf("Warm-up: %d batched classify calls from %d callers in %d ms (%d batches, mean %.1f)%n",
+            iterations, callers, millis(start, System.nanoTime()), batches,
+            batches == 0 ? 0 : (double) (after.items() - before.items()) / batches);
+    }
+
+    // Short messages mixing the model's split features with filler, so both branches of
+    // most decision nodes get taken. Seeded, so every start does the same work.
+    private static String[] syntheticTexts(ImprovedClassifier model, int count) {
+        List<String> words = new ArrayList<>(features(model));
+        for (String w : FILLER) words.add(w);
+        Random rnd = new Random(42);
+        String[] out = new String[count];
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.setLength(0);
+            int n = 1 + rnd.nextInt(20);
+            for (int k = 0; k < n; k++) {
+                if (k > 0) sb.append(rnd.nextInt(8) == 0 ? ", " : " ");
+                sb.append(words.get(rnd.nextInt(words.size())));
+            }
+            out[i] = sb.toString();
+        }
+        return out;
+    }
+
+    private static Set<String> features(ImprovedClassifier model) {
+        Set<String> out = new LinkedHashSet<>();
+        Deque<ImprovedClassifier.Node> stack = new ArrayDeque<>();
+        if (model.getRoot() != null) stack.push(model.getRoot());
+        while (!stack.isEmpty()) {
+            ImprovedClassifier.Node n = stack.pop();
+            if (n.isLeaf()) continue;
+            out.add(n.getFeature());
+            if (n.getLeft() != null) stack.push(n.getLeft());
+            if (n.getRight() != null) stack.push(n.getRight());
+        }
+        return out;
+    }
+
+    private static long millis(long from, long to) {
+        return (to - from) / 1_000_000;
+    }
+}
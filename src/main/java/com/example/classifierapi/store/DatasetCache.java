@@ -0,0 +1,389 @@
+package com.example.classifierapi.store;
+
+import com.example.classifierapi.core.ImprovedClassifier;
+import com.example.classifierapi.core.TrainingMatrix;
+import com.example.classifierapi.core.TrainingOptions;
+import com.example.classifierapi.service.ClassifierService;
+import com.example.classifierapi.util.CsvUtils.Dataset;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Parsed uploads and the models trained on them, keyed by the upload's content.
+ *
+ * Every upload arrives as a fresh temporary file, so entries are addressed by the SHA-256
+ * of the file's bytes plus the settings the parse depends on (DatasetKey). Two forms of a
+ * data set are kept: the training matrix (train, tune) and the TextBlock list (metrics,
+ * inference benchmark). They share one LRU held within max-mb of estimated heap; an entry
+ * larger than the whole budget is not kept. Spilled matrices are never cached, since
+ * keeping them would pin the files they were spilled to.
+ *
+ * Trained models are memoized by (DatasetKey, TrainingOptions), the newest max-models of
+ * them. Training is deterministic for given data and options, except under a wall-clock
+ * budget, so runs with timeLimitMillis are not memoized.
+ *
+ * With a directory configured, matrices (TrainingMatrix.write) and models (saved-model
+ * text) are also written there, so they outlive eviction and restarts; that tier is held
+ * within disk-max-mb by deleting the least recently used files. TextBlock lists stay in
+ * memory only. Concurrent misses on one key each do the work; the last result is kept.
+ */
+@Component
+public class DatasetCache {
+
+    /** What one parsed form of an upload depends on: its content and the parse settings */
+    public record DatasetKey(String sha256, String labelCol, String textCol, int hashBits,
+                             boolean collapseDuplicates) {
+        String id(String kind) {
+            return kind + '|' + sha256 + '|' + labelCol + '|' + textCol + '|' + hashBits + '|' + collapseDuplicates;
+        }
+    }
+
+    public record Stats(boolean enabled, long memoryBytes, long maxMemoryBytes, int entries, int models,
+                        long hits, long diskHits, long misses, long modelHits, long modelMisses,
+                        String dir, long diskBytes) {}
+
+    private record Entry(Object value, long bytes) {}
+
+    private static final String MATRIX = "matrix";
+    private static final String DATASET = "dataset";
+    private static final String MODEL = "model";
+
+    private final long maxBytes;
+    private final int maxModels;
+    private final Path dir;
+    private final long maxDiskBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, ImprovedClassifier> models = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;   // guarded by this, with both maps
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder modelHits = new LongAdder();
+    private final LongAdder modelMisses = new LongAdder();
+
+    public DatasetCache(@Value("${classifier.cache.max-mb:256}") long maxMb,
+                        @Value("${classifier.cache.max-models:16}") int maxModels,
+                        @Value("${classifier.cache.dir:}") String dir,
+                        @Value("${classifier.cache.disk-max-mb:1024}") long diskMaxMb) {
+        if (maxMb < 0) throw new IllegalArgumentException("classifier.cache.max-mb must be >= 0");
+        if (maxModels < 0) throw new IllegalArgumentException("classifier.cache.max-models must be >= 0");
+        this.maxBytes = maxMb * 1024 * 1024;
+        this.maxModels = maxModels;
+        this.dir = dir == null || dir.isBlank() ? null : Path.of(dir);
+        this.maxDiskBytes = Math.max(0, diskMaxMb) * 1024 * 1024;
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0 || maxModels > 0 || dir != null;
+    }
+
+    /**
+     * Key for a parse of 'csv' with these settings; hashes the file once. Null when the
+     * cache is disabled, which every other method accepts and treats as a miss.
+     */
+    public DatasetKey key(File csv, String labelCol, String textCol, int hashBits,
+                          boolean collapseDuplicates) throws IOException {
+        if (!isEnabled()) return null;
+        MessageDigest md = sha256();
+        byte[] buf = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(csv.toPath())) {
+            for (int n; (n = in.read(buf)) > 0; ) md.update(buf, 0, n);
+        }
+        return new DatasetKey(HexFormat.of().formatHex(md.digest()), labelCol, textCol, hashBits, collapseDuplicates);
+    }
+
+    /** The cached matrix for 'key', from memory or disk, or the result of 'parse' */
+    public TrainingMatrix matrix(DatasetKey key, Callable<TrainingMatrix> parse) throws Exception {
+        if (key == null) return parse.call();
+        String id = key.id(MATRIX);
+        TrainingMatrix m = (TrainingMatrix) get(id);
+        if (m != null) return m;
+        m = readMatrix(id);
+        if (m != null) {
+            diskHits.increment();
+        } else {
+            misses.increment();
+            m = parse.call();
+            if (m.isSpilled()) return m;
+            writeMatrix(id, m);
+        }
+        put(id, m, m.estimatedBytes());
+        return m;
+    }
+
+    /** The cached TextBlock list for 'key', or the result of 'parse'; memory only */
+    public Dataset dataset(DatasetKey key, Callable<Dataset> parse) throws Exception {
+        if (key == null) return parse.call();
+        String id = key.id(DATASET);
+        Dataset ds = (Dataset) get(id);
+        if (ds != null) return ds;
+        misses.increment();
+        ds = parse.call();
+        put(id, ds, estimatedBytes(ds));
+        return ds;
+    }
+
+    /** A model trained earlier on the same data with the same options, or null */
+    public ImprovedClassifier model(DatasetKey key, TrainingOptions options) {
+        if (key == null || !memoizable(options)) return null;
+        String id = modelId(key, options);
+        ImprovedClassifier model;
+        synchronized (this) {
+            model = models.get(id);
+        }
+        if (model == null) {
+            model = readModel(id);
+            if (model != null) remember(id, model);
+        }
+        if (model != null) modelHits.increment();
+        else modelMisses.increment();
+        return model;
+    }
+
+    public void putModel(DatasetKey key, TrainingOptions options, ImprovedClassifier model) {
+        if (key == null || !memoizable(options)) return;
+        String id = modelId(key, options);
+        remember(id, model);
+        writeModel(id, model);
+    }
+
+    // Drops the in-memory tier; the disk tier is left as it is
+    public synchronized void clear() {
+        entries.clear();
+        models.clear();
+        bytes = 0;
+    }
+
+    public Stats stats() {
+        int entryCount, modelCount;
+        long used;
+        synchronized (this) {
+            entryCount = entries.size();
+            modelCount = models.size();
+            used = bytes;
+        }
+        return new Stats(isEnabled(), used, maxBytes, entryCount, modelCount, hits.sum(), diskHits.sum(),
+                         misses.sum(), modelHits.sum(), modelMisses.sum(),
+                         dir == null ? null : dir.toString(), dir == null ? 0 : diskUsage(files()));
+    }
+
+    private static boolean memoizable(TrainingOptions options) {
+        return options.timeLimitMillis() == 0;
+    }
+
+    private static String modelId(DatasetKey key, TrainingOptions options) {
+        return key.id(MODEL) + '|' + options;
+    }
+
+    private synchronized Object get(String id) {
+        Entry e = entries.get(id);
+        if (e == null) return null;
+        hits.increment();
+        return e.value();
+    }
+
+    private synchronized void put(String id, Object value, long size) {
+        if (size > maxBytes) return;
+        Entry old = entries.put(id, new Entry(value, size));
+        if (old != null) bytes -= old.bytes();
+        bytes += size;
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().bytes();
+            eldest.remove();
+        }
+    }
+
+    private synchronized void remember(String id, ImprovedClassifier model) {
+        if (maxModels == 0) return;
+        models.put(id, model);
+        Iterator<ImprovedClassifier> eldest = models.values().iterator();
+        while (models.size() > maxModels) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    // HashMap-backed TextBlocks: roughly a map, its table and one entry, key and count per token
+    private static long estimatedBytes(Dataset ds) {
+        long size = 64L * ds.data.size();
+        for (int i = 0; i < ds.data.size(); i++) size += 96L * ds.data.get(i).getFeatures().size();
+        return size;
+    }
+
+    // ---- Disk tier: one file per entry, named by a hash of its id ----
+
+    private Path file(String id, String kind) {
+        return dir.resolve(kind + "-" + HexFormat.of().formatHex(sha256().digest(id.getBytes(StandardCharsets.UTF_8)), 0, 16)
+                           + (MODEL.equals(kind) ? ".txt" : ".bin"));
+    }
+
+    private TrainingMatrix readMatrix(String id) {
+        if (dir == null) return null;
+        Path p = file(id, MATRIX);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(p), 64 * 1024))) {
+            TrainingMatrix m = TrainingMatrix.read(in);
+            touch(p);
+            return m;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring cached matrix " + p.getFileName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeMatrix(String id, TrainingMatrix m) {
+        if (dir == null) return;
+        write(file(id, MATRIX), out -> {
+            DataOutputStream data = new DataOutputStream(out);
+            m.write(data);
+            data.flush();
+        });
+    }
+
+    private ImprovedClassifier readModel(String id) {
+        if (dir == null) return null;
+        Path p = file(id, MODEL);
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(p))) {
+            ImprovedClassifier model = ClassifierService.readModel(in);
+            touch(p);
+            return model;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring cached model " + p.getFileName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeModel(String id, ImprovedClassifier model) {
+        if (dir == null) return;
+        write(file(id, MODEL), out -> {
+            PrintStream ps = new PrintStream(out, false, StandardCharsets.UTF_8);
+            model.save(ps);
+            ps.flush();
+            if (ps.checkError()) throw new IOException("Cannot write model");
+        });
+    }
+
+    @FunctionalInterface
+    private interface Writer {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    // Written under a temporary name and renamed, so a reader never sees a partial file.
+    // A failure only costs the disk copy.
+    private void write(Path target, Writer writer) {
+        Path tmp = null;
+        try {
+            Files.createDirectories(dir);
+            tmp = Files.createTempFile(dir, ".cache-", ".tmp");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp), 64 * 1024)) {
+                writer.writeTo(out);
+            }
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            tmp = null;
+            prune();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Dataset cache write failed: " + e.getMessage());
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {
+                    // left for the next prune
+                }
+            }
+        }
+    }
+
+    // Least recently used first: reads touch their file's modification time
+    private synchronized void prune() throws IOException {
+        List<Path> files = files();
+        long total = diskUsage(files);
+        files.sort(Comparator.comparingLong(DatasetCache::modified));
+        for (Iterator<Path> it = files.iterator(); total > maxDiskBytes && it.hasNext(); ) {
+            Path p = it.next();
+            long size = size(p);
+            if (Files.deleteIfExists(p)) total -= size;
+        }
+    }
+
+    private List<Path> files() {
+        List<Path> out = new ArrayList<>();
+        if (dir == null || !Files.isDirectory(dir)) return out;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "{" + MATRIX + "," + MODEL + "}-*")) {
+            for (Path p : files) out.add(p);
+        } catch (IOException e) {
+            System.err.println("Dataset cache listing failed: " + e.getMessage());
+        }
+        return out;
+    }
+
+    private static long diskUsage(List<Path> files) {
+        long total = 0;
+        for (Path p : files) total += size(p);
+        return total;
+    }
+
+    private static long size(Path p) {
+        try {
+            return Files.size(p);
+        } catch (IOException e) {
+            return 0;   // deleted meanwhile
+        }
+    }
+
+    private static long modified(Path p) {
+        try {
+            return Files.getLastModifiedTime(p).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void touch(Path p) {
+        try {
+            Files.setLastModifiedTime(p, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // pruned meanwhile; the entry is in memory now anyway
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.example.classifierapi.store;
+
+import com.example.classifierapi.core.ClassifierEvents;
+import com.example.classifierapi.core.ImprovedClassifier;
+import com.example.classifierapi.service.ClassifierService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Versioned model files in a directory shared by every replica.
+ *
+ * Version n of a model is model-{n}-{sha256 prefix}.txt, holding the saved-model text.
+ * Files are written under a hidden temporary name, forced to disk and then hard-linked to
+ * their final name, so readers never see a partial file. A version number is first claimed
+ * by creating a hidden, empty .model-{n}.claim file; the name carries no hash, so two
+ * replicas publishing different models at once can't both take the same version (the
+ * loser retries with the next one). The hash in the name is checked on every load. Each
+ * instance watches the directory and hands newer versions to a listener from a background
+ * thread; versions it published itself are never handed back.
+ */
+@Component
+public class ModelRepository implements Closeable {
+
+    private static final Pattern NAME = Pattern.compile("model-(\\d{6,})-([0-9a-f]{32})\\.txt");
+
+    /** One published model file */
+    public record Version(long version, String sha256, long bytes, long modifiedMillis) {
+        String fileName() {
+            return String.format("model-%06d-%s.txt", version, sha256);
+        }
+    }
+
+    /** Receives newer versions found by the watcher */
+    @FunctionalInterface
+    public interface Listener {
+        void onVersion(ImprovedClassifier model, long version);
+    }
+
+    private final Path dir;
+    private final int keep;
+    private final Object publishLock = new Object();
+    private volatile long newestKnown;   // highest version published or loaded here
+    private volatile WatchService watcher;
+    private final Set<String> failed = new HashSet<>();   // watcher thread only
+
+    public ModelRepository(@Value("${classifier.repository.dir:}") String dir,
+                           @Value("${classifier.repository.keep:10}") int keep) {
+        this.dir = dir == null || dir.isBlank() ? null : Path.of(dir);
+        this.keep = Math.max(1, keep);
+    }
+
+    public boolean isEnabled() {
+        return dir != null;
+    }
+
+    /** Published versions, oldest first; empty when the repository is disabled */
+    public List<Version> versions() throws IOException {
+        List<Version> out = new ArrayList<>();
+        if (dir == null || !Files.isDirectory(dir)) return out;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "model-*.txt")) {
+            for (Path p : files) {
+                Matcher m = NAME.matcher(p.getFileName().toString());
+                if (!m.matches()) continue;
+                try {
+                    out.add(new Version(Long.parseLong(m.group(1)), m.group(2), Files.size(p),
+                                        Files.getLastModifiedTime(p).toMillis()));
+                } catch (IOException e) {
+                    // pruned by another replica while listing
+                }
+            }
+        }
+        out.sort(Comparator.comparingLong(Version::version));
+        return out;
+    }
+
+    /** Newest published version, or null */
+    public Version latest() throws IOException {
+        List<Version> all = versions();
+        return all.isEmpty() ? null : all.get(all.size() - 1);
+    }
+
+    /**
+     * Writes 'model' as the next version and returns its number, or 0 when the repository
+     * is disabled. Content identical to the newest version is not written again; that
+     * version's number is returned.
+     */
+    public long publish(ImprovedClassifier model) throws IOException {
+        if (dir == null) return 0;
+        ClassifierEvents.ModelPublish event = new ClassifierEvents.ModelPublish();
+        event.begin();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (PrintStream ps = new PrintStream(bos, false, StandardCharsets.UTF_8)) {
+            model.save(ps);
+        }
+        byte[] bytes = bos.toByteArray();
+        String hash = sha256(bytes);
+        synchronized (publishLock) {
+            Files.createDirectories(dir);
+            Version latest = latest();
+            if (latest != null && latest.sha256().equals(hash)) {
+                newestKnown = Math.max(newestKnown, latest.version());
+                published(event, latest.version(), bytes.length, true);
+                return latest.version();
+            }
+            Path tmp = Files.createTempFile(dir, ".model-", ".tmp");
+            try {
+                try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                    ByteBuffer buf = ByteBuffer.wrap(bytes);
+                    while (buf.hasRemaining()) ch.write(buf);
+                    ch.force(true);
+                }
+                long next = latest == null ? 1 : latest.version() + 1;
+                while (true) {
+                    Version v = new Version(next, hash, bytes.length, System.currentTimeMillis());
+                    try {
+                        Files.createFile(dir.resolve(claimName(next)));
+                        // Known before the file appears, so the watcher never reloads it and
+                        // swaps a parsed copy in for the model just trained here
+                        newestKnown = Math.max(newestKnown, next);
+                        link(dir.resolve(v.fileName()), tmp);
+                    } catch (FileAlreadyExistsException e) {
+                        next++;   // another replica took this number
+                        continue;
+                    }
+                    System.out.println("Published model version " + next + " (" + hash + ") to " + dir);
+                    prune();
+                    published(event, next, bytes.length, false);
+                    return next;
+                }
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+    }
+
+    private static void published(ClassifierEvents.ModelPublish event, long version, long bytes, boolean unchanged) {
+        if (!event.shouldCommit()) return;
+        event.version = version;
+        event.bytes = bytes;
+        event.unchanged = unchanged;
+        event.commit();
+    }
+
+    /** Reads and verifies one version */
+    public ImprovedClassifier load(Version v) throws IOException {
+        byte[] bytes = Files.readAllBytes(dir.resolve(v.fileName()));
+        String hash = sha256(bytes);
+        if (!hash.equals(v.sha256())) {
+            throw new IOException("Model version " + v.version() + " failed its content check (" + hash + ")");
+        }
+        ImprovedClassifier model = ClassifierService.readModel(new ByteArrayInputStream(bytes));
+        newestKnown = Math.max(newestKnown, v.version());
+        return model;
+    }
+
+    /**
+     * Starts a daemon thread that loads versions newer than any seen here and passes them
+     * to 'listener'. Loading happens on that thread, so serving never waits for a parse.
+     */
+    public synchronized void watch(Listener listener) throws IOException {
+        if (dir == null || watcher != null) return;
+        Files.createDirectories(dir);
+        WatchService ws = dir.getFileSystem().newWatchService();
+        dir.register(ws, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        watcher = ws;
+        Thread.ofPlatform().daemon().name("model-repository-watch").start(() -> {
+            try {
+                applyNewest(listener);   // anything published before the watch was registered
+                while (true) {
+                    WatchKey key = ws.take();
+                    // Any event (including OVERFLOW) just triggers a rescan for the newest version
+                    key.pollEvents();
+                    applyNewest(listener);
+                    if (!key.reset()) {
+                        System.err.println("Model repository " + dir + " is no longer watchable");
+                        return;
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // shutting down
+            }
+        });
+        System.out.println("Watching model repository " + dir);
+    }
+
+    // Stops the watcher; Spring calls this on shutdown
+    @Override
+    public synchronized void close() throws IOException {
+        if (watcher != null) watcher.close();
+    }
+
+    // Newest version above newestKnown that loads. A file that fails (corrupt, or still
+    // being copied in by hand) is retried only once its size changes.
+    private void applyNewest(Listener listener) {
+        try {
+            List<Version> all = versions();
+            for (int i = all.size() - 1; i >= 0; i--) {
+                Version v = all.get(i);
+                if (v.version() <= newestKnown) return;
+                String attempt = v.fileName() + ":" + v.bytes();
+                if (failed.contains(attempt)) continue;
+                ImprovedClassifier model;
+                try {
+                    model = load(v);
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Skipping model version " + v.version() + ": " + e.getMessage());
+                    failed.add(attempt);
+                    continue;
+                }
+                System.out.println("Loaded model version " + v.version() + " from " + dir);
+                listener.onVersion(model, v.version());
+                return;
+            }
+        } catch (IOException e) {
+            System.err.println("Model repository scan failed: " + e.getMessage());
+        }
+    }
+
+    // Keeps the newest 'keep' versions, and the claims of those and anything newer
+    private void prune() throws IOException {
+        List<Version> all = versions();
+        for (int i = 0; i < all.size() - keep; i++) {
+            Files.deleteIfExists(dir.resolve(all.get(i).fileName()));
+            Files.deleteIfExists(dir.resolve(claimName(all.get(i).version())));
+        }
+    }
+
+    private static String claimName(long version) {
+        return String.format(".model-%06d.claim", version);
+    }
+
+    // Atomic, never replaces: a hard link where supported, else an atomic rename (which
+    // could replace a concurrently published file on platforms without links)
+    private static void link(Path target, Path tmp) throws IOException {
+        try {
+            Files.createLink(target, tmp);
+        } catch (UnsupportedOperationException e) {
+            if (Files.exists(target)) throw new FileAlreadyExistsException(target.toString());
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes), 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
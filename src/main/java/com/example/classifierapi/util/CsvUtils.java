@@ -1,13 +1,19 @@
 package com.example.classifierapi.util;
 
+import com.example.classifierapi.core.ClassifierEvents;
+import com.example.classifierapi.core.CsvParser;
 import com.example.classifierapi.core.TextBlock;
-import com.opencsv.CSVReaderHeaderAware;
+import com.example.classifierapi.core.TrainingMatrix;
 
 import java.io.File;
-import java.io.FileReader;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.Executor;
 
 /** Reads a CSV with a text column (default "text") and a label column (param). */
 public class CsvUtils {
@@ -28,93 +34,199 @@ public static Parsed read(java.io.InputStream in,
                           String labelCol,
                           com.example.classifierapi.util.TextBlockFactory factory) throws java.io.IOException {
 
-    // We assume UTF-8 CSV with header row containing "text" and labelCol (e.g., "label")
-    java.io.BufferedReader br = new java.io.BufferedReader(new java.io.InputStreamReader(in, java.nio.charset.StandardCharsets.UTF_8));
-    String header = br.readLine();
-    if (header == null) throw new java.io.IOException("Empty CSV");
-
-    String[] cols = header.split(",", -1);
-    int textIdx = -1, labelIdx = -1;
-    for (int i = 0; i < cols.length; i++) {
-        String h = cols[i].trim().replaceAll("^\"|\"$", ""); // strip quotes
-        if (h.equalsIgnoreCase("text")) textIdx = i;
-        if (h.equalsIgnoreCase(labelCol)) labelIdx = i;
+    // We assume UTF-8 CSV with header row containing "text" and labelCol (e.g., "label").
+    // The stream is spooled to a temp file and parsed memory-mapped, so the upload is never
+    // held on the heap as a whole.
+    Path spool = Files.createTempFile("upload-", ".csv");
+    try {
+        Files.copy(in, spool, StandardCopyOption.REPLACE_EXISTING);
+        String[] header = CsvParser.header(spool);
+        if (header.length == 0) throw new java.io.IOException("Empty CSV");
+        int[] cols = headerColumns(header, labelCol, "text");
+
+        java.util.List<com.example.classifierapi.core.TextBlock> blocks = new java.util.ArrayList<>();
+        java.util.List<String> labels = new java.util.ArrayList<>();
+
+        CsvParser.forEach(spool, cols, cells -> {
+            String rawLabel = cells[0], rawText = cells[1];
+            if (rawText == null || rawText.isBlank() || rawLabel == null || rawLabel.isBlank()) return;
+            blocks.add(TextBlockFactory.fromRaw(rawText));
+            labels.add(rawLabel.trim());
+        });
+        return new Parsed(blocks, labels);
+    } finally {
+        Files.deleteIfExists(spool);
     }
-    if (textIdx < 0 || labelIdx < 0) {
-        throw new java.io.IOException("CSV missing required columns: text + " + labelCol);
+}
+
+// Resolves {label, text} column indexes from a header row
+private static int[] headerColumns(String[] header, String labelCol, String textCol) throws java.io.IOException {
+    int[] cols = CsvParser.indexOf(header, labelCol, textCol);
+    if (cols[0] < 0 || cols[1] < 0) {
+        throw new java.io.IOException("CSV missing required columns: " + textCol + " + " + labelCol);
     }
+    return cols;
+}
 
-    java.util.List<com.example.classifierapi.core.TextBlock> blocks = new java.util.ArrayList<>();
-    java.util.List<String> labels = new java.util.ArrayList<>();
+  // Streams rows straight into a CSR training matrix; no TextBlock outlives its row.
+  // The file is parsed in record-aligned chunks, one matrix per chunk, then stacked in
+  // file order; these overloads parse every chunk on the calling thread.
+  public static TrainingMatrix readMatrix(File csv, String labelCol, String textCol) throws Exception {
+    return readMatrix(csv, labelCol, textCol, 0);
+  }
 
-    String line;
-    while ((line = br.readLine()) != null) {
-        // naive CSV split; OK for our generated files (no embedded commas except quoted)
-        // If your CSVs have commas inside text, you can swap to OpenCSV here.
-        String[] parts = splitCsvLine(line, cols.length);
-        if (parts == null) continue; // skip bad line
+  // hashBits > 0 tokenizes into FeatureHasher buckets (see TextBlockFactory.fromRaw)
+  public static TrainingMatrix readMatrix(File csv, String labelCol, String textCol, int hashBits) throws Exception {
+    return readMatrix(csv, labelCol, textCol, hashBits, null, false);
+  }
 
-        String rawText = unquote(parts[textIdx]);
-        String rawLabel = unquote(parts[labelIdx]);
+  // collapseDuplicates keeps one weighted row per distinct (document, label), see
+  // TrainingMatrix.Builder.collapseDuplicates; chunks are collapsed again when stacked
+  private static TrainingMatrix readInHeap(File csv, int[] cols, int hashBits, boolean collapseDuplicates,
+                                           Executor executor, int parallelism) throws Exception {
+    List<Chunk> chunks = CsvParser.parallel(csv.toPath(), cols,
+        () -> new Chunk(new TrainingMatrix.Builder(hashBits).collapseDuplicates(collapseDuplicates),
+                        new Tokenizer(hashBits)), (chunk, cells) -> {
+          String label = cells[0], text = cells[1];
+          if (text == null || label == null) return; // skip bad rows
+          chunk.builder().add(chunk.tokenizer().tokenize(text), label.trim());
+        }, chunk -> chunk.tokenizer().finish(), executor, parallelism);
+    ClassifierEvents.FeatureSetBuild event = new ClassifierEvents.FeatureSetBuild();
+    event.begin();
+    List<TrainingMatrix> parts = new ArrayList<>(chunks.size());
+    for (Chunk c : chunks) parts.add(c.builder().build());
+    return built(event, TrainingMatrix.concat(parts));
+  }
+
+  private record Chunk(TrainingMatrix.Builder builder, Tokenizer tokenizer) { }
 
-        if (rawText == null || rawText.isBlank() || rawLabel == null || rawLabel.isBlank()) continue;
+  // Tokenizes the rows of one parse pass or chunk, timing them for a Tokenize event while
+  // a recording wants one
+  private static final class Tokenizer {
+    private final ClassifierEvents.Tokenize event = new ClassifierEvents.Tokenize();
+    private final boolean timed = event.isEnabled();
+    private final int hashBits;
 
-        com.example.classifierapi.core.TextBlock tb = factory.fromRaw(rawText);
-        blocks.add(tb);
-        labels.add(rawLabel);
+    Tokenizer(int hashBits) {
+      this.hashBits = hashBits;
+      event.begin();
     }
-    return new Parsed(blocks, labels);
-}
 
-// minimal CSV splitter that respects simple quotes
-private static String[] splitCsvLine(String line, int expectedCols) {
-    java.util.List<String> out = new java.util.ArrayList<>(expectedCols);
-    StringBuilder cur = new StringBuilder();
-    boolean inQuotes = false;
-    for (int i = 0; i < line.length(); i++) {
-        char c = line.charAt(i);
-        if (c == '"') {
-            inQuotes = !inQuotes;
-            continue;
-        }
-        if (c == ',' && !inQuotes) {
-            out.add(cur.toString());
-            cur.setLength(0);
-        } else {
-            cur.append(c);
-        }
+    TextBlock tokenize(String text) {
+      if (!timed) return TextBlockFactory.fromRaw(text, hashBits);
+      long t0 = System.nanoTime();
+      TextBlock tb = TextBlockFactory.fromRaw(text, hashBits);
+      event.tokenizeTime += System.nanoTime() - t0;
+      event.rows++;
+      event.features += tb.getFeatures().size();
+      return tb;
     }
-    out.add(cur.toString());
-    return out.toArray(new String[0]);
-}
 
-private static String unquote(String s) {
-    if (s == null) return null;
-    s = s.trim();
-    if (s.startsWith("\"") && s.endsWith("\"") && s.length() >= 2) {
-        s = s.substring(1, s.length() - 1);
+    void finish() {
+      if (event.shouldCommit()) event.commit();
     }
-    return s.replace("\"\"", "\"");
-}
+  }
+
+  private static TrainingMatrix built(ClassifierEvents.FeatureSetBuild event, TrainingMatrix m) {
+    if (event.shouldCommit()) {
+      event.rows = m.rows();
+      event.features = m.features();
+      event.nonZeros = m.nonZeros();
+      event.spilled = m.isSpilled();
+      event.commit();
+    }
+    return m;
+  }
+
+  // Out-of-core variant: rows stream sequentially into column files under spillDir and
+  // the matrix comes back memory-mapped, so the heap holds only the feature dictionary
+  public static TrainingMatrix readMatrix(File csv, String labelCol, String textCol, int hashBits,
+                                          Path spillDir) throws Exception {
+    return readMatrix(csv, labelCol, textCol, hashBits, spillDir, false);
+  }
+
+  // Either of the above; collapseDuplicates applies to in-heap matrices (spilled ones keep
+  // every row)
+  public static TrainingMatrix readMatrix(File csv, String labelCol, String textCol, int hashBits,
+                                          Path spillDir, boolean collapseDuplicates) throws Exception {
+    return readMatrix(csv, labelCol, textCol, hashBits, spillDir, collapseDuplicates, Runnable::run, 1);
+  }
 
+  // As above; in-heap parses use up to 'parallelism' threads, the caller's plus helpers on
+  // 'executor' (CsvParser.parallel). Spilling is sequential either way.
+  public static TrainingMatrix readMatrix(File csv, String labelCol, String textCol, int hashBits,
+                                          Path spillDir, boolean collapseDuplicates,
+                                          Executor executor, int parallelism) throws Exception {
+    if (labelCol == null || labelCol.isBlank()) labelCol = "label";
+    if (textCol == null  || textCol.isBlank())  textCol  = "text";
+
+    int[] cols = headerColumns(CsvParser.header(csv.toPath()), labelCol, textCol);
+    if (spillDir == null) return readInHeap(csv, cols, hashBits, collapseDuplicates, executor, parallelism);
+    TrainingMatrix.Builder builder = new TrainingMatrix.Builder(hashBits, spillDir);
+    Tokenizer tokenizer = new Tokenizer(hashBits);
+    try {
+      CsvParser.forEach(csv.toPath(), cols, cells -> {
+        String label = cells[0], text = cells[1];
+        if (text == null || label == null) return; // skip bad rows
+        builder.add(tokenizer.tokenize(text), label.trim());
+      });
+      tokenizer.finish();
+      ClassifierEvents.FeatureSetBuild event = new ClassifierEvents.FeatureSetBuild();
+      event.begin();
+      return built(event, builder.build());
+    } catch (Throwable t) {
+      builder.discard();
+      throw t;
+    }
+  }
+
+  // Rows and non-zeros a CSV will tokenize into, extrapolated from its first few MB
+  public static record MatrixEstimate(long rows, long nonZeros) { }
+
+  private static final int ESTIMATE_SAMPLE_BYTES = 4 << 20;
+
+  public static MatrixEstimate estimateMatrix(File csv, String labelCol, String textCol, int hashBits) throws Exception {
+    if (labelCol == null || labelCol.isBlank()) labelCol = "label";
+    if (textCol == null  || textCol.isBlank())  textCol  = "text";
+
+    int[] cols = headerColumns(CsvParser.header(csv.toPath()), labelCol, textCol);
+    long size;
+    long[] sampled = new long[2];   // rows, non-zeros
+    try (FileChannel ch = FileChannel.open(csv.toPath(), StandardOpenOption.READ)) {
+      size = ch.size();
+      CsvParser.forEach(ch.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, ESTIMATE_SAMPLE_BYTES)),
+          cols, true, cells -> {
+            String label = cells[0], text = cells[1];
+            if (text == null || label == null) return;
+            sampled[0]++;
+            sampled[1] += TextBlockFactory.fromRaw(text, hashBits).getFeatures().size();
+          });
+    }
+    if (size <= ESTIMATE_SAMPLE_BYTES) return new MatrixEstimate(sampled[0], sampled[1]);
+    double scale = (double) size / ESTIMATE_SAMPLE_BYTES;
+    return new MatrixEstimate((long) (sampled[0] * scale), (long) (sampled[1] * scale));
+  }
 
   public static Dataset readCsv(File csv, String labelCol, String textCol) throws Exception {
+    return readCsv(csv, labelCol, textCol, 0);
+  }
+
+  public static Dataset readCsv(File csv, String labelCol, String textCol, int hashBits) throws Exception {
     if (labelCol == null || labelCol.isBlank()) labelCol = "label";
     if (textCol == null  || textCol.isBlank())  textCol  = "text";
 
     List<TextBlock> data = new ArrayList<>();
     List<String> labels = new ArrayList<>();
 
-    try (CSVReaderHeaderAware reader = new CSVReaderHeaderAware(new FileReader(csv))) {
-      Map<String, String> row;
-      while ((row = reader.readMap()) != null) {
-        String text  = row.get(textCol);
-        String label = row.get(labelCol);
-        if (text == null || label == null) continue; // skip bad rows
-        data.add(TextBlockFactory.fromRaw(text));
-        labels.add(label.trim());
-      }
-    }
+    int[] cols = headerColumns(CsvParser.header(csv.toPath()), labelCol, textCol);
+    Tokenizer tokenizer = new Tokenizer(hashBits);
+    CsvParser.forEach(csv.toPath(), cols, cells -> {
+      String label = cells[0], text = cells[1];
+      if (text == null || label == null) return; // skip bad rows
+      data.add(tokenizer.tokenize(text));
+      labels.add(label.trim());
+    });
+    tokenizer.finish();
     return new Dataset(data, labels);
   }
 }
@@ -0,0 +1,114 @@
+package com.example.classifierapi.util;
+
+import com.example.classifierapi.dto.ExecutorStats;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ExecutorService wrapper that counts what ran on it and how long tasks waited and ran,
+ * so the virtual-thread and platform-thread paths can be compared under load.
+ */
+public class InstrumentedExecutor {
+
+  private final String name;
+  private final ExecutorService delegate;
+  private final ThreadPoolExecutor pool; // null for virtual threads
+  private final AtomicInteger active = new AtomicInteger();
+  private final LongAdder submitted = new LongAdder();
+  private final LongAdder completed = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  private final LongAdder waitNanos = new LongAdder();
+  private final LongAdder runNanos = new LongAdder();
+
+  private InstrumentedExecutor(String name, ExecutorService delegate, ThreadPoolExecutor pool) {
+    this.name = name;
+    this.delegate = delegate;
+    this.pool = pool;
+  }
+
+  /** One new virtual thread per task; for blocking I/O such as SSE relays and uploads. */
+  public static InstrumentedExecutor virtual(String name) {
+    return new InstrumentedExecutor(name,
+        Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory()), null);
+  }
+
+  /** Fixed pool of platform threads with a bounded queue; for CPU-bound work. */
+  public static InstrumentedExecutor platform(String name, int threads, int queueCapacity) {
+    ThreadPoolExecutor tpe = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<>(queueCapacity),
+        Thread.ofPlatform().name(name + "-", 0).daemon(true).factory());
+    return new InstrumentedExecutor(name, tpe, tpe);
+  }
+
+  public <T> Future<T> submit(Callable<T> task) {
+    submitted.increment();
+    long queuedAt = System.nanoTime();
+    try {
+      return delegate.submit(() -> {
+        long start = System.nanoTime();
+        waitNanos.add(start - queuedAt);
+        active.incrementAndGet();
+        try {
+          T result = task.call();
+          completed.increment();
+          return result;
+        } catch (Throwable t) {
+          failed.increment();
+          throw t;
+        } finally {
+          active.decrementAndGet();
+          runNanos.add(System.nanoTime() - start);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      rejected.increment();
+      throw e;
+    }
+  }
+
+  public Future<?> execute(Runnable task) {
+    return submit(() -> {
+      task.run();
+      return null;
+    });
+  }
+
+  public ExecutorStats stats() {
+    long done = completed.sum() + failed.sum();
+    return new ExecutorStats(
+        name,
+        pool == null,
+        pool == null ? 0 : pool.getPoolSize(),
+        active.get(),
+        pool == null ? 0 : pool.getQueue().size(),
+        submitted.sum(),
+        completed.sum(),
+        failed.sum(),
+        rejected.sum(),
+        done == 0 ? 0.0 : waitNanos.sum() / 1e6 / done,
+        done == 0 ? 0.0 : runNanos.sum() / 1e6 / done);
+  }
+
+  /** Threads that can run tasks at once: the pool size, or the core count for virtual threads */
+  public int parallelism() {
+    return pool == null ? Runtime.getRuntime().availableProcessors() : pool.getMaximumPoolSize();
+  }
+
+  public String name() {
+    return name;
+  }
+
+  public void shutdown() {
+    delegate.shutdownNow();
+  }
+}
@@ -1,9 +1,11 @@
 package com.example.classifierapi.util;
 
+import com.example.classifierapi.core.FeatureHasher;
 import com.example.classifierapi.core.TextBlock;
 
 import java.util.Set;
 import java.util.Arrays;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 public class TextBlockFactory {
@@ -24,11 +26,49 @@ private com.example.classifierapi.util.TextBlockFactory textBlockFactory;
 
 
   public static TextBlock fromRaw(String text) {
+    return new TextBlock(normalize(text));
+  }
+
+  // hashBits == 0 is plain fromRaw; otherwise each token becomes its "#bucket" feature
+  public static TextBlock fromRaw(String text, int hashBits) {
+    if (hashBits == 0) return fromRaw(text);
+    FeatureHasher hasher = FeatureHasher.of(hashBits);
+    String hashed = Arrays.stream(normalize(text).split(" "))
+        .filter(t -> !t.isEmpty())
+        .map(hasher::feature)
+        .collect(Collectors.joining(" "));
+    return new TextBlock(hashed);
+  }
+
+  // Calls 'sink' with the tokens fromRaw(text, hashBits) would count, in order, without
+  // building the normalized string: maximal [a-z0-9] runs of the lower-cased text minus
+  // stopwords, as "#bucket" names when hashBits > 0
+  public static void forEachToken(String text, int hashBits, Consumer<String> sink) {
+    if (text == null) return;
+    FeatureHasher hasher = hashBits != 0 ? FeatureHasher.of(hashBits) : null;
+    String lower = text.toLowerCase();
+    int n = lower.length();
+    int i = 0;
+    while (i < n) {
+      while (i < n && !isTokenChar(lower.charAt(i))) i++;
+      int from = i;
+      while (i < n && isTokenChar(lower.charAt(i))) i++;
+      if (i == from) break;
+      String token = lower.substring(from, i);
+      if (STOP.contains(token)) continue;
+      sink.accept(hasher != null ? hasher.feature(token) : token);
+    }
+  }
+
+  private static boolean isTokenChar(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9');
+  }
+
+  private static String normalize(String text) {
     if (text == null) text = "";
-    String normalized = Arrays.stream(text.toLowerCase().split("[^a-z0-9]+"))
+    return Arrays.stream(text.toLowerCase().split("[^a-z0-9]+"))
         .filter(t -> !t.isBlank())
         .filter(t -> !STOP.contains(t))   // drop stopwords
         .collect(Collectors.joining(" "));
-    return new TextBlock(normalized);
   }
 }
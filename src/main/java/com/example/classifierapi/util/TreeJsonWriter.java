@@ -0,0 +1,144 @@
+package com.example.classifierapi.util;
+
+import com.example.classifierapi.core.ImprovedClassifier;
+import com.example.classifierapi.dto.TreeNodeDto;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes an in-memory tree straight to JSON, skipping the save/parse round trip.
+ * Output has the same shape Jackson gives a {@link TreeNodeDto} graph:
+ * {"isLeaf":..,"label":..,"feature":..,"threshold":..,"left":..,"right":..}
+ */
+public class TreeJsonWriter {
+
+  public static byte[] toJson(ImprovedClassifier.Node root) {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream(4096);
+    try (Writer w = new OutputStreamWriter(bos, StandardCharsets.UTF_8)) {
+      writeNode(root, w);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return bos.toByteArray();
+  }
+
+  /**
+   * A bounded window of the tree: 'start' and its descendants down to 'depth' levels below
+   * it. Non-leaf children past the last level are stubs ({"nodeId":..,"stub":true,..}) that
+   * the client expands with another request; with minSamples > 0, decision nodes with fewer
+   * samples are written as summaries ({"collapsed":true,..}) instead of being opened. Every
+   * node carries nodeId, samples, subtreeNodes and subtreeDepth; the window's top node also
+   * carries parentId. The output is at most 2^(depth + 1) - 1 nodes whatever the tree size.
+   */
+  public static byte[] toJson(ImprovedClassifier model, ImprovedClassifier.Node start, int depth, int minSamples) {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream(1024);
+    try (Writer w = new OutputStreamWriter(bos, StandardCharsets.UTF_8)) {
+      writeWindow(model, start, depth, minSamples, true, w);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return bos.toByteArray();
+  }
+
+  private static void writeWindow(ImprovedClassifier model, ImprovedClassifier.Node n, int depth, int minSamples,
+                                  boolean top, Writer w) throws IOException {
+    if (n == null) {
+      w.write("null");
+      return;
+    }
+    boolean leaf = n.isLeaf();
+    w.write("{\"nodeId\":");
+    w.write(Integer.toString(n.getNodeId()));
+    if (top) {
+      w.write(",\"parentId\":");
+      w.write(Integer.toString(model.parentId(n)));
+    }
+    w.write(",\"isLeaf\":");
+    w.write(leaf ? "true" : "false");
+    w.write(",\"samples\":");
+    w.write(Integer.toString(n.getSamples()));
+    w.write(",\"subtreeNodes\":");
+    w.write(Integer.toString(model.subtreeSize(n)));
+    w.write(",\"subtreeDepth\":");
+    w.write(Integer.toString(model.subtreeHeight(n)));
+    if (!leaf && !top && (depth < 0 || n.getSamples() < minSamples)) {
+      w.write(depth < 0 ? ",\"stub\":true}" : ",\"collapsed\":true}");
+      return;
+    }
+    w.write(",\"gini\":");
+    writeNumber(n.getGini(), w);
+    w.write(",\"label\":");
+    writeString(leaf ? n.getLabel() : null, w);
+    w.write(",\"feature\":");
+    writeString(leaf ? null : n.getFeature(), w);
+    w.write(",\"threshold\":");
+    if (leaf) w.write("null");
+    else writeNumber(n.getThreshold(), w);
+    if (!leaf) {
+      w.write(",\"left\":");
+      writeWindow(model, n.getLeft(), depth - 1, minSamples, false, w);
+      w.write(",\"right\":");
+      writeWindow(model, n.getRight(), depth - 1, minSamples, false, w);
+    }
+    w.write('}');
+  }
+
+  private static void writeNode(ImprovedClassifier.Node n, Writer w) throws IOException {
+    if (n == null) {
+      w.write("null");
+      return;
+    }
+    boolean leaf = n.isLeaf();
+    w.write("{\"isLeaf\":");
+    w.write(leaf ? "true" : "false");
+    w.write(",\"label\":");
+    writeString(leaf ? n.getLabel() : null, w);
+    w.write(",\"feature\":");
+    writeString(leaf ? null : n.getFeature(), w);
+    w.write(",\"threshold\":");
+    if (leaf) w.write("null");
+    else writeNumber(n.getThreshold(), w);
+    w.write(",\"left\":");
+    writeNode(leaf ? null : n.getLeft(), w);
+    w.write(",\"right\":");
+    writeNode(leaf ? null : n.getRight(), w);
+    w.write('}');
+  }
+
+  // JSON has no NaN or Infinity; a non-finite value (e.g. the gini of a node read from a
+  // saved model, or a threshold parsed as NaN) is written as null
+  static void writeNumber(double v, Writer w) throws IOException {
+    w.write(Double.isFinite(v) ? Double.toString(v) : "null");
+  }
+
+  static void writeString(String s, Writer w) throws IOException {
+    if (s == null) {
+      w.write("null");
+      return;
+    }
+    w.write('"');
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      switch (c) {
+        case '"' -> w.write("\\\"");
+        case '\\' -> w.write("\\\\");
+        case '\n' -> w.write("\\n");
+        case '\r' -> w.write("\\r");
+        case '\t' -> w.write("\\t");
+        default -> {
+          if (c < 0x20) {
+            w.write(String.format("\\u%04x", (int) c));
+          } else {
+            w.write(c);
+          }
+        }
+      }
+    }
+    w.write('"');
+  }
+}
@@ -0,0 +1,105 @@
+package com.example.classifierapi.adapter;
+
+import com.example.classifierapi.core.Classifier;
+import com.example.classifierapi.core.ImprovedClassifier;
+import com.example.classifierapi.core.TextBlock;
+import com.example.classifierapi.dto.DecisionStep;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.classifierapi.core.Fixtures.saved;
+import static com.example.classifierapi.core.Fixtures.words;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClassifierAdapterTest {
+
+	private static final String[] WORDS = { "ball", "goal", "vote", "law", "cpu", "chip", "match", "senate", "win", "tax",
+			"court", "gpu", "team", "bill", "ram", "coach" };
+
+	@Test
+	void tracedPathsMatchTheLegacyTree() {
+		Random rnd = new Random(33);
+		List<TextBlock> docs = new ArrayList<>();
+		List<String> labels = new ArrayList<>();
+		for (int i = 0; i < 2_000; i++) {
+			TextBlock tb = new TextBlock(text(rnd));
+			docs.add(tb);
+			labels.add(tb.get("ball") + tb.get("team") > 0.3 ? "sport" : tb.get("vote") > 0.2 ? "politics" : "tech");
+		}
+		Classifier legacy = new Classifier(docs, labels);
+		AtomicInteger dumps = new AtomicInteger();
+		ClassifierAdapter adapter = new ClassifierAdapter(ps -> {
+			dumps.incrementAndGet();
+			legacy.save(ps);
+		});
+		// the same dump read by the node-based loader gives the reference paths
+		ImprovedClassifier reference = new ImprovedClassifier(new Scanner(saved(legacy)));
+
+		int longest = 0;
+		for (int i = 0; i < 3_000; i++) {
+			TextBlock tb = new TextBlock(text(rnd));
+			ClassifierAdapter.Result r = adapter.classifyWithPath(legacy, tb);
+			longest = Math.max(longest, r.steps().size());
+			assertEquals(legacy.classify(tb), r.label());
+			List<ImprovedClassifier.PathStep> expected = reference.classifyWithPath(tb).path;
+			assertEquals(expected.size() - 1, r.steps().size());
+			for (int k = 0; k < r.steps().size(); k++) {
+				DecisionStep step = r.steps().get(k);
+				assertEquals(expected.get(k).feature, step.feature());
+				assertEquals(expected.get(k).threshold, step.threshold());
+				assertEquals(tb.get(step.feature()), step.value());
+				assertEquals(expected.get(k).direction, step.direction());
+			}
+		}
+		assertTrue(longest > 5, "shallow tree: " + longest);
+		// dumped once for the classifier, again only when a different one is passed
+		assertEquals(1, dumps.get());
+		adapter.classifyWithPath(new Object(), new TextBlock("ball"));
+		assertEquals(2, dumps.get());
+	}
+
+	@Test
+	void deepTreesTraceWithoutRecursion() {
+		// a chain of decisions down the left side, as mistake-driven training grows it
+		int depth = 50_000;
+		StringBuilder dump = new StringBuilder();
+		for (int i = 0; i < depth; i++) dump.append("Feature: w").append(i).append("\nThreshold: 0.5\n");
+		dump.append("bottom\n");
+		for (int i = depth - 1; i >= 0; i--) dump.append("right").append(i).append('\n');
+		ClassifierAdapter adapter = new ClassifierAdapter(ps -> ps.print(dump));
+		Object model = new Object();
+
+		ClassifierAdapter.Result bottom = adapter.classifyWithPath(model, new TextBlock("none of them"));
+		assertEquals("bottom", bottom.label());
+		assertEquals(depth, bottom.steps().size());
+		assertEquals("left", bottom.steps().get(depth - 1).direction());
+
+		ClassifierAdapter.Result early = adapter.classifyWithPath(model, new TextBlock("w2"));
+		assertEquals("right2", early.label());
+		assertEquals(3, early.steps().size());
+		assertEquals("right", early.steps().get(2).direction());
+	}
+
+	@Test
+	void malformedDumpsAreRejected() {
+		for (String dump : new String[] { "Feature: a\nspam\n", "Feature: a\nThreshold: 0.5\nspam\n",
+				"Feature: a\nThreshold: 0.5\nspam\nham\nextra\n" }) {
+			ClassifierAdapter adapter = new ClassifierAdapter(ps -> ps.print(dump));
+			assertThrows(IllegalStateException.class, () -> adapter.classifyWithPath(new Object(), new TextBlock("a")), dump);
+		}
+		ClassifierAdapter trailingBlank = new ClassifierAdapter(ps -> ps.print("Feature: a\nThreshold: 0.5\nspam\nham\n\n"));
+		assertEquals("ham", trailingBlank.classifyWithPath(new Object(), new TextBlock("a")).label());
+	}
+
+	private static String text(Random rnd) {
+		return words(rnd, WORDS, 1 + rnd.nextInt(6));
+	}
+
+}
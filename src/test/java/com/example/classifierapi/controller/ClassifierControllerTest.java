@@ -0,0 +1,218 @@
+package com.example.classifierapi.controller;
+
+import com.example.classifierapi.core.ImprovedClassifier;
+import com.example.classifierapi.core.SuccessiveHalving;
+import com.example.classifierapi.service.ClassifierService;
+import com.example.classifierapi.store.DatasetCache;
+import com.example.classifierapi.store.ModelRepository;
+import com.example.classifierapi.util.InstrumentedExecutor;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.zip.GZIPInputStream;
+
+import static com.example.classifierapi.core.Fixtures.saved;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClassifierControllerTest {
+
+	private static final String MODEL = "Feature: ball\nThreshold: 0.25\nsport\nFeature: vote\nThreshold: 0.1\ntech\npolitics\n";
+
+	private final ClassifierService service = new ClassifierService(new ModelRepository("", 1),
+			new DatasetCache(0, 0, "", 0), null);
+	// /tree and /export only read the service
+	private final ClassifierController controller = new ClassifierController(service, null, null, null, null);
+
+	@Test
+	void treeAnswersMatchingEtagWith304() {
+		service.useModel(model(MODEL));
+		ResponseEntity<byte[]> ok = controller.tree(null, null);
+		assertEquals(HttpStatus.OK, ok.getStatusCode());
+		String etag = ok.getHeaders().getETag();
+		assertNotNull(etag);
+		assertEquals(HttpHeaders.ACCEPT_ENCODING, ok.getHeaders().getFirst(HttpHeaders.VARY));
+		assertNull(ok.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+		assertTrue(new String(ok.getBody(), StandardCharsets.UTF_8).startsWith("{"));
+
+		ResponseEntity<byte[]> notModified = controller.tree(etag, "gzip");
+		assertEquals(HttpStatus.NOT_MODIFIED, notModified.getStatusCode());
+		assertEquals(etag, notModified.getHeaders().getETag());
+		assertNull(notModified.getBody());
+		assertEquals(HttpStatus.NOT_MODIFIED, controller.tree("\"other\", " + etag, null).getStatusCode());
+		assertEquals(HttpStatus.OK, controller.tree("\"other\"", null).getStatusCode());
+
+		// a new model gets a new tag; the old one no longer matches
+		service.useModel(model(MODEL.replace("0.25", "0.5")));
+		ResponseEntity<byte[]> changed = controller.tree(etag, null);
+		assertEquals(HttpStatus.OK, changed.getStatusCode());
+		assertNotEquals(etag, changed.getHeaders().getETag());
+	}
+
+	@Test
+	void treeGzipsWhenAccepted() throws IOException {
+		service.useModel(model(MODEL));
+		byte[] plain = controller.tree(null, null).getBody();
+		ResponseEntity<byte[]> gz = controller.tree(null, "deflate, gzip;q=0.5");
+		assertEquals("gzip", gz.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+		assertEquals(HttpHeaders.ACCEPT_ENCODING, gz.getHeaders().getFirst(HttpHeaders.VARY));
+		assertArrayEquals(plain, gunzip(gz.getBody()));
+
+		assertNull(controller.tree(null, "gzip;q=0").getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+		assertNull(controller.tree(null, "br").getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+	}
+
+	@Test
+	void exportAnswersMatchingEtagWith304() throws IOException {
+		ImprovedClassifier model = model(MODEL);
+		service.useModel(model);
+		ResponseEntity<StreamingResponseBody> ok = controller.export(null, null);
+		assertEquals(HttpStatus.OK, ok.getStatusCode());
+		String etag = ok.getHeaders().getETag();
+		assertNotNull(etag);
+		byte[] body = write(ok.getBody());
+		assertEquals(saved(model), new String(body, StandardCharsets.UTF_8));
+		assertEquals(body.length, ok.getHeaders().getContentLength());
+
+		ResponseEntity<StreamingResponseBody> notModified = controller.export(etag, null);
+		assertEquals(HttpStatus.NOT_MODIFIED, notModified.getStatusCode());
+		assertEquals(etag, notModified.getHeaders().getETag());
+		assertNull(notModified.getBody());
+		// weak comparison: the strong form of the same tag matches too
+		assertEquals(HttpStatus.NOT_MODIFIED, controller.export(etag.substring(2), null).getStatusCode());
+		assertEquals(HttpStatus.NOT_MODIFIED, controller.export("*", null).getStatusCode());
+	}
+
+	@Test
+	void exportGzipsWhenAccepted() throws IOException {
+		ImprovedClassifier model = model(MODEL);
+		service.useModel(model);
+		ResponseEntity<StreamingResponseBody> gz = controller.export(null, "gzip, deflate");
+		assertEquals("gzip", gz.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+		assertEquals(HttpHeaders.ACCEPT_ENCODING, gz.getHeaders().getFirst(HttpHeaders.VARY));
+		// length of the compressed body isn't known up front
+		assertEquals(-1, gz.getHeaders().getContentLength());
+		assertEquals(saved(model), new String(gunzip(write(gz.getBody())), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void tuneRunsOnTheTrainingPool() throws Exception {
+		// one platform thread: the search coordinates on it and trains every candidate there
+		InstrumentedExecutor pool = InstrumentedExecutor.platform("train", 1, 4);
+		try {
+			ClassifierService tuning = new ClassifierService(new ModelRepository("", 1), new DatasetCache(0, 0, "", 0), pool);
+			ReflectionTestUtils.setField(tuning, "trainingStorage", "heap");
+			ClassifierController c = new ClassifierController(tuning, null, pool, null, null);
+			MockMultipartFile file = new MockMultipartFile("file", "tune.csv", "text/csv", tuneCsv(400));
+
+			ResponseEntity<SuccessiveHalving.Result> r = c.tune(file, "label", null, null, null, null, null, null,
+					new int[] { 1, 4 }, new int[] { 2, 20 }, new int[] { 1 }, new double[] { 0 }, 2, 0.25, 42);
+			assertEquals(HttpStatus.OK, r.getStatusCode());
+			SuccessiveHalving.Result result = r.getBody();
+			assertNotNull(result);
+			assertEquals(4, result.candidates());
+			assertEquals(4, result.best().maxDepth());
+			assertEquals(400, result.trainRows() + result.validationRows());
+			assertEquals(1, pool.stats().completed());
+			assertFalse(tuning.isReady(), "tuning doesn't serve a model");
+
+			// bad search settings come back as IllegalArgumentException (400), not wrapped
+			assertThrows(IllegalArgumentException.class, () -> c.tune(file, "label", null, null, null, null, null, null,
+					new int[] { 4 }, new int[] { 2 }, new int[] { 1 }, new double[] { 0 }, 1, 0.25, 42));
+			assertThrows(IllegalArgumentException.class, () -> c.tune(file, "label", null, null, null, null, null, null,
+					new int[] { 4 }, new int[] { 1 }, new int[] { 1 }, new double[] { 0 }, 2, 0.25, 42));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	void subtreePagesWithinLimits() {
+		assertThrows(IllegalStateException.class, () -> controller.subtree(0, 3, 0));
+		service.useModel(model(MODEL));
+		ResponseEntity<byte[]> root = controller.subtree(0, 0, 0);
+		assertEquals(HttpStatus.OK, root.getStatusCode());
+		String json = new String(root.getBody(), StandardCharsets.UTF_8);
+		assertTrue(json.startsWith("{\"nodeId\":0,\"parentId\":-1,\"isLeaf\":false,"), json);
+		assertTrue(json.contains("\"stub\":true"), json);
+		assertTrue(json.contains("\"subtreeNodes\":5,\"subtreeDepth\":3"), json);
+
+		// the stub on the right (node 2) opens with its own window
+		String right = new String(controller.subtree(2, 3, 0).getBody(), StandardCharsets.UTF_8);
+		assertTrue(right.startsWith("{\"nodeId\":2,\"parentId\":0,"), right);
+		assertFalse(right.contains("\"stub\""), right);
+
+		assertEquals(HttpStatus.NOT_FOUND, controller.subtree(99, 3, 0).getStatusCode());
+		assertEquals(HttpStatus.NOT_FOUND, controller.subtree(-1, 3, 0).getStatusCode());
+		// out-of-range paging reaches badRequest() through the IllegalArgumentException handler
+		assertThrows(IllegalArgumentException.class, () -> controller.subtree(0, -1, 0));
+		assertThrows(IllegalArgumentException.class, () -> controller.subtree(0, 11, 0));
+		assertThrows(IllegalArgumentException.class, () -> controller.subtree(0, 3, -1));
+		assertEquals(HttpStatus.OK, controller.subtree(0, 10, 0).getStatusCode());
+		assertEquals(HttpStatus.BAD_REQUEST, controller.badRequest(new IllegalArgumentException("x")).getStatusCode());
+	}
+
+	@Test
+	void headerParsing() {
+		assertFalse(ClassifierController.etagMatches(null, "W/\"a\""));
+		assertFalse(ClassifierController.etagMatches(" ", "W/\"a\""));
+		assertTrue(ClassifierController.etagMatches("W/\"a\"", "W/\"a\""));
+		assertTrue(ClassifierController.etagMatches("\"b\" , \"a\"", "W/\"a\""));
+		assertFalse(ClassifierController.etagMatches("\"b\"", "W/\"a\""));
+
+		assertTrue(ClassifierController.acceptsGzip("GZIP"));
+		assertTrue(ClassifierController.acceptsGzip("br, gzip ; q=1.0"));
+		assertFalse(ClassifierController.acceptsGzip("gzip;q=0.0"));
+		assertFalse(ClassifierController.acceptsGzip("gzip;q=x"));
+		assertFalse(ClassifierController.acceptsGzip("identity"));
+		assertFalse(ClassifierController.acceptsGzip(null));
+	}
+
+	// "ball" makes a document sport, "vote" politics, anything else tech
+	private static byte[] tuneCsv(int rows) {
+		String[] words = { "ball", "vote", "cpu", "chip", "the", "news" };
+		Random rnd = new Random(39);
+		StringBuilder csv = new StringBuilder("label,text\n");
+		for (int i = 0; i < rows; i++) {
+			String text = words[rnd.nextInt(words.length)] + " " + words[rnd.nextInt(words.length)];
+			String label = text.contains("ball") ? "sport" : text.contains("vote") ? "politics" : "tech";
+			csv.append(label).append(',').append(text).append('\n');
+		}
+		return csv.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static ImprovedClassifier model(String text) {
+		return new ImprovedClassifier(new Scanner(text));
+	}
+
+	private static byte[] write(StreamingResponseBody body) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		body.writeTo(out);
+		return out.toByteArray();
+	}
+
+	private static byte[] gunzip(byte[] gz) throws IOException {
+		try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gz))) {
+			return in.readAllBytes();
+		}
+	}
+
+}
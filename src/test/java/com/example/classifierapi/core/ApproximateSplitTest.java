@@ -0,0 +1,100 @@
+package com.example.classifierapi.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.example.classifierapi.core.Fixtures.words;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ApproximateSplitTest {
+
+	private static final String[] WORDS = { "ball", "goal", "vote", "law", "cpu", "chip", "match", "senate", "win", "tax" };
+
+	@Test
+	void servingRoutesTrainingRowsAsTrainingDid() {
+		List<TextBlock> docs = new ArrayList<>();
+		List<String> labels = new ArrayList<>();
+		documents(new Random(40), 4_000, docs, labels);
+		TrainingMatrix data = TrainingMatrix.of(docs, labels);
+		TrainingOptions[] options = {
+			binned(16, 0),
+			binned(4, 0),
+			binned(32, 500),
+			new TrainingOptions(TrainingOptions.Growth.BEST_FIRST, 40, 0, 12, 2, 1, 1e-3, 8, 0, false),
+		};
+		for (TrainingOptions o : options) {
+			ImprovedClassifier model = new ImprovedClassifier(data, null, o);
+			assertTrue(model.nodeCount() > 10, "trivial tree for " + o);
+			// classify(data, row) compares the float values, as the partition during training did;
+			// classify(TextBlock) the doubles they were rounded from, as serving does
+			for (int r = 0; r < data.rows(); r++) {
+				assertEquals(model.classify(data, r), model.classify(docs.get(r)), "row " + r + " with " + o);
+			}
+			// thresholds come from data values, so plenty of rows sit right on one
+			assertTrue(rowsOnAThreshold(model.getRoot(), data) > 0, "no row on a threshold for " + o);
+		}
+	}
+
+	@Test
+	void binnedSearchStaysCloseToExact() {
+		List<TextBlock> docs = new ArrayList<>();
+		List<String> labels = new ArrayList<>();
+		documents(new Random(41), 4_000, docs, labels);
+		TrainingMatrix data = TrainingMatrix.of(docs, labels);
+		double exact = accuracy(new ImprovedClassifier(data, null, TrainingOptions.DEFAULTS), docs, labels);
+		double binned = accuracy(new ImprovedClassifier(data, null, binned(32, 0)), docs, labels);
+		double sampled = accuracy(new ImprovedClassifier(data, null, binned(32, 400)), docs, labels);
+		assertTrue(exact > 0.85, "exact " + exact);
+		assertTrue(binned > exact - 0.03, "binned " + binned + " vs exact " + exact);
+		assertTrue(sampled > exact - 0.05, "sampled " + sampled + " vs exact " + exact);
+	}
+
+	@Test
+	void badApproximateOptionsAreRejected() {
+		assertThrows(IllegalArgumentException.class, () -> binned(1, 0));
+		assertThrows(IllegalArgumentException.class, () -> binned(-1, 0));
+		assertThrows(IllegalArgumentException.class, () -> binned(16, -1));
+		assertThrows(IllegalArgumentException.class, () -> binned(16, 1));
+	}
+
+	private static TrainingOptions binned(int bins, int subsampleAbove) {
+		return new TrainingOptions(TrainingOptions.Growth.DEPTH_FIRST, 0, 0, 12, 2, 1, 1e-3, bins, subsampleAbove, false);
+	}
+
+	// (row, decision node) pairs where the row's float value is the smallest float at or
+	// above the node's threshold, i.e. exactly the candidate value the threshold came from
+	private static int rowsOnAThreshold(ImprovedClassifier.Node n, TrainingMatrix data) {
+		if (n == null || n.isLeaf()) return 0;
+		int on = 0;
+		for (int r = 0; r < data.rows(); r++) {
+			float v = data.value(r, n.featureId);
+			if (v > n.threshold && Math.nextDown(v) < n.threshold) on++;
+		}
+		return on + rowsOnAThreshold(n.left, data) + rowsOnAThreshold(n.right, data);
+	}
+
+	private static double accuracy(ImprovedClassifier model, List<TextBlock> docs, List<String> labels) {
+		int correct = 0;
+		for (int i = 0; i < docs.size(); i++) if (labels.get(i).equals(model.classify(docs.get(i)))) correct++;
+		return (double) correct / docs.size();
+	}
+
+	// Documents of 3, 6, 7 or 11 tokens, so their word frequencies (k / total) mostly aren't
+	// exact floats; the label depends on which words are most frequent, with some noise
+	private static void documents(Random rnd, int n, List<TextBlock> docs, List<String> labels) {
+		int[] lengths = { 3, 6, 7, 11 };
+		Fixtures.documents(n, () -> words(rnd, WORDS, lengths[rnd.nextInt(lengths.length)]), text -> {
+			TextBlock tb = new TextBlock(text);
+			double sport = tb.get("ball") + tb.get("goal") + tb.get("match");
+			double politics = tb.get("vote") + tb.get("law") + tb.get("senate");
+			String label = sport > 1.0 / 3 ? "sport" : politics > 1.0 / 3 ? "politics" : "tech";
+			return rnd.nextInt(20) == 0 ? "tech" : label;
+		}, docs, labels);
+	}
+
+}
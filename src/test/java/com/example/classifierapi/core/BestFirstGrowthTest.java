@@ -0,0 +1,106 @@
+package com.example.classifierapi.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.example.classifierapi.core.Fixtures.saved;
+import static com.example.classifierapi.core.Fixtures.topic;
+import static com.example.classifierapi.core.Fixtures.words;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BestFirstGrowthTest {
+
+	private static final String[] WORDS = { "ball", "goal", "vote", "law", "cpu", "chip", "match", "senate", "win", "tax",
+			"court", "gpu", "team", "bill", "ram", "coach" };
+
+	@Test
+	void unbudgetedBestFirstGrowsTheDepthFirstTree() {
+		TrainingMatrix data = matrix(new Random(38), 2_000);
+		ImprovedClassifier depthFirst = new ImprovedClassifier(data, null, TrainingOptions.DEFAULTS);
+		ImprovedClassifier bestFirst = new ImprovedClassifier(data, null,
+				new TrainingOptions(TrainingOptions.Growth.BEST_FIRST, 0, 0));
+		assertTrue(depthFirst.nodeCount() > 20);
+		assertEquals(saved(depthFirst), saved(bestFirst));
+		assertNull(bestFirst.stopReason());
+	}
+
+	@Test
+	void leafBudgetStopsGrowthWithACompleteTree() {
+		TrainingMatrix data = matrix(new Random(39), 2_000);
+		int full = leaves(new ImprovedClassifier(data, null, TrainingOptions.DEFAULTS).getRoot());
+		for (int budget : new int[] { 1, 2, 5, 12 }) {
+			TrainingOptions options = new TrainingOptions(TrainingOptions.Growth.DEPTH_FIRST, budget, 0);
+			assertTrue(options.bestFirst(), "a budget implies best-first");
+			ImprovedClassifier model = new ImprovedClassifier(data, null, options);
+			assertEquals(budget, leaves(model.getRoot()), "budget " + budget);
+			assertEquals(2 * budget - 1, model.nodeCount());
+			assertNotNull(model.stopReason());
+			assertTrue(model.stopReason().contains("leaf budget"), model.stopReason());
+			assertComplete(model.getRoot());
+		}
+		// a budget the tree never reaches changes nothing
+		ImprovedClassifier roomy = new ImprovedClassifier(data, null,
+				new TrainingOptions(TrainingOptions.Growth.BEST_FIRST, full + 10, 0));
+		assertEquals(full, leaves(roomy.getRoot()));
+		assertNull(roomy.stopReason());
+	}
+
+	@Test
+	void smallLeafBudgetKeepsTheLargestGains() {
+		// the first split is the root's best split, as depth-first growth makes it
+		TrainingMatrix data = matrix(new Random(40), 2_000);
+		ImprovedClassifier full = new ImprovedClassifier(data, null, TrainingOptions.DEFAULTS);
+		ImprovedClassifier stump = new ImprovedClassifier(data, null,
+				new TrainingOptions(TrainingOptions.Growth.BEST_FIRST, 2, 0));
+		assertEquals(full.getRoot().getFeature(), stump.getRoot().getFeature());
+		assertEquals(full.getRoot().getThreshold(), stump.getRoot().getThreshold());
+		assertTrue(stump.getRoot().getLeft().isLeaf());
+		assertTrue(stump.getRoot().getRight().isLeaf());
+	}
+
+	@Test
+	void timeBudgetStopsGrowthWithACompleteTree() {
+		TrainingMatrix data = matrix(new Random(41), 60_000);
+		long t0 = System.nanoTime();
+		ImprovedClassifier model = new ImprovedClassifier(data, null,
+				new TrainingOptions(TrainingOptions.Growth.BEST_FIRST, 0, 1));
+		long millis = (System.nanoTime() - t0) / 1_000_000;
+		assertNotNull(model.stopReason());
+		assertTrue(model.stopReason().contains("time budget"), model.stopReason());
+		assertComplete(model.getRoot());
+		assertTrue(millis < 5_000, "took " + millis + " ms");
+		assertNotNull(model.classify(new TextBlock("ball team")));
+	}
+
+	// Every decision node has both children and every leaf a label
+	private static void assertComplete(ImprovedClassifier.Node n) {
+		assertNotNull(n);
+		if (n.isLeaf()) {
+			assertNotNull(n.getLabel());
+			return;
+		}
+		assertComplete(n.getLeft());
+		assertComplete(n.getRight());
+	}
+
+	private static int leaves(ImprovedClassifier.Node n) {
+		if (n == null) return 0;
+		return n.isLeaf() ? 1 : leaves(n.getLeft()) + leaves(n.getRight());
+	}
+
+	// The label follows the words, with some noise, so the full tree is deep and bushy
+	private static TrainingMatrix matrix(Random rnd, int n) {
+		List<TextBlock> docs = new ArrayList<>();
+		List<String> labels = new ArrayList<>();
+		Fixtures.documents(n, () -> words(rnd, WORDS, 1 + rnd.nextInt(6)),
+				text -> rnd.nextInt(6) == 0 ? WORDS[rnd.nextInt(3)] : topic(text), docs, labels);
+		return TrainingMatrix.of(docs, labels);
+	}
+
+}
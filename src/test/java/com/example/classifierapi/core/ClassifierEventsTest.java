@@ -0,0 +1,146 @@
+package com.example.classifierapi.core;
+
+import com.example.classifierapi.service.ClassifierService;
+import com.example.classifierapi.store.DatasetCache;
+import com.example.classifierapi.store.ModelRepository;
+import com.example.classifierapi.util.CsvUtils;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static com.example.classifierapi.core.Fixtures.words;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClassifierEventsTest {
+
+	private static final String[] WORDS = { "ball", "goal", "vote", "law", "cpu", "chip", "match", "senate", "win", "tax" };
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void trainingAndInferenceAreRecorded() throws Exception {
+		Path csv = dir.resolve("train.csv");
+		Files.writeString(csv, csv(new Random(46), 2_000));
+		ClassifierService service = new ClassifierService(new ModelRepository("", 1), new DatasetCache(0, 0, "", 0), null);
+		ModelRepository repository = new ModelRepository(dir.resolve("repo").toString(), 10);
+
+		TrainingMatrix data;
+		ImprovedClassifier model;
+		String label;
+		List<RecordedEvent> events;
+		try (Recording recording = new Recording()) {
+			for (String name : new String[] { "CsvParse", "Tokenize", "FeatureSetBuild", "SplitSearch", "ModelPublish",
+					"ClassifyTokenize", "ClassifyTraverse" }) {
+				recording.enable(ClassifierEvents.PREFIX + name).withThreshold(Duration.ZERO);
+			}
+			recording.start();
+			data = CsvUtils.readMatrix(csv.toFile(), "label", "text", 0, null);
+			model = new ImprovedClassifier(data, null);
+			repository.publish(model);
+			repository.publish(model);
+			service.useModel(model);
+			label = service.classify("ball vote ball").label();
+			recording.stop();
+			Path jfr = dir.resolve("events.jfr");
+			recording.dump(jfr);
+			events = RecordingFile.readAllEvents(jfr);
+		}
+
+		List<RecordedEvent> parses = named(events, "CsvParse");
+		assertFalse(parses.isEmpty());
+		assertEquals(data.rows(), parses.stream().mapToInt(e -> e.getInt("rows")).sum());
+		assertEquals(data.rows(), named(events, "Tokenize").stream().mapToInt(e -> e.getInt("rows")).sum());
+
+		RecordedEvent build = only(events, "FeatureSetBuild");
+		assertEquals(data.rows(), build.getInt("rows"));
+		assertEquals(data.features(), build.getInt("features"));
+		assertEquals(data.nonZeros(), build.getLong("nonZeros"));
+		assertFalse(build.getBoolean("spilled"));
+
+		// one search per node that was tried; the ones that found a split are the decisions
+		Set<Integer> decisions = new HashSet<>();
+		for (RecordedEvent e : named(events, "SplitSearch")) {
+			ImprovedClassifier.Node node = model.node(e.getInt("nodeId"));
+			assertEquals(node.getSamples(), e.getInt("samples"));
+			assertEquals(!node.isLeaf(), e.getBoolean("found"), "node " + node.getNodeId());
+			if (e.getBoolean("found")) {
+				assertTrue(e.getDouble("gain") > 0);
+				assertTrue(decisions.add(node.getNodeId()));
+			}
+		}
+		assertTrue(model.nodeCount() > 10, "trivial tree");
+		assertEquals((model.nodeCount() - 1) / 2, decisions.size());
+
+		List<RecordedEvent> publishes = named(events, "ModelPublish");
+		assertEquals(2, publishes.size());
+		assertEquals(1, publishes.get(0).getLong("version"));
+		assertFalse(publishes.get(0).getBoolean("unchanged"));
+		assertTrue(publishes.get(0).getLong("bytes") > 0);
+		assertTrue(publishes.get(1).getBoolean("unchanged"));
+
+		RecordedEvent tokenize = only(events, "ClassifyTokenize");
+		assertEquals("ball vote ball".length(), tokenize.getInt("characters"));
+		assertEquals(2, tokenize.getInt("tokens"));
+		RecordedEvent traverse = only(events, "ClassifyTraverse");
+		assertEquals(1, traverse.getInt("documents"));
+		assertEquals(label, traverse.getString("label"));
+		assertEquals(model.compiledTree() != null, traverse.getBoolean("compiled"));
+	}
+
+	@Test
+	void slowRequestsOnlyByDefault() throws IOException {
+		// the default threshold keeps fast classify calls out of a continuous recording
+		ClassifierService service = new ClassifierService(new ModelRepository("", 1), new DatasetCache(0, 0, "", 0), null);
+		service.useModel(new ImprovedClassifier(List.of(new TextBlock("ball"), new TextBlock("vote")), List.of("sport", "politics")));
+		try (Recording recording = new Recording()) {
+			recording.enable(ClassifierEvents.PREFIX + "ClassifyTraverse");
+			recording.start();
+			for (int i = 0; i < 100; i++) service.classify("ball");
+			recording.stop();
+			Path jfr = dir.resolve("default.jfr");
+			recording.dump(jfr);
+			assertTrue(named(RecordingFile.readAllEvents(jfr), "ClassifyTraverse").stream()
+					.allMatch(e -> e.getDuration().toNanos() >= 1_000_000));
+		}
+	}
+
+	private static List<RecordedEvent> named(List<RecordedEvent> events, String name) {
+		List<RecordedEvent> out = new ArrayList<>();
+		for (RecordedEvent e : events) if (e.getEventType().getName().equals(ClassifierEvents.PREFIX + name)) out.add(e);
+		return out;
+	}
+
+	private static RecordedEvent only(List<RecordedEvent> events, String name) {
+		List<RecordedEvent> out = named(events, name);
+		assertEquals(1, out.size(), name);
+		return out.get(0);
+	}
+
+	// "ball" makes a document sport, "vote" politics, anything else tech
+	private static String csv(Random rnd, int rows) {
+		StringBuilder csv = new StringBuilder("label,text\n");
+		for (int i = 0; i < rows; i++) {
+			String text = words(rnd, WORDS, 1 + rnd.nextInt(6));
+			String label = text.contains("ball") ? "sport" : text.contains("vote") ? "politics" : "tech";
+			if (rnd.nextInt(8) == 0) label = "tech";
+			csv.append(label).append(',').append(text).append('\n');
+		}
+		return csv.toString();
+	}
+
+}
@@ -0,0 +1,109 @@
+package com.example.classifierapi.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.TreeSet;
+
+import static com.example.classifierapi.core.Fixtures.saved;
+import static com.example.classifierapi.core.Fixtures.words;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClassifierTest {
+
+	private static final String[] WORDS = { "ball", "goal", "vote", "law", "cpu", "chip", "match", "senate", "win", "tax" };
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void biggestDifferenceMatchesTheFullVocabularyScan() {
+		Random rnd = new Random(34);
+		for (int i = 0; i < 5_000; i++) {
+			TextBlock a = new TextBlock(text(rnd, 6)), b = new TextBlock(text(rnd, 6));
+			// first word, in sorted order, with the largest difference over both vocabularies
+			TreeSet<String> words = new TreeSet<>(a.getFeatures());
+			words.addAll(b.getFeatures());
+			String expected = null;
+			double best = 0;
+			for (String w : words) {
+				double diff = Math.abs(a.get(w) - b.get(w));
+				if (diff > best) {
+					best = diff;
+					expected = w;
+				}
+			}
+			assertEquals(expected, a.findBiggestDifference(b), a.getFeatures() + " vs " + b.getFeatures());
+			// asking again reuses the sorted views and gives the same answer
+			assertEquals(expected, a.findBiggestDifference(b));
+		}
+		assertNull(new TextBlock("ball vote").findBiggestDifference(new TextBlock("vote ball")));
+		assertEquals("ball", new TextBlock("").findBiggestDifference(new TextBlock("ball")));
+	}
+
+	@Test
+	void mistakeDrivenTrainingGrowsDeepTreesIteratively() {
+		// every document has a word of its own and the labels alternate, so about every other
+		// row is a mistake and the chain of decisions gets one level deeper for each
+		List<TextBlock> docs = new ArrayList<>();
+		List<String> labels = new ArrayList<>();
+		for (int i = 0; i < 30_000; i++) {
+			docs.add(new TextBlock("common t" + i));
+			labels.add(i % 2 == 0 ? "even" : "odd");
+		}
+		Classifier model = new Classifier(docs, labels);
+		int correct = 0;
+		for (int i = 0; i < docs.size(); i++) if (labels.get(i).equals(model.classify(docs.get(i)))) correct++;
+		assertEquals(docs.size(), correct);
+
+		String saved = saved(model);
+		long decisions = saved.lines().filter(l -> l.startsWith("Feature: ")).count();
+		assertTrue(decisions > 10_000, "shallow tree: " + decisions);
+		Classifier loaded = new Classifier(new Scanner(saved));
+		assertEquals(saved, saved(loaded));
+		assertEquals("odd", loaded.classify(docs.get(12_345)));
+	}
+
+	@Test
+	void streamedRowsTrainTheSameTree() throws IOException {
+		Random rnd = new Random(35);
+		StringBuilder csv = new StringBuilder("label,text\n");
+		for (int i = 0; i < 3_000; i++) {
+			String text = text(rnd, 5);
+			String label = text.contains("ball") ? "sport" : text.contains("vote") ? "politics" : "tech";
+			csv.append(label).append(",\"").append(text).append("\"\n");
+			if (i % 500 == 0) csv.append("short row\n");
+		}
+		Path file = dir.resolve("legacy.csv");
+		Files.writeString(file, csv);
+
+		DataLoader loader = new DataLoader(file.toString(), 0, 1, false);
+		Classifier inMemory = new Classifier(loader.getData(), loader.getLabels());
+		DataLoader.RowReader rows = DataLoader.stream(file.toString(), 0, 1);
+		Classifier streamed = new Classifier(rows);
+		assertFalse(rows.next());
+		assertEquals(saved(inMemory), saved(streamed));
+		assertEquals(3_000, loader.getData().size());
+
+		Path empty = dir.resolve("empty.csv");
+		Files.writeString(empty, "");
+		assertThrows(IllegalArgumentException.class, () -> new Classifier(DataLoader.stream(empty.toString(), 0, 1)));
+		assertThrows(IllegalArgumentException.class, () -> new Classifier((DataLoader.RowReader) null));
+	}
+
+	private static String text(Random rnd, int maxTokens) {
+		return words(rnd, WORDS, 1 + rnd.nextInt(maxTokens));
+	}
+
+}
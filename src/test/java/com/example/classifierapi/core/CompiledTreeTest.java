@@ -0,0 +1,157 @@
+package com.example.classifierapi.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+
+import static com.example.classifierapi.core.Fixtures.words;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompiledTreeTest {
+
+	private static final String[] WORDS = { "alpha", "beta", "gamma", "delta", "eps", "zeta", "eta", "theta" };
+	// Includes values documents actually take (k / total) so ties hit the < vs >= edge
+	private static final double[] THRESHOLDS = { 0.0, 0.1, 0.25, 1.0 / 3, 0.5, 1.0, Double.NaN };
+
+	@Test
+	void nanThresholdSendsEveryDocumentRight() {
+		ImprovedClassifier model = load("Feature: alpha\nThreshold: NaN\nleft\nright\n");
+		CompiledTree tree = model.compileDetached();
+		for (String doc : List.of("alpha", "beta", "alpha beta", "")) {
+			TextBlock tb = new TextBlock(doc);
+			assertEquals("right", model.classify(tb));
+			assertEquals("right", tree.classify(tb));
+		}
+	}
+
+	@Test
+	void missingChildClassifiesAsNull() {
+		// saved text ending early leaves the root's right child missing
+		ImprovedClassifier model = load("Feature: alpha\nThreshold: 0.5\nlow\n");
+		CompiledTree tree = model.compileDetached();
+		assertEquals("low", tree.classify(new TextBlock("beta")));
+		assertNull(model.classify(new TextBlock("alpha")));
+		assertNull(tree.classify(new TextBlock("alpha")));
+		assertNull(tree.classify((TextBlock) null));
+
+		ImprovedClassifier empty = load("");
+		assertNull(empty.compileDetached().classify(new TextBlock("alpha")));
+	}
+
+	@Test
+	void randomTreesMatchNodeWalk() {
+		Random rnd = new Random(45);
+		List<TextBlock> docs = documents(rnd, 300);
+		for (int round = 0; round < 200; round++) {
+			List<String> lines = new ArrayList<>();
+			writeRandom(rnd, 1 + rnd.nextInt(9), lines);
+			if (rnd.nextInt(3) == 0) truncate(rnd, lines);
+			assertMatchesWalk(load(String.join("\n", lines)), docs, "round " + round);
+		}
+	}
+
+	@Test
+	void largeTreeSplitsIntoMethodsAndMatches() {
+		Random rnd = new Random(46);
+		List<String> lines = new ArrayList<>();
+		writeFull(rnd, 11, lines);   // 2047 decision nodes
+		ImprovedClassifier model = load(String.join("\n", lines));
+		assertTrue(model.compileDetached().methods() > 1);
+		assertMatchesWalk(model, documents(rnd, 2_000), "large tree");
+	}
+
+	@Test
+	void trainedTreeMatches() {
+		Random rnd = new Random(47);
+		List<TextBlock> docs = documents(rnd, 400);
+		List<String> labels = new ArrayList<>();
+		for (TextBlock tb : docs) labels.add(tb.get("alpha") > tb.get("beta") ? "a" : tb.get("gamma") > 0 ? "g" : "o");
+		ImprovedClassifier model = new ImprovedClassifier(docs, labels);
+		assertTrue(model.nodeCount() > 1);
+		assertMatchesWalk(model, docs, "trained");
+	}
+
+	// Compiled single-document and batch paths both agree with the node walk
+	private static void assertMatchesWalk(ImprovedClassifier model, List<TextBlock> docs, String what) {
+		CompiledTree tree = model.compileDetached();
+		int n = docs.size();
+		int[] start = new int[n + 1];
+		int[] totals = new int[n];
+		List<Integer> ids = new ArrayList<>();
+		List<Integer> counts = new ArrayList<>();
+		String[] walked = new String[n];
+		for (int i = 0; i < n; i++) {
+			TextBlock tb = docs.get(i);
+			walked[i] = model.classify(tb);
+			assertEquals(walked[i], tree.classify(tb), what + " doc " + i);
+			for (String w : tb.getFeatures()) {
+				int id = model.splitFeatureId(w);
+				if (id >= 0) {
+					ids.add(id);
+					counts.add(tb.count(w));
+				}
+			}
+			start[i + 1] = ids.size();
+			totals[i] = tb.total();
+		}
+		int[] idArray = ids.stream().mapToInt(Integer::intValue).toArray();
+		int[] countArray = counts.stream().mapToInt(Integer::intValue).toArray();
+		String[] walkBatch = new String[n];
+		model.walkBatch(n, start, idArray, countArray, totals, walkBatch);
+		assertArrayEquals(walked, walkBatch, what + " walkBatch");
+		String[] compiledBatch = new String[n];
+		tree.classifyBatch(n, start, idArray, countArray, totals, compiledBatch);
+		assertArrayEquals(walked, compiledBatch, what + " compiled batch");
+	}
+
+	private static ImprovedClassifier load(String text) {
+		return new ImprovedClassifier(new Scanner(text));
+	}
+
+	private static List<TextBlock> documents(Random rnd, int n) {
+		List<TextBlock> docs = new ArrayList<>();
+		docs.add(new TextBlock(""));
+		while (docs.size() < n) docs.add(new TextBlock(words(rnd, WORDS, 1 + rnd.nextInt(6))));
+		return docs;
+	}
+
+	// Pre-order text of a random tree, as ImprovedClassifier.save writes it
+	private static void writeRandom(Random rnd, int depth, List<String> lines) {
+		if (depth == 0 || rnd.nextInt(4) == 0) {
+			lines.add("label" + rnd.nextInt(5));
+			return;
+		}
+		split(rnd, lines);
+		writeRandom(rnd, depth - 1, lines);
+		writeRandom(rnd, depth - 1, lines);
+	}
+
+	private static void writeFull(Random rnd, int depth, List<String> lines) {
+		if (depth == 0) {
+			lines.add("label" + rnd.nextInt(7));
+			return;
+		}
+		split(rnd, lines);
+		writeFull(rnd, depth - 1, lines);
+		writeFull(rnd, depth - 1, lines);
+	}
+
+	private static void split(Random rnd, List<String> lines) {
+		lines.add("Feature: " + WORDS[rnd.nextInt(WORDS.length)]);
+		lines.add("Threshold: " + THRESHOLDS[rnd.nextInt(THRESHOLDS.length)]);
+	}
+
+	// Cuts the text after a whole node, so the children still unread come back missing
+	private static void truncate(Random rnd, List<String> lines) {
+		int cut = 1 + rnd.nextInt(lines.size());
+		while (cut < lines.size() && lines.get(cut - 1).startsWith("Feature:")) cut++;
+		lines.subList(cut, lines.size()).clear();
+	}
+
+}
@@ -0,0 +1,126 @@
+package com.example.classifierapi.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CsvParserTest {
+
+	// Past the 8 MB single-chunk threshold, so the file is cut into several chunks
+	private static final int BIG_ROWS = 400_000;
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void quotedCellsAndCrlf() {
+		String csv = "\uFEFFid,text,label\r\n"
+				+ "1,\"a, b\",x\r\n"
+				+ "2,\"say \"\"hi\"\"\",y\r\n"
+				+ "\r\n"
+				+ "3,\"two\r\nlines\nhere\",z\n"
+				+ "4,,\"\"\r\n"
+				+ "5,short\r\n"
+				+ "6,last,w";
+		ByteBuffer buf = ByteBuffer.wrap(csv.getBytes(StandardCharsets.UTF_8));
+		assertArrayEquals(new String[] { "id", "text", "label" }, CsvParser.header(buf));
+
+		List<String[]> rows = new ArrayList<>();
+		CsvParser.forEach(buf, new int[] { 1, 2 }, true, cells -> rows.add(cells.clone()));
+		assertEquals(6, rows.size());
+		assertArrayEquals(new String[] { "a, b", "x" }, rows.get(0));
+		assertArrayEquals(new String[] { "say \"hi\"", "y" }, rows.get(1));
+		assertArrayEquals(new String[] { "two\r\nlines\nhere", "z" }, rows.get(2));
+		assertArrayEquals(new String[] { "", "" }, rows.get(3));
+		assertArrayEquals(new String[] { "short", null }, rows.get(4));
+		assertArrayEquals(new String[] { "last", "w" }, rows.get(5));
+	}
+
+	@Test
+	void indexOfFallsBackToTrimmedCaseInsensitive() {
+		String[] header = { "Text ", "label", "LABEL" };
+		assertArrayEquals(new int[] { 0, 1, -1 }, CsvParser.indexOf(header, "text", "label", "missing"));
+	}
+
+	@Test
+	void parallelChunksMatchFileOrder() throws IOException {
+		Path file = writeBig();
+		ExecutorService pool = Executors.newFixedThreadPool(3);
+		try {
+			List<List<String[]>> chunks = CsvParser.parallel(file, new int[] { 2, 0, 1 }, ArrayList::new,
+					(acc, cells) -> acc.add(cells.clone()), acc -> {}, pool, 4);
+			assertTrue(chunks.size() > 1, "expected several chunks, got " + chunks.size());
+			assertRows(chunks);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	void parallelFinishesOnCallerWhenExecutorRejects() throws IOException {
+		Path file = writeBig();
+		List<List<String[]>> chunks = CsvParser.parallel(file, new int[] { 2, 0, 1 }, ArrayList::new,
+				(acc, cells) -> acc.add(cells.clone()), acc -> {},
+				task -> { throw new RejectedExecutionException("full"); }, 4);
+		assertRows(chunks);
+	}
+
+	@Test
+	void cursorMatchesParallel() throws IOException {
+		Path file = writeBig();
+		List<String[]> rows = new ArrayList<>();
+		try (CsvParser.Cursor c = CsvParser.open(file, new int[] { 2, 0, 1 })) {
+			while (c.next()) rows.add(c.cells().clone());
+		}
+		assertRows(List.of(rows));
+	}
+
+	// Every record carries a quoted cell with CRLF, LF, commas and doubled quotes, so a
+	// chunk boundary found by scanning for newlines alone would split one of them
+	private Path writeBig() throws IOException {
+		Path file = dir.resolve("big.csv");
+		try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			w.write("id,text,label\r\n");
+			for (int i = 0; i < BIG_ROWS; i++) {
+				w.write(i + ",\"" + text(i).replace("\"", "\"\"") + "\"," + label(i) + "\r\n");
+			}
+		}
+		assertTrue(Files.size(file) > 16L << 20);
+		return file;
+	}
+
+	private static String text(int i) {
+		return "line " + i + "\r\nsays \"" + (i * 31) + "\", then\n" + i % 7;
+	}
+
+	private static String label(int i) {
+		return "c" + i % 5;
+	}
+
+	private static void assertRows(List<List<String[]>> chunks) {
+		int i = 0;
+		for (List<String[]> chunk : chunks) {
+			for (String[] cells : chunk) {
+				assertArrayEquals(new String[] { label(i), Integer.toString(i), text(i) }, cells, "row " + i);
+				i++;
+			}
+		}
+		assertEquals(BIG_ROWS, i);
+	}
+
+}
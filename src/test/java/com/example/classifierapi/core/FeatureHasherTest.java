@@ -0,0 +1,90 @@
+package com.example.classifierapi.core;
+
+import com.example.classifierapi.util.TextBlockFactory;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+
+import static com.example.classifierapi.core.Fixtures.saved;
+import static com.example.classifierapi.core.Fixtures.topic;
+import static com.example.classifierapi.core.Fixtures.words;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FeatureHasherTest {
+
+	private static final String[] WORDS = { "ball", "goal", "vote", "law", "cpu", "chip", "match", "senate", "win", "tax",
+			"court", "gpu", "team", "bill", "ram", "coach" };
+
+	@Test
+	void bucketsArePartOfTheSavedFormat() {
+		// saved hashed models depend on these; a change here breaks every one of them
+		assertEquals("#174", FeatureHasher.of(16).feature("ball"));
+		assertEquals("#20494", FeatureHasher.of(16).feature("goal"));
+		assertEquals("#1219", FeatureHasher.of(16).feature("vote"));
+		assertEquals("#14", FeatureHasher.of(4).feature("ball"));
+		assertEquals("#0", FeatureHasher.of(16).feature(""));
+		assertSame(FeatureHasher.of(16), FeatureHasher.of(16));
+	}
+
+	@Test
+	void namesMatchBucketsPastTheNameCache() {
+		// 20 bits is past the name cache's 2^12 slots, so slots are shared and replaced
+		FeatureHasher h = FeatureHasher.of(20);
+		for (int i = 0; i < 50_000; i++) {
+			String token = "t" + i;
+			int b = h.bucket(token);
+			assertTrue(b >= 0 && b < 1 << 20);
+			assertEquals("#" + b, h.feature(token));
+		}
+	}
+
+	@Test
+	void bitsOutsideTheRangeAreRejected() {
+		assertThrows(IllegalArgumentException.class, () -> FeatureHasher.of(0));
+		assertThrows(IllegalArgumentException.class, () -> FeatureHasher.of(FeatureHasher.MAX_BITS + 1));
+		assertThrows(IllegalArgumentException.class, () -> new ImprovedClassifier(new Scanner("Hashing: 40\nx\n")));
+	}
+
+	@Test
+	void hashedModelRoundTripsThroughSaveAndLoad() {
+		int bits = 6;
+		Random rnd = new Random(37);
+		List<String> texts = new ArrayList<>();
+		List<String> labels = new ArrayList<>();
+		TrainingMatrix.Builder b = new TrainingMatrix.Builder(bits);
+		for (int i = 0; i < 1_000; i++) {
+			String text = words(rnd, WORDS, 1 + rnd.nextInt(5));
+			String label = topic(text);
+			texts.add(text);
+			labels.add(label);
+			b.add(TextBlockFactory.fromRaw(text, bits), label);
+		}
+		TrainingMatrix data = b.build();
+		assertEquals(bits, data.hashBits());
+		assertTrue(data.features() <= 1 << bits);
+		for (int f = 0; f < data.features(); f++) assertTrue(data.featureName(f).startsWith("#"));
+
+		ImprovedClassifier model = new ImprovedClassifier(data, null);
+		assertEquals(bits, model.hashBits());
+		String saved = saved(model);
+		assertTrue(saved.startsWith("Hashing: " + bits + "\n"), saved);
+
+		ImprovedClassifier loaded = new ImprovedClassifier(new Scanner(saved));
+		assertEquals(bits, loaded.hashBits());
+		assertEquals(saved, saved(loaded));
+		int correct = 0;
+		for (int i = 0; i < texts.size(); i++) {
+			TextBlock tb = TextBlockFactory.fromRaw(texts.get(i), loaded.hashBits());
+			assertEquals(model.classify(tb), loaded.classify(tb), texts.get(i));
+			if (labels.get(i).equals(loaded.classify(tb))) correct++;
+		}
+		assertTrue(correct > texts.size() * 9 / 10, correct + " of " + texts.size());
+	}
+
+}
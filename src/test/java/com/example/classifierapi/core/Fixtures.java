@@ -0,0 +1,61 @@
+package com.example.classifierapi.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Test data the classifier tests share: random documents from a small vocabulary and the
+ * saved text of a model, which is how the tests compare two trees.
+ */
+public final class Fixtures {
+
+	private Fixtures() {
+	}
+
+	/** {@code count} words drawn from {@code vocabulary}, separated by spaces. */
+	public static String words(Random rnd, String[] vocabulary, int count) {
+		String[] tokens = new String[count];
+		for (int t = 0; t < tokens.length; t++) tokens[t] = vocabulary[rnd.nextInt(vocabulary.length)];
+		return String.join(" ", tokens);
+	}
+
+	/**
+	 * Adds {@code n} documents with the texts {@code text} supplies and the labels
+	 * {@code label} gives them. Both normally draw from one seeded Random, so the seed fixes
+	 * the whole set.
+	 */
+	public static void documents(int n, Supplier<String> text, Function<String, String> label, List<TextBlock> docs,
+			List<String> labels) {
+		for (int i = 0; i < n; i++) {
+			String t = text.get();
+			docs.add(new TextBlock(t));
+			labels.add(label.apply(t));
+		}
+	}
+
+	/** "ball" or "team" make a text sport, "vote" or "senate" politics, anything else tech. */
+	public static String topic(String text) {
+		return text.contains("ball") || text.contains("team") ? "sport"
+				: text.contains("vote") || text.contains("senate") ? "politics" : "tech";
+	}
+
+	/** The text {@link ImprovedClassifier#save} writes, decoded as UTF-8 whatever the platform charset. */
+	public static String saved(ImprovedClassifier model) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		model.save(new PrintStream(out, true, StandardCharsets.UTF_8));
+		return out.toString(StandardCharsets.UTF_8);
+	}
+
+	/** The text {@link Classifier#save} writes, decoded as UTF-8. */
+	public static String saved(Classifier model) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		model.save(new PrintStream(out, true, StandardCharsets.UTF_8));
+		return out.toString(StandardCharsets.UTF_8);
+	}
+
+}
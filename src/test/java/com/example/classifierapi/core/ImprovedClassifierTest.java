@@ -0,0 +1,235 @@
+package com.example.classifierapi.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static com.example.classifierapi.core.Fixtures.topic;
+import static com.example.classifierapi.core.Fixtures.words;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ImprovedClassifierTest {
+
+	private static final String[] WORDS = { "ball", "goal", "vote", "law", "cpu", "chip", "match", "senate", "win", "tax",
+			"court", "gpu", "team", "bill", "ram", "coach" };
+
+	@Test
+	void nodesOwnTheRowsRoutedToThem() {
+		TrainingMatrix data = matrix(new Random(30), 3_000);
+		TrainingOptions[] options = {
+			TrainingOptions.DEFAULTS,
+			TrainingOptions.DEFAULTS.withHyperparameters(8, 20, 5, 0),
+			new TrainingOptions(TrainingOptions.Growth.BEST_FIRST, 25, 0),
+		};
+		for (TrainingOptions o : options) {
+			ImprovedClassifier model = new ImprovedClassifier(data, null, o);
+			assertTrue(model.nodeCount() > 20, "trivial tree for " + o);
+			assertEquals(data.rows(), model.getRoot().getSamples());
+			// each node's rows are the ones its partitioned range held when it was split
+			assertOwns(model.getRoot(), reached(model, data, null), o.minSamplesLeaf());
+		}
+	}
+
+	@Test
+	void subsetTrainingLeavesTheCallersRowsAlone() {
+		TrainingMatrix data = matrix(new Random(31), 3_000);
+		int[] rows = new int[1_000];
+		for (int i = 0; i < rows.length; i++) rows[i] = 3 * i + 1;
+		int[] copy = rows.clone();
+		ImprovedClassifier model = new ImprovedClassifier(data, rows, null, TrainingOptions.DEFAULTS);
+		assertArrayEquals(copy, rows);
+		assertEquals(rows.length, model.getRoot().getSamples());
+		assertOwns(model.getRoot(), reached(model, data, rows), 1);
+	}
+
+	@Test
+	void labelCountsAndGiniFollowTheRows() {
+		TrainingMatrix data = matrix(new Random(32), 3_000);
+		ImprovedClassifier model = new ImprovedClassifier(data, null, TrainingOptions.DEFAULTS);
+		String[] names = model.getLabelNames();
+		assertEquals(data.labelCount(), names.length);
+		for (int c = 0; c < names.length; c++) assertEquals(data.labelName(c), names[c]);
+
+		Map<ImprovedClassifier.Node, int[]> counts = new IdentityHashMap<>();
+		for (int r = 0; r < data.rows(); r++) {
+			ImprovedClassifier.Node node = model.getRoot();
+			while (true) {
+				counts.computeIfAbsent(node, k -> new int[names.length])[data.label(r)]++;
+				if (node.isLeaf()) break;
+				node = data.value(r, node.featureId) < node.threshold ? node.left : node.right;
+			}
+		}
+		int impure = 0;
+		for (Map.Entry<ImprovedClassifier.Node, int[]> e : counts.entrySet()) {
+			ImprovedClassifier.Node node = e.getKey();
+			int[] expected = e.getValue();
+			assertArrayEquals(expected, node.dist, "node " + node.getNodeId());
+			double sq = 0;
+			int best = 0;
+			for (int c = 0; c < expected.length; c++) {
+				double p = (double) expected[c] / node.getSamples();
+				sq += p * p;
+				if (expected[c] > expected[best]) best = c;
+			}
+			assertEquals(1 - sq, node.getGini(), 1e-12);
+			if (node.isLeaf()) {
+				assertEquals(names[best], node.getLabel());
+				if (node.getGini() > 0) impure++;
+			}
+		}
+		assertTrue(impure > 0, "noisy labels should leave impure leaves");
+	}
+
+	@Test
+	void hundredsOfClassesAreSeparated() {
+		// label k is spelled out in eight tokens, one per bit, so eight levels separate all 256
+		List<TextBlock> docs = new ArrayList<>();
+		List<String> labels = new ArrayList<>();
+		for (int copy = 0; copy < 3; copy++) {
+			for (int k = 0; k < 256; k++) {
+				StringBuilder text = new StringBuilder();
+				for (int bit = 0; bit < 8; bit++) text.append((k & 1 << bit) != 0 ? " one" : " zero").append(bit);
+				docs.add(new TextBlock(text.toString()));
+				labels.add("class" + k);
+			}
+		}
+		ImprovedClassifier model = new ImprovedClassifier(docs, labels);
+		assertEquals(256, model.getLabelNames().length);
+		assertEquals(1 - 1.0 / 256, model.getRoot().getGini(), 1e-12);
+		assertEquals(8, model.depth());
+		Map<String, Double> accuracy = model.calculateAccuracy(docs, labels);
+		assertEquals(257, accuracy.size());
+		assertEquals(1.0, (double) accuracy.get("Overall"));
+		assertEquals(1.0, (double) accuracy.get("class255"));
+	}
+
+	@Test
+	void accuracyIsTalliedPerGoldLabel() {
+		ImprovedClassifier model = new ImprovedClassifier(
+				List.of(new TextBlock("ball"), new TextBlock("vote")), List.of("sport", "politics"));
+		List<TextBlock> docs = List.of(new TextBlock("ball"), new TextBlock("ball"), new TextBlock("vote"),
+				new TextBlock("vote"), new TextBlock("cpu"));
+		Map<String, Double> accuracy = model.calculateAccuracy(docs, List.of("sport", "politics", "politics", "politics", "tech"));
+		assertEquals(1.0, (double) accuracy.get("sport"));
+		assertEquals(2.0 / 3, accuracy.get("politics"), 1e-12);
+		assertEquals(0.0, (double) accuracy.get("tech"));
+		assertEquals(0.6, accuracy.get("Overall"), 1e-12);
+		assertTrue(model.calculateAccuracy(docs, List.of("sport")).isEmpty());
+	}
+
+	@Test
+	void traceFollowsClassifyWithPath() {
+		Random rnd = new Random(33);
+		ImprovedClassifier model = new ImprovedClassifier(matrix(rnd, 3_000), null, TrainingOptions.DEFAULTS);
+		ImprovedClassifier.PathBuffer buf = new ImprovedClassifier.PathBuffer(model.maxPathLength());
+		int capacity = buf.capacity();
+		for (int i = 0; i < 2_000; i++) {
+			TextBlock tb = new TextBlock(words(rnd, WORDS, rnd.nextInt(7)));
+			ImprovedClassifier.ClassifyResult expected = model.classifyWithPath(tb);
+			assertEquals(expected.label, model.trace(tb, buf));
+			assertEquals(model.classify(tb), buf.label());
+			// classifyWithPath also lists the leaf; the buffer holds the decisions only
+			assertEquals(expected.path.size() - 1, buf.size());
+			for (int k = 0; k < buf.size(); k++) {
+				ImprovedClassifier.PathStep step = expected.path.get(k);
+				assertEquals(step.feature, buf.feature(k));
+				assertEquals(step.threshold, buf.threshold(k));
+				assertEquals(step.value, buf.value(k));
+				assertEquals(step.direction, buf.wentLeft(k) ? "left" : "right");
+			}
+		}
+		// a buffer sized to the tree never grows
+		assertEquals(capacity, buf.capacity());
+
+		ImprovedClassifier.PathBuffer small = new ImprovedClassifier.PathBuffer(1);
+		TextBlock deep = new TextBlock("ball vote cpu");
+		assertEquals(model.classify(deep), model.trace(deep, small));
+		assertEquals(model.classifyWithPath(deep).path.size() - 1, small.size());
+		small.clear();
+		assertEquals(0, small.size());
+		assertNull(small.label());
+		assertNull(model.trace(null, small));
+	}
+
+	@Test
+	void replaySendsTheEventsTrainingSent() {
+		TrainingMatrix data = matrix(new Random(34), 3_000);
+		List<ImprovedClassifier.TrainProgress> trained = new ArrayList<>();
+		ImprovedClassifier model = new ImprovedClassifier(data, trained::add, TrainingOptions.DEFAULTS);
+		List<ImprovedClassifier.TrainProgress> replayed = new ArrayList<>();
+		model.replay(replayed::add);
+
+		assertEquals("start", replayed.get(0).phase);
+		assertEquals(data.rows(), replayed.get(0).leftCount);
+		ImprovedClassifier.TrainProgress done = replayed.get(replayed.size() - 1);
+		assertEquals("done", done.phase);
+		assertEquals(model.nodeCount(), done.builtNodes);
+		assertEquals(model.depth(), done.depth);
+		// one split or leaf per node, in the order training created them
+		List<ImprovedClassifier.TrainProgress> expected = nodeEvents(trained), actual = nodeEvents(replayed);
+		assertEquals(model.nodeCount(), actual.size());
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			ImprovedClassifier.TrainProgress e = expected.get(i), a = actual.get(i);
+			assertEquals(e.phase, a.phase, "event " + i);
+			assertEquals(e.builtNodes, a.builtNodes);
+			assertEquals(e.depth, a.depth);
+			assertEquals(e.feature, a.feature);
+			assertEquals(e.threshold, a.threshold);
+			assertEquals(e.leftCount, a.leftCount);
+			assertEquals(e.rightCount, a.rightCount);
+			assertEquals(e.gini, a.gini, 1e-12);
+			assertEquals(e.gain, a.gain, 1e-9);
+		}
+		model.replay(null);
+	}
+
+	// Counts the rows passing through each node, routed on the matrix values as training was
+	private static Map<ImprovedClassifier.Node, Integer> reached(ImprovedClassifier model, TrainingMatrix data, int[] rows) {
+		Map<ImprovedClassifier.Node, Integer> reached = new IdentityHashMap<>();
+		int n = rows != null ? rows.length : data.rows();
+		for (int i = 0; i < n; i++) {
+			int r = rows != null ? rows[i] : i;
+			ImprovedClassifier.Node node = model.getRoot();
+			while (true) {
+				reached.merge(node, 1, Integer::sum);
+				if (node.isLeaf()) break;
+				node = data.value(r, node.featureId) < node.threshold ? node.left : node.right;
+			}
+			assertEquals(model.classify(data, r), node.getLabel());
+		}
+		return reached;
+	}
+
+	private static void assertOwns(ImprovedClassifier.Node n, Map<ImprovedClassifier.Node, Integer> reached, int minLeaf) {
+		assertEquals(n.getSamples(), (int) reached.getOrDefault(n, 0), "node " + n.getNodeId());
+		if (n.isLeaf()) return;
+		assertEquals(n.getSamples(), n.getLeft().getSamples() + n.getRight().getSamples());
+		assertTrue(n.getLeft().getSamples() >= minLeaf && n.getRight().getSamples() >= minLeaf, "node " + n.getNodeId());
+		assertOwns(n.getLeft(), reached, minLeaf);
+		assertOwns(n.getRight(), reached, minLeaf);
+	}
+
+	private static List<ImprovedClassifier.TrainProgress> nodeEvents(List<ImprovedClassifier.TrainProgress> events) {
+		List<ImprovedClassifier.TrainProgress> out = new ArrayList<>();
+		for (ImprovedClassifier.TrainProgress ev : events) if (ev.phase.equals("split") || ev.phase.equals("leaf")) out.add(ev);
+		return out;
+	}
+
+	// The label follows the words, with some noise, so the tree is deep and has impure leaves
+	private static TrainingMatrix matrix(Random rnd, int n) {
+		List<TextBlock> docs = new ArrayList<>();
+		List<String> labels = new ArrayList<>();
+		Fixtures.documents(n, () -> words(rnd, WORDS, 1 + rnd.nextInt(6)),
+				text -> rnd.nextInt(8) == 0 ? "tech" : topic(text), docs, labels);
+		return TrainingMatrix.of(docs, labels);
+	}
+
+}
@@ -0,0 +1,147 @@
+package com.example.classifierapi.core;
+
+import com.example.classifierapi.util.CsvUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static com.example.classifierapi.core.Fixtures.saved;
+import static com.example.classifierapi.core.Fixtures.topic;
+import static com.example.classifierapi.core.Fixtures.words;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpilledMatrixTest {
+
+	private static final String[] WORDS = { "ball", "goal", "vote", "law", "cpu", "chip", "match", "senate", "win", "tax",
+			"court", "gpu", "team", "bill", "ram", "coach", "the", "news" };
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void spilledMatrixHoldsTheInHeapRows() throws IOException {
+		List<TextBlock> docs = new ArrayList<>();
+		List<String> labels = new ArrayList<>();
+		documents(new Random(41), 3_000, docs, labels);
+		TrainingMatrix heap = build(docs, labels, null);
+		TrainingMatrix spilled = build(docs, labels, dir.resolve("spill"));
+
+		assertFalse(heap.isSpilled());
+		assertTrue(spilled.isSpilled());
+		assertTrue(spilled.hasPostings());
+		assertEquals(heap.rows(), spilled.rows());
+		assertEquals(heap.features(), spilled.features());
+		assertEquals(heap.nonZeros(), spilled.nonZeros());
+		for (int r = 0; r < heap.rows(); r++) {
+			assertEquals(heap.label(r), spilled.label(r));
+			assertEquals(heap.rowStart(r), spilled.rowStart(r));
+			for (int k = heap.rowStart(r); k < heap.rowEnd(r); k++) {
+				assertEquals(heap.featureAt(k), spilled.featureAt(k));
+				assertEquals(heap.valueAt(k), spilled.valueAt(k));
+			}
+		}
+		// posting lists are the same entries, feature-major and sorted by row
+		long postings = 0;
+		for (int f = 0; f < spilled.features(); f++) {
+			int last = -1;
+			for (int k = spilled.postingStart(f); k < spilled.postingEnd(f); k++) {
+				int r = spilled.postingRow(k);
+				assertTrue(r > last);
+				assertEquals(heap.value(r, f), spilled.postingValue(k));
+				last = r;
+				postings++;
+			}
+		}
+		assertEquals(heap.nonZeros(), postings);
+
+		// the columns are unlinked once mapped; only the mappings keep them
+		try (Stream<Path> left = Files.list(dir.resolve("spill"))) {
+			assertEquals(0, left.count());
+		}
+	}
+
+	@Test
+	void spilledMatrixGrowsTheInHeapTree() {
+		List<TextBlock> docs = new ArrayList<>();
+		List<String> labels = new ArrayList<>();
+		documents(new Random(42), 3_000, docs, labels);
+		TrainingMatrix heap = build(docs, labels, null);
+		TrainingMatrix spilled = build(docs, labels, dir);
+
+		TrainingOptions[] options = {
+			TrainingOptions.DEFAULTS,
+			TrainingOptions.DEFAULTS.withHyperparameters(8, 10, 3, 1e-3),
+			new TrainingOptions(TrainingOptions.Growth.BEST_FIRST, 30, 0),
+			new TrainingOptions(TrainingOptions.Growth.DEPTH_FIRST, 0, 0, 12, 2, 1, 1e-3, 1024, 0, false),
+		};
+		for (TrainingOptions o : options) {
+			String expected = saved(new ImprovedClassifier(heap, null, o));
+			assertTrue(expected.lines().count() > 10, "trivial tree for " + o);
+			assertEquals(expected, saved(new ImprovedClassifier(spilled, null, o)), o.toString());
+		}
+	}
+
+	@Test
+	void discardedBuilderLeavesNoSpillFiles() throws IOException {
+		Path spill = dir.resolve("abandoned");
+		TrainingMatrix.Builder b = new TrainingMatrix.Builder(0, spill);
+		for (int i = 0; i < 500; i++) b.add(new TextBlock("ball team " + i), "sport");
+		try (Stream<Path> open = Files.list(spill)) {
+			assertEquals(1, open.count());
+		}
+		b.discard();
+		try (Stream<Path> left = Files.list(spill)) {
+			assertEquals(0, left.count());
+		}
+	}
+
+	@Test
+	void csvSpillsToTheSameMatrix() throws Exception {
+		Path csv = dir.resolve("train.csv");
+		Random rnd = new Random(43);
+		try (BufferedWriter w = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+			w.write("label,text\n");
+			for (int i = 0; i < 2_000; i++) {
+				String text = sentence(rnd);
+				w.write((text.contains("ball") ? "sport" : "other") + ",\"" + text + "\"\n");
+			}
+		}
+		TrainingMatrix heap = CsvUtils.readMatrix(csv.toFile(), "label", "text", 0, null);
+		TrainingMatrix spilled = CsvUtils.readMatrix(csv.toFile(), "label", "text", 0, dir.resolve("csv-spill"));
+		assertTrue(spilled.isSpilled());
+		assertEquals(heap.rows(), spilled.rows());
+		assertEquals(heap.nonZeros(), spilled.nonZeros());
+		assertEquals(saved(new ImprovedClassifier(heap, null)), saved(new ImprovedClassifier(spilled, null)));
+	}
+
+	private static TrainingMatrix build(List<TextBlock> docs, List<String> labels, Path spillDir) {
+		TrainingMatrix.Builder b = new TrainingMatrix.Builder(0, spillDir);
+		for (int i = 0; i < docs.size(); i++) b.add(docs.get(i), labels.get(i));
+		return b.build();
+	}
+
+	// Mostly common words plus a long tail, so some posting lists are far shorter than the
+	// nodes scanning them (the posting path) and others aren't (the row path)
+	private static void documents(Random rnd, int n, List<TextBlock> docs, List<String> labels) {
+		Fixtures.documents(n, () -> {
+			String text = sentence(rnd);
+			return rnd.nextInt(4) == 0 ? text + " rare" + rnd.nextInt(200) : text;
+		}, text -> rnd.nextInt(10) == 0 ? "tech" : topic(text), docs, labels);
+	}
+
+	private static String sentence(Random rnd) {
+		return words(rnd, WORDS, 1 + rnd.nextInt(7));
+	}
+
+}
@@ -0,0 +1,97 @@
+package com.example.classifierapi.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class SplitKernelsTest {
+
+	@Test
+	void scalarGainsMatchDirectFormula() {
+		// two labels, three bins: [5, 0], [1, 4], [0, 2]
+		int[] hist = { 5, 1, 0, 0, 4, 2 };
+		int[] counts = { 6, 6 };
+		double nodeGini = 0.5;
+		long[] nLeft = new long[2];
+		double[] gain = new double[2];
+		SplitKernels.create(false).gains(hist, 0, 2, counts, 12, nodeGini, 1, nLeft, gain);
+		assertArrayEquals(new long[] { 5, 10 }, nLeft);
+		assertEquals(SplitKernels.gain(nodeGini, 12, 5, 25, 7, 1 + 36), gain[0]);
+		assertEquals(SplitKernels.gain(nodeGini, 12, 10, 36 + 16, 2, 4), gain[1]);
+
+		SplitKernels.create(false).gains(hist, 0, 2, counts, 12, nodeGini, 6, nLeft, gain);
+		assertEquals(Double.NEGATIVE_INFINITY, gain[0]);
+		assertEquals(Double.NEGATIVE_INFINITY, gain[1]);
+	}
+
+	@Test
+	void vectorGainsAreBitIdentical() {
+		assumeTrue(SplitKernels.vectorAvailable(), "jdk.incubator.vector not enabled");
+		SplitKernels scalar = SplitKernels.create(false);
+		SplitKernels vector = SplitKernels.create(true);
+		assertEquals("VectorSplitKernels", vector.getClass().getSimpleName());
+
+		Random rnd = new Random(44);
+		for (int round = 0; round < 2_000; round++) {
+			// odd and even threshold counts around every lane width, 1 to 7 labels
+			int t = 1 + rnd.nextInt(70);
+			int labels = 1 + rnd.nextInt(7);
+			int h = rnd.nextInt(5);
+			int[] hist = new int[h + labels * (t + 1)];
+			int[] counts = new int[labels];
+			int n = 0;
+			int scale = rnd.nextBoolean() ? 10 : 1_000_000;
+			for (int c = 0; c < labels; c++) {
+				for (int b = 0; b <= t; b++) {
+					int v = rnd.nextInt(4) == 0 ? 0 : rnd.nextInt(scale);
+					hist[h + c * (t + 1) + b] = v;
+					counts[c] += v;
+				}
+				n += counts[c];
+			}
+			if (n == 0) continue;
+			double sq = 0;
+			for (int count : counts) sq += (double) count * count;
+			double nodeGini = 1.0 - sq / ((double) n * n);
+			int minLeaf = 1 + rnd.nextInt(Math.max(1, n / 4));
+
+			long[] nLeftS = new long[t], nLeftV = new long[t];
+			double[] gainS = new double[t], gainV = new double[t];
+			scalar.gains(hist, h, t, counts, n, nodeGini, minLeaf, nLeftS, gainS);
+			vector.gains(hist, h, t, counts, n, nodeGini, minLeaf, nLeftV, gainV);
+			assertArrayEquals(nLeftS, nLeftV, "round " + round);
+			for (int b = 0; b < t; b++) {
+				assertEquals(Double.doubleToRawLongBits(gainS[b]), Double.doubleToRawLongBits(gainV[b]),
+						"round " + round + " threshold " + b);
+			}
+		}
+	}
+
+	@Test
+	void vectorBinsMatchScalar() {
+		assumeTrue(SplitKernels.vectorAvailable(), "jdk.incubator.vector not enabled");
+		SplitKernels scalar = SplitKernels.create(false);
+		SplitKernels vector = SplitKernels.create(true);
+
+		Random rnd = new Random(45);
+		for (int round = 0; round < 500; round++) {
+			int t = rnd.nextInt(70);
+			int off = rnd.nextInt(4);
+			float[] thresholds = new float[off + t];
+			for (int i = 0; i < t; i++) thresholds[off + i] = rnd.nextInt(20) / 4f;   // with repeats
+			Arrays.sort(thresholds, off, off + t);
+			float[] probes = { Float.NaN, -1f, 0f, -0f, 5f, Float.POSITIVE_INFINITY,
+					t > 0 ? thresholds[off] : 1f, t > 0 ? thresholds[off + t - 1] : 2f, rnd.nextFloat() * 5 };
+			for (float v : probes) {
+				assertEquals(scalar.bin(thresholds, off, t, v), vector.bin(thresholds, off, t, v),
+						"round " + round + " v=" + v);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,139 @@
+package com.example.classifierapi.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.classifierapi.core.Fixtures.words;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SuccessiveHalvingTest {
+
+	private static final String[] WORDS = { "ball", "goal", "vote", "law", "cpu", "chip", "the", "a", "win", "tax" };
+
+	@Test
+	void roundsShrinkTheFieldAndGrowTheBudget() {
+		TrainingMatrix data = matrix(new Random(39));
+		List<TrainingOptions> grid = SuccessiveHalving.grid(TrainingOptions.DEFAULTS,
+				new int[] { 1, 2, 4, 8, 12 }, new int[] { 2, 10 }, new int[] { 1, 5 }, new double[] { 1e-3 });
+		assertEquals(20, grid.size());
+		assertEquals(1, grid.get(0).maxDepth());
+		assertEquals(10, grid.get(3).minSamplesSplit());
+		assertEquals(5, grid.get(3).minSamplesLeaf());
+
+		SuccessiveHalving.Result r = new SuccessiveHalving(data, 3, 0.25, 11).run(grid, Runnable::run, 1);
+		assertEquals(20, r.candidates());
+		assertEquals(data.rows(), r.trainRows() + r.validationRows());
+		assertEquals(150, r.validationRows(), 3);
+		// 20 -> 7 -> 3 -> 1 candidates, each round on eta times the rows of the one before
+		// (early rounds are held at a minimum subsample)
+		List<SuccessiveHalving.Round> rounds = r.rounds();
+		int[] sizes = rounds.stream().mapToInt(round -> round.trials().size()).toArray();
+		assertArrayEquals(new int[] { 20, 7, 3, 1 }, sizes);
+		for (int k = 1; k < rounds.size(); k++) assertTrue(rounds.get(k).rows() >= rounds.get(k - 1).rows());
+		assertTrue(rounds.get(0).rows() < r.trainRows() / 3);
+		assertEquals(r.trainRows(), rounds.get(rounds.size() - 1).rows());
+		assertTrue(r.trainedRows() < r.fullGridRows() / 3, r.trainedRows() + " of " + r.fullGridRows());
+
+		// survivors are the best of the round before, and the winner won the last round
+		for (int k = 1; k < rounds.size(); k++) {
+			List<SuccessiveHalving.Trial> before = rounds.get(k - 1).trials();
+			for (SuccessiveHalving.Trial t : rounds.get(k).trials()) {
+				assertTrue(before.subList(0, rounds.get(k).trials().size()).stream()
+						.anyMatch(b -> b.candidate() == t.candidate()), "round " + k);
+			}
+		}
+		SuccessiveHalving.Trial last = rounds.get(rounds.size() - 1).trials().get(0);
+		assertEquals(last.options(), r.best());
+		assertEquals(last.accuracy(), r.bestAccuracy());
+		assertTrue(r.best().maxDepth() > 1, "a stump should lose: " + r.best());
+	}
+
+	@Test
+	void sameSeedSameSearchWhateverTheParallelism() {
+		TrainingMatrix data = matrix(new Random(40));
+		List<TrainingOptions> grid = SuccessiveHalving.grid(TrainingOptions.DEFAULTS,
+				new int[] { 2, 6, 10 }, new int[] { 2, 20 }, new int[] { 1 }, new double[] { 0, 0.01 });
+		SuccessiveHalving.Result one = new SuccessiveHalving(data, 2, 0.2, 5).run(grid, Runnable::run, 1);
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			SuccessiveHalving.Result four = new SuccessiveHalving(data, 2, 0.2, 5).run(grid, pool, 4);
+			assertEquals(one.best(), four.best());
+			assertEquals(one.rounds().size(), four.rounds().size());
+			for (int k = 0; k < one.rounds().size(); k++) {
+				List<SuccessiveHalving.Trial> a = one.rounds().get(k).trials(), b = four.rounds().get(k).trials();
+				assertEquals(a.size(), b.size());
+				for (int i = 0; i < a.size(); i++) {
+					assertEquals(a.get(i).candidate(), b.get(i).candidate());
+					assertEquals(a.get(i).accuracy(), b.get(i).accuracy());
+					assertEquals(a.get(i).nodes(), b.get(i).nodes());
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	@Test
+	void badSettingsAreRejected() {
+		TrainingMatrix data = matrix(new Random(41));
+		assertThrows(IllegalArgumentException.class, () -> new SuccessiveHalving(data, 1, 0.2, 1));
+		assertThrows(IllegalArgumentException.class, () -> new SuccessiveHalving(data, 3, 0, 1));
+		assertThrows(IllegalArgumentException.class, () -> new SuccessiveHalving(data, 3, 1, 1));
+		assertThrows(IllegalArgumentException.class, () -> new SuccessiveHalving(data, 3, 0.2, 1).run(List.of(), Runnable::run, 1));
+		// each grid value is checked as an option
+		assertThrows(IllegalArgumentException.class, () -> SuccessiveHalving.grid(TrainingOptions.DEFAULTS,
+				new int[] { 4 }, new int[] { 1 }, new int[] { 1 }, new double[] { 0 }));
+		assertThrows(IllegalArgumentException.class, () -> SuccessiveHalving.grid(TrainingOptions.DEFAULTS,
+				new int[] { TrainingOptions.MAX_DEPTH_LIMIT + 1 }, new int[] { 2 }, new int[] { 1 }, new double[] { 0 }));
+		// one row per label: nothing left to validate on
+		TrainingMatrix tiny = TrainingMatrix.of(List.of(new TextBlock("a"), new TextBlock("b")), List.of("x", "y"));
+		assertThrows(IllegalArgumentException.class, () -> new SuccessiveHalving(tiny, 3, 0.5, 1));
+	}
+
+	@Test
+	void searchRunFromAPoolThreadFinishesOnThatPool() throws Exception {
+		TrainingMatrix data = matrix(new Random(28));
+		List<TrainingOptions> grid = SuccessiveHalving.grid(TrainingOptions.DEFAULTS,
+				new int[] { 2, 4, 8 }, new int[] { 2, 10 }, new int[] { 1 }, new double[] { 0, 1e-3 });
+		SuccessiveHalving.Result expected = new SuccessiveHalving(data, 3, 0.2, 7).run(grid, Runnable::run, 1);
+
+		// the coordinating task holds one of the pool's threads and asks for more helpers than
+		// the pool has left; with one thread, none of them can start until it is done
+		for (int threads : new int[] { 1, 2 }) {
+			ExecutorService pool = Executors.newFixedThreadPool(threads);
+			try {
+				Future<SuccessiveHalving.Result> f = pool.submit(
+						() -> new SuccessiveHalving(data, 3, 0.2, 7).run(grid, pool, threads + 2));
+				SuccessiveHalving.Result result = f.get(60, TimeUnit.SECONDS);
+				assertEquals(expected.best(), result.best(), threads + " thread(s)");
+				assertEquals(expected.bestAccuracy(), result.bestAccuracy(), threads + " thread(s)");
+				assertEquals(expected.rounds().size(), result.rounds().size());
+			} finally {
+				pool.shutdownNow();
+			}
+		}
+	}
+
+	// The label follows the words, with some noise, so deeper trees score differently
+	static TrainingMatrix matrix(Random rnd) {
+		List<TextBlock> docs = new ArrayList<>();
+		List<String> labels = new ArrayList<>();
+		Fixtures.documents(600, () -> words(rnd, WORDS, 1 + rnd.nextInt(4)), text -> {
+			String label = text.contains("ball") || text.contains("goal") ? "sport"
+					: text.contains("vote") || text.contains("tax") ? "politics" : "tech";
+			return rnd.nextInt(8) == 0 ? "tech" : label;
+		}, docs, labels);
+		return TrainingMatrix.of(docs, labels);
+	}
+
+}
@@ -0,0 +1,138 @@
+package com.example.classifierapi.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static com.example.classifierapi.core.Fixtures.saved;
+import static com.example.classifierapi.core.Fixtures.words;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TrainingMatrixTest {
+
+	private static final String[] WORDS = { "ball", "goal", "vote", "law", "cpu", "chip", "the", "a", "win", "tax" };
+
+	@Test
+	void rowsHoldTheDocumentFrequencies() throws IOException {
+		List<TextBlock> docs = new ArrayList<>();
+		List<String> labels = new ArrayList<>();
+		documents(new Random(29), docs, labels);
+		TrainingMatrix m = TrainingMatrix.of(docs, labels);
+		Set<String> vocabulary = new HashSet<>();
+		for (TextBlock tb : docs) vocabulary.addAll(tb.getFeatures());
+		assertEquals(docs.size(), m.rows());
+		assertEquals(vocabulary.size(), m.features());
+		assertEquals(3, m.labelCount());
+		assertEquals(0, m.hashBits());
+
+		long nonZeros = 0;
+		for (int r = 0; r < m.rows(); r++) {
+			TextBlock tb = docs.get(r);
+			assertEquals(labels.get(r), m.labelName(m.label(r)));
+			assertEquals(tb.getFeatures().size(), m.rowEnd(r) - m.rowStart(r));
+			for (int k = m.rowStart(r); k < m.rowEnd(r); k++) {
+				int f = m.featureAt(k);
+				if (k > m.rowStart(r)) assertTrue(m.featureAt(k - 1) < f, "row " + r + " not sorted");
+				assertEquals((float) tb.get(m.featureName(f)), m.valueAt(k));
+				assertEquals(m.valueAt(k), m.value(r, f));
+			}
+			for (int f = 0; f < m.features(); f++) {
+				if (!tb.containsFeature(m.featureName(f))) assertEquals(0f, m.value(r, f));
+			}
+			nonZeros += m.rowEnd(r) - m.rowStart(r);
+		}
+		assertEquals(nonZeros, m.nonZeros());
+
+		TrainingMatrix reread = roundTrip(m);
+		assertEquals(m.rows(), reread.rows());
+		assertEquals(m.nonZeros(), reread.nonZeros());
+		for (int r = 0; r < m.rows(); r++) {
+			assertEquals(m.labelName(m.label(r)), reread.labelName(reread.label(r)));
+			for (int k = m.rowStart(r); k < m.rowEnd(r); k++) {
+				assertEquals(m.featureName(m.featureAt(k)), reread.featureName(reread.featureAt(k)));
+				assertEquals(m.valueAt(k), reread.valueAt(k));
+			}
+		}
+		// the TextBlock constructor trains on the same matrix
+		assertEquals(saved(new ImprovedClassifier(m, null)), saved(new ImprovedClassifier(docs, labels)));
+		assertThrows(IllegalArgumentException.class, () -> TrainingMatrix.of(docs, labels.subList(1, labels.size())));
+	}
+
+	@Test
+	void collapsedRowsCarryTheirDuplicatesAsWeight() {
+		List<TextBlock> docs = new ArrayList<>();
+		List<String> labels = new ArrayList<>();
+		documents(new Random(49), docs, labels);
+		TrainingMatrix plain = build(docs, labels, false);
+		TrainingMatrix collapsed = build(docs, labels, true);
+
+		assertFalse(plain.isWeighted());
+		assertTrue(collapsed.isWeighted());
+		assertEquals(docs.size(), plain.rows());
+		assertTrue(collapsed.rows() < plain.rows() / 2, "collapsed to " + collapsed.rows());
+		assertEquals(plain.totalWeight(), collapsed.totalWeight());
+		int sum = 0;
+		for (int r = 0; r < collapsed.rows(); r++) sum += collapsed.weight(r);
+		assertEquals(docs.size(), sum);
+	}
+
+	@Test
+	void collapsedMatrixGrowsTheSameTree() throws IOException {
+		List<TextBlock> docs = new ArrayList<>();
+		List<String> labels = new ArrayList<>();
+		documents(new Random(50), docs, labels);
+		TrainingMatrix plain = build(docs, labels, false);
+		TrainingMatrix collapsed = build(docs, labels, true);
+		TrainingMatrix reread = roundTrip(collapsed);
+
+		TrainingOptions[] options = {
+			TrainingOptions.DEFAULTS,
+			TrainingOptions.DEFAULTS.withHyperparameters(6, 10, 4, 1e-3),
+			new TrainingOptions(TrainingOptions.Growth.BEST_FIRST, 12, 0),
+			// binned, with sketches large enough never to compact (see the TrainingMatrix doc)
+			new TrainingOptions(TrainingOptions.Growth.DEPTH_FIRST, 0, 0, 12, 2, 1, 1e-3, 1024, 0, false),
+		};
+		for (TrainingOptions o : options) {
+			String expected = saved(new ImprovedClassifier(plain, null, o));
+			assertTrue(expected.lines().count() > 3, "trivial tree for " + o);
+			assertEquals(expected, saved(new ImprovedClassifier(collapsed, null, o)), o.toString());
+			assertEquals(expected, saved(new ImprovedClassifier(reread, null, o)), "reread " + o);
+		}
+	}
+
+	// Short documents from a small vocabulary, so most of them repeat; the label depends
+	// on the words, with some noise so the tree has impure nodes to weigh
+	private static void documents(Random rnd, List<TextBlock> docs, List<String> labels) {
+		Fixtures.documents(3_000, () -> words(rnd, WORDS, 1 + rnd.nextInt(3)), text -> {
+			String label = text.contains("ball") || text.contains("goal") || text.contains("win") ? "sport"
+					: text.contains("vote") || text.contains("law") || text.contains("tax") ? "politics" : "tech";
+			return rnd.nextInt(10) == 0 ? "tech" : label;
+		}, docs, labels);
+	}
+
+	private static TrainingMatrix build(List<TextBlock> docs, List<String> labels, boolean collapse) {
+		TrainingMatrix.Builder b = new TrainingMatrix.Builder().collapseDuplicates(collapse);
+		for (int i = 0; i < docs.size(); i++) b.add(docs.get(i), labels.get(i));
+		assertEquals(docs.size(), b.added());
+		return b.build();
+	}
+
+	private static TrainingMatrix roundTrip(TrainingMatrix m) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		m.write(new DataOutputStream(bytes));
+		return TrainingMatrix.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+	}
+
+}
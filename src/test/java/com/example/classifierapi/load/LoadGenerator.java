@@ -0,0 +1,392 @@
+package com.example.classifierapi.load;
+
+import com.example.classifierapi.ClassifierapiApplication;
+import com.example.classifierapi.core.CsvParser;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**
+ * End-to-end HTTP load generator.
+ *
+ * Starts the application on a random port (or targets --url) and drives each scenario in
+ * turn for a warm-up and then a measured period, from --concurrency virtual-thread workers:
+ *
+ *   classify      POST /api/classify with the texts of static/samples/test.csv
+ *   synthetic     POST /api/classify with seeded random texts built from that vocabulary
+ *   metrics       POST /api/metrics with test.csv (batch classification of the whole file)
+ *   tree          GET /api/tree
+ *   train-stream  POST /api/train/stream with test.csv, reading the event stream to its end
+ *
+ * train-stream replaces the served model, so it belongs last. With --rate (requests per
+ * second over all workers) each worker sends on a fixed schedule and latency is measured
+ * from the scheduled send time, so a stalled server shows up as latency instead of as
+ * fewer requests (coordinated omission); without it workers send back to back.
+ *
+ * Per scenario it prints throughput, errors and the HdrHistogram percentile distribution
+ * in milliseconds, and writes everything to --json (default target/load-report.json), the
+ * histograms included in compressed base64 form. Arguments it doesn't know are passed to
+ * the application, e.g. --classifier.batching.enabled=true.
+ *
+ *   ./mvnw -Pload integration-test -Dload.args="--concurrency=32 --rate=2000"
+ */
+public final class LoadGenerator {
+
+    private static final long HIGHEST_MICROS = Duration.ofMinutes(10).toNanos() / 1_000;
+
+    record Options(String url, List<String> scenarios, int concurrency, int trainConcurrency, double rate,
+                   Duration warmup, Duration duration, Duration timeout, int syntheticWords, long seed,
+                   Path json) {}
+
+    record Result(String scenario, int concurrency, double seconds, long requests, long errors,
+                  Histogram latencyMicros) {
+        double throughput() {
+            return seconds == 0 ? 0 : requests / seconds;
+        }
+    }
+
+    // One request kind; 'stream' responses are read to the end and checked for an error event
+    record Scenario(String name, LongFunction<HttpRequest> request, boolean stream) {}
+
+    public static void main(String[] args) throws Exception {
+        List<String> appArgs = new ArrayList<>();
+        Options options = parse(args, appArgs);
+        ConfigurableApplicationContext app = null;
+        String url = options.url();
+        if (url == null) {
+            appArgs.add("--server.port=0");
+            app = new SpringApplication(ClassifierapiApplication.class).run(appArgs.toArray(new String[0]));
+            url = "http://localhost:" + app.getEnvironment().getProperty("local.server.port");
+        }
+        try (ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor()) {
+            HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(threads)
+                .build();
+            LoadGenerator generator = new LoadGenerator(client, url, options);
+            generator.awaitReady();
+            List<Result> results = new ArrayList<>();
+            for (String name : options.scenarios()) {
+                Result r = generator.run(generator.scenario(name));
+                print(r, System.out);
+                results.add(r);
+            }
+            Files.createDirectories(options.json().toAbsolutePath().getParent());
+            Files.writeString(options.json(), json(url, options, results));
+            System.out.println("Report written to " + options.json().toAbsolutePath());
+        } finally {
+            if (app != null) app.close();
+        }
+    }
+
+    private final HttpClient client;
+    private final URI base;
+    private final Options options;
+    private final byte[] csv;
+    private final List<String> texts = new ArrayList<>();
+    private final List<String> vocabulary;
+
+    LoadGenerator(HttpClient client, String url, Options options) throws IOException {
+        this.client = client;
+        this.base = URI.create(url.endsWith("/") ? url : url + "/");
+        this.options = options;
+        try (InputStream in = LoadGenerator.class.getResourceAsStream("/static/samples/test.csv")) {
+            if (in == null) throw new IllegalStateException("static/samples/test.csv is not on the classpath");
+            csv = in.readAllBytes();
+        }
+        ByteBuffer buf = ByteBuffer.wrap(csv);
+        int text = CsvParser.indexOf(CsvParser.header(buf), "text")[0];
+        if (text < 0) throw new IllegalStateException("test.csv has no text column");
+        CsvParser.forEach(buf, new int[] {text}, true, cells -> {
+            if (cells[0] != null && !cells[0].isBlank()) texts.add(cells[0]);
+        });
+        vocabulary = texts.stream()
+            .flatMap(t -> List.of(t.split("\\s+")).stream())
+            .filter(w -> !w.isEmpty())
+            .distinct()
+            .toList();
+    }
+
+    // Waits out the model preload and JIT warm-up
+    void awaitReady() throws Exception {
+        HttpRequest ready = HttpRequest.newBuilder(base.resolve("api/ready")).GET().build();
+        long deadline = System.nanoTime() + Duration.ofMinutes(5).toNanos();
+        while (System.nanoTime() < deadline) {
+            try {
+                HttpResponse<String> r = client.send(ready, HttpResponse.BodyHandlers.ofString());
+                if (r.statusCode() == 200 && r.body().trim().equals("true")) return;
+            } catch (IOException e) {
+                // not listening yet
+            }
+            Thread.sleep(250);
+        }
+        throw new IllegalStateException(base + " did not become ready");
+    }
+
+    Scenario scenario(String name) {
+        return switch (name) {
+            case "classify" -> new Scenario(name, i -> classify(texts.get((int) (i % texts.size()))), false);
+            case "synthetic" -> new Scenario(name, i -> classify(synthetic(i)), false);
+            case "metrics" -> new Scenario(name, i -> upload("api/metrics"), false);
+            case "tree" -> new Scenario(name, i -> HttpRequest.newBuilder(base.resolve("api/tree"))
+                .timeout(options.timeout()).GET().build(), false);
+            case "train-stream" -> new Scenario(name, i -> upload("api/train/stream"), true);
+            default -> throw new IllegalArgumentException("Unknown scenario: " + name);
+        };
+    }
+
+    private HttpRequest classify(String text) {
+        return HttpRequest.newBuilder(base.resolve("api/classify"))
+            .timeout(options.timeout())
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString("{\"text\":" + quote(text) + "}"))
+            .build();
+    }
+
+    // Seeded per request index, so runs with the same options send the same texts
+    String synthetic(long i) {
+        Random random = new Random(options.seed() ^ (i * 0x9E3779B97F4A7C15L));
+        int words = 1 + random.nextInt(options.syntheticWords());
+        StringBuilder sb = new StringBuilder();
+        for (int w = 0; w < words; w++) {
+            if (w > 0) sb.append(' ');
+            sb.append(vocabulary.get(random.nextInt(vocabulary.size())));
+        }
+        return sb.toString();
+    }
+
+    // multipart/form-data with test.csv as 'file' and labelCol=label
+    private HttpRequest upload(String path) {
+        String boundary = "----load" + Long.toHexString(System.nanoTime());
+        byte[] head = ("--" + boundary + "\r\n"
+            + "Content-Disposition: form-data; name=\"labelCol\"\r\n\r\nlabel\r\n"
+            + "--" + boundary + "\r\n"
+            + "Content-Disposition: form-data; name=\"file\"; filename=\"test.csv\"\r\n"
+            + "Content-Type: text/csv\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+        byte[] tail = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8);
+        return HttpRequest.newBuilder(base.resolve(path))
+            .timeout(options.timeout())
+            .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+            .POST(HttpRequest.BodyPublishers.ofByteArrays(List.of(head, csv, tail)))
+            .build();
+    }
+
+    Result run(Scenario s) throws InterruptedException {
+        int workers = s.name().equals("train-stream") ? options.trainConcurrency() : options.concurrency();
+        AtomicLong sequence = new AtomicLong();
+        if (!options.warmup().isZero()) {
+            System.out.println("Warming up " + s.name() + " for " + options.warmup().toSeconds() + " s");
+            drive(s, workers, options.warmup(), sequence);
+        }
+        System.out.println("Measuring " + s.name() + " for " + options.duration().toSeconds() + " s at concurrency "
+                           + workers + (options.rate() > 0 ? ", " + options.rate() + " req/s" : ""));
+        return drive(s, workers, options.duration(), sequence);
+    }
+
+    // Runs 'workers' loops until 'duration' has passed; requests in flight at the end
+    // complete and are counted
+    private Result drive(Scenario s, int workers, Duration duration, AtomicLong sequence) throws InterruptedException {
+        Histogram[] latency = new Histogram[workers];
+        long[] requests = new long[workers];
+        long[] errors = new long[workers];
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        // With a rate, worker w sends at start + (w + k * workers) / rate
+        long interval = options.rate() > 0 ? (long) (workers * 1e9 / options.rate()) : 0;
+        List<Thread> threads = new ArrayList<>(workers);
+        for (int w = 0; w < workers; w++) {
+            int worker = w;
+            latency[w] = new Histogram(HIGHEST_MICROS, 3);
+            threads.add(Thread.ofVirtual().name("load-" + s.name() + "-" + w).start(() -> {
+                long next = start + (interval == 0 ? 0 : worker * interval / workers);
+                while (true) {
+                    long now = System.nanoTime();
+                    if (interval > 0 && next > now) {
+                        if (next >= end) break;
+                        try {
+                            Thread.sleep(Duration.ofNanos(next - now));
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    } else if (now >= end) {
+                        break;
+                    }
+                    long sent = interval > 0 ? next : System.nanoTime();
+                    boolean ok = send(s, sequence.getAndIncrement());
+                    long micros = (System.nanoTime() - sent) / 1_000;
+                    requests[worker]++;
+                    if (ok) latency[worker].recordValue(Math.min(micros, HIGHEST_MICROS));
+                    else errors[worker]++;
+                    next += interval;
+                }
+            }));
+        }
+        for (Thread t : threads) t.join();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Histogram all = new Histogram(HIGHEST_MICROS, 3);
+        long total = 0, failed = 0;
+        for (int w = 0; w < workers; w++) {
+            all.add(latency[w]);
+            total += requests[w];
+            failed += errors[w];
+        }
+        return new Result(s.name(), workers, seconds, total, failed, all);
+    }
+
+    // True for a 2xx response (and, for the training stream, no error event in it)
+    private boolean send(Scenario s, long i) {
+        try {
+            HttpRequest request = s.request().apply(i);
+            if (s.stream()) {
+                HttpResponse<String> r = client.send(request, HttpResponse.BodyHandlers.ofString());
+                return r.statusCode() / 100 == 2 && !r.body().contains("\"phase\":\"error\"");
+            }
+            HttpResponse<Void> r = client.send(request, HttpResponse.BodyHandlers.discarding());
+            return r.statusCode() / 100 == 2;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static void print(Result r, PrintStream out) {
+        Histogram h = r.latencyMicros();
+        out.printf(Locale.ROOT, "%n%s: %d requests, %d errors in %.1f s = %.1f req/s%n",
+                   r.scenario(), r.requests(), r.errors(), r.seconds(), r.throughput());
+        if (h.getTotalCount() == 0) return;
+        out.printf(Locale.ROOT, "latency ms: p50 %.3f  p99 %.3f  p999 %.3f  max %.3f%n",
+                   ms(h, 50), ms(h, 99), ms(h, 99.9), h.getMaxValue() / 1e3);
+        h.outputPercentileDistribution(out, 1000.0);
+    }
+
+    private static double ms(Histogram h, double percentile) {
+        return h.getValueAtPercentile(percentile) / 1e3;
+    }
+
+    static String json(String url, Options o, List<Result> results) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"target\":").append(quote(url))
+          .append(",\"finishedAt\":").append(quote(Instant.now().toString()))
+          .append(",\"options\":{\"concurrency\":").append(o.concurrency())
+          .append(",\"trainConcurrency\":").append(o.trainConcurrency())
+          .append(",\"rate\":").append(o.rate())
+          .append(",\"warmupSeconds\":").append(o.warmup().toSeconds())
+          .append(",\"durationSeconds\":").append(o.duration().toSeconds())
+          .append(",\"syntheticWords\":").append(o.syntheticWords())
+          .append(",\"seed\":").append(o.seed())
+          .append("},\"scenarios\":[");
+        for (int i = 0; i < results.size(); i++) {
+            Result r = results.get(i);
+            Histogram h = r.latencyMicros();
+            if (i > 0) sb.append(',');
+            sb.append("{\"name\":").append(quote(r.scenario()))
+              .append(",\"concurrency\":").append(r.concurrency())
+              .append(",\"requests\":").append(r.requests())
+              .append(",\"errors\":").append(r.errors())
+              .append(",\"seconds\":").append(String.format(Locale.ROOT, "%.3f", r.seconds()))
+              .append(",\"throughput\":").append(String.format(Locale.ROOT, "%.2f", r.throughput()))
+              .append(",\"latencyMs\":{");
+            if (h.getTotalCount() > 0) {
+                sb.append(String.format(Locale.ROOT,
+                    "\"mean\":%.3f,\"p50\":%.3f,\"p90\":%.3f,\"p99\":%.3f,\"p999\":%.3f,\"max\":%.3f",
+                    h.getMean() / 1e3, ms(h, 50), ms(h, 90), ms(h, 99), ms(h, 99.9), h.getMaxValue() / 1e3));
+            }
+            sb.append("},\"hdrHistogramMicros\":").append(quote(encode(h))).append('}');
+        }
+        return sb.append("]}\n").toString();
+    }
+
+    // Compressed HdrHistogram encoding, readable with Histogram.fromString
+    private static String encode(Histogram h) {
+        ByteBuffer buf = ByteBuffer.allocate(h.getNeededByteBufferCapacity());
+        int n = h.encodeIntoCompressedByteBuffer(buf);
+        return Base64.getEncoder().encodeToString(Arrays.copyOf(buf.array(), n));
+    }
+
+    private static String quote(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    // --name=value options; anything else goes to the application
+    static Options parse(String[] args, List<String> appArgs) {
+        Map<String, String> o = new LinkedHashMap<>();
+        o.put("url", null);
+        o.put("scenarios", "classify,synthetic,metrics,tree,train-stream");
+        o.put("concurrency", "16");
+        o.put("train-concurrency", "2");
+        o.put("rate", "0");
+        o.put("warmup", "5");
+        o.put("duration", "20");
+        o.put("timeout", "120");
+        o.put("synthetic-words", "40");
+        o.put("seed", "42");
+        o.put("json", "target/load-report.json");
+        for (String a : args) {
+            int eq = a.indexOf('=');
+            String key = a.startsWith("--") && eq > 2 ? a.substring(2, eq) : null;
+            if (key != null && o.containsKey(key)) o.put(key, a.substring(eq + 1));
+            else appArgs.add(a);
+        }
+        Options options = new Options(
+            o.get("url"),
+            List.of(o.get("scenarios").split("\\s*,\\s*")),
+            Integer.parseInt(o.get("concurrency")),
+            Integer.parseInt(o.get("train-concurrency")),
+            Double.parseDouble(o.get("rate")),
+            Duration.ofSeconds(Long.parseLong(o.get("warmup"))),
+            Duration.ofSeconds(Long.parseLong(o.get("duration"))),
+            Duration.ofSeconds(Long.parseLong(o.get("timeout"))),
+            Integer.parseInt(o.get("synthetic-words")),
+            Long.parseLong(o.get("seed")),
+            Path.of(o.get("json")));
+        if (options.concurrency() < 1 || options.trainConcurrency() < 1) {
+            throw new IllegalArgumentException("concurrency must be >= 1");
+        }
+        if (options.syntheticWords() < 1) throw new IllegalArgumentException("synthetic-words must be >= 1");
+        return options;
+    }
+}
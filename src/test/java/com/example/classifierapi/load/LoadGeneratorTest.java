@@ -0,0 +1,172 @@
+package com.example.classifierapi.load;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoadGeneratorTest {
+
+	@Test
+	void optionsAndApplicationArgumentsAreSeparated() {
+		List<String> appArgs = new ArrayList<>();
+		LoadGenerator.Options o = LoadGenerator.parse(new String[] { "--concurrency=3", "--rate=250.5", "--scenarios=tree, classify",
+				"--classifier.batching.enabled=true", "--seed=7", "plain" }, appArgs);
+		assertEquals(3, o.concurrency());
+		assertEquals(250.5, o.rate());
+		assertEquals(List.of("tree", "classify"), o.scenarios());
+		assertEquals(7, o.seed());
+		assertEquals(Duration.ofSeconds(20), o.duration());
+		assertEquals(Path.of("target/load-report.json"), o.json());
+		assertEquals(List.of("--classifier.batching.enabled=true", "plain"), appArgs);
+
+		assertThrows(IllegalArgumentException.class, () -> LoadGenerator.parse(new String[] { "--concurrency=0" }, appArgs));
+		assertThrows(IllegalArgumentException.class, () -> LoadGenerator.parse(new String[] { "--synthetic-words=0" }, appArgs));
+	}
+
+	@Test
+	void everyRequestIsCountedAndOnlySuccessesAreTimed() throws Exception {
+		try (App app = new App()) {
+			LoadGenerator generator = app.generator("--concurrency=4", "--warmup=0", "--duration=1");
+			generator.awaitReady();
+			LoadGenerator.Result r = generator.run(generator.scenario("classify"));
+			assertEquals(app.classified.get(), r.requests());
+			assertEquals(app.failed.get(), r.errors());
+			assertTrue(r.requests() >= 5, r.requests() + " requests");
+			assertEquals(r.requests() - r.errors(), r.latencyMicros().getTotalCount());
+			assertEquals(4, r.concurrency());
+			assertTrue(r.seconds() >= 1);
+			assertEquals(r.requests() / r.seconds(), r.throughput(), 1e-9);
+			assertThrows(IllegalArgumentException.class, () -> generator.scenario("nope"));
+		}
+	}
+
+	@Test
+	void fixedRateSendsOnSchedule() throws Exception {
+		// 100 req/s for a second over 4 workers: about 100 sends, however fast the server answers
+		try (App app = new App()) {
+			LoadGenerator generator = app.generator("--concurrency=4", "--rate=100", "--warmup=0", "--duration=1");
+			LoadGenerator.Result r = generator.run(generator.scenario("synthetic"));
+			assertEquals(app.classified.get(), r.requests());
+			assertTrue(r.requests() >= 50 && r.requests() <= 101, r.requests() + " requests");
+		}
+	}
+
+	@Test
+	void syntheticTextsFollowTheSeed() throws Exception {
+		// nothing is sent, so no application is needed
+		LoadGenerator a = generator("--seed=1", "--synthetic-words=5"), b = generator("--seed=1", "--synthetic-words=5");
+		LoadGenerator c = generator("--seed=2", "--synthetic-words=5");
+		int differ = 0;
+		for (long i = 0; i < 50; i++) {
+			String text = a.synthetic(i);
+			assertEquals(text, b.synthetic(i));
+			int words = text.split(" ").length;
+			assertTrue(words >= 1 && words <= 5, text);
+			if (!text.equals(c.synthetic(i))) differ++;
+		}
+		assertTrue(differ > 40);
+		assertNotEquals(a.synthetic(0), a.synthetic(1));
+	}
+
+	@Test
+	void reportCarriesTheHistogram() {
+		Histogram h = new Histogram(Duration.ofMinutes(10).toNanos() / 1_000, 3);
+		for (long v = 1; v <= 1_000; v++) h.recordValue(v * 100);
+		LoadGenerator.Options o = LoadGenerator.parse(new String[0], new ArrayList<>());
+		String json = LoadGenerator.json("http://host/\"x\"",
+				o, List.of(new LoadGenerator.Result("classify", 16, 2.0, 1_003, 3, h),
+						new LoadGenerator.Result("tree", 16, 2.0, 0, 0, new Histogram(1_000, 3))));
+		assertTrue(json.startsWith("{\"target\":\"http://host/\\\"x\\\"\","), json);
+		assertTrue(json.contains("{\"name\":\"classify\",\"concurrency\":16,\"requests\":1003,\"errors\":3,\"seconds\":2.000,"
+				+ "\"throughput\":501.50,\"latencyMs\":{\"mean\":"), json);
+		// an empty scenario has no percentiles but still a (decodable) histogram
+		assertTrue(json.contains("{\"name\":\"tree\",\"concurrency\":16,\"requests\":0,\"errors\":0,\"seconds\":2.000,"
+				+ "\"throughput\":0.00,\"latencyMs\":{},"), json);
+
+		Matcher m = Pattern.compile("\"hdrHistogramMicros\":\"([A-Za-z0-9+/=]+)\"").matcher(json);
+		assertTrue(m.find());
+		Histogram decoded = histogram(m.group(1));
+		assertEquals(h.getTotalCount(), decoded.getTotalCount());
+		assertEquals(h.getValueAtPercentile(99), decoded.getValueAtPercentile(99));
+		assertEquals(h.getMaxValue(), decoded.getMaxValue());
+		assertTrue(m.find());
+		assertEquals(0, histogram(m.group(1)).getTotalCount());
+	}
+
+	private static LoadGenerator generator(String... args) throws IOException {
+		LoadGenerator.Options o = LoadGenerator.parse(args, new ArrayList<>());
+		return new LoadGenerator(HttpClient.newHttpClient(), "http://localhost:1", o);
+	}
+
+	private static Histogram histogram(String base64) {
+		try {
+			return Histogram.fromString(base64);
+		} catch (Exception e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.sendResponseHeaders(status, bytes.length);
+		exchange.getResponseBody().write(bytes);
+		exchange.close();
+	}
+
+	// A stand-in for the application: ready at once, every fifth classify call fails
+	private static final class App implements AutoCloseable {
+		final AtomicLong classified = new AtomicLong();
+		final AtomicLong failed = new AtomicLong();
+		private final ExecutorService threads = Executors.newCachedThreadPool();
+		private final HttpServer server;
+
+		App() throws IOException {
+			server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+			server.setExecutor(threads);
+			server.createContext("/api/ready", exchange -> respond(exchange, 200, "true"));
+			server.createContext("/api/classify", exchange -> {
+				String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+				boolean json = body.startsWith("{\"text\":\"") && body.endsWith("\"}");
+				boolean fail = classified.incrementAndGet() % 5 == 0 || !json;
+				if (fail) failed.incrementAndGet();
+				respond(exchange, fail ? 500 : 200, "{\"label\":\"ham\"}");
+			});
+			server.start();
+		}
+
+		LoadGenerator generator(String... args) throws IOException {
+			List<String> all = new ArrayList<>(List.of(args));
+			all.add("--url=http://localhost:" + server.getAddress().getPort());
+			LoadGenerator.Options o = LoadGenerator.parse(all.toArray(new String[0]), new ArrayList<>());
+			HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).executor(threads).build();
+			return new LoadGenerator(client, o.url(), o);
+		}
+
+		@Override
+		public void close() {
+			server.stop(0);
+			threads.shutdownNow();
+		}
+	}
+
+}
@@ -0,0 +1,254 @@
+package com.example.classifierapi.service;
+
+import com.example.classifierapi.core.ImprovedClassifier;
+import com.example.classifierapi.core.TextBlock;
+import com.example.classifierapi.core.TrainingOptions;
+import com.example.classifierapi.dto.ClassifyResponse;
+import com.example.classifierapi.dto.DecisionStep;
+import com.example.classifierapi.dto.TrainParams;
+import com.example.classifierapi.store.DatasetCache;
+import com.example.classifierapi.store.ModelRepository;
+import com.example.classifierapi.util.InstrumentedExecutor;
+import com.example.classifierapi.util.TextBlockFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClassifierServiceTest {
+
+	private final ClassifierService service = new ClassifierService(new ModelRepository("", 1),
+			new DatasetCache(0, 0, "", 0), null);
+
+	@Test
+	void trainParamsOverrideDefaults() {
+		TrainingOptions defaults = service.trainingOptions(params(null, null, null, null, null, null, null, null, null));
+		assertFalse(defaults.bestFirst());
+		assertEquals(TrainingOptions.DEFAULTS, defaults);
+
+		TrainingOptions o = service.trainingOptions(params("best-first", null, 500L, 6, 10, 3, 0.01, 32, 1000));
+		assertEquals(TrainingOptions.Growth.BEST_FIRST, o.growth());
+		assertEquals(500, o.timeLimitMillis());
+		assertEquals(6, o.maxDepth());
+		assertEquals(10, o.minSamplesSplit());
+		assertEquals(3, o.minSamplesLeaf());
+		assertEquals(0.01, o.minGain());
+		assertEquals(32, o.approxBins());
+		assertEquals(1000, o.subsampleAbove());
+		assertEquals(TrainingOptions.Growth.BEST_FIRST, service.trainingOptions(
+				params(" Best_First ", null, null, null, null, null, null, null, null)).growth());
+
+		// configured defaults fill in what a request leaves out; a budget implies best-first
+		ReflectionTestUtils.setField(service, "defaultMaxLeafNodes", 20);
+		ReflectionTestUtils.setField(service, "defaultApproxBins", 64);
+		TrainingOptions configured = service.trainingOptions(params(null, null, null, null, null, null, null, null, null));
+		assertEquals(20, configured.maxLeafNodes());
+		assertEquals(64, configured.approxBins());
+		assertTrue(configured.bestFirst());
+		assertEquals(0, service.trainingOptions(params(null, null, null, null, null, null, null, 0, null)).approxBins());
+	}
+
+	@Test
+	void badTrainParamsAreRejected() {
+		assertBad(params("sideways", null, null, null, null, null, null, null, null));
+		assertBad(params(null, -1, null, null, null, null, null, null, null));
+		assertBad(params(null, null, -5L, null, null, null, null, null, null));
+		assertBad(params(null, null, null, TrainingOptions.MAX_DEPTH_LIMIT + 1, null, null, null, null, null));
+		assertBad(params(null, null, null, -1, null, null, null, null, null));
+		assertBad(params(null, null, null, null, 1, null, null, null, null));
+		assertBad(params(null, null, null, null, null, 0, null, null, null));
+		assertBad(params(null, null, null, null, null, null, -0.1, null, null));
+		assertBad(params(null, null, null, null, null, null, Double.NaN, null, null));
+		assertBad(params(null, null, null, null, null, null, null, 1, null));
+		assertBad(params(null, null, null, null, null, null, null, -2, null));
+		assertBad(params(null, null, null, null, 10, null, null, null, 5));
+	}
+
+	@Test
+	void repeatedRunKeepsTheServedModelWithoutPublishing(@TempDir Path dir) throws Exception {
+		ModelRepository repository = new ModelRepository(dir.resolve("models").toString(), 10);
+		InstrumentedExecutor pool = InstrumentedExecutor.platform("train", 1, 4);
+		try {
+			ClassifierService trainer = new ClassifierService(repository, new DatasetCache(16, 4, "", 0), pool);
+			ReflectionTestUtils.setField(trainer, "trainingStorage", "heap");
+			repeatedRuns(trainer, repository, dir);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static void repeatedRuns(ClassifierService trainer, ModelRepository repository, Path dir) throws Exception {
+		File a = csv(dir, "a.csv", "ball");
+		File b = csv(dir, "b.csv", "vote");
+
+		trainer.trainFromCsv(a, "label", null, TrainingOptions.DEFAULTS);
+		ImprovedClassifier first = trainer.currentModel();
+		assertEquals(1, trainer.modelVersion());
+		// a newer file the watcher would skip (it never loads), so publish() can't treat A as unchanged
+		Files.writeString(dir.resolve("models").resolve(String.format("model-%06d-%s.txt", 2, "0".repeat(32))), "x\n");
+
+		trainer.trainFromCsv(a, "label", null, TrainingOptions.DEFAULTS);
+		assertSame(first, trainer.currentModel());
+		assertEquals(1, trainer.modelVersion());
+		assertEquals(2, repository.versions().size());
+
+		// an earlier model that has since been replaced is published again
+		trainer.trainFromCsv(b, "label", null, TrainingOptions.DEFAULTS);
+		assertNotSame(first, trainer.currentModel());
+		assertEquals(3, trainer.modelVersion());
+		trainer.trainFromCsv(a, "label", null, TrainingOptions.DEFAULTS);
+		assertSame(first, trainer.currentModel());
+		assertEquals(4, trainer.modelVersion());
+	}
+
+	@Test
+	void progressRunReturnsItsModelAndAMemoHitReplaysIt(@TempDir Path dir) throws Exception {
+		InstrumentedExecutor pool = InstrumentedExecutor.platform("train", 1, 4);
+		try {
+			ClassifierService trainer = new ClassifierService(new ModelRepository("", 1), new DatasetCache(16, 4, "", 0), pool);
+			ReflectionTestUtils.setField(trainer, "trainingStorage", "heap");
+			File a = csv(dir, "a.csv", "ball");
+
+			List<ImprovedClassifier.TrainProgress> trained = new ArrayList<>();
+			ImprovedClassifier model = trainer.trainFromCsvWithProgress(a, "label", null, TrainingOptions.DEFAULTS, trained::add);
+			assertSame(trainer.currentModel(), model);
+
+			// another model is served meanwhile; the memo hit still answers with (and replays) this run's tree
+			ImprovedClassifier other = new ImprovedClassifier(List.of(new TextBlock("x"), new TextBlock("y")), List.of("p", "q"));
+			trainer.useModel(other);
+			List<ImprovedClassifier.TrainProgress> replayed = new ArrayList<>();
+			assertSame(model, trainer.trainFromCsvWithProgress(a, "label", null, TrainingOptions.DEFAULTS, replayed::add));
+			assertSame(model, trainer.currentModel());
+			assertEquals("start", replayed.get(0).phase);
+			assertEquals("done", replayed.get(replayed.size() - 1).phase);
+			assertEquals(phases(trained, "split"), phases(replayed, "split"));
+			assertEquals(phases(trained, "leaf"), phases(replayed, "leaf"));
+			assertEquals(model.nodeCount(), phases(replayed, "split") + phases(replayed, "leaf"));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static int phases(List<ImprovedClassifier.TrainProgress> events, String phase) {
+		int n = 0;
+		for (ImprovedClassifier.TrainProgress ev : events) if (ev.phase.equals(phase)) n++;
+		return n;
+	}
+
+	@Test
+	void metricsTallyEveryLabelPair(@TempDir Path dir) throws Exception {
+		// a stump that calls everything with "ball" sport and the rest tech
+		service.useModel(new ImprovedClassifier(List.of(new TextBlock("ball"), new TextBlock("cpu")), List.of("sport", "tech")));
+		String[][] rows = { { "sport", "ball game" }, { "sport", "vote now" }, { "politics", "vote" },
+				{ "tech", "cpu" }, { "tech", "ball cpu" }, { "tech", "chip" } };
+		StringBuilder csv = new StringBuilder("label,text\n");
+		Map<String, int[]> tally = new TreeMap<>();   // gold label -> { total, correct }
+		Map<String, Integer> confusion = new TreeMap<>();
+		int correct = 0;
+		for (String[] row : rows) {
+			csv.append(row[0]).append(',').append(row[1]).append('\n');
+			String predicted = service.classify(row[1]).label();
+			int[] t = tally.computeIfAbsent(row[0], k -> new int[2]);
+			t[0]++;
+			if (predicted.equals(row[0])) {
+				t[1]++;
+				correct++;
+			}
+			confusion.merge(row[0] + " -> " + predicted, 1, Integer::sum);
+		}
+		Path file = dir.resolve("metrics.csv");
+		Files.writeString(file, csv);
+
+		ClassifierService.Metrics m = service.metricsFromCsv(file.toFile(), "label");
+		assertEquals((double) correct / rows.length, m.overall, 1e-12);
+		assertEquals(tally.keySet(), m.perLabel.keySet());
+		for (Map.Entry<String, int[]> e : tally.entrySet()) {
+			assertEquals(e.getValue()[0], (int) m.labelCounts.get(e.getKey()));
+			assertEquals((double) e.getValue()[1] / e.getValue()[0], m.perLabel.get(e.getKey()), 1e-12);
+		}
+		Map<String, Integer> reported = new TreeMap<>();
+		for (ClassifierService.ConfusionRow r : m.confusion) reported.put(r.actual + " -> " + r.predicted, r.count);
+		assertEquals(confusion, reported);
+		// sorted by actual, then predicted label
+		for (int i = 1; i < m.confusion.size(); i++) {
+			ClassifierService.ConfusionRow a = m.confusion.get(i - 1), b = m.confusion.get(i);
+			assertTrue(a.actual.compareTo(b.actual) < 0 || a.actual.equals(b.actual) && a.predicted.compareTo(b.predicted) < 0);
+		}
+	}
+
+	@Test
+	void explainedClassifyAddsThePathToTheSameLabel() {
+		ImprovedClassifier model = new ImprovedClassifier(List.of(new TextBlock("ball"), new TextBlock("vote"),
+				new TextBlock("cpu"), new TextBlock("ball vote")), List.of("sport", "politics", "tech", "sport"));
+		service.useModel(model);
+		for (String text : new String[] { "ball", "vote", "cpu chip", "", "Ball, VOTE!" }) {
+			ClassifyResponse plain = service.classify(text);
+			ClassifyResponse explained = service.classifyExplained(text);
+			assertEquals(plain.label(), explained.label(), text);
+			assertTrue(plain.path().isEmpty());
+			List<ImprovedClassifier.PathStep> expected = model.classifyWithPath(TextBlockFactory.fromRaw(text, 0)).path;
+			assertEquals(expected.size() - 1, explained.path().size(), text);
+			for (int k = 0; k < explained.path().size(); k++) {
+				DecisionStep step = explained.path().get(k);
+				assertEquals(expected.get(k).feature, step.feature());
+				assertEquals(expected.get(k).threshold, step.threshold());
+				assertEquals(expected.get(k).value, step.value());
+				assertEquals(expected.get(k).direction, step.direction());
+			}
+		}
+		// a deeper model gets a larger pooled buffer; its paths are complete
+		String[] words = { "a", "b", "c", "d", "e", "f", "g", "h" };
+		List<TextBlock> docs = new ArrayList<>();
+		List<String> labels = new ArrayList<>();
+		for (int k = 0; k < 256; k++) {
+			StringBuilder text = new StringBuilder();
+			for (int bit = 0; bit < 8; bit++) if ((k & 1 << bit) != 0) text.append(' ').append(words[bit]);
+			docs.add(new TextBlock(text + " pad"));
+			labels.add("class" + k);
+		}
+		ImprovedClassifier deep = new ImprovedClassifier(docs, labels);
+		service.useModel(deep);
+		ClassifyResponse r = service.classifyExplained("a c e g pad");
+		assertEquals(deep.classify(TextBlockFactory.fromRaw("a c e g pad", 0)), r.label());
+		assertEquals(deep.classifyWithPath(TextBlockFactory.fromRaw("a c e g pad", 0)).path.size() - 1, r.path().size());
+		assertTrue(r.path().size() > 1);
+	}
+
+	// Rows mentioning 'word' are "yes", the rest "no"
+	private static File csv(Path dir, String name, String word) throws IOException {
+		StringBuilder csv = new StringBuilder("label,text\n");
+		String[] other = { "cpu chip", "the news", "tax law", "goal team" };
+		for (int i = 0; i < 200; i++) {
+			csv.append(i % 2 == 0 ? "yes," + word + " " : "no,").append(other[i % other.length]).append('\n');
+		}
+		Path p = dir.resolve(name);
+		Files.writeString(p, csv);
+		return p.toFile();
+	}
+
+	private void assertBad(TrainParams p) {
+		assertThrows(IllegalArgumentException.class, () -> service.trainingOptions(p), p.toString());
+	}
+
+	private static TrainParams params(String growth, Integer maxLeafNodes, Long timeLimitMs, Integer maxDepth,
+			Integer minSamplesSplit, Integer minSamplesLeaf, Double minGain, Integer approxBins, Integer subsampleAbove) {
+		return new TrainParams(growth, maxLeafNodes, timeLimitMs, maxDepth, minSamplesSplit, minSamplesLeaf, minGain,
+				approxBins, subsampleAbove);
+	}
+
+}
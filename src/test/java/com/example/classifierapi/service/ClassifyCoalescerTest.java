@@ -0,0 +1,128 @@
+package com.example.classifierapi.service;
+
+import com.example.classifierapi.core.ImprovedClassifier;
+import com.example.classifierapi.core.TrainingMatrix;
+import com.example.classifierapi.store.DatasetCache;
+import com.example.classifierapi.store.ModelRepository;
+import com.example.classifierapi.util.TextBlockFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClassifyCoalescerTest {
+
+	private static final String[] WORDS = { "ball", "goal", "vote", "law", "cpu", "chip", "match", "senate", "win", "tax",
+			"court", "gpu", "team", "bill", "ram", "coach", "Ball", "TEAM!", "unseen", "zzz" };
+
+	@Test
+	void batchedLabelsAreTheUnbatchedOnes() throws Exception {
+		for (boolean compiled : new boolean[] { false, true }) {
+			for (int hashBits : new int[] { 0, 8 }) {
+				ClassifierService service = service(compiled);
+				service.useModel(model(new Random(43), hashBits));
+				assertEquals(compiled, service.currentModel().compiledTree() != null);
+				List<String> texts = texts(new Random(44), 3_000);
+				List<String> expected = new ArrayList<>();
+				for (String t : texts) expected.add(service.classify(t).label());
+
+				ClassifyCoalescer coalescer = new ClassifyCoalescer(service, true, 16, 500, 2);
+				ExecutorService callers = Executors.newFixedThreadPool(24);
+				try {
+					List<Future<String>> labels = new ArrayList<>();
+					for (String t : texts) labels.add(callers.submit(() -> coalescer.classify(t).label()));
+					for (int i = 0; i < texts.size(); i++) {
+						assertEquals(expected.get(i), labels.get(i).get(30, TimeUnit.SECONDS),
+								"\"" + texts.get(i) + "\" compiled=" + compiled + " hashBits=" + hashBits);
+					}
+				} finally {
+					callers.shutdownNow();
+					coalescer.close();
+				}
+				ClassifyCoalescer.Stats stats = coalescer.stats();
+				assertEquals(texts.size(), stats.items());
+				assertTrue(stats.batches() > 0 && stats.batches() <= stats.items());
+				assertTrue(stats.meanBatch() <= 16);
+			}
+		}
+	}
+
+	@Test
+	void sequentialCallerIsAnsweredWithoutBatching() {
+		ClassifierService service = service(false);
+		service.useModel(model(new Random(45), 0));
+		ClassifyCoalescer coalescer = new ClassifyCoalescer(service, true, 64, 300, 1);
+		try {
+			for (String t : texts(new Random(46), 200)) assertEquals(service.classify(t).label(), coalescer.classify(t).label());
+			// a lone caller never leaves a second request queued, so the window never opens
+			assertEquals(0, coalescer.stats().windowMicros());
+			assertEquals(1.0, coalescer.stats().meanBatch());
+		} finally {
+			coalescer.close();
+		}
+	}
+
+	@Test
+	void disabledCoalescerAndMissingModel() {
+		ClassifierService service = service(false);
+		ClassifyCoalescer disabled = new ClassifyCoalescer(service, false, 64, 300, 0);
+		assertFalse(disabled.isEnabled());
+		assertEquals(0, disabled.stats().workers());
+		assertThrows(IllegalStateException.class, () -> disabled.classify("ball"));
+
+		ClassifyCoalescer enabled = new ClassifyCoalescer(service, true, 64, 300, 1);
+		try {
+			assertThrows(IllegalStateException.class, () -> enabled.classify("ball"));
+			service.useModel(model(new Random(47), 0));
+			assertNotNull(enabled.classify("ball").label());
+			assertEquals(service.classify(null).label(), enabled.classify(null).label());
+		} finally {
+			enabled.close();
+		}
+
+		assertThrows(IllegalArgumentException.class, () -> new ClassifyCoalescer(service, false, 0, 300, 0));
+		assertThrows(IllegalArgumentException.class, () -> new ClassifyCoalescer(service, false, 64, -1, 0));
+	}
+
+	private static ClassifierService service(boolean compiled) {
+		ClassifierService service = new ClassifierService(new ModelRepository("", 1), new DatasetCache(0, 0, "", 0), null);
+		ReflectionTestUtils.setField(service, "compiledInference", compiled);
+		return service;
+	}
+
+	private static ImprovedClassifier model(Random rnd, int hashBits) {
+		TrainingMatrix.Builder b = new TrainingMatrix.Builder(hashBits);
+		for (String text : texts(rnd, 2_000)) {
+			String lower = text.toLowerCase();
+			String label = lower.contains("ball") || lower.contains("team") ? "sport"
+					: lower.contains("vote") || lower.contains("senate") ? "politics" : "tech";
+			if (rnd.nextInt(8) == 0) label = "tech";
+			b.add(TextBlockFactory.fromRaw(text, hashBits), label);
+		}
+		return new ImprovedClassifier(b.build(), null);
+	}
+
+	// Repeated words, mixed case, punctuation, words the tree never splits on and empty texts
+	private static List<String> texts(Random rnd, int n) {
+		List<String> out = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			String[] tokens = new String[rnd.nextInt(9)];
+			for (int t = 0; t < tokens.length; t++) tokens[t] = WORDS[rnd.nextInt(WORDS.length)];
+			out.add(String.join(rnd.nextBoolean() ? " " : ", ", tokens));
+		}
+		return out;
+	}
+
+}
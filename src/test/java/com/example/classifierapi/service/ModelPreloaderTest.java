@@ -0,0 +1,119 @@
+package com.example.classifierapi.service;
+
+import com.example.classifierapi.core.ImprovedClassifier;
+import com.example.classifierapi.core.TextBlock;
+import com.example.classifierapi.store.DatasetCache;
+import com.example.classifierapi.store.ModelRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static com.example.classifierapi.core.Fixtures.saved;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ModelPreloaderTest {
+
+	private static final String SAMPLE = "classpath:static/samples/sms_tree.txt";
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void bundledSampleIsServedAndWarmedBeforeRunReturns() throws IOException {
+		ClassifierService service = service(new ModelRepository("", 1));
+		ClassifyCoalescer coalescer = new ClassifyCoalescer(service, true, 16, 200, 2);
+		try {
+			new ModelPreloader(service, coalescer, new ModelRepository("", 1), new DefaultResourceLoader(), SAMPLE, 400).run(null);
+			assertTrue(service.isReady());
+			assertEquals(saved(sample()), saved(service.currentModel()));
+			assertEquals(0, service.modelVersion());
+			// the batched pass pushed every warm-up call through the coalescer
+			assertEquals(400, coalescer.stats().items());
+		} finally {
+			coalescer.close();
+		}
+	}
+
+	@Test
+	void newestRepositoryVersionWinsOverTheDefault() throws IOException {
+		ModelRepository publisher = new ModelRepository(dir.toString(), 10);
+		publisher.publish(model("x1"));
+		publisher.publish(model("x2"));
+
+		ClassifierService service = service(new ModelRepository("", 1));
+		try (ModelRepository repository = new ModelRepository(dir.toString(), 10)) {
+			new ModelPreloader(service, disabled(service), repository, new DefaultResourceLoader(), SAMPLE, 100).run(null);
+			assertEquals(2, service.modelVersion());
+			assertEquals(saved(model("x2")), saved(service.currentModel()));
+		}
+	}
+
+	@Test
+	void unreadableSourcesLeaveTheServiceWithoutAModel() throws IOException {
+		Path broken = dir.resolve("broken.txt");
+		Files.writeString(broken, "Feature: ball\nThreshold: x\n");
+		for (String location : new String[] { "", " ", "file:" + dir.resolve("missing.txt"), "file:" + broken }) {
+			ClassifierService service = service(new ModelRepository("", 1));
+			new ModelPreloader(service, disabled(service), new ModelRepository("", 1), new DefaultResourceLoader(), location, 100)
+					.run(null);
+			assertFalse(service.isReady(), location);
+		}
+
+		// an unreadable newest version falls back to the configured default
+		ModelRepository repository = new ModelRepository(dir.resolve("repo").toString(), 10);
+		repository.publish(model("x1"));
+		Path file;
+		try (var files = Files.list(dir.resolve("repo"))) {
+			file = files.filter(f -> f.getFileName().toString().startsWith("model-")).findFirst().orElseThrow();
+		}
+		Files.writeString(file, Files.readString(file).replace("x1", "x9"));
+		ClassifierService service = service(new ModelRepository("", 1));
+		try (ModelRepository watched = new ModelRepository(dir.resolve("repo").toString(), 10)) {
+			new ModelPreloader(service, disabled(service), watched, new DefaultResourceLoader(), SAMPLE, 0).run(null);
+			assertEquals(0, service.modelVersion());
+			assertEquals(saved(sample()), saved(service.currentModel()));
+		}
+	}
+
+	@Test
+	void zeroIterationsSkipsTheWarmUp() throws IOException {
+		ClassifierService service = service(new ModelRepository("", 1));
+		ClassifyCoalescer coalescer = new ClassifyCoalescer(service, true, 16, 200, 1);
+		try {
+			new ModelPreloader(service, coalescer, new ModelRepository("", 1), new DefaultResourceLoader(), SAMPLE, 0).run(null);
+			assertTrue(service.isReady());
+			assertEquals(0, coalescer.stats().items());
+		} finally {
+			coalescer.close();
+		}
+	}
+
+	private static ClassifierService service(ModelRepository repository) {
+		return new ClassifierService(repository, new DatasetCache(0, 0, "", 0), null);
+	}
+
+	private static ClassifyCoalescer disabled(ClassifierService service) {
+		return new ClassifyCoalescer(service, false, 16, 200, 0);
+	}
+
+	private static ImprovedClassifier sample() throws IOException {
+		try (InputStream in = new DefaultResourceLoader().getResource(SAMPLE).getInputStream()) {
+			return ClassifierService.readModel(in);
+		}
+	}
+
+	// A small tree whose saved text differs with the label
+	private static ImprovedClassifier model(String label) {
+		return new ImprovedClassifier(List.of(new TextBlock("ball team"), new TextBlock("vote law"), new TextBlock("ball goal")),
+				List.of(label, "y", label));
+	}
+
+}
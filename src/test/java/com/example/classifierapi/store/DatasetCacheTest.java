@@ -0,0 +1,186 @@
+package com.example.classifierapi.store;
+
+import com.example.classifierapi.core.ImprovedClassifier;
+import com.example.classifierapi.core.TextBlock;
+import com.example.classifierapi.core.TrainingMatrix;
+import com.example.classifierapi.core.TrainingOptions;
+import com.example.classifierapi.store.DatasetCache.DatasetKey;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.classifierapi.core.Fixtures.saved;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DatasetCacheTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void keyFollowsContentAndSettings() throws IOException {
+		DatasetCache cache = new DatasetCache(1, 1, "", 0);
+		File a = csv("a.csv", "label,text\nx,one two\n");
+		File b = csv("b.csv", "label,text\nx,one two\n");
+		File c = csv("c.csv", "label,text\ny,one two\n");
+		DatasetKey key = cache.key(a, "label", "text", 0, true);
+		assertEquals(key, cache.key(b, "label", "text", 0, true));
+		assertNotEquals(key, cache.key(c, "label", "text", 0, true));
+		assertNotEquals(key, cache.key(a, "label", "text", 10, true));
+		assertNotEquals(key, cache.key(a, "label", "text", 0, false));
+
+		DatasetCache disabled = new DatasetCache(0, 0, "", 0);
+		assertNull(disabled.key(a, "label", "text", 0, true));
+	}
+
+	@Test
+	void matrixMissThenHit() throws Exception {
+		DatasetCache cache = new DatasetCache(1, 0, "", 0);
+		DatasetKey key = key(cache, "hit.csv");
+		Counting parse = new Counting(400);
+
+		TrainingMatrix first = cache.matrix(key, parse);
+		assertSame(first, cache.matrix(key, parse));
+		assertEquals(1, parse.calls.get());
+		DatasetCache.Stats stats = cache.stats();
+		assertEquals(1, stats.misses());
+		assertEquals(1, stats.hits());
+		assertEquals(1, stats.entries());
+		assertEquals(first.estimatedBytes(), stats.memoryBytes());
+
+		// a disabled cache (null key) parses every time
+		Counting uncached = new Counting(10);
+		cache.matrix(null, uncached);
+		cache.matrix(null, uncached);
+		assertEquals(2, uncached.calls.get());
+	}
+
+	@Test
+	void evictsLeastRecentlyUsedWithinBudget() throws Exception {
+		DatasetCache cache = new DatasetCache(1, 0, "", 0);
+		DatasetKey a = key(cache, "a.csv"), b = key(cache, "b.csv"), c = key(cache, "c.csv");
+		// ~350 KB each: two fit in 1 MB, three don't
+		Counting pa = new Counting(8_000), pb = new Counting(8_000), pc = new Counting(8_000);
+		cache.matrix(a, pa);
+		cache.matrix(b, pb);
+		cache.matrix(a, pa);   // a is now more recent than b
+		cache.matrix(c, pc);
+		assertEquals(2, cache.stats().entries());
+		assertTrue(cache.stats().memoryBytes() <= cache.stats().maxMemoryBytes());
+
+		cache.matrix(a, pa);
+		cache.matrix(b, pb);
+		assertEquals(1, pa.calls.get());
+		assertEquals(2, pb.calls.get());
+
+		// larger than the whole budget: returned, not kept
+		DatasetKey big = key(cache, "big.csv");
+		Counting pbig = new Counting(40_000);
+		cache.matrix(big, pbig);
+		cache.matrix(big, pbig);
+		assertEquals(2, pbig.calls.get());
+	}
+
+	@Test
+	void diskTierOutlivesTheInstance() throws Exception {
+		String cacheDir = dir.resolve("cache").toString();
+		DatasetCache cache = new DatasetCache(0, 0, cacheDir, 16);
+		DatasetKey key = key(cache, "disk.csv");
+		TrainingMatrix parsed = cache.matrix(key, new Counting(500));
+
+		DatasetCache restarted = new DatasetCache(0, 0, cacheDir, 16);
+		Counting parse = new Counting(500);
+		TrainingMatrix read = restarted.matrix(key, parse);
+		assertEquals(0, parse.calls.get());
+		assertEquals(1, restarted.stats().diskHits());
+		assertEquals(parsed.rows(), read.rows());
+		assertEquals(parsed.nonZeros(), read.nonZeros());
+		assertTrue(restarted.stats().diskBytes() > 0);
+	}
+
+	@Test
+	void trainedModelsAreMemoizedByDataAndOptions() throws Exception {
+		DatasetCache cache = new DatasetCache(0, 2, "", 0);
+		DatasetKey key = key(cache, "model.csv");
+		TrainingOptions options = TrainingOptions.DEFAULTS;
+		assertNull(cache.model(key, options));
+
+		ImprovedClassifier model = new ImprovedClassifier(matrix(300), null, options);
+		cache.putModel(key, options, model);
+		assertSame(model, cache.model(key, options));
+		assertNull(cache.model(key, options.withHyperparameters(4, 2, 1, 1e-3)));
+		assertEquals(1, cache.stats().modelHits());
+		assertEquals(2, cache.stats().modelMisses());
+
+		// a wall-clock budget makes training nondeterministic: never memoized
+		TrainingOptions timed = new TrainingOptions(TrainingOptions.Growth.BEST_FIRST, 0, 60_000);
+		cache.putModel(key, timed, model);
+		assertNull(cache.model(key, timed));
+
+		// only the newest max-models are kept
+		cache.putModel(key, options.withHyperparameters(3, 2, 1, 1e-3), model);
+		cache.putModel(key, options.withHyperparameters(2, 2, 1, 1e-3), model);
+		assertEquals(2, cache.stats().models());
+		assertNull(cache.model(key, options));
+	}
+
+	@Test
+	void memoizedModelsSurviveOnDisk() throws Exception {
+		String cacheDir = dir.resolve("models").toString();
+		DatasetCache cache = new DatasetCache(0, 4, cacheDir, 16);
+		DatasetKey key = key(cache, "saved.csv");
+		ImprovedClassifier model = new ImprovedClassifier(matrix(300), null, TrainingOptions.DEFAULTS);
+		cache.putModel(key, TrainingOptions.DEFAULTS, model);
+
+		ImprovedClassifier read = new DatasetCache(0, 4, cacheDir, 16).model(key, TrainingOptions.DEFAULTS);
+		assertNotNull(read);
+		assertNotSame(model, read);
+		assertEquals(saved(model), saved(read));
+	}
+
+	private DatasetKey key(DatasetCache cache, String name) throws IOException {
+		return cache.key(csv(name, "label,text\n" + name + ",text\n"), "label", "text", 0, true);
+	}
+
+	private File csv(String name, String content) throws IOException {
+		return Files.writeString(dir.resolve(name), content).toFile();
+	}
+
+	// Distinct five-word documents, about 46 bytes of matrix per row
+	private static TrainingMatrix matrix(int rows) {
+		TrainingMatrix.Builder b = new TrainingMatrix.Builder();
+		for (int i = 0; i < rows; i++) {
+			b.add(new TextBlock("w" + i + " w" + (i + 1) + " w" + i % 7 + " x" + i % 11 + " y" + i % 13),
+					i % 3 == 0 ? "a" : "b");
+		}
+		return b.build();
+	}
+
+	private static final class Counting implements Callable<TrainingMatrix> {
+		final AtomicInteger calls = new AtomicInteger();
+		private final int rows;
+
+		Counting(int rows) {
+			this.rows = rows;
+		}
+
+		@Override
+		public TrainingMatrix call() {
+			calls.incrementAndGet();
+			return matrix(rows);
+		}
+	}
+
+}
@@ -0,0 +1,162 @@
+package com.example.classifierapi.store;
+
+import com.example.classifierapi.core.ImprovedClassifier;
+import com.example.classifierapi.core.TextBlock;
+import com.example.classifierapi.core.TrainingMatrix;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.classifierapi.core.Fixtures.saved;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ModelRepositoryTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void publishNumbersVersionsAndSkipsUnchangedContent() throws IOException {
+		ModelRepository repo = new ModelRepository(dir.toString(), 10);
+		assertTrue(repo.isEnabled());
+		assertNull(repo.latest());
+
+		assertEquals(1, repo.publish(model(1)));
+		assertEquals(2, repo.publish(model(2)));
+		// same content as the newest version: nothing written, its number returned
+		assertEquals(2, repo.publish(model(2)));
+		assertEquals(3, repo.publish(model(1)));
+
+		List<ModelRepository.Version> versions = repo.versions();
+		assertEquals(3, versions.size());
+		for (int i = 0; i < versions.size(); i++) {
+			ModelRepository.Version v = versions.get(i);
+			assertEquals(i + 1, v.version());
+			assertEquals(Files.size(dir.resolve(v.fileName())), v.bytes());
+		}
+		assertEquals(versions.get(0).sha256(), versions.get(2).sha256());
+		assertEquals(saved(model(2)), saved(repo.load(versions.get(1))));
+		// nothing left behind under a temporary name
+		try (var files = Files.list(dir)) {
+			assertEquals(0, files.filter(f -> f.getFileName().toString().endsWith(".tmp")).count());
+		}
+
+		ModelRepository disabled = new ModelRepository(" ", 10);
+		assertFalse(disabled.isEnabled());
+		assertEquals(0, disabled.publish(model(1)));
+		assertTrue(disabled.versions().isEmpty());
+	}
+
+	@Test
+	void olderVersionsArePruned() throws IOException {
+		ModelRepository repo = new ModelRepository(dir.toString(), 2);
+		for (int i = 1; i <= 5; i++) assertEquals(i, repo.publish(model(i)));
+		List<ModelRepository.Version> versions = repo.versions();
+		assertEquals(List.of(4L, 5L), versions.stream().map(ModelRepository.Version::version).toList());
+	}
+
+	@Test
+	void replicasPublishingAtOnceNeverShareAVersion() throws Exception {
+		// one repository per "replica", so only the file system keeps them apart
+		int replicas = 8;
+		ExecutorService pool = Executors.newFixedThreadPool(replicas);
+		try {
+			CountDownLatch start = new CountDownLatch(1);
+			List<Future<Long>> published = new ArrayList<>();
+			for (int i = 0; i < replicas; i++) {
+				ModelRepository repo = new ModelRepository(dir.toString(), 100);
+				ImprovedClassifier model = model(i);
+				published.add(pool.submit(() -> {
+					start.await();
+					return repo.publish(model);
+				}));
+			}
+			start.countDown();
+			Set<Long> versions = new TreeSet<>();
+			for (Future<Long> f : published) versions.add(f.get(30, TimeUnit.SECONDS));
+			assertEquals(replicas, versions.size(), versions.toString());
+
+			// every publish landed as its own file, and each reads back as what was written
+			ModelRepository reader = new ModelRepository(dir.toString(), 100);
+			assertEquals(replicas, reader.versions().size());
+			Set<String> expected = new TreeSet<>(), loaded = new TreeSet<>();
+			for (int i = 0; i < replicas; i++) expected.add(saved(model(i)));
+			for (ModelRepository.Version v : reader.versions()) {
+				assertTrue(versions.contains(v.version()));
+				loaded.add(saved(reader.load(v)));
+			}
+			assertEquals(expected, loaded);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	@Test
+	void loadRejectsContentThatFailsItsHash() throws IOException {
+		ModelRepository repo = new ModelRepository(dir.toString(), 10);
+		repo.publish(model(1));
+		ModelRepository.Version v = repo.latest();
+		Path file = dir.resolve(v.fileName());
+		String text = Files.readString(file).replace("x1", "x9");
+		Files.writeString(file, text);
+		IOException e = assertThrows(IOException.class, () -> repo.load(v));
+		assertTrue(e.getMessage().contains("content check"), e.getMessage());
+	}
+
+	@Test
+	void watcherHandsOverNewerVersionsOnly() throws Exception {
+		ModelRepository publisher = new ModelRepository(dir.toString(), 10);
+		publisher.publish(model(1));
+
+		BlockingQueue<Object[]> seen = new ArrayBlockingQueue<>(10);
+		try (ModelRepository watching = new ModelRepository(dir.toString(), 10)) {
+			watching.watch((model, version) -> seen.add(new Object[] { model, version }));
+			// what was there before the watch started is picked up too
+			Object[] first = seen.poll(10, TimeUnit.SECONDS);
+			assertNotNull(first, "version 1 not loaded");
+			assertEquals(1L, first[1]);
+			assertEquals(saved(model(1)), saved((ImprovedClassifier) first[0]));
+
+			// a corrupt file under a newer number is skipped; the next good version still arrives
+			Files.writeString(dir.resolve(String.format("model-%06d-%s.txt", 2, "0".repeat(32))), "not a model\n");
+			publisher.publish(model(3));
+			Object[] next = seen.poll(10, TimeUnit.SECONDS);
+			assertNotNull(next, "version 3 not loaded");
+			assertEquals(3L, next[1]);
+			assertEquals(saved(model(3)), saved((ImprovedClassifier) next[0]));
+
+			// versions published here are already known, and not handed back, however quickly
+			// the watcher wakes up for the new file
+			for (int i = 4; i < 40; i++) watching.publish(model(i));
+			assertNull(seen.poll(500, TimeUnit.MILLISECONDS));
+		}
+	}
+
+	// A small tree whose saved text differs with i
+	private static ImprovedClassifier model(int i) {
+		TrainingMatrix data = TrainingMatrix.of(
+				List.of(new TextBlock("ball team"), new TextBlock("vote law"), new TextBlock("ball goal")),
+				List.of("x" + i, "y", "x" + i));
+		return new ImprovedClassifier(data, null);
+	}
+
+}
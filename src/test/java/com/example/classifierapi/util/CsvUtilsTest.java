@@ -0,0 +1,42 @@
+package com.example.classifierapi.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CsvUtilsTest {
+
+	@Test
+	void readParsesAStreamedUpload() throws IOException {
+		String csv = "label,text\r\n"
+				+ "sport,\"ball, goal\"\r\n"
+				+ "tech,\"cpu\r\nchip\"\n"
+				+ ",no label\n"
+				+ "politics,   \n"
+				+ " politics ,vote";
+		CsvUtils.Parsed parsed = CsvUtils.read(stream(csv), "label", null);
+		assertEquals(List.of("sport", "tech", "politics"), parsed.labels());
+		assertEquals(3, parsed.blocks().size());
+		assertEquals(0.5, parsed.blocks().get(0).get("ball"));
+		assertEquals(0.5, parsed.blocks().get(1).get("chip"));
+		assertEquals(1.0, parsed.blocks().get(2).get("vote"));
+	}
+
+	@Test
+	void readRejectsEmptyOrHeaderlessUploads() {
+		assertThrows(IOException.class, () -> CsvUtils.read(stream(""), "label", null));
+		assertThrows(IOException.class, () -> CsvUtils.read(stream("category,body\nx,y\n"), "label", null));
+	}
+
+	private static InputStream stream(String csv) {
+		return new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8));
+	}
+
+}
@@ -0,0 +1,148 @@
+package com.example.classifierapi.util;
+
+import com.example.classifierapi.core.Fixtures;
+import com.example.classifierapi.core.ImprovedClassifier;
+import com.example.classifierapi.core.TextBlock;
+import com.example.classifierapi.core.TrainingMatrix;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.regex.MatchResult;
+import java.util.regex.Pattern;
+
+import static com.example.classifierapi.core.Fixtures.topic;
+import static com.example.classifierapi.core.Fixtures.words;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TreeJsonWriterTest {
+
+	private static final String[] WORDS = { "ball", "goal", "vote", "law", "cpu", "chip", "match", "senate", "win", "tax",
+			"court", "gpu", "team", "bill", "ram", "coach" };
+
+	// The fields every windowed node starts with, and the stub/summary ending if it has one
+	private static final Pattern NODE = Pattern.compile("\\{\"nodeId\":(\\d+)(?:,\"parentId\":(-?\\d+))?,\"isLeaf\":(true|false),"
+			+ "\"samples\":(\\d+),\"subtreeNodes\":(\\d+),\"subtreeDepth\":(\\d+)(,\"stub\":true\\}|,\"collapsed\":true\\})?");
+
+	@Test
+	void indexAgreesWithTheTree() {
+		ImprovedClassifier model = model(new Random(48));
+		ImprovedClassifier.Node root = model.getRoot();
+		assertSame(root, model.node(0));
+		assertEquals(-1, model.parentId(root));
+		assertEquals(model.nodeCount(), model.subtreeSize(root));
+		assertNull(model.node(-1));
+		assertNull(model.node(model.nodeCount() + 1000));
+
+		Deque<ImprovedClassifier.Node> todo = new ArrayDeque<>(List.of(root));
+		while (!todo.isEmpty()) {
+			ImprovedClassifier.Node n = todo.pop();
+			assertSame(n, model.node(n.getNodeId()));
+			assertEquals(size(n), model.subtreeSize(n));
+			assertEquals(height(n), model.subtreeHeight(n));
+			if (n.isLeaf()) continue;
+			for (ImprovedClassifier.Node c : List.of(n.getLeft(), n.getRight())) {
+				assertEquals(n.getNodeId(), model.parentId(c));
+				todo.push(c);
+			}
+		}
+	}
+
+	@Test
+	void windowsAreBoundedAndStubsPageThroughTheWholeTree() {
+		ImprovedClassifier model = model(new Random(49));
+		assertTrue(height(model.getRoot()) > 8, "shallow tree");
+		for (ImprovedClassifier m : List.of(model, reloaded(model))) {
+			for (int depth : new int[] { 0, 1, 3 }) {
+				// expand every stub with another window, as a client browsing the tree would
+				Set<Integer> opened = new HashSet<>();
+				Deque<Integer> stubs = new ArrayDeque<>(List.of(0));
+				int windows = 0;
+				while (!stubs.isEmpty()) {
+					int id = stubs.pop();
+					List<MatchResult> nodes = nodes(TreeJsonWriter.toJson(m, m.node(id), depth, 0));
+					windows++;
+					assertTrue(nodes.size() <= (1 << (depth + 2)) - 1, nodes.size() + " nodes at depth " + depth);
+					MatchResult top = nodes.get(0);
+					assertEquals(id, Integer.parseInt(top.group(1)));
+					assertEquals(m.parentId(m.node(id)), Integer.parseInt(top.group(2)));
+					assertNull(top.group(7), "the requested node is always opened");
+					for (MatchResult n : nodes) {
+						int nodeId = Integer.parseInt(n.group(1));
+						ImprovedClassifier.Node node = m.node(nodeId);
+						assertEquals(node.getSamples(), Integer.parseInt(n.group(4)));
+						assertEquals(m.subtreeSize(node), Integer.parseInt(n.group(5)));
+						assertEquals(m.subtreeHeight(node), Integer.parseInt(n.group(6)));
+						if (n.group(7) != null) {
+							assertTrue(n.group(7).contains("stub"));
+							assertTrue(n.group(3).equals("false"), "leaves are never stubs");
+							stubs.push(nodeId);
+						} else {
+							assertTrue(opened.add(nodeId), "node " + nodeId + " opened twice");
+						}
+					}
+				}
+				assertEquals(m.nodeCount(), opened.size(), "depth " + depth);
+				assertTrue(windows > 1);
+			}
+		}
+	}
+
+	@Test
+	void thinSubtreesAreCollapsed() {
+		ImprovedClassifier model = model(new Random(50));
+		int minSamples = model.getRoot().getSamples() / 20;
+		List<MatchResult> nodes = nodes(TreeJsonWriter.toJson(model, model.getRoot(), 10, minSamples));
+		int collapsed = 0;
+		for (MatchResult n : nodes) {
+			if (n.group(7) != null && n.group(7).contains("collapsed")) {
+				collapsed++;
+				assertTrue(Integer.parseInt(n.group(4)) < minSamples);
+			}
+		}
+		assertTrue(collapsed > 0);
+		// a collapsed window is far smaller than the whole tree
+		assertTrue(nodes.size() < model.nodeCount() / 2, nodes.size() + " of " + model.nodeCount());
+	}
+
+	private static List<MatchResult> nodes(byte[] json) {
+		return NODE.matcher(new String(json, StandardCharsets.UTF_8)).results().toList();
+	}
+
+	private static int size(ImprovedClassifier.Node n) {
+		return n.isLeaf() ? 1 : 1 + size(n.getLeft()) + size(n.getRight());
+	}
+
+	private static int height(ImprovedClassifier.Node n) {
+		return n.isLeaf() ? 1 : 1 + Math.max(height(n.getLeft()), height(n.getRight()));
+	}
+
+	// Loaded models number their nodes on load, root 0 as for trained ones
+	private static ImprovedClassifier reloaded(ImprovedClassifier model) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		model.save(new PrintStream(out, true, StandardCharsets.UTF_8));
+		return new ImprovedClassifier(new Scanner(out.toString(StandardCharsets.UTF_8)));
+	}
+
+	// Noisy labels, so the tree is deep and bushy
+	private static ImprovedClassifier model(Random rnd) {
+		List<TextBlock> docs = new ArrayList<>();
+		List<String> labels = new ArrayList<>();
+		Fixtures.documents(3_000, () -> words(rnd, WORDS, 1 + rnd.nextInt(6)),
+				text -> rnd.nextInt(5) == 0 ? WORDS[rnd.nextInt(3)] : topic(text), docs, labels);
+		return new ImprovedClassifier(TrainingMatrix.of(docs, labels), null);
+	}
+
+}